@@ -0,0 +1,87 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/* cost of rendering a buffer of the mixer binaurally, voices convolved with 256-tap responses
+ * at 48 kHz, still or moving to another direction every buffer; audio frames rendered per
+ * second, divided by the sample rate, is how many times faster than real time it runs */
+@State(Scope.Thread)
+public class BinauralBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int HRIR_LENGTH = 256;
+    private static final int LOOP_FRAMES = SAMPLE_RATE / 2;
+
+    @Param({"8", "32"})
+    public int voices;
+
+    @Param({"64", "128", "256"})
+    public int blockSize;
+
+    @Param({"256", "1024"})
+    public int bufferFrames;
+
+    @Param({"STILL", "MOVING"})
+    public String motion;
+
+    private MixerEngine engine;
+    private float[] buffer;
+    private boolean moving;
+    private int buffers;
+
+    /* audio frames rendered, per iteration */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Frames {
+        public long audioFrames;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            audioFrames = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1L);
+        float[][] loops = new float[voices][LOOP_FRAMES];
+        for (float[] loop : loops)
+            for (int n = 0; n < LOOP_FRAMES; n++)
+                loop[n] = 0.1f * (float) random.nextGaussian();
+        engine = new MixerEngine(loops, 256);
+        engine.setBinaural(new BinauralRenderer(new Hrtf(SAMPLE_RATE, HRIR_LENGTH), voices,
+                                                blockSize));
+        for (int v = 0; v < voices; v++) {
+            engine.setDirection(v, 2.0f * (float) Math.PI * v / voices - (float) Math.PI, 0.0f);
+            engine.setVoice(v, 0.5f, 0.5f, true);
+        }
+        buffer = new float[2 * bufferFrames];
+        moving = motion.equals("MOVING");
+        buffers = 0;
+    }
+
+    @Benchmark
+    public float render(Frames counters) {
+        if (moving) {
+            // each voice a tenth of a turn further, always onto another point of the grid
+            for (int v = 0; v < voices; v++) {
+                float turns = 0.1f * (buffers + v) + (float) v / voices;
+                float azimuth = 2.0f * (float) Math.PI * (turns - (float) Math.floor(turns))
+                                - (float) Math.PI;
+                engine.setDirection(v, azimuth, 0.3f * (float) Math.sin(buffers + v));
+            }
+        }
+        buffers++;
+        engine.render(buffer, 0, bufferFrames);
+        counters.audioFrames += bufferFrames;
+        return buffer[0];
+    }
+}
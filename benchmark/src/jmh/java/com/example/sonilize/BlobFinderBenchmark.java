@@ -0,0 +1,51 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* cost of labeling the quantized grid of one frame and extracting its blobs, given the depth
+ * pyramid built by the quantizer or building it first */
+@State(Scope.Thread)
+public class BlobFinderBenchmark {
+
+    @Param({"EMPTY", "WALL", "CLUTTER"})
+    public String scene;
+
+    @Param({"32", "64", "128", "256"})
+    public int resolution;
+
+    private PipelineConfig config;
+    private float[] grid;
+    private DepthPyramid pyramid;
+    private BlobFinder blobFinder;
+
+    @Setup
+    public void setUp() {
+        config = PipelineConfig.builderForResolution(resolution, resolution).build();
+        SphericalProjection projection = new SphericalProjection(
+                resolution, resolution, config.getHorizAngularSpan(), config.getVertAngularSpan());
+        PointCloudQuantizer quantizer = new PointCloudQuantizer(projection);
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.valueOf(scene),
+                                               100000, 1L, 0.0f);
+        quantizer.quantize(points, 100000);
+        grid = quantizer.getDepths().clone();
+        pyramid = quantizer.getPyramid();
+        blobFinder = new BlobFinder(projection);
+    }
+
+    @Benchmark
+    public BlobTable findBlobs() {
+        return blobFinder.findBlobs(grid, pyramid, config.getMaxDistance(),
+                                    config.getMinBlobSize(), config.getMaxDistance(),
+                                    config.getMaxNumThings());
+    }
+
+    @Benchmark
+    public BlobTable buildPyramidAndFindBlobs() {
+        return blobFinder.findBlobs(grid, config.getMaxDistance(), config.getMinBlobSize(),
+                                    config.getMaxDistance(), config.getMaxNumThings());
+    }
+}
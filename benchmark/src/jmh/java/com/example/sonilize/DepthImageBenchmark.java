@@ -0,0 +1,54 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* cost of quantizing one frame of the depth camera binned by angles, by pixel lookup, and read
+ * as a depth image, all three giving the same grid */
+@State(Scope.Thread)
+public class DepthImageBenchmark {
+
+    @Param({"EMPTY", "WALL", "CLUTTER"})
+    public String scene;
+
+    @Param({"64", "256"})
+    public int resolution;
+
+    private float[] image;
+    private float[] points;
+    private PointCloudQuantizer byAngles;
+    private PointCloudQuantizer byPixels;
+
+    @Setup
+    public void setUp() {
+        image = SyntheticScenes.depthImage(SyntheticScenes.Scene.valueOf(scene), 1L, 0.0f);
+        points = SyntheticScenes.cloudOfDepthImage(image);
+        PipelineConfig config = PipelineConfig.builderForResolution(resolution, resolution).build();
+        SphericalProjection projection = new SphericalProjection(
+                resolution, resolution, config.getHorizAngularSpan(), config.getVertAngularSpan());
+        byAngles = new PointCloudQuantizer(projection);
+        byPixels = new PointCloudQuantizer(projection);
+        byPixels.setDepthImageLookup(SyntheticScenes.imageLookup(projection));
+    }
+
+    @Benchmark
+    public float[] quantizeByAngles() {
+        byAngles.quantize(points, image.length);
+        return byAngles.getDepths();
+    }
+
+    @Benchmark
+    public float[] quantizeByPixels() {
+        byPixels.quantize(points, image.length);
+        return byPixels.getDepths();
+    }
+
+    @Benchmark
+    public float[] quantizeDepthImage() {
+        byPixels.quantizeDepthImage(image, 1, 0);
+        return byPixels.getDepths();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* cost of finding the ground in one point cloud, starting from the plane of the previous frame
+ * (found, on the floor scene, or not) and from scratch */
+@State(Scope.Thread)
+public class GroundPlaneBenchmark {
+
+    @Param({"10000", "100000"})
+    public int numPoints;
+
+    @Param({"WALL", "FLOOR"})
+    public String scene;
+
+    private float[] points;
+    private float[] up;
+    private float maxTilt;
+    private GroundPlaneFilter warm;
+
+    @Setup
+    public void setUp() {
+        points = SyntheticScenes.cloud(SyntheticScenes.Scene.valueOf(scene), numPoints, 1L, 0.0f);
+        up = SyntheticScenes.floorUp();
+        maxTilt = (float) Math.toRadians(15.0);
+        warm = new GroundPlaneFilter(3.0f);
+        warm.fit(points, 0, numPoints, up, maxTilt);
+    }
+
+    @Benchmark
+    public boolean fitWarm() {
+        return warm.fit(points, 0, numPoints, up, maxTilt);
+    }
+
+    @Benchmark
+    public boolean fitCold() {
+        return new GroundPlaneFilter(3.0f).fit(points, 0, numPoints, up, maxTilt);
+    }
+}
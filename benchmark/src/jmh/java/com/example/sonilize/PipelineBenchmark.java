@@ -0,0 +1,56 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/* end-to-end cost of one frame, from point cloud to sound updates, over a sequence of frames
+ * of a moving scene */
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    private static final int NUM_FRAMES = 8;
+
+    @Param({"1000", "10000", "100000", "500000"})
+    public int numPoints;
+
+    @Param({"EMPTY", "WALL", "CLUTTER"})
+    public String scene;
+
+    @Param({"32", "64", "128", "256"})
+    public int resolution;
+
+    private float[][] frames;
+    private DepthPipeline pipeline;
+    private int next;
+    private double timestamp;
+
+    @Setup
+    public void setUp() {
+        frames = new float[NUM_FRAMES][];
+        for (int f = 0; f < NUM_FRAMES; f++)
+            frames[f] = SyntheticScenes.cloud(SyntheticScenes.Scene.valueOf(scene),
+                                              numPoints, f, f * 0.2f);
+        PipelineConfig config = PipelineConfig.builderForResolution(resolution, resolution)
+                .setQuantizationThreads(Runtime.getRuntime().availableProcessors())
+                .build();
+        pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        next = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.release();
+    }
+
+    @Benchmark
+    public int frame() {
+        pipeline.process(frames[next], numPoints, timestamp);
+        next = (next + 1) % NUM_FRAMES;
+        timestamp += 0.2;
+        return pipeline.getNumTracked();
+    }
+}
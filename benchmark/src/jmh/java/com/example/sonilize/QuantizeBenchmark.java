@@ -0,0 +1,48 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/* cost of quantizing one point cloud, serially and with one thread per core */
+@State(Scope.Thread)
+public class QuantizeBenchmark {
+
+    @Param({"1000", "10000", "100000", "500000"})
+    public int numPoints;
+
+    @Param({"EMPTY", "WALL", "CLUTTER"})
+    public String scene;
+
+    @Param({"32", "64", "128", "256"})
+    public int resolution;
+
+    @Param({"0", "4"})
+    public int threads;
+
+    private float[] points;
+    private PointCloudQuantizer quantizer;
+
+    @Setup
+    public void setUp() {
+        points = SyntheticScenes.cloud(SyntheticScenes.Scene.valueOf(scene), numPoints, 1L, 0.0f);
+        PipelineConfig config = PipelineConfig.builderForResolution(resolution, resolution).build();
+        quantizer = new PointCloudQuantizer(new SphericalProjection(
+                resolution, resolution, config.getHorizAngularSpan(), config.getVertAngularSpan()));
+        quantizer.setParallelism(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        quantizer.release();
+    }
+
+    @Benchmark
+    public float[] quantize() {
+        quantizer.quantize(points, numPoints);
+        return quantizer.getDepths();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/* cost of one frame with and without scene change detection, over a sequence of frames of a
+ * still scene (the same obstacles, sampled anew) and of a moving one (the obstacles drifting),
+ * reporting how many frames reused the blobs of a previous one */
+@State(Scope.Thread)
+public class SceneChangeBenchmark {
+
+    private static final int NUM_FRAMES = 8;
+    private static final int NUM_POINTS = 60000;
+    private static final float FRAME_PERIOD = 0.2f;
+
+    @Param({"STILL", "MOVING"})
+    public String motion;
+
+    @Param({"0", "0.03"})
+    public float tolerance;
+
+    @Param({"64", "256"})
+    public int resolution;
+
+    private float[][] frames;
+    private DepthPipeline pipeline;
+    private int next;
+    private double timestamp;
+
+    /* frames processed and frames whose blobs were reused, per iteration */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Frames {
+        public long processed;
+        public long skipped;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            processed = 0;
+            skipped = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        boolean still = motion.equals("STILL");
+        frames = new float[NUM_FRAMES][];
+        for (int f = 0; f < NUM_FRAMES; f++)
+            frames[f] = SyntheticScenes.cloud(SyntheticScenes.Scene.CLUTTER, NUM_POINTS, 1L, f,
+                                              still ? 0.0f : f * FRAME_PERIOD);
+        PipelineConfig config = PipelineConfig.builderForResolution(resolution, resolution)
+                .setSceneChangeTolerance(tolerance)
+                .build();
+        pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        next = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.release();
+    }
+
+    @Benchmark
+    public int frame(Frames counters) {
+        long skipped = pipeline.getExtractionsSkipped();
+        pipeline.process(frames[next], NUM_POINTS, timestamp);
+        next = (next + 1) % NUM_FRAMES;
+        timestamp += FRAME_PERIOD;
+        counters.processed++;
+        counters.skipped += pipeline.getExtractionsSkipped() - skipped;
+        return pipeline.getNumTracked();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Vector;
+
+/* cost of updating the tracked things with the blobs of one frame, over a sequence of frames
+ * of a moving scene */
+@State(Scope.Thread)
+public class TrackerBenchmark {
+
+    private static final int NUM_FRAMES = 32;
+
+    @Param({"WALL", "CLUTTER"})
+    public String scene;
+
+    private BlobTable[] frames;
+    private ObjectTracker tracker;
+    private int next;
+    private double timestamp;
+    private final RigidTransform camera = new RigidTransform();
+
+    @Setup
+    public void setUp() {
+        PipelineConfig config = new PipelineConfig.Builder().build();
+        SphericalProjection projection = new SphericalProjection(
+                config.getHorizRes(), config.getVertRes(),
+                config.getHorizAngularSpan(), config.getVertAngularSpan());
+        PointCloudQuantizer quantizer = new PointCloudQuantizer(projection);
+        BlobFinder blobFinder = new BlobFinder(projection);
+        frames = new BlobTable[NUM_FRAMES];
+        for (int f = 0; f < NUM_FRAMES; f++) {
+            float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.valueOf(scene),
+                                                   50000, f, f * 0.2f);
+            quantizer.quantize(points, 50000);
+            BlobTable blobs = blobFinder.findBlobs(
+                    quantizer.getDepths(), config.getMaxDistance(), config.getMinBlobSize(),
+                    config.getMaxDistance(), config.getMaxNumThings());
+            // the finder reuses its table, keep a copy of each frame
+            frames[f] = new BlobTable(blobs.getCount());
+            for (int b = 0; b < blobs.getCount(); b++)
+                frames[f].add(blobs.getSize(b), blobs.getAverageR(b),
+                              blobs.getAverageTheta(b), blobs.getAveragePhi(b));
+        }
+        tracker = new ObjectTracker(new NullAudioSink(8), config.getMaxNumThings(),
+                                    config.getEpsilon(), config.getHorizAngularSpan(),
+                                    config.getMaxDistance(), config.getMaxCoastFrames());
+        next = 0;
+    }
+
+    @Benchmark
+    public Vector<Thing> update() {
+        tracker.update(frames[next], timestamp, camera);
+        next = (next + 1) % NUM_FRAMES;
+        timestamp += 0.2;
+        return tracker.getThings();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.sonilize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* cost of fusing the quantized grid of one frame into the voxel map and rendering it back, in
+ * a static scene seen from a still camera (the case where blob extraction is skipped) */
+@State(Scope.Thread)
+public class VoxelMapBenchmark {
+
+    @Param({"EMPTY", "WALL", "CLUTTER"})
+    public String scene;
+
+    @Param({"32", "64", "128", "256"})
+    public int resolution;
+
+    @Param({"0.03", "0.05", "0.1"})
+    public float voxelSize;
+
+    private float[] grid;
+    private VoxelMap map;
+    private RigidTransform pose;
+    private double timestamp;
+
+    @Setup
+    public void setUp() {
+        PipelineConfig config = PipelineConfig.builderForResolution(resolution, resolution)
+                                              .build();
+        SphericalProjection projection = new SphericalProjection(
+                resolution, resolution, config.getHorizAngularSpan(), config.getVertAngularSpan());
+        PointCloudQuantizer quantizer = new PointCloudQuantizer(projection);
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.valueOf(scene),
+                                               100000, 1L, 0.0f);
+        quantizer.quantize(points, 100000);
+        grid = quantizer.getDepths().clone();
+        map = new VoxelMap(projection, voxelSize, config.getMaxDistance(),
+                           config.getMaxVoxels());
+        pose = new RigidTransform();
+    }
+
+    @Benchmark
+    public float[] integrate() {
+        map.integrate(grid, pose, timestamp);
+        timestamp += 0.2;
+        return map.getDepths();
+    }
+}
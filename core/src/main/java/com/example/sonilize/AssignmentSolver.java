@@ -0,0 +1,103 @@
+package com.example.sonilize;
+
+import java.util.Arrays;
+
+/* minimum-cost assignment of the rows of a rectangular cost matrix to distinct columns
+ * (Hungarian method with potentials, O(n^2 m) for n = min(rows, cols) and m = max(rows, cols));
+ * all buffers are allocated once for the largest matrix */
+class AssignmentSolver {
+
+    private final int maxDim;
+    private final float[] transposed;
+    private final double[] u;
+    private final double[] v;
+    private final double[] minv;
+    private final int[] p;
+    private final int[] way;
+    private final boolean[] used;
+    private final int[] colToRow;
+
+    /* constructor, for matrices of at most maxRows rows and maxCols columns */
+    AssignmentSolver(int maxRows, int maxCols) {
+        maxDim = Math.max(maxRows, maxCols);
+        transposed = new float[maxRows * maxCols];
+        u = new double[maxDim + 1];
+        v = new double[maxDim + 1];
+        minv = new double[maxDim + 1];
+        p = new int[maxDim + 1];
+        way = new int[maxDim + 1];
+        used = new boolean[maxDim + 1];
+        colToRow = new int[maxDim];
+    }
+
+    /* assign each of the rows to a distinct column minimizing the total cost, where the cost of
+     * row i and column j is cost[i * cols + j]; rowToCol[i] receives the column of row i, or -1
+     * if there are more rows than columns and row i is left out */
+    void solve(float[] cost, int rows, int cols, int[] rowToCol) {
+        if (rows > maxDim || cols > maxDim || (long) rows * cols > transposed.length)
+            throw new IllegalArgumentException("Cost matrix larger than the solver");
+        if (rows <= cols) {
+            solveWide(cost, rows, cols, rowToCol);
+            return;
+        }
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                transposed[j * rows + i] = cost[i * cols + j];
+        solveWide(transposed, cols, rows, colToRow);
+        Arrays.fill(rowToCol, 0, rows, -1);
+        for (int j = 0; j < cols; j++)
+            rowToCol[colToRow[j]] = j;
+    }
+
+    /* the case n = rows <= m = cols, with 1-based indices internally, row 0 and column 0 being
+     * sentinels */
+    private void solveWide(float[] a, int n, int m, int[] rowToCol) {
+        Arrays.fill(u, 0, n + 1, 0.0);
+        Arrays.fill(v, 0, m + 1, 0.0);
+        Arrays.fill(p, 0, m + 1, 0);
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, m + 1, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, 0, m + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j])
+                        continue;
+                    double cur = a[(i0 - 1) * m + (j - 1)] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    }
+                    else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            // augment along the alternating path
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        for (int j = 1; j <= m; j++)
+            if (p[j] != 0)
+                rowToCol[p[j] - 1] = j - 1;
+    }
+}
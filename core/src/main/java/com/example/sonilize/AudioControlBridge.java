@@ -0,0 +1,409 @@
+package com.example.sonilize;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* decouples the tracker from the audio backend: the tracker drives this AudioSink on the
+ * perception thread and publish()es the resulting state of every sound once per frame through
+ * a TripleBuffer; a control thread ticking at a fixed rate picks up the latest state, glides
+ * volume, pan and direction from what is being heard towards the new values (extrapolated along
+ * their last motion for a fraction of a frame, azimuths the short way round), and calls the
+ * backend only when a value has moved by more than a threshold; sounds of the bridge are mapped
+ * onto sounds of the backend, so the backend sees a valid sequence of activations even when
+ * frames are skipped; a backend out of sounds leaves the sound silent until the next frame,
+ * rather than stopping the control thread
+ */
+public class AudioControlBridge implements AudioSink {
+
+    // the longest glide towards new values, so that a stalled perception does not smear them
+    private static final long MAX_GLIDE_NANOS = 250000000L;
+    // how far past a frame values keep moving along their last motion, in frame intervals
+    private static final double EXTRAPOLATION = 0.5;
+    private static final float PI = (float) Math.PI;
+    private static final float HALF_PI = (float) (Math.PI / 2.0);
+
+    /* the state of every sound at the end of a frame */
+    private static class Snapshot {
+        final boolean[] active;
+        final boolean[] playing;
+        final int[] generations;
+        final float[] vols;
+        final float[] pans;
+        final float[] azimuths;
+        final float[] elevations;
+        long nanos;
+        long captureNanos;
+
+        Snapshot(int numVoices) {
+            active = new boolean[numVoices];
+            playing = new boolean[numVoices];
+            generations = new int[numVoices];
+            vols = new float[numVoices];
+            pans = new float[numVoices];
+            azimuths = new float[numVoices];
+            elevations = new float[numVoices];
+        }
+    }
+
+    private final AudioSink backend;
+    private final int numVoices;
+    private final float threshold;
+    private final TripleBuffer<Snapshot> mailbox;
+
+    // perception side: the sounds as seen by the tracker
+    private final VoiceAllocator voices;
+    // incremented on each activation, so that a sound reused within a frame is still restarted
+    private final int[] generations;
+    private final float[] vols;
+    private final float[] pans;
+    private final float[] azimuths;
+    private final float[] elevations;
+
+    // control side: backend sound of each sound (-1 if none) and the glide in progress
+    private final int[] backendIDs;
+    private final int[] backendGenerations;
+    private final boolean[] backendPlaying;
+    private final float[] fromVols;
+    private final float[] fromPans;
+    private final float[] targetVols;
+    private final float[] targetPans;
+    private final float[] fromAzimuths;
+    private final float[] fromElevations;
+    private final float[] targetAzimuths;
+    private final float[] targetElevations;
+    // change per nanosecond between the last two frames
+    private final float[] volVelocities;
+    private final float[] panVelocities;
+    private final float[] azimuthVelocities;
+    private final float[] elevationVelocities;
+    private final float[] outVols;
+    private final float[] outPans;
+    private final float[] outAzimuths;
+    private final float[] outElevations;
+    private final float[] sentVols;
+    private final float[] sentPans;
+    private final float[] sentAzimuths;
+    private final float[] sentElevations;
+    private long lastSnapshotNanos = Long.MIN_VALUE;
+    private long arrivalNanos;
+    private long glideNanos;
+    private long extrapolationNanos;
+
+    private final AtomicLong backendUpdates;
+    private final AtomicLong skippedUpdates;
+    private volatile boolean running;
+    private Thread controller;
+    private volatile PipelineMetrics metrics;
+
+    /* constructor; the backend must have at least numVoices sounds, and is only called from
+     * the control thread (or tick()) from then on; volume or pan changes of at most threshold,
+     * and direction changes of at most threshold radians, are not passed on */
+    public AudioControlBridge(AudioSink backend, int numVoices, float threshold) {
+        this.backend = backend;
+        this.numVoices = numVoices;
+        this.threshold = threshold;
+        mailbox = new TripleBuffer<>(new Snapshot(numVoices), new Snapshot(numVoices),
+                                     new Snapshot(numVoices));
+        voices = new VoiceAllocator(numVoices);
+        generations = new int[numVoices];
+        vols = new float[numVoices];
+        pans = new float[numVoices];
+        azimuths = new float[numVoices];
+        elevations = new float[numVoices];
+        backendIDs = new int[numVoices];
+        for (int v = 0; v < numVoices; v++)
+            backendIDs[v] = -1;
+        backendGenerations = new int[numVoices];
+        backendPlaying = new boolean[numVoices];
+        fromVols = new float[numVoices];
+        fromPans = new float[numVoices];
+        targetVols = new float[numVoices];
+        targetPans = new float[numVoices];
+        fromAzimuths = new float[numVoices];
+        fromElevations = new float[numVoices];
+        targetAzimuths = new float[numVoices];
+        targetElevations = new float[numVoices];
+        volVelocities = new float[numVoices];
+        panVelocities = new float[numVoices];
+        azimuthVelocities = new float[numVoices];
+        elevationVelocities = new float[numVoices];
+        outVols = new float[numVoices];
+        outPans = new float[numVoices];
+        outAzimuths = new float[numVoices];
+        outElevations = new float[numVoices];
+        sentVols = new float[numVoices];
+        sentPans = new float[numVoices];
+        sentAzimuths = new float[numVoices];
+        sentElevations = new float[numVoices];
+        backendUpdates = new AtomicLong();
+        skippedUpdates = new AtomicLong();
+    }
+
+    /* record the duration of each tick, the latency from the capture of a frame to the
+     * backend hearing of it, and the activations of sounds into metrics (null for none) */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int activateLeastRecent() {
+        int voice;
+        try {
+            voice = voices.activateLeastRecent();
+        } catch (NoSuchElementException e) {
+            PipelineMetrics m = metrics;
+            if (m != null)
+                m.countVoiceExhausted();
+            throw e;
+        }
+        generations[voice]++;
+        vols[voice] = 0.0f;
+        pans[voice] = 0.0f;
+        azimuths[voice] = 0.0f;
+        elevations[voice] = 0.0f;
+        return voice;
+    }
+
+    @Override
+    public void deactivate(int streamID) {
+        voices.deactivate(streamID);
+    }
+
+    @Override
+    public void play(int streamID) {
+        voices.play(streamID);
+    }
+
+    @Override
+    public void pause(int streamID) {
+        voices.pause(streamID);
+    }
+
+    @Override
+    public void setVolPan(int streamID, float vol, float pan) {
+        voices.setVolPan(streamID, vol, pan);
+        vols[streamID] = vol;
+        pans[streamID] = pan;
+    }
+
+    @Override
+    public void setDirection(int streamID, float azimuth, float elevation) {
+        voices.setDirection(streamID, azimuth, elevation);
+        azimuths[streamID] = azimuth;
+        elevations[streamID] = elevation;
+    }
+
+    /* hand the state of all sounds over to the control thread; called on the perception thread
+     * once the tracker is done with a frame */
+    public void publish() {
+        long now = System.nanoTime();
+        publish(now, now);
+    }
+
+    /* as above, for a frame captured at captureNanos on the clock of System.nanoTime() */
+    public void publish(long captureNanos) {
+        publish(System.nanoTime(), captureNanos);
+    }
+
+    void publish(long nanos, long captureNanos) {
+        Snapshot snapshot = mailbox.getWriteBuffer();
+        for (int v = 0; v < numVoices; v++) {
+            snapshot.active[v] = voices.isActive(v);
+            snapshot.playing[v] = voices.isPlaying(v);
+            snapshot.generations[v] = generations[v];
+            snapshot.vols[v] = vols[v];
+            snapshot.pans[v] = pans[v];
+            snapshot.azimuths[v] = azimuths[v];
+            snapshot.elevations[v] = elevations[v];
+        }
+        snapshot.nanos = nanos;
+        snapshot.captureNanos = captureNanos;
+        mailbox.publish();
+    }
+
+    /* start the control thread, ticking every periodNanos */
+    public synchronized void start(final long periodNanos) {
+        if (controller != null)
+            throw new IllegalStateException("Audio control already started!");
+        running = true;
+        controller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (running) {
+                    tick(next);
+                    next += periodNanos;
+                    long now = System.nanoTime();
+                    if (next - now > 0)
+                        LockSupport.parkNanos(AudioControlBridge.this, next - now);
+                    else
+                        next = now;
+                }
+            }
+        }, "AudioControlBridge");
+        controller.start();
+    }
+
+    /* stop the control thread, waiting for the tick in progress (if any) to be done */
+    public synchronized void stop() {
+        if (controller == null)
+            return;
+        running = false;
+        LockSupport.unpark(controller);
+        try {
+            controller.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        controller = null;
+    }
+
+    /* one step of the control thread at time nanos: take the latest snapshot, if any, and
+     * update the backend */
+    void tick(long nanos) {
+        long start = System.nanoTime();
+        PipelineMetrics m = metrics;
+        Snapshot snapshot = mailbox.poll();
+        if (snapshot != null)
+            apply(snapshot, m);
+        long elapsed = Math.max(0L, nanos - arrivalNanos);
+        float glide = glideNanos > 0 ? Math.min(1.0f, (float) elapsed / glideNanos) : 1.0f;
+        long extrapolated = Math.min(elapsed, extrapolationNanos);
+        for (int v = 0; v < numVoices; v++) {
+            if (backendIDs[v] < 0)
+                continue;
+            float vol = targetVols[v] + volVelocities[v] * extrapolated;
+            float pan = targetPans[v] + panVelocities[v] * extrapolated;
+            float azimuth = targetAzimuths[v] + azimuthVelocities[v] * extrapolated;
+            float elevation = targetElevations[v] + elevationVelocities[v] * extrapolated;
+            vol = clamp(fromVols[v] + (vol - fromVols[v]) * glide, 0.0f, 1.0f);
+            pan = clamp(fromPans[v] + (pan - fromPans[v]) * glide, -1.0f, 1.0f);
+            azimuth = wrap(fromAzimuths[v] + wrap(azimuth - fromAzimuths[v]) * glide);
+            elevation = clamp(fromElevations[v] + (elevation - fromElevations[v]) * glide,
+                              -HALF_PI, HALF_PI);
+            outVols[v] = vol;
+            outPans[v] = pan;
+            outAzimuths[v] = azimuth;
+            outElevations[v] = elevation;
+            if (Math.abs(vol - sentVols[v]) > threshold || Math.abs(pan - sentPans[v]) > threshold
+                    || Math.abs(wrap(azimuth - sentAzimuths[v])) > threshold
+                    || Math.abs(elevation - sentElevations[v]) > threshold)
+                send(v, vol, pan, azimuth, elevation);
+            else
+                skippedUpdates.incrementAndGet();
+        }
+        if (m != null) {
+            m.record(PipelineMetrics.Stage.AUDIO, System.nanoTime() - start);
+            if (snapshot != null)
+                m.record(PipelineMetrics.Stage.END_TO_END, nanos - snapshot.captureNanos);
+        }
+    }
+
+    private void apply(Snapshot snapshot, PipelineMetrics m) {
+        long interval = lastSnapshotNanos != Long.MIN_VALUE ? snapshot.nanos - lastSnapshotNanos
+                                                            : 0L;
+        lastSnapshotNanos = snapshot.nanos;
+        arrivalNanos = snapshot.nanos;
+        glideNanos = Math.min(interval, MAX_GLIDE_NANOS);
+        extrapolationNanos = (long) (interval * EXTRAPOLATION);
+        for (int v = 0; v < numVoices; v++) {
+            if (backendIDs[v] >= 0
+                    && (!snapshot.active[v] || snapshot.generations[v] != backendGenerations[v]))
+                releaseBackend(v);
+            if (!snapshot.active[v])
+                continue;
+            float vol = snapshot.vols[v];
+            float pan = snapshot.pans[v];
+            float azimuth = snapshot.azimuths[v];
+            float elevation = snapshot.elevations[v];
+            if (backendIDs[v] < 0) {
+                // a new sound starts where it is, without gliding
+                try {
+                    backendIDs[v] = backend.activateLeastRecent();
+                } catch (NoSuchElementException e) {
+                    // tried again at the next frame
+                    if (m != null)
+                        m.countVoiceExhausted();
+                    continue;
+                }
+                if (m != null)
+                    m.countVoiceActivation();
+                backendGenerations[v] = snapshot.generations[v];
+                fromVols[v] = outVols[v] = vol;
+                fromPans[v] = outPans[v] = pan;
+                fromAzimuths[v] = outAzimuths[v] = azimuth;
+                fromElevations[v] = outElevations[v] = elevation;
+                volVelocities[v] = 0.0f;
+                panVelocities[v] = 0.0f;
+                azimuthVelocities[v] = 0.0f;
+                elevationVelocities[v] = 0.0f;
+                send(v, vol, pan, azimuth, elevation);
+            }
+            else {
+                fromVols[v] = outVols[v];
+                fromPans[v] = outPans[v];
+                fromAzimuths[v] = outAzimuths[v];
+                fromElevations[v] = outElevations[v];
+                volVelocities[v] = interval > 0 ? (vol - targetVols[v]) / interval : 0.0f;
+                panVelocities[v] = interval > 0 ? (pan - targetPans[v]) / interval : 0.0f;
+                azimuthVelocities[v] = interval > 0
+                        ? wrap(azimuth - targetAzimuths[v]) / interval : 0.0f;
+                elevationVelocities[v] = interval > 0
+                        ? (elevation - targetElevations[v]) / interval : 0.0f;
+            }
+            targetVols[v] = vol;
+            targetPans[v] = pan;
+            targetAzimuths[v] = azimuth;
+            targetElevations[v] = elevation;
+            if (snapshot.playing[v] != backendPlaying[v]) {
+                if (snapshot.playing[v])
+                    backend.play(backendIDs[v]);
+                else
+                    backend.pause(backendIDs[v]);
+                backendPlaying[v] = snapshot.playing[v];
+            }
+        }
+    }
+
+    private void releaseBackend(int voice) {
+        if (backendPlaying[voice])
+            backend.pause(backendIDs[voice]);
+        backend.deactivate(backendIDs[voice]);
+        backendPlaying[voice] = false;
+        backendIDs[voice] = -1;
+    }
+
+    private void send(int voice, float vol, float pan, float azimuth, float elevation) {
+        backend.setVolPan(backendIDs[voice], vol, pan);
+        backend.setDirection(backendIDs[voice], azimuth, elevation);
+        sentVols[voice] = vol;
+        sentPans[voice] = pan;
+        sentAzimuths[voice] = azimuth;
+        sentElevations[voice] = elevation;
+        backendUpdates.incrementAndGet();
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /* an angle brought back between -PI and PI */
+    private static float wrap(float angle) {
+        if (angle > PI)
+            angle -= 2.0f * PI;
+        else if (angle < -PI)
+            angle += 2.0f * PI;
+        return Math.max(-PI, Math.min(PI, angle));
+    }
+
+    /* the number of volume and pan changes passed on to the backend */
+    public long getBackendUpdates() {
+        return backendUpdates.get();
+    }
+
+    /* the number of volume and pan changes held back for being below the threshold */
+    public long getSkippedUpdates() {
+        return skippedUpdates.get();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.sonilize;
+
+/* the audio side of the pipeline: a set of looped sounds, one per tracked object, that can be
+ * activated (least recently used first), played, paused and positioned by volume and pan, and
+ * by direction for sinks rendering sounds binaurally */
+public interface AudioSink {
+
+    /* "activate" the least recently active sound, making it available for playback;
+     * returns its ID */
+    int activateLeastRecent();
+
+    /* "deactivate" a sound, making it no longer available for playback */
+    void deactivate(int streamID);
+
+    /* play the sound, if it is active */
+    void play(int streamID);
+
+    /* pause the sound */
+    void pause(int streamID);
+
+    /* set volume (between 0.0 and 1.0) and pan (between -1.0 and 1.0) of a sound */
+    void setVolPan(int streamID, float vol, float pan);
+
+    /* set the direction of a sound: azimuth between -PI and PI, positive on the side of
+     * positive pans, and elevation between -PI / 2 and PI / 2, positive up, in radians; sinks
+     * that only pan keep it for the record */
+    void setDirection(int streamID, float azimuth, float elevation);
+}
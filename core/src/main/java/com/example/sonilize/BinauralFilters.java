@@ -0,0 +1,112 @@
+package com.example.sonilize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* the filters of every direction of an Hrtf, for BinauralRenderers of one block size, computed
+ * once on a thread started by the constructor and shared by every renderer, so that they
+ * outlive any one sound collection (and any pause and resume of the app) and no audio thread
+ * ever computes them; whoever renders with them learns that they are ready through a Listener,
+ * so nothing waits for them
+ */
+class BinauralFilters {
+
+    /* told once that the filters are ready, on the thread that computed them, or on the thread
+     * adding the listener if they were ready before */
+    interface Listener {
+        void onFiltersReady(PartitionedConvolver.Filter[] filters);
+    }
+
+    private final int blockSize;
+    private final long startNanos;
+    // guarded by this
+    private final List<Listener> listeners;
+    private PartitionedConvolver.Filter[] filters;
+    private long readyNanos;
+    private boolean released;
+
+    /* constructor; starts computing the filters of responses of length taps at sampleRate Hz
+     * (see Hrtf), for blocks of blockSize frames (see BinauralRenderer) */
+    BinauralFilters(final int sampleRate, final int length, final int blockSize) {
+        if (blockSize <= 0 || Integer.bitCount(blockSize) != 1)
+            throw new IllegalArgumentException("Block size must be a power of two");
+        this.blockSize = blockSize;
+        startNanos = System.nanoTime();
+        listeners = new ArrayList<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ready(BinauralRenderer.filtersOf(new Hrtf(sampleRate, length), blockSize));
+            }
+        }, "BinauralFilters");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void ready(PartitionedConvolver.Filter[] computed) {
+        Listener[] notified;
+        synchronized (this) {
+            if (released)
+                return;
+            filters = computed;
+            readyNanos = System.nanoTime();
+            notified = listeners.toArray(new Listener[listeners.size()]);
+            notifyAll();
+        }
+        for (Listener listener : notified)
+            listener.onFiltersReady(computed);
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /* tell listener when the filters are ready, at once if they are */
+    void addListener(Listener listener) {
+        PartitionedConvolver.Filter[] ready;
+        synchronized (this) {
+            if (released)
+                return;
+            listeners.add(listener);
+            ready = filters;
+        }
+        if (ready != null)
+            listener.onFiltersReady(ready);
+    }
+
+    synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /* the filters, null until they are ready */
+    synchronized PartitionedConvolver.Filter[] getFilters() {
+        return filters;
+    }
+
+    /* wait for the filters to be ready, for at most timeout; returns true if they are */
+    synchronized boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (filters == null && !released) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return filters != null;
+    }
+
+    /* the time taken to compute the filters, from construction, in nanoseconds; -1 while they
+     * are not ready */
+    synchronized long getComputeNanos() {
+        return filters != null ? readyNanos - startNanos : -1L;
+    }
+
+    /* drop the filters and forget the listeners; renderers already built keep the filters */
+    synchronized void release() {
+        released = true;
+        listeners.clear();
+        filters = null;
+        notifyAll();
+    }
+}
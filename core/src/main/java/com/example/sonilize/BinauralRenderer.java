@@ -0,0 +1,167 @@
+package com.example.sonilize;
+
+/* renders mono voices binaurally, each convolved by a PartitionedConvolver with the pair of
+ * head-related impulse responses of the direction of an Hrtf grid nearest its own, whose
+ * spectra are computed once by filtersOf() and may be shared by any number of renderers; time
+ * is cut into blocks of blockSize frames shared by all voices: the caller adds the samples of
+ * each voice to its input block, as far as getFramesLeft() allows, and takes as many frames of
+ * output with advance(), the output being that of the previous block, so one block late
+ *
+ * a voice costs nothing while silent: it is convolved while heard, then for as many blocks as
+ * its responses are long so that its tail rings out, after which its convolver is reset; a
+ * voice whose direction moves to another point of the grid crossfades between the two over one
+ * block; meant to run on a single audio thread, and allocates nothing after construction
+ */
+class BinauralRenderer {
+
+    private final int blockSize;
+    private final int numVoices;
+    private final int numPartitions;
+    // the filters of each direction of the grid
+    private final PartitionedConvolver.Filter[] filters;
+    private final PartitionedConvolver[] convolvers;
+    private final float[][] inputs;
+    // per voice: direction of the grid asked for, that last convolved with (-1 if none), and
+    // blocks left to ring out
+    private final int[] directions;
+    private final int[] convolved;
+    private final int[] tails;
+    private final boolean[] heard;
+    // the output of the last block, interleaved, and the frames of it already taken
+    private final float[] output;
+    private int position;
+
+    /* constructor, for numVoices voices convolved with the responses of hrtf, in blocks of
+     * blockSize frames, a power of two */
+    BinauralRenderer(Hrtf hrtf, int numVoices, int blockSize) {
+        this(filtersOf(hrtf, blockSize), numVoices, blockSize);
+    }
+
+    /* constructor, for numVoices voices convolved with filters, those of filtersOf() for
+     * blocks of blockSize frames */
+    BinauralRenderer(PartitionedConvolver.Filter[] filters, int numVoices, int blockSize) {
+        if (filters.length != Hrtf.AZIMUTH_STEPS * Hrtf.ELEVATION_STEPS
+                || filters[0].blockSize != blockSize)
+            throw new IllegalArgumentException("Filters not of the grid or of the block size");
+        this.blockSize = blockSize;
+        this.numVoices = numVoices;
+        this.filters = filters;
+        Fft fft = new Fft(2 * blockSize);
+        numPartitions = filters[0].numPartitions;
+        convolvers = new PartitionedConvolver[numVoices];
+        inputs = new float[numVoices][blockSize];
+        for (int v = 0; v < numVoices; v++)
+            convolvers[v] = new PartitionedConvolver(blockSize, numPartitions, fft);
+        directions = new int[numVoices];
+        convolved = new int[numVoices];
+        for (int v = 0; v < numVoices; v++) {
+            directions[v] = Hrtf.indexOf(0.0f, 0.0f);
+            convolved[v] = -1;
+        }
+        tails = new int[numVoices];
+        heard = new boolean[numVoices];
+        output = new float[2 * blockSize];
+    }
+
+    /* the filters of every direction of hrtf, for blocks of blockSize frames, a power of two */
+    static PartitionedConvolver.Filter[] filtersOf(Hrtf hrtf, int blockSize) {
+        if (blockSize <= 0 || Integer.bitCount(blockSize) != 1)
+            throw new IllegalArgumentException("Block size must be a power of two");
+        Fft fft = new Fft(2 * blockSize);
+        PartitionedConvolver.Filter[] filters =
+                new PartitionedConvolver.Filter[hrtf.getNumDirections()];
+        for (int d = 0; d < filters.length; d++)
+            filters[d] = new PartitionedConvolver.Filter(hrtf.getImpulseResponse(d, Hrtf.LEFT),
+                                                         hrtf.getImpulseResponse(d, Hrtf.RIGHT),
+                                                         blockSize, fft);
+        return filters;
+    }
+
+    int getNumVoices() {
+        return numVoices;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /* the delay of the output behind the input, in frames */
+    int getLatency() {
+        return blockSize;
+    }
+
+    /* the number of frames left in the current block */
+    int getFramesLeft() {
+        return blockSize - position;
+    }
+
+    /* the input block of a voice, to add samples to from index getPosition() on */
+    float[] getInput(int voice) {
+        return inputs[voice];
+    }
+
+    /* the position within the current block */
+    int getPosition() {
+        return position;
+    }
+
+    /* set the direction of a voice, azimuth and elevation in radians as for Hrtf */
+    void setDirection(int voice, float azimuth, float elevation) {
+        directions[voice] = Hrtf.indexOf(azimuth, elevation);
+    }
+
+    /* note that a voice was added to its input in the current block */
+    void markHeard(int voice) {
+        heard[voice] = true;
+    }
+
+    /* the number of voices convolved in the last block */
+    int getVoicesConvolved() {
+        int count = 0;
+        for (int v = 0; v < numVoices; v++)
+            if (convolved[v] >= 0)
+                count++;
+        return count;
+    }
+
+    /* write the next frames frames of output, at most getFramesLeft(), to out from offset on as
+     * interleaved left and right samples (overwriting what was there), and move on; the block
+     * is convolved once it is complete */
+    void advance(float[] out, int offset, int frames) {
+        if (frames > blockSize - position)
+            throw new IllegalArgumentException("Past the end of the block");
+        System.arraycopy(output, 2 * position, out, offset, 2 * frames);
+        position += frames;
+        if (position == blockSize) {
+            convolveBlock();
+            position = 0;
+        }
+    }
+
+    private void convolveBlock() {
+        for (int k = 0; k < output.length; k++)
+            output[k] = 0.0f;
+        for (int v = 0; v < numVoices; v++) {
+            if (heard[v])
+                tails[v] = numPartitions;
+            else if (tails[v] > 0)
+                tails[v]--;
+            else
+                continue;
+            int direction = directions[v];
+            PartitionedConvolver.Filter previous = convolved[v] >= 0 ? filters[convolved[v]]
+                                                                     : null;
+            convolvers[v].process(inputs[v], 0, filters[direction], previous, output, 0);
+            convolved[v] = direction;
+            if (tails[v] == 0) {
+                // rung out: what is left in the delay line would never be heard
+                convolvers[v].reset();
+                convolved[v] = -1;
+            }
+            float[] input = inputs[v];
+            for (int n = 0; n < blockSize; n++)
+                input[n] = 0.0f;
+            heard[v] = false;
+        }
+    }
+}
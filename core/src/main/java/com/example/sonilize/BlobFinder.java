@@ -0,0 +1,142 @@
+package com.example.sonilize;
+
+/* extracts blobs from the quantized grid of a PointCloudQuantizer with the same projection;
+ * components are filtered on their size before any statistic is read back, and the nearest
+ * ones are kept in a bounded max-heap of component indices, so that the cost of a frame
+ * beyond labeling depends on the number of blobs asked for rather than on the number of
+ * components; nothing is allocated per frame */
+class BlobFinder {
+
+    private final ComponentLabeler labeler;
+    private final BlobTable blobs;
+
+    // max-heap on (distance, component index) of the nearest components seen so far
+    private int[] heapComponents;
+    private float[] heapRs;
+    private int heapSize;
+
+    /* constructor */
+    BlobFinder(SphericalProjection projection) {
+        labeler = new ComponentLabeler(projection);
+        blobs = new BlobTable(0);
+        heapComponents = new int[0];
+        heapRs = new float[0];
+    }
+
+    /* find all blobs made up of at least minSize grid cells, each cell closer than maxCellDist,
+     * such that the averaged distance (harmonic mean) of the blob is at most maxBlobDist;
+     * output at most maxNum blobs, by increasing distance (ties going to the component whose
+     * first cell comes first); the table returned is reused by the next call;
+     * cell (i, j) of grid is stored at index i * vertRes + j */
+    BlobTable findBlobs(float[] grid, float maxCellDist,
+                        int minSize, float maxBlobDist, int maxNum) {
+        return findBlobs(grid, null, maxCellDist, minSize, maxBlobDist, maxNum);
+    }
+
+    /* find blobs as above, given the pyramid of grid (null to build it) */
+    BlobTable findBlobs(float[] grid, DepthPyramid pyramid, float maxCellDist,
+                        int minSize, float maxBlobDist, int maxNum) {
+        if (maxNum > heapComponents.length) {
+            heapComponents = new int[maxNum];
+            heapRs = new float[maxNum];
+        }
+        blobs.clear(maxNum);
+        heapSize = 0;
+        if (maxNum <= 0)
+            return blobs;
+
+        int numComponents = pyramid != null ? labeler.label(grid, pyramid, maxCellDist)
+                                            : labeler.label(grid, maxCellDist);
+        for (int c = 0; c < numComponents; c++) {
+            if (labeler.getSize(c) < minSize)
+                continue;
+            float r = labeler.getHarmonicR(c);
+            if (!(r <= maxBlobDist))
+                continue;
+            if (heapSize < maxNum)
+                push(c, r);
+            else if (r < heapRs[0])
+                // c comes after every component in the heap, so it only wins by being nearer
+                replaceTop(c, r);
+        }
+
+        // pop the farthest first, filling the table from its end
+        int n = heapSize;
+        for (int i = n - 1; i >= 0; i--) {
+            heapComponents[i] = popInto(i);
+        }
+        for (int i = 0; i < n; i++) {
+            int c = heapComponents[i];
+            blobs.add(labeler.getSize(c), heapRs[i],
+                      labeler.getAverageTheta(c), labeler.getAveragePhi(c));
+        }
+        return blobs;
+    }
+
+    /* the blobs found by the last call to findBlobs */
+    BlobTable getBlobs() {
+        return blobs;
+    }
+
+    /* true if heap entry a must sit above heap entry b */
+    private boolean above(int a, int b) {
+        return heapRs[a] > heapRs[b]
+               || (heapRs[a] == heapRs[b] && heapComponents[a] > heapComponents[b]);
+    }
+
+    private void swap(int a, int b) {
+        int c = heapComponents[a];
+        heapComponents[a] = heapComponents[b];
+        heapComponents[b] = c;
+        float r = heapRs[a];
+        heapRs[a] = heapRs[b];
+        heapRs[b] = r;
+    }
+
+    private void push(int component, float r) {
+        int k = heapSize++;
+        heapComponents[k] = component;
+        heapRs[k] = r;
+        while (k > 0 && above(k, (k - 1) / 2)) {
+            swap(k, (k - 1) / 2);
+            k = (k - 1) / 2;
+        }
+    }
+
+    private void replaceTop(int component, float r) {
+        heapComponents[0] = component;
+        heapRs[0] = r;
+        siftDown(0);
+    }
+
+    private void siftDown(int k) {
+        while (true) {
+            int largest = k;
+            int left = 2 * k + 1;
+            int right = left + 1;
+            if (left < heapSize && above(left, largest))
+                largest = left;
+            if (right < heapSize && above(right, largest))
+                largest = right;
+            if (largest == k)
+                return;
+            swap(k, largest);
+            k = largest;
+        }
+    }
+
+    /* remove the top of the heap, leaving its distance at heapRs[slot] (slot being the last
+     * entry of the heap before removal) and returning its component */
+    private int popInto(int slot) {
+        int component = heapComponents[0];
+        float r = heapRs[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heapComponents[0] = heapComponents[heapSize];
+            heapRs[0] = heapRs[heapSize];
+            siftDown(0);
+        }
+        heapRs[slot] = r;
+        return component;
+    }
+}
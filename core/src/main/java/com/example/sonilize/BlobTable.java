@@ -0,0 +1,83 @@
+package com.example.sonilize;
+
+/* the blobs of one frame, stored column-wise in arrays allocated once and reused for every
+ * frame; a blob is an aggregate of quantized points in 3-space representing a physical object,
+ * its centroid kept in both spherical and cartesian coordinates */
+class BlobTable {
+
+    private int[] sizes;
+    private float[] rs;
+    private float[] thetas;
+    private float[] phis;
+    private float[] xs;
+    private float[] ys;
+    private float[] zs;
+    private int count;
+
+    /* constructor */
+    BlobTable(int capacity) {
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        sizes = new int[capacity];
+        rs = new float[capacity];
+        thetas = new float[capacity];
+        phis = new float[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        zs = new float[capacity];
+    }
+
+    /* empty the table, making room for at least capacity blobs (allocating only if the table
+     * has never been that large) */
+    void clear(int capacity) {
+        if (capacity > sizes.length)
+            allocate(capacity);
+        count = 0;
+    }
+
+    /* append a blob of size cells at harmonic mean distance r and mean angles theta, phi */
+    void add(int size, float r, float theta, float phi) {
+        sizes[count] = size;
+        rs[count] = r;
+        thetas[count] = theta;
+        phis[count] = phi;
+        xs[count] = SphericalProjection.xOfSpherical(r, theta, phi);
+        ys[count] = SphericalProjection.yOfSpherical(r, theta, phi);
+        zs[count] = SphericalProjection.zOfSpherical(r, theta, phi);
+        count++;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getSize(int i) {
+        return sizes[i];
+    }
+
+    float getAverageR(int i) {
+        return rs[i];
+    }
+
+    float getAverageTheta(int i) {
+        return thetas[i];
+    }
+
+    float getAveragePhi(int i) {
+        return phis[i];
+    }
+
+    float getX(int i) {
+        return xs[i];
+    }
+
+    float getY(int i) {
+        return ys[i];
+    }
+
+    float getZ(int i) {
+        return zs[i];
+    }
+}
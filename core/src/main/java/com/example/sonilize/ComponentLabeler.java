@@ -0,0 +1,233 @@
+package com.example.sonilize;
+
+/* a two-pass union-find labeler for the connected components (4-neighbourhood) of a quantized
+ * depth grid made up of cells closer than a given distance; no flood fill and no point lists:
+ * while resolving labels it keeps per-component sums from which the size, harmonic mean radial
+ * distance and mean viewing angles of each component are read back; all buffers are allocated
+ * once and reused for every frame
+ *
+ * both passes only visit the cells of blocks holding a near cell, found by descending a
+ * DepthPyramid of the grid from its coarsest level once per pair of columns; each column is
+ * still visited from top to bottom and columns from left to right, so labels and component
+ * indices are those of a scan of the whole grid, and a neighbour in a block that was not
+ * visited is simply far
+ */
+class ComponentLabeler {
+
+    private static final int FAR = -1;
+
+    private final SphericalProjection projection;
+    private final int cols;
+    private final int rows;
+    // the pyramid of grids labeled without one
+    private final DepthPyramid ownPyramid;
+
+    // provisional labels during the first pass, final component indices after the second;
+    // cell (col, row) lives at index col * rows + row
+    private final int[] labels;
+    // union-find forest over provisional labels
+    private final int[] parent;
+    // provisional root -> component index
+    private final int[] componentOfRoot;
+
+    private final int[] sizes;
+    private final double[] reciprocalSums;
+    private final double[] thetaSums;
+    private final double[] phiSums;
+    private int numComponents;
+
+    // the grid being labeled
+    private float[] grid;
+    private DepthPyramid pyramid;
+    private float[] blocks;
+    private int blockRows;
+    // the rows of the column pair being scanned whose blocks hold a near cell
+    private final int[] runStarts;
+    private final int[] runEnds;
+    private int numRuns;
+    private float maxCellDist;
+    private int numProvisional;
+
+    /* constructor; the angles of cell (i, j) are those of the lower edges of column i and row j
+     * of projection */
+    ComponentLabeler(SphericalProjection projection) {
+        this.projection = projection;
+        cols = projection.getHorizRes();
+        rows = projection.getVertRes();
+        int numCells = cols * rows;
+        labels = new int[numCells];
+        parent = new int[numCells];
+        componentOfRoot = new int[numCells];
+        sizes = new int[numCells];
+        reciprocalSums = new double[numCells];
+        thetaSums = new double[numCells];
+        phiSums = new double[numCells];
+        ownPyramid = new DepthPyramid(cols, rows);
+        runStarts = new int[(rows + 1) / 2];
+        runEnds = new int[(rows + 1) / 2];
+    }
+
+    /* label the components of grid made up of cells at most maxCellDist away;
+     * returns the number of components found */
+    int label(float[] grid, float maxCellDist) {
+        if (grid.length != labels.length)
+            throw new IllegalArgumentException("Grid size does not match labeler resolution");
+        ownPyramid.build(grid);
+        return label(grid, ownPyramid, maxCellDist);
+    }
+
+    /* label as above, given the pyramid of grid */
+    int label(float[] grid, DepthPyramid pyramid, float maxCellDist) {
+        if (grid.length != labels.length)
+            throw new IllegalArgumentException("Grid size does not match labeler resolution");
+        this.grid = grid;
+        this.pyramid = pyramid;
+        this.maxCellDist = maxCellDist;
+        blocks = pyramid.getMins(1);
+        blockRows = pyramid.getRows(1);
+
+        // first pass: provisional labels, recording equivalences of touching labels
+        numProvisional = 0;
+        scan(true);
+
+        // second pass: resolve labels to compact component indices and accumulate statistics
+        for (int l = 0; l < numProvisional; l++)
+            componentOfRoot[l] = FAR;
+        numComponents = 0;
+        scan(false);
+        this.grid = null;
+        return numComponents;
+    }
+
+    /* run a pass over the cells of all blocks holding a near cell, column after column */
+    private void scan(boolean first) {
+        int top = pyramid.getNumLevels();
+        int topRows = pyramid.getRows(top);
+        for (int pair = 0; pair < (cols + 1) / 2; pair++) {
+            // both columns of a pair share their level-1 blocks, merged into runs of rows
+            numRuns = 0;
+            for (int b = 0; b < topRows; b++)
+                collect(pair << 1, top, b);
+            for (int i = 2 * pair; i < Math.min(2 * pair + 2, cols); i++)
+                for (int r = 0; r < numRuns; r++)
+                    for (int j = runStarts[r]; j < runEnds[r]; j++) {
+                        if (first)
+                            labelCell(i, j, runStarts[r]);
+                        else
+                            resolveCell(i, j);
+                    }
+        }
+    }
+
+    /* add the rows of the level-1 blocks within block b of a level that hold a near cell, in
+     * column i, to the runs */
+    private void collect(int i, int level, int b) {
+        if (!(pyramid.getMins(level)[(i >> level) * pyramid.getRows(level) + b] <= maxCellDist))
+            return;
+        if (level > 1) {
+            collect(i, level - 1, 2 * b);
+            if (2 * b + 1 < pyramid.getRows(level - 1))
+                collect(i, level - 1, 2 * b + 1);
+            return;
+        }
+        int end = Math.min(2 * b + 2, rows);
+        if (numRuns > 0 && runEnds[numRuns - 1] == 2 * b) {
+            runEnds[numRuns - 1] = end;
+        }
+        else {
+            runStarts[numRuns] = 2 * b;
+            runEnds[numRuns++] = end;
+        }
+    }
+
+    /* label cell (i, j) of a run starting at row runStart */
+    private void labelCell(int i, int j, int runStart) {
+        int cell = i * rows + j;
+        if (!(grid[cell] <= maxCellDist)) {
+            labels[cell] = FAR;
+            return;
+        }
+        // a neighbour in another block was only labeled if its block was visited
+        int left = i > 0 && ((i & 1) == 1 || blocks[((i - 1) >> 1) * blockRows + (j >> 1)]
+                                             <= maxCellDist) ? labels[cell - rows] : FAR;
+        int up = j > runStart ? labels[cell - 1] : FAR;
+        if (left == FAR && up == FAR) {
+            parent[numProvisional] = numProvisional;
+            labels[cell] = numProvisional++;
+        }
+        else if (up == FAR) {
+            labels[cell] = left;
+        }
+        else {
+            labels[cell] = up;
+            if (left != FAR)
+                union(left, up);
+        }
+    }
+
+    private void resolveCell(int i, int j) {
+        int cell = i * rows + j;
+        if (labels[cell] == FAR)
+            return;
+        int root = find(labels[cell]);
+        int component = componentOfRoot[root];
+        if (component == FAR) {
+            component = numComponents++;
+            componentOfRoot[root] = component;
+            sizes[component] = 0;
+            reciprocalSums[component] = 0.0;
+            thetaSums[component] = 0.0;
+            phiSums[component] = 0.0;
+        }
+        labels[cell] = component;
+        sizes[component]++;
+        reciprocalSums[component] += 1.0 / grid[cell];
+        thetaSums[component] += projection.thetaOfColumn(i);
+        phiSums[component] += projection.phiOfRow(j);
+    }
+
+    private int find(int l) {
+        while (parent[l] != l) {
+            parent[l] = parent[parent[l]];
+            l = parent[l];
+        }
+        return l;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA < rootB)
+            parent[rootB] = rootA;
+        else if (rootB < rootA)
+            parent[rootA] = rootB;
+    }
+
+    int getNumComponents() {
+        return numComponents;
+    }
+
+    /* component index of cell (i, j) of the last labeled grid, or -1 if it is too far */
+    int getLabel(int i, int j) {
+        if (!(blocks[(i >> 1) * blockRows + (j >> 1)] <= maxCellDist))
+            return FAR;
+        return labels[i * rows + j];
+    }
+
+    int getSize(int component) {
+        return sizes[component];
+    }
+
+    /* the harmonic mean of the cell distances of a component */
+    float getHarmonicR(int component) {
+        return (float) (sizes[component] / reciprocalSums[component]);
+    }
+
+    float getAverageTheta(int component) {
+        return (float) (thetaSums[component] / sizes[component]);
+    }
+
+    float getAveragePhi(int component) {
+        return (float) (phiSums[component] / sizes[component]);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.sonilize;
+
+import java.nio.FloatBuffer;
+
+/* a reusable copy of one point cloud: numPoints (x, y, z, confidence) quadruples and the time
+ * at which they were captured, in seconds on the clock of the depth camera and in nanoseconds
+ * on the clock of System.nanoTime(), along with the time it arrived; the point array only
+ * grows, so a pooled frame stops allocating once it has seen the largest cloud of the session
+ */
+public class DepthFrame {
+
+    float[] points;
+    int numPoints;
+    double timestamp;
+    long captureNanos;
+    long arrivalNanos;
+
+    /* constructor */
+    DepthFrame(int initialCapacity) {
+        points = new float[initialCapacity * PointCloudQuantizer.FLOATS_PER_POINT];
+        numPoints = 0;
+        timestamp = 0.0;
+    }
+
+    /* copy the first numPoints points of buffer, read from absolute index 0, into this frame,
+     * which arrived at arrivalNanos */
+    void copyFrom(FloatBuffer buffer, int numPoints, double timestamp, long captureNanos,
+                  long arrivalNanos) {
+        int length = numPoints * PointCloudQuantizer.FLOATS_PER_POINT;
+        if (points.length < length)
+            points = new float[length];
+        int savedPosition = buffer.position();
+        buffer.position(0);
+        buffer.get(points, 0, length);
+        buffer.position(savedPosition);
+        this.numPoints = numPoints;
+        this.timestamp = timestamp;
+        this.captureNanos = captureNanos;
+        this.arrivalNanos = arrivalNanos;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.sonilize;
+
+/* the mapping from the pixels of the depth camera's image to the cells of a grid of viewing
+ * angles, computed once from the pinhole intrinsics of the camera: each pixel is given the cell
+ * its center ray falls into and the ratio of radial distance to depth along that ray, so that a
+ * depth image is quantized without evaluating any angle or square root; a point of a cloud
+ * taken by the same camera finds its pixel by the projection that produced it, with one
+ * division and two multiply-adds
+ *
+ * pixels are binned as a whole, so a point only lands in another cell than the one per-point
+ * binning gives when its pixel straddles the edge between the two cells; lens distortion is
+ * not modeled, the depth camera's image being rectified
+ */
+class DepthImageLookup {
+
+    private final int width;
+    private final int height;
+    private final float fx;
+    private final float fy;
+    private final float cx;
+    private final float cy;
+
+    // per pixel, (u, v) at index v * width + u: the cell of its center ray (-1 if outside the
+    // spans) and the reciprocal of the radial distance of its center ray at depth 1
+    private final int[] cellOfPixel;
+    private final float[] reciprocalRange;
+
+    /* constructor, for an image of width x height pixels with focal lengths fx and fy and
+     * principal point (cx, cy), in pixels, binned into the grid of projection; a point
+     * (x, y, z) projects to image coordinates (fx * x / z + cx, fy * y / z + cy), pixel (u, v)
+     * covering [u, u + 1) x [v, v + 1) */
+    DepthImageLookup(SphericalProjection projection, int width, int height,
+                     double fx, double fy, double cx, double cy) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Image size must be positive");
+        if (!(fx > 0.0) || !(fy > 0.0))
+            throw new IllegalArgumentException("Focal lengths must be positive");
+        this.width = width;
+        this.height = height;
+        this.fx = (float) fx;
+        this.fy = (float) fy;
+        this.cx = (float) cx;
+        this.cy = (float) cy;
+        int vertRes = projection.getVertRes();
+        cellOfPixel = new int[width * height];
+        reciprocalRange = new float[width * height];
+        for (int v = 0; v < height; v++) {
+            for (int u = 0; u < width; u++) {
+                float x = rayX(u);
+                float y = rayY(v);
+                float r = (float) Math.sqrt(x * x + y * y + 1.0f);
+                int col = projection.columnOf(x, 1.0f);
+                int row = projection.rowOf(y, r);
+                int pixel = v * width + u;
+                cellOfPixel[pixel] = col < 0 || row < 0 ? -1 : col * vertRes + row;
+                reciprocalRange[pixel] = 1.0f / r;
+            }
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /* the x coordinate, at depth 1, of the center ray of the pixels of column u */
+    float rayX(int u) {
+        return (u + 0.5f - cx) / fx;
+    }
+
+    /* the y coordinate, at depth 1, of the center ray of the pixels of row v */
+    float rayY(int v) {
+        return (v + 0.5f - cy) / fy;
+    }
+
+    /* the pixel point (x, y, z) projects into, or -1 if it is behind the camera or outside
+     * the image */
+    int pixelOf(float x, float y, float z) {
+        if (!(z > 0.0f))
+            return -1;
+        float reciprocalZ = 1.0f / z;
+        float u = fx * x * reciprocalZ + cx;
+        float v = fy * y * reciprocalZ + cy;
+        if (!(u >= 0.0f && u < width && v >= 0.0f && v < height))
+            return -1;
+        return (int) v * width + (int) u;
+    }
+
+    /* the cell of the grid pixel falls into, or -1 if it is outside the spans */
+    int cellOf(int pixel) {
+        return cellOfPixel[pixel];
+    }
+
+    /* the reciprocal of the radial distance of a point of pixel at depth z, along the center
+     * ray of the pixel */
+    float reciprocalRangeOf(int pixel, float z) {
+        return reciprocalRange[pixel] / z;
+    }
+}
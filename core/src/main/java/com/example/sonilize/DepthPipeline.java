@@ -0,0 +1,410 @@
+package com.example.sonilize;
+
+import java.nio.FloatBuffer;
+
+/* the whole perception side of the app, free of any Android dependency: each point cloud is
+ * quantized into a grid of viewing angles, the grid is split into blobs, and the blobs are
+ * tracked as objects, each driving one sound of an AudioSink; not thread-safe, frames must be
+ * processed one at a time */
+public class DepthPipeline {
+
+    // how far the pose may move before blobs are extracted again, in voxels and in cells
+    private static final float POSE_TOLERANCE = 0.25f;
+    // the coarsest resolution level has at least that many columns and rows
+    private static final int MIN_LEVEL_RES = 8;
+    // the largest tilt of the ground from the up direction, given by the poses or, without
+    // them, taken as the upwards direction of the depth image, in radians
+    private static final float GROUND_TILT = (float) Math.toRadians(15.0);
+    private static final float GROUND_TILT_WITHOUT_POSE = (float) Math.toRadians(60.0);
+    // how close to the ground points are dropped, in meters
+    private static final float GROUND_THICKNESS = 0.05f;
+    // grids are compared for scene changes at a resolution of at most that many columns and
+    // rows (the one the app was tuned at), over tiles of that many values a side
+    private static final int SCENE_MAX_RES = 64;
+    private static final int SCENE_TILE_SIZE = 8;
+
+    private final PipelineConfig config;
+    private final PointCloudQuantizer quantizer;
+    private final ObjectTracker tracker;
+    private final VoxelMap voxelMap;
+    private final FrameScheduler scheduler;
+    private final GroundPlaneFilter groundFilter;
+    // per resolution level: the projection, the grid blobs are found in, and the blob finder
+    private final SphericalProjection[] projections;
+    private final float[][] grids;
+    private final BlobFinder[] blobFinders;
+    private final int[] minBlobSizes;
+    // per resolution level, the scene change detector, if any
+    private final SceneChangeDetector[] sceneChangeDetectors;
+    private PoseRing poses;
+    // the last known pose of the camera, held while no newer one is available
+    private final RigidTransform cameraToWorld = new RigidTransform();
+    private boolean hasPose;
+    private final float[] up = new float[3];
+    private long framesWithoutPose;
+    // the pose and level blobs were last extracted at, if a voxel map is used
+    private final RigidTransform extractionPose = new RigidTransform();
+    private int extractionLevel = -1;
+    private boolean mapChanged;
+    private long extractionsSkipped;
+    private int framesSinceExtraction;
+
+    private long groundNanos;
+    private long quantizeNanos;
+    private long mapNanos;
+    private long blobNanos;
+    private long trackNanos;
+    private volatile PipelineMetrics metrics;
+
+    /* constructor */
+    public DepthPipeline(PipelineConfig config, AudioSink sink) {
+        this.config = config;
+        int numLevels = 1;
+        while (numLevels < config.getResolutionLevels()
+               && halves(config.getHorizRes(), numLevels)
+               && halves(config.getVertRes(), numLevels))
+            numLevels++;
+        projections = new SphericalProjection[numLevels];
+        grids = new float[numLevels][];
+        blobFinders = new BlobFinder[numLevels];
+        minBlobSizes = new int[numLevels];
+        for (int l = 0; l < numLevels; l++) {
+            projections[l] = new SphericalProjection(
+                    config.getHorizRes() >> l, config.getVertRes() >> l,
+                    config.getHorizAngularSpan(), config.getVertAngularSpan());
+            grids[l] = new float[(config.getHorizRes() >> l) * (config.getVertRes() >> l)];
+            blobFinders[l] = new BlobFinder(projections[l]);
+            minBlobSizes[l] = Math.max(1, config.getMinBlobSize() >> (2 * l));
+        }
+        quantizer = new PointCloudQuantizer(projections[0]);
+        quantizer.setParallelism(config.getQuantizationThreads());
+        tracker = new ObjectTracker(sink, config.getMaxNumThings(), config.getEpsilon(),
+                                    config.getHorizAngularSpan(), config.getMaxDistance(),
+                                    config.getMaxCoastFrames());
+        voxelMap = config.getVoxelSize() > 0.0f
+                ? new VoxelMap(projections[0], config.getVoxelSize(), config.getMaxDistance(),
+                               config.getMaxVoxels())
+                : null;
+        scheduler = new FrameScheduler(config.getFrameDeadlineNanos(), numLevels,
+                                       config.getMaxStride());
+        // the ground is fitted beyond reach, where most of it lies
+        groundFilter = config.getGroundRemoval()
+                ? new GroundPlaneFilter(2.0f * config.getMaxDistance())
+                : null;
+        sceneChangeDetectors = new SceneChangeDetector[numLevels];
+        if (config.getSceneChangeTolerance() > 0.0f)
+            for (int l = 0; l < numLevels; l++)
+                sceneChangeDetectors[l] = new SceneChangeDetector(
+                        projections[l].getHorizRes(), projections[l].getVertRes(),
+                        SCENE_MAX_RES, SCENE_TILE_SIZE, config.getMaxDistance(),
+                        config.getSceneChangeTolerance());
+    }
+
+    /* true if res can be halved level times, staying at least MIN_LEVEL_RES */
+    private static boolean halves(int res, int level) {
+        return res % (1 << level) == 0 && res >> level >= MIN_LEVEL_RES;
+    }
+
+    public PipelineConfig getConfig() {
+        return config;
+    }
+
+    /* the scheduler shedding load to meet the frame deadline, by decimating points, by finding
+     * blobs at a lower resolution level and by skipping the tracking refresh; its deadline may
+     * be changed at run time */
+    public FrameScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /* track objects in the frame of the poses of the depth camera added to poses, interpolated
+     * to the timestamp of each frame, so that they are unaffected by head motion; null to track
+     * them in camera coordinates */
+    public void setPoses(PoseRing poses) {
+        this.poses = poses;
+    }
+
+    /* bin points by the pixel of the depth camera they project into, through a lookup table
+     * built from the camera's intrinsics (see DepthImageLookup), rather than by their angles,
+     * and allow depth images of that camera to be processed; may be called from any thread,
+     * takes effect at the next frame */
+    public void setDepthCameraIntrinsics(int width, int height,
+                                         double fx, double fy, double cx, double cy) {
+        quantizer.setDepthImageLookup(
+                new DepthImageLookup(projections[0], width, height, fx, fy, cx, cy));
+    }
+
+    /* record the latency of each stage of each frame into metrics (null for none); may be
+     * called from any thread, takes effect at the next frame */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /* process a frame */
+    public void process(DepthFrame frame) {
+        process(frame.points, frame.numPoints, frame.timestamp);
+    }
+
+    /* process numPoints points stored as consecutive (x, y, z, c) quadruples in points, taken
+     * at timestamp (in seconds) */
+    public void process(float[] points, int numPoints, double timestamp) {
+        scheduler.plan(numPoints);
+        long start = System.nanoTime();
+        if (locate(timestamp))
+            excludeGround(groundFilter.fit(points, 0, numPoints, up, groundTilt()));
+        long located = System.nanoTime();
+        groundNanos = located - start;
+        if (needsGrid())
+            quantizer.quantize(points, numPoints, scheduler.getStride(), scheduler.getPhase());
+        quantizeNanos = System.nanoTime() - located;
+        track(timestamp);
+        recordStages();
+    }
+
+    /* process the first numPoints points of points, read from absolute index 0, taken at
+     * timestamp (in seconds) */
+    public void process(FloatBuffer points, int numPoints, double timestamp) {
+        scheduler.plan(numPoints);
+        long start = System.nanoTime();
+        if (locate(timestamp))
+            excludeGround(groundFilter.fit(points, numPoints, up, groundTilt()));
+        long located = System.nanoTime();
+        groundNanos = located - start;
+        if (needsGrid())
+            quantizer.quantize(points, numPoints, scheduler.getStride(), scheduler.getPhase());
+        quantizeNanos = System.nanoTime() - located;
+        track(timestamp);
+        recordStages();
+    }
+
+    /* process a depth image of the camera whose intrinsics were set, taken at timestamp (in
+     * seconds): the depth along z, in meters, of pixel (u, v) at index v * width + u, 0 or NaN
+     * where there is none */
+    public void processDepthImage(float[] image, double timestamp) {
+        DepthImageLookup lookup = quantizer.getDepthImageLookup();
+        if (lookup == null)
+            throw new IllegalStateException("Depth camera intrinsics not set");
+        scheduler.plan(lookup.getWidth() * lookup.getHeight());
+        long start = System.nanoTime();
+        if (locate(timestamp))
+            excludeGround(groundFilter.fit(image, lookup, up, groundTilt()));
+        long located = System.nanoTime();
+        groundNanos = located - start;
+        if (needsGrid())
+            quantizer.quantizeDepthImage(image, scheduler.getStride(), scheduler.getPhase());
+        quantizeNanos = System.nanoTime() - located;
+        track(timestamp);
+        recordStages();
+    }
+
+    /* find the pose of the camera at timestamp, if the frame is to be quantized, and the up
+     * direction in camera coordinates (the world frame of the poses having z up, as Tango's
+     * start of service frame); returns true if the ground is to be fitted, the caller then
+     * doing so and passing the result to excludeGround(), so that its points are dropped
+     * before quantization */
+    private boolean locate(double timestamp) {
+        if (!needsGrid())
+            return false;
+        if (poses != null) {
+            if (poses.interpolate(timestamp, cameraToWorld))
+                hasPose = true;
+            else
+                framesWithoutPose++;
+        }
+        if (groundFilter == null)
+            return false;
+        if (hasPose)
+            cameraToWorld.applyInverse(cameraToWorld.tx, cameraToWorld.ty,
+                                       cameraToWorld.tz + 1.0f, up);
+        else {
+            up[0] = 0.0f;
+            up[1] = -1.0f;
+            up[2] = 0.0f;
+        }
+        return true;
+    }
+
+    /* exclude the ground plane from quantization, if found */
+    private void excludeGround(boolean found) {
+        if (found)
+            quantizer.excludePlane(groundFilter.getNormalX(), groundFilter.getNormalY(),
+                                   groundFilter.getNormalZ(), groundFilter.getHeight(),
+                                   GROUND_THICKNESS);
+        else
+            quantizer.clearExcludedPlane();
+    }
+
+    private float groundTilt() {
+        return hasPose ? GROUND_TILT : GROUND_TILT_WITHOUT_POSE;
+    }
+
+    /* record the stages the last frame went through */
+    private void recordStages() {
+        PipelineMetrics m = metrics;
+        if (m == null)
+            return;
+        if (groundFilter != null && groundNanos > 0)
+            m.record(PipelineMetrics.Stage.GROUND, groundNanos);
+        if (quantizeNanos > 0)
+            m.record(PipelineMetrics.Stage.QUANTIZE, quantizeNanos);
+        if (mapNanos > 0)
+            m.record(PipelineMetrics.Stage.MAP, mapNanos);
+        if (blobNanos > 0)
+            m.record(PipelineMetrics.Stage.BLOBS, blobNanos);
+        if (trackNanos > 0)
+            m.record(PipelineMetrics.Stage.TRACK, trackNanos);
+    }
+
+    /* a frame skipping the tracking refresh is only quantized to feed the voxel map */
+    private boolean needsGrid() {
+        return !scheduler.isSkippingTracking() || voxelMap != null;
+    }
+
+    /* find blobs in the grid and track them; with a voxel map, the grid is first fused into
+     * the map and blobs are found in its rendering, only when the map or the pose changed; at a
+     * lower resolution level, the grid quantized at full resolution is merged down to it (or
+     * the map rendered at it); with a scene change detector, blobs are only found again when
+     * the grid differs from the one they were last found in, or after getMaxStaleFrames()
+     * frames, the objects being tracked on the previous blobs in between */
+    private void track(double timestamp) {
+        mapNanos = 0;
+        blobNanos = 0;
+        trackNanos = 0;
+        if (!needsGrid()) {
+            scheduler.record(0, quantizeNanos, 0);
+            return;
+        }
+        int level = scheduler.getLevel();
+        long start = System.nanoTime();
+        float[] grid = quantizer.getDepths();
+        // only the quantized grid comes with its pyramid
+        DepthPyramid pyramid = quantizer.getPyramid();
+        boolean extract = true;
+        if (voxelMap != null) {
+            grid = grids[level];
+            pyramid = null;
+            voxelMap.integrate(quantizer.getDepths(), cameraToWorld, timestamp,
+                               projections[level], grid);
+            mapChanged |= voxelMap.hasChanged();
+            // the rendering only moves by a fraction of a voxel or a cell
+            float distance = POSE_TOLERANCE * config.getVoxelSize();
+            float angle = POSE_TOLERANCE * config.getHorizAngularSpan() / config.getHorizRes();
+            extract = level != extractionLevel || mapChanged
+                      || !cameraToWorld.isNear(extractionPose, distance, angle);
+        }
+        else if (level > 0) {
+            grid = grids[level];
+            pyramid = null;
+            quantizer.downsample(1 << level, grid);
+        }
+        long mapped = System.nanoTime();
+        // the full resolution grid is used as it is
+        mapNanos = voxelMap != null || level > 0 ? mapped - start : 0;
+        if (scheduler.isSkippingTracking()) {
+            scheduler.record(quantizer.getPointsQuantized(), quantizeNanos,
+                             groundNanos + mapNanos);
+            return;
+        }
+        SceneChangeDetector sceneChangeDetector = sceneChangeDetectors[level];
+        if (sceneChangeDetector != null)
+            extract = level != extractionLevel
+                      || framesSinceExtraction >= config.getMaxStaleFrames()
+                      || extract && sceneChangeDetector.hasChanged(grid, pyramid);
+        BlobTable blobs = blobFinders[level].getBlobs();
+        if (extract) {
+            blobs = blobFinders[level].findBlobs(grid, pyramid, config.getMaxDistance(),
+                                                 minBlobSizes[level], config.getMaxDistance(),
+                                                 config.getMaxNumThings());
+            extractionPose.set(cameraToWorld);
+            extractionLevel = level;
+            mapChanged = false;
+            framesSinceExtraction = 0;
+            if (sceneChangeDetector != null)
+                sceneChangeDetector.setReference(grid, pyramid);
+        }
+        else {
+            extractionsSkipped++;
+            framesSinceExtraction++;
+        }
+        long found = System.nanoTime();
+        blobNanos = found - mapped;
+        tracker.update(blobs, timestamp, cameraToWorld);
+        trackNanos = System.nanoTime() - found;
+        scheduler.record(quantizer.getPointsQuantized(), quantizeNanos,
+                         groundNanos + mapNanos + blobNanos + trackNanos);
+    }
+
+    /* the number of objects tracked after the last frame */
+    public int getNumTracked() {
+        return tracker.getThings().size();
+    }
+
+    /* the sound of the i-th tracked object */
+    public int getStreamID(int i) {
+        return tracker.getThings().get(i).streamID;
+    }
+
+    /* the volume of the i-th tracked object's sound, between 0.0 and 1.0 */
+    public float getVolume(int i) {
+        return tracker.volOfThing(tracker.getThings().get(i));
+    }
+
+    /* the pan of the i-th tracked object's sound, between -1.0 (left) and 1.0 (right) */
+    public float getPan(int i) {
+        return tracker.panOfThing(tracker.getThings().get(i));
+    }
+
+    /* the distance from the camera of the i-th tracked object, in meters */
+    public float getDistance(int i) {
+        return tracker.getThings().get(i).averageR;
+    }
+
+    /* the longitude of the i-th tracked object as seen from the camera, in radians, positive
+     * to the right */
+    public float getLongitude(int i) {
+        return tracker.getThings().get(i).averageTheta;
+    }
+
+    /* the number of frames processed with poses set but none covering their timestamp, which
+     * were tracked with the last known pose */
+    public long getFramesWithoutPose() {
+        return framesWithoutPose;
+    }
+
+    /* time spent locating the camera and finding the ground for the last frame, in
+     * nanoseconds */
+    public long getGroundNanos() {
+        return groundNanos;
+    }
+
+    /* time spent quantizing the last frame, in nanoseconds */
+    public long getQuantizeNanos() {
+        return quantizeNanos;
+    }
+
+    /* the number of frames whose blobs were those of the previous frame, the voxel map and
+     * the pose, or the grid, being unchanged */
+    public long getExtractionsSkipped() {
+        return extractionsSkipped;
+    }
+
+    /* time spent fusing the last frame into the voxel map, or merging its grid down to a
+     * lower resolution level, in nanoseconds */
+    public long getMapNanos() {
+        return mapNanos;
+    }
+
+    /* time spent extracting blobs from the last frame, in nanoseconds */
+    public long getBlobNanos() {
+        return blobNanos;
+    }
+
+    /* time spent tracking objects and updating sounds for the last frame, in nanoseconds */
+    public long getTrackNanos() {
+        return trackNanos;
+    }
+
+    /* release the threads of parallel quantization, if any */
+    public void release() {
+        quantizer.release();
+    }
+}
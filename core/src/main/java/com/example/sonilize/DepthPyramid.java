@@ -0,0 +1,102 @@
+package com.example.sonilize;
+
+/* the minimum depth over ever larger blocks of cells of a grid: level k (from 1) holds one
+ * value per block of 2^k x 2^k cells (smaller at the high edges when a resolution is not a
+ * multiple of 2^k), up to the first level of at most COARSEST_RES x COARSEST_RES blocks; a
+ * block whose minimum lies beyond a distance holds no cell within it, so whole regions of far
+ * cells can be skipped from the top down
+ *
+ * level 1 is folded in column by column, so that a quantizer can fill it in the same pass that
+ * produces the grid (in parallel, over ranges of whole column pairs), and the coarser levels
+ * are derived from it by complete()
+ */
+class DepthPyramid {
+
+    static final int COARSEST_RES = 8;
+
+    // per level, level 0 being the grid itself
+    private final int[] cols;
+    private final int[] rows;
+    private final float[][] mins;
+
+    /* constructor, for grids of horizRes columns and vertRes rows */
+    DepthPyramid(int horizRes, int vertRes) {
+        int numLevels = 1;
+        while ((horizRes - 1) >> numLevels >= COARSEST_RES
+               || (vertRes - 1) >> numLevels >= COARSEST_RES)
+            numLevels++;
+        cols = new int[numLevels + 1];
+        rows = new int[numLevels + 1];
+        mins = new float[numLevels + 1][];
+        cols[0] = horizRes;
+        rows[0] = vertRes;
+        for (int k = 1; k <= numLevels; k++) {
+            cols[k] = (cols[k - 1] + 1) / 2;
+            rows[k] = (rows[k - 1] + 1) / 2;
+            mins[k] = new float[cols[k] * rows[k]];
+        }
+    }
+
+    /* the coarsest level */
+    int getNumLevels() {
+        return mins.length - 1;
+    }
+
+    int getCols(int level) {
+        return cols[level];
+    }
+
+    int getRows(int level) {
+        return rows[level];
+    }
+
+    /* the minima of a level, block (i, j) at index i * getRows(level) + j */
+    float[] getMins(int level) {
+        return mins[level];
+    }
+
+    /* set the pyramid to that of grid, cell (i, j) at index i * vertRes + j */
+    void build(float[] grid) {
+        fold(grid, 0, cols[0]);
+        complete();
+    }
+
+    /* fold columns fromCol (inclusive, even) to untilCol (exclusive, even or the last) of grid
+     * into level 1 */
+    void fold(float[] grid, int fromCol, int untilCol) {
+        int gridRows = rows[0];
+        int blockRows = rows[1];
+        float[] level1 = mins[1];
+        for (int i = fromCol; i < untilCol; i++) {
+            int block = (i >> 1) * blockRows;
+            if ((i & 1) == 0)
+                for (int b = 0; b < blockRows; b++)
+                    level1[block + b] = Float.POSITIVE_INFINITY;
+            int cell = i * gridRows;
+            for (int j = 0; j < gridRows; j++) {
+                float d = grid[cell + j];
+                if (d < level1[block + (j >> 1)])
+                    level1[block + (j >> 1)] = d;
+            }
+        }
+    }
+
+    /* derive the levels above 1 once level 1 is complete */
+    void complete() {
+        for (int k = 2; k < mins.length; k++) {
+            float[] fine = mins[k - 1];
+            float[] coarse = mins[k];
+            int fineCols = cols[k - 1];
+            int fineRows = rows[k - 1];
+            for (int i = 0; i < cols[k]; i++) {
+                for (int j = 0; j < rows[k]; j++) {
+                    float min = Float.POSITIVE_INFINITY;
+                    for (int a = 2 * i; a < Math.min(2 * i + 2, fineCols); a++)
+                        for (int b = 2 * j; b < Math.min(2 * j + 2, fineRows); b++)
+                            min = Math.min(min, fine[a * fineRows + b]);
+                    coarse[i * rows[k] + j] = min;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.sonilize;
+
+/* an in-place radix-2 fast Fourier transform of a fixed power-of-two size, over separate arrays
+ * of real and imaginary parts; the twiddle factors and the bit-reversal permutation are
+ * computed once by the constructor, so that transforms allocate nothing, and an instance holds
+ * no other state, so that it may be shared by threads */
+class Fft {
+
+    private final int size;
+    // index of each index with its bits reversed
+    private final int[] reversed;
+    // cos and sin of 2 PI k / size, for k below size / 2
+    private final float[] cos;
+    private final float[] sin;
+
+    /* constructor, for transforms of size values, a power of two */
+    Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("FFT size must be a power of two");
+        this.size = size;
+        int bits = Integer.numberOfTrailingZeros(size);
+        reversed = new int[size];
+        for (int i = 0; i < size; i++)
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            double angle = 2.0 * Math.PI * k / size;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /* replace (re, im) by its discrete Fourier transform, X[k] = sum of x[n] e^(-2 PI i k n / N) */
+    void forward(float[] re, float[] im) {
+        transform(re, im, -1.0f);
+    }
+
+    /* replace (re, im) by its inverse discrete Fourier transform, scaled by 1 / N so that it
+     * undoes forward() */
+    void inverse(float[] re, float[] im) {
+        transform(re, im, 1.0f);
+        float scale = 1.0f / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(float[] re, float[] im, float sign) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        // butterflies of length 2, 4, ... size, each twiddle factor applied to all of its pairs
+        for (int half = 1; half < size; half <<= 1) {
+            int step = size / (2 * half);
+            for (int k = 0; k < half; k++) {
+                float wr = cos[k * step];
+                float wi = sign * sin[k * step];
+                for (int a = k; a < size; a += 2 * half) {
+                    int b = a + half;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.sonilize;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* moves point cloud processing off the thread that delivers the clouds: offer() copies a cloud
+ * into a pooled DepthFrame and hands it to a dedicated worker through a TripleBuffer, so that
+ * the delivering thread never waits; if the worker is still busy when newer clouds arrive, only
+ * the latest one is processed next and the others are dropped and counted
+ */
+public class FramePipeline {
+
+    /* the work done on each frame, always called from the worker thread */
+    public interface FrameProcessor {
+        void process(DepthFrame frame);
+    }
+
+    private static final int INITIAL_FRAME_CAPACITY = 16384;
+
+    private final TripleBuffer<DepthFrame> mailbox;
+    private final FrameProcessor processor;
+    private final AtomicLong framesOffered;
+    private final AtomicLong framesDropped;
+    private final AtomicLong framesProcessed;
+    private volatile boolean running;
+    private volatile Thread worker;
+    private volatile PipelineMetrics metrics;
+
+    /* constructor */
+    public FramePipeline(FrameProcessor processor) {
+        this.processor = processor;
+        mailbox = new TripleBuffer<>(new DepthFrame(INITIAL_FRAME_CAPACITY),
+                                     new DepthFrame(INITIAL_FRAME_CAPACITY),
+                                     new DepthFrame(INITIAL_FRAME_CAPACITY));
+        framesOffered = new AtomicLong();
+        framesDropped = new AtomicLong();
+        framesProcessed = new AtomicLong();
+    }
+
+    /* start the worker thread */
+    public synchronized void start() {
+        if (worker != null)
+            throw new IllegalStateException("Frame pipeline already started!");
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                workerLoop();
+            }
+        }, "FramePipeline");
+        worker.start();
+    }
+
+    /* stop the worker thread, waiting for the frame in progress (if any) to be done */
+    public synchronized void stop() {
+        if (worker == null)
+            return;
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    /* record the time frames wait for the worker, and the frames processed and dropped, into
+     * metrics (null for none) */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /* hand a new point cloud over to the worker; must always be called from the same thread */
+    public void offer(FloatBuffer points, int numPoints, double timestamp) {
+        long now = System.nanoTime();
+        offer(points, numPoints, timestamp, now, now);
+    }
+
+    /* hand a new point cloud, captured at captureNanos on the clock of System.nanoTime(), over
+     * to the worker as above */
+    public void offer(FloatBuffer points, int numPoints, double timestamp, long captureNanos) {
+        offer(points, numPoints, timestamp, captureNanos, System.nanoTime());
+    }
+
+    private void offer(FloatBuffer points, int numPoints, double timestamp, long captureNanos,
+                       long arrivalNanos) {
+        mailbox.getWriteBuffer().copyFrom(points, numPoints, timestamp, captureNanos,
+                                          arrivalNanos);
+        framesOffered.incrementAndGet();
+        PipelineMetrics m = metrics;
+        if (mailbox.publish()) {
+            framesDropped.incrementAndGet();
+            if (m != null)
+                m.countFrameDropped();
+        }
+        Thread w = worker;
+        if (w != null)
+            LockSupport.unpark(w);
+    }
+
+    private void workerLoop() {
+        while (running) {
+            DepthFrame frame = mailbox.poll();
+            if (frame == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            PipelineMetrics m = metrics;
+            if (m != null)
+                m.record(PipelineMetrics.Stage.QUEUE, System.nanoTime() - frame.arrivalNanos);
+            processor.process(frame);
+            framesProcessed.incrementAndGet();
+            if (m != null)
+                m.countFrameProcessed();
+        }
+    }
+
+    public long getFramesOffered() {
+        return framesOffered.get();
+    }
+
+    /* the number of frames overwritten by a newer one before the worker got to them */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed.get();
+    }
+}
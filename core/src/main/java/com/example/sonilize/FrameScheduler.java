@@ -0,0 +1,203 @@
+package com.example.sonilize;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/* keeps the processing of each frame within a deadline by trading quality for time: before a
+ * frame, it predicts the cost of each plan from running estimates of the time quantization
+ * takes per point and of the time the rest of a frame takes at each resolution level, and
+ * picks the best plan predicted to fit; plans get worse by quantizing only every stride-th
+ * point (from a random phase, so that the points left out change from frame to frame), then
+ * by finding blobs at a lower resolution level (each halving both resolutions); when even the
+ * worst plan does not fit, the tracking refresh is skipped every other frame
+ *
+ * a plan is kept as long as it is predicted to take at most KEEP of the deadline, and a better
+ * one is only taken once predicted to take at most UPGRADE of it, so that quality does not
+ * flicker around the deadline; the deadline may be changed from any thread, a deadline of 0
+ * meaning full quality always; the choices made are counted, and may be read from any thread
+ */
+public class FrameScheduler {
+
+    // weight of the latest measurement in the running estimates
+    private static final double SMOOTHING = 0.2;
+    // weight with which the estimates of levels not in use follow the one in use, scaled by
+    // their number of cells, so that a past spike does not keep a level out of reach for good
+    private static final double DRIFT = 0.02;
+    private static final double KEEP = 0.9;
+    private static final double UPGRADE = 0.7;
+
+    private final int numLevels;
+    private final int maxStride;
+    private volatile long deadlineNanos;
+
+    private double nanosPerPoint;
+    private final double[] levelNanos;
+    private final boolean[] levelMeasured;
+
+    // the current plan, an index into the plans in order of decreasing quality
+    private int plan;
+    private volatile int stride = 1;
+    private volatile int level;
+    private int phase;
+    private boolean skippingTracking;
+    private long predictedNanos;
+    private long random = 0x9e3779b97f4a7c15L;
+
+    private final AtomicLong frames;
+    private final AtomicLong framesDecimated;
+    private final AtomicLong framesAtLowerResolution;
+    private final AtomicLong trackingSkipped;
+    private final AtomicLong framesOverDeadline;
+
+    /* constructor; plans range over numLevels resolution levels and strides up to maxStride */
+    FrameScheduler(long deadlineNanos, int numLevels, int maxStride) {
+        if (numLevels <= 0 || maxStride <= 0)
+            throw new IllegalArgumentException("Levels and stride must be positive");
+        this.numLevels = numLevels;
+        this.maxStride = maxStride;
+        setDeadlineNanos(deadlineNanos);
+        levelNanos = new double[numLevels];
+        levelMeasured = new boolean[numLevels];
+        frames = new AtomicLong();
+        framesDecimated = new AtomicLong();
+        framesAtLowerResolution = new AtomicLong();
+        trackingSkipped = new AtomicLong();
+        framesOverDeadline = new AtomicLong();
+    }
+
+    /* the time allowed for each frame, in nanoseconds, 0 for no limit */
+    public void setDeadlineNanos(long deadlineNanos) {
+        if (deadlineNanos < 0)
+            throw new IllegalArgumentException("Deadline must not be negative");
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /* choose the plan of the next frame, made up of numPoints points */
+    void plan(int numPoints) {
+        long deadline = deadlineNanos;
+        int chosen = -1;
+        int numPlans = deadline > 0 ? numLevels * maxStride : 1;
+        for (int p = 0; p < numPlans && chosen < 0; p++) {
+            double cost = predict(p, numPoints);
+            if (deadline == 0 || cost <= deadline * (p < plan ? UPGRADE : KEEP)) {
+                chosen = p;
+                predictedNanos = (long) cost;
+            }
+        }
+        if (chosen < 0) {
+            chosen = numPlans - 1;
+            skippingTracking = !skippingTracking;
+            predictedNanos = (long) predict(chosen, numPoints);
+        }
+        else
+            skippingTracking = false;
+        plan = chosen;
+        level = chosen / maxStride;
+        stride = chosen % maxStride + 1;
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        phase = (int) ((random >>> 33) % stride);
+    }
+
+    private double predict(int p, int numPoints) {
+        int s = p % maxStride + 1;
+        return nanosPerPoint * ((numPoints + s - 1) / s) + levelCost(p / maxStride);
+    }
+
+    private double levelCost(int l) {
+        if (levelMeasured[l])
+            return levelNanos[l];
+        // an unknown level costs its share of cells of the finest level known
+        for (int k = l - 1; k >= 0; k--)
+            if (levelMeasured[k])
+                return levelNanos[k] / (1 << (2 * (l - k)));
+        return 0.0;
+    }
+
+    /* account for the frame just processed according to the plan: pointsQuantized points were
+     * quantized in quantizeNanos, and the rest of the frame took restNanos */
+    void record(int pointsQuantized, long quantizeNanos, long restNanos) {
+        if (pointsQuantized > 0)
+            nanosPerPoint = smooth(nanosPerPoint, (double) quantizeNanos / pointsQuantized,
+                                   nanosPerPoint > 0.0 ? SMOOTHING : 1.0);
+        int l = level;
+        if (!skippingTracking) {
+            levelNanos[l] = smooth(levelNanos[l], restNanos, levelMeasured[l] ? SMOOTHING : 1.0);
+            levelMeasured[l] = true;
+            for (int k = 0; k < numLevels; k++) {
+                if (k == l || !levelMeasured[k])
+                    continue;
+                double scaled = k < l ? levelNanos[l] * (1 << (2 * (l - k)))
+                                      : levelNanos[l] / (1 << (2 * (k - l)));
+                levelNanos[k] = smooth(levelNanos[k], scaled, DRIFT);
+            }
+        }
+        frames.incrementAndGet();
+        if (stride > 1)
+            framesDecimated.incrementAndGet();
+        if (l > 0)
+            framesAtLowerResolution.incrementAndGet();
+        if (skippingTracking)
+            trackingSkipped.incrementAndGet();
+        long deadline = deadlineNanos;
+        if (deadline > 0 && quantizeNanos + restNanos > deadline)
+            framesOverDeadline.incrementAndGet();
+    }
+
+    private static double smooth(double estimate, double measured, double weight) {
+        return estimate + (measured - estimate) * weight;
+    }
+
+    /* only every getStride()-th point of the current frame is quantized */
+    public int getStride() {
+        return stride;
+    }
+
+    /* the first point of the current frame quantized, below getStride() */
+    int getPhase() {
+        return phase;
+    }
+
+    /* the resolution level of the current frame, each level halving both resolutions */
+    public int getLevel() {
+        return level;
+    }
+
+    /* true if the current frame is not to refresh the tracked objects */
+    public boolean isSkippingTracking() {
+        return skippingTracking;
+    }
+
+    /* the predicted cost of the current frame, in nanoseconds */
+    long getPredictedNanos() {
+        return predictedNanos;
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /* the number of frames of which only part of the points were quantized */
+    public long getFramesDecimated() {
+        return framesDecimated.get();
+    }
+
+    /* the number of frames whose blobs were found at a lower resolution */
+    public long getFramesAtLowerResolution() {
+        return framesAtLowerResolution.get();
+    }
+
+    /* the number of frames that did not refresh the tracked objects */
+    public long getTrackingSkipped() {
+        return trackingSkipped.get();
+    }
+
+    /* the number of frames that took longer than the deadline */
+    public long getFramesOverDeadline() {
+        return framesOverDeadline.get();
+    }
+}
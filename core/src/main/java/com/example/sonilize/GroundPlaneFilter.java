@@ -0,0 +1,334 @@
+package com.example.sonilize;
+
+import java.nio.FloatBuffer;
+
+/* finds the ground plane in the points of a frame, so that they can be dropped before
+ * quantization instead of showing up as one large blob in front of the user: RANSAC over a
+ * random sample of the points, each hypothesis being the plane through three of them, then a
+ * least-squares refit (the eigenvector of the smallest eigenvalue of the covariance) of the
+ * inliers of the best one; the plane found in the previous frame is tried first and, if it
+ * still holds, only a few hypotheses are tried after it
+ *
+ * only planes below the camera, between MIN_HEIGHT and MAX_HEIGHT, whose normal is within a
+ * given tilt of the up direction are taken for the ground, so that walls, ceilings and tables
+ * seen from the side are kept; the plane is n . p + d = 0 with n the unit normal pointing
+ * up and d the height of the camera above it; nothing is allocated per frame
+ */
+class GroundPlaneFilter {
+
+    static final int SAMPLE_SIZE = 512;
+    static final int COLD_ITERATIONS = 64;
+    static final int WARM_ITERATIONS = 8;
+    // how far from the plane points are inliers of a hypothesis, in meters
+    static final float INLIER_DISTANCE = 0.03f;
+    // the smallest share of the sample a plane must hold to be the ground
+    static final float MIN_INLIER_FRACTION = 0.1f;
+    // the range of heights of the camera above the ground, in meters
+    static final float MIN_HEIGHT = 0.3f;
+    static final float MAX_HEIGHT = 2.5f;
+
+    // points farther than that are not sampled, in meters
+    private final float maxRange;
+
+    // the sample, and whether each point is an inlier of the best hypothesis
+    private final float[] sampleX = new float[SAMPLE_SIZE];
+    private final float[] sampleY = new float[SAMPLE_SIZE];
+    private final float[] sampleZ = new float[SAMPLE_SIZE];
+    private final boolean[] inliers = new boolean[SAMPLE_SIZE];
+    private int sampleSize;
+    private long random = 0x2545f4914f6cdd1dL;
+
+    // the up direction of the frame being fitted, and the cosine of the largest tilt
+    private float upX;
+    private float upY;
+    private float upZ;
+    private float minCosTilt;
+
+    // the hypothesis being scored, then the plane found
+    private float hx;
+    private float hy;
+    private float hz;
+    private float hd;
+    private boolean found;
+    private float nx;
+    private float ny;
+    private float nz;
+    private float d;
+    private int numInliers;
+    private int iterations;
+
+    /* constructor; only points within maxRange of the camera (in meters) are sampled */
+    GroundPlaneFilter(float maxRange) {
+        if (!(maxRange > 0.0f))
+            throw new IllegalArgumentException("Range must be positive");
+        this.maxRange = maxRange;
+    }
+
+    /* find the ground among numPoints points stored as consecutive (x, y, z, c) quadruples from
+     * index offset of points, with up[0 .. 2] (a unit vector) the up direction and maxTilt (in
+     * radians) the largest angle between it and the normal of the ground; returns true if
+     * found */
+    boolean fit(float[] points, int offset, int numPoints, float[] up, float maxTilt) {
+        sampleSize = 0;
+        for (int draw = 0; draw < 2 * SAMPLE_SIZE && sampleSize < SAMPLE_SIZE && numPoints > 0;
+             draw++) {
+            int i = offset + nextInt(numPoints) * PointCloudQuantizer.FLOATS_PER_POINT;
+            addToSample(points[i], points[i + 1], points[i + 2]);
+        }
+        return fitSample(up[0], up[1], up[2], maxTilt);
+    }
+
+    /* find the ground as above among the first numPoints points of points, read from absolute
+     * index 0 */
+    boolean fit(FloatBuffer points, int numPoints, float[] up, float maxTilt) {
+        sampleSize = 0;
+        for (int draw = 0; draw < 2 * SAMPLE_SIZE && sampleSize < SAMPLE_SIZE && numPoints > 0;
+             draw++) {
+            int i = nextInt(numPoints) * PointCloudQuantizer.FLOATS_PER_POINT;
+            addToSample(points.get(i), points.get(i + 1), points.get(i + 2));
+        }
+        return fitSample(up[0], up[1], up[2], maxTilt);
+    }
+
+    /* find the ground as above in a depth image of the camera of lookup (depth along z of pixel
+     * (u, v) at index v * width + u, 0 or NaN for none) */
+    boolean fit(float[] image, DepthImageLookup lookup, float[] up, float maxTilt) {
+        int width = lookup.getWidth();
+        int numPixels = width * lookup.getHeight();
+        sampleSize = 0;
+        for (int draw = 0; draw < 2 * SAMPLE_SIZE && sampleSize < SAMPLE_SIZE; draw++) {
+            int p = nextInt(numPixels);
+            float z = image[p];
+            if (z > 0.0f)
+                addToSample(lookup.rayX(p % width) * z, lookup.rayY(p / width) * z, z);
+        }
+        return fitSample(up[0], up[1], up[2], maxTilt);
+    }
+
+    private int nextInt(int bound) {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) ((random >>> 1) % bound);
+    }
+
+    private void addToSample(float x, float y, float z) {
+        if (z > 0.0f && x * x + y * y + z * z <= maxRange * maxRange) {
+            sampleX[sampleSize] = x;
+            sampleY[sampleSize] = y;
+            sampleZ[sampleSize] = z;
+            sampleSize++;
+        }
+    }
+
+    private boolean fitSample(float upX, float upY, float upZ, float maxTilt) {
+        this.upX = upX;
+        this.upY = upY;
+        this.upZ = upZ;
+        minCosTilt = (float) Math.cos(maxTilt);
+        int minInliers = Math.max(3, (int) (MIN_INLIER_FRACTION * sampleSize));
+        iterations = 0;
+
+        // the plane of the previous frame, if it still qualifies, is the first candidate
+        int best = 0;
+        float bx = 0.0f, by = 0.0f, bz = 0.0f, bd = 0.0f;
+        int numIterations = COLD_ITERATIONS;
+        if (found && setHypothesis(nx, ny, nz, d)) {
+            best = countInliers();
+            bx = hx;
+            by = hy;
+            bz = hz;
+            bd = hd;
+            if (best >= minInliers)
+                numIterations = WARM_ITERATIONS;
+        }
+        for (int it = 0; it < numIterations && sampleSize >= 3; it++) {
+            iterations++;
+            int a = nextInt(sampleSize), b = nextInt(sampleSize), c = nextInt(sampleSize);
+            float ux = sampleX[b] - sampleX[a], uy = sampleY[b] - sampleY[a],
+                    uz = sampleZ[b] - sampleZ[a];
+            float vx = sampleX[c] - sampleX[a], vy = sampleY[c] - sampleY[a],
+                    vz = sampleZ[c] - sampleZ[a];
+            float cx = uy * vz - uz * vy, cy = uz * vx - ux * vz, cz = ux * vy - uy * vx;
+            float norm = (float) Math.sqrt(cx * cx + cy * cy + cz * cz);
+            if (!(norm > 1e-9f))
+                continue;
+            cx /= norm;
+            cy /= norm;
+            cz /= norm;
+            float dist = -(cx * sampleX[a] + cy * sampleY[a] + cz * sampleZ[a]);
+            if (!setHypothesis(cx, cy, cz, dist))
+                continue;
+            int count = countInliers();
+            if (count > best) {
+                best = count;
+                bx = hx;
+                by = hy;
+                bz = hz;
+                bd = hd;
+            }
+        }
+
+        found = false;
+        numInliers = 0;
+        if (best < minInliers)
+            return false;
+        setHypothesis(bx, by, bz, bd);
+        countInliers();
+        if (!refit())
+            return false;
+        numInliers = countInliers();
+        found = numInliers >= minInliers;
+        if (found) {
+            nx = hx;
+            ny = hy;
+            nz = hz;
+            d = hd;
+        }
+        return found;
+    }
+
+    /* make (x, y, z, dist) the hypothesis, oriented with the camera above it; returns false if
+     * it cannot be the ground */
+    private boolean setHypothesis(float x, float y, float z, float dist) {
+        if (dist < 0.0f) {
+            x = -x;
+            y = -y;
+            z = -z;
+            dist = -dist;
+        }
+        hx = x;
+        hy = y;
+        hz = z;
+        hd = dist;
+        return dist >= MIN_HEIGHT && dist <= MAX_HEIGHT
+               && x * upX + y * upY + z * upZ >= minCosTilt;
+    }
+
+    /* mark the inliers of the hypothesis in the sample and count them */
+    private int countInliers() {
+        int count = 0;
+        for (int s = 0; s < sampleSize; s++) {
+            float distance = hx * sampleX[s] + hy * sampleY[s] + hz * sampleZ[s] + hd;
+            inliers[s] = Math.abs(distance) < INLIER_DISTANCE;
+            if (inliers[s])
+                count++;
+        }
+        return count;
+    }
+
+    /* replace the hypothesis by the least-squares plane of its inliers; returns false if that
+     * one cannot be the ground */
+    private boolean refit() {
+        double mx = 0.0, my = 0.0, mz = 0.0;
+        int n = 0;
+        for (int s = 0; s < sampleSize; s++) {
+            if (!inliers[s])
+                continue;
+            mx += sampleX[s];
+            my += sampleY[s];
+            mz += sampleZ[s];
+            n++;
+        }
+        mx /= n;
+        my /= n;
+        mz /= n;
+        double xx = 0.0, xy = 0.0, xz = 0.0, yy = 0.0, yz = 0.0, zz = 0.0;
+        for (int s = 0; s < sampleSize; s++) {
+            if (!inliers[s])
+                continue;
+            double x = sampleX[s] - mx, y = sampleY[s] - my, z = sampleZ[s] - mz;
+            xx += x * x;
+            xy += x * y;
+            xz += x * z;
+            yy += y * y;
+            yz += y * z;
+            zz += z * z;
+        }
+
+        // the smallest eigenvalue of the covariance, by the trigonometric solution of its
+        // characteristic polynomial
+        double q = (xx + yy + zz) / 3.0;
+        double offDiagonal = xy * xy + xz * xz + yz * yz;
+        double p = Math.sqrt(((xx - q) * (xx - q) + (yy - q) * (yy - q) + (zz - q) * (zz - q)
+                              + 2.0 * offDiagonal) / 6.0);
+        if (!(p > 0.0))
+            return false;
+        double b11 = (xx - q) / p, b22 = (yy - q) / p, b33 = (zz - q) / p;
+        double b12 = xy / p, b13 = xz / p, b23 = yz / p;
+        double det = b11 * (b22 * b33 - b23 * b23) - b12 * (b12 * b33 - b23 * b13)
+                     + b13 * (b12 * b23 - b22 * b13);
+        double angle = Math.acos(Math.max(-1.0, Math.min(1.0, det / 2.0))) / 3.0;
+        double lambda = q + 2.0 * p * Math.cos(angle + 2.0 * Math.PI / 3.0);
+
+        // its eigenvector is orthogonal to the rows of the covariance minus lambda; take the
+        // longest cross product of two of them
+        double r0x = xx - lambda, r0y = xy, r0z = xz;
+        double r1x = xy, r1y = yy - lambda, r1z = yz;
+        double r2x = xz, r2y = yz, r2z = zz - lambda;
+        double ex = r0y * r1z - r0z * r1y, ey = r0z * r1x - r0x * r1z, ez = r0x * r1y - r0y * r1x;
+        double e = ex * ex + ey * ey + ez * ez;
+        double fx = r0y * r2z - r0z * r2y, fy = r0z * r2x - r0x * r2z, fz = r0x * r2y - r0y * r2x;
+        double f = fx * fx + fy * fy + fz * fz;
+        if (f > e) {
+            ex = fx;
+            ey = fy;
+            ez = fz;
+            e = f;
+        }
+        fx = r1y * r2z - r1z * r2y;
+        fy = r1z * r2x - r1x * r2z;
+        fz = r1x * r2y - r1y * r2x;
+        f = fx * fx + fy * fy + fz * fz;
+        if (f > e) {
+            ex = fx;
+            ey = fy;
+            ez = fz;
+            e = f;
+        }
+        if (!(e > 0.0))
+            return false;
+        double norm = Math.sqrt(e);
+        ex /= norm;
+        ey /= norm;
+        ez /= norm;
+        return setHypothesis((float) ex, (float) ey, (float) ez,
+                             (float) -(ex * mx + ey * my + ez * mz));
+    }
+
+    /* true if the last frame had a ground plane */
+    boolean hasPlane() {
+        return found;
+    }
+
+    float getNormalX() {
+        return nx;
+    }
+
+    float getNormalY() {
+        return ny;
+    }
+
+    float getNormalZ() {
+        return nz;
+    }
+
+    /* the height of the camera above the ground, in meters */
+    float getHeight() {
+        return d;
+    }
+
+    /* the number of points of the sample of the last frame lying on the ground */
+    int getNumInliers() {
+        return numInliers;
+    }
+
+    int getSampleSize() {
+        return sampleSize;
+    }
+
+    /* the number of random hypotheses tried for the last frame */
+    int getIterations() {
+        return iterations;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.sonilize;
+
+/* head-related impulse responses over a grid of directions, from a parametric model of the
+ * head for want of measured ones (which would replace it through the same accessors): Brown
+ * and Duda's structural model, a spherical head giving each ear the delay of Woodworth's
+ * formula and a one-pole one-zero head shadow, followed by the five echoes of their pinna model
+ * whose delays depend on elevation and, through cos(azimuth / 2), on front versus back, and by
+ * a gentle high-frequency rolloff of sources behind the head, which the pinna shadows
+ *
+ * directions are an azimuth, in radians, positive to the right, 0 ahead and PI behind, and an
+ * elevation, positive up; the grid spans all azimuths, and elevations from MIN_ELEVATION to
+ * MAX_ELEVATION; each response is computed by sampling the model's transfer function and
+ * transforming it back, then fading it out over its last taps; a source ahead is passed at unit
+ * gain at low frequencies
+ */
+class Hrtf {
+
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
+
+    static final int AZIMUTH_STEPS = 36;
+    static final int ELEVATION_STEPS = 7;
+    static final float MIN_ELEVATION = (float) Math.toRadians(-60.0);
+    static final float MAX_ELEVATION = (float) Math.toRadians(60.0);
+
+    // radius of the head and speed of sound, in meters and meters per second
+    private static final double HEAD_RADIUS = 0.0875;
+    private static final double SPEED_OF_SOUND = 343.0;
+    // head shadow: gain at high frequencies of a source at the ear (2.0) down to ALPHA_MIN,
+    // reached THETA_MIN away from the ear
+    private static final double ALPHA_MIN = 0.1;
+    private static final double THETA_MIN = Math.toRadians(150.0);
+    // pinna echoes: reflection coefficients, and delays A cos(azimuth / 2)
+    // sin(D (PI / 2 - elevation)) + B, in samples at PINNA_RATE
+    private static final double[] PINNA_RHO = {0.5, -1.0, 0.5, -0.25, 0.25};
+    private static final double[] PINNA_A = {1.0, 5.0, 5.0, 5.0, 5.0};
+    private static final double[] PINNA_B = {2.0, 4.0, 7.0, 11.0, 13.0};
+    private static final double[] PINNA_D = {1.0, 0.5, 0.5, 0.5, 0.5};
+    private static final double PINNA_RATE = 44100.0;
+    // rolloff of sources right behind: high-frequency gain and corner frequency, in Hz
+    private static final double BACK_GAIN = 0.5;
+    private static final double BACK_CORNER = 3000.0;
+    // delay of all responses, so that the band-limited onsets fit within them, in seconds
+    private static final double PRE_DELAY = 0.0003;
+    // fraction of the taps over which responses fade out
+    private static final int FADE_FRACTION = 8;
+
+    private final int sampleRate;
+    private final int length;
+    // response of direction d and ear e at index (d * 2 + e)
+    private final float[][] responses;
+
+    /* constructor, for responses of length taps at sampleRate Hz; length must be a power of two
+     * long enough for the interaural delay and the pinna echoes, 128 taps or more at 48 kHz */
+    Hrtf(int sampleRate, int length) {
+        if (sampleRate <= 0 || length < 16 || Integer.bitCount(length) != 1)
+            throw new IllegalArgumentException("Invalid sample rate or response length");
+        this.sampleRate = sampleRate;
+        this.length = length;
+        responses = new float[2 * AZIMUTH_STEPS * ELEVATION_STEPS][];
+        // sampled at twice the length, so that the tail of a response does not wrap around
+        int size = 2 * length;
+        Fft fft = new Fft(size);
+        float[] re = new float[size];
+        float[] im = new float[size];
+        double[] response = new double[2];
+        for (int d = 0; d < AZIMUTH_STEPS * ELEVATION_STEPS; d++) {
+            for (int ear = LEFT; ear <= RIGHT; ear++) {
+                for (int k = 0; k <= size / 2; k++) {
+                    transfer(getAzimuth(d), getElevation(d), ear,
+                             2.0 * Math.PI * k * sampleRate / size, response);
+                    re[k] = (float) response[0];
+                    im[k] = (float) response[1];
+                    if (k > 0 && k < size / 2) {
+                        re[size - k] = re[k];
+                        im[size - k] = -im[k];
+                    }
+                }
+                // a real response, the spectrum being conjugate-symmetric but for the odd
+                // imaginary part at the Nyquist frequency
+                im[size / 2] = 0.0f;
+                fft.inverse(re, im);
+                float[] taps = new float[length];
+                int fade = length / FADE_FRACTION;
+                for (int n = 0; n < length; n++) {
+                    float gain = 1.0f;
+                    if (n >= length - fade)
+                        gain = 0.5f + 0.5f * (float) Math.cos(
+                                Math.PI * (n - (length - fade) + 1) / (fade + 1));
+                    taps[n] = re[n] * gain;
+                }
+                responses[2 * d + ear] = taps;
+            }
+        }
+    }
+
+    /* the transfer function at angular frequency omega (radians per second) of ear for a source
+     * at (azimuth, elevation), into response as its real and imaginary parts */
+    private static void transfer(double azimuth, double elevation, int ear, double omega,
+                                 double[] response) {
+        // angle between the source and the axis of the ear, pointing right or left
+        double lateral = Math.sin(azimuth) * Math.cos(elevation);
+        double theta = Math.acos(Math.max(-1.0, Math.min(1.0, ear == RIGHT ? lateral
+                                                                          : -lateral)));
+        // head shadow (1 + i alpha omega / 2 omega0) / (1 + i omega / 2 omega0)
+        double alpha = (1.0 + ALPHA_MIN / 2.0)
+                       + (1.0 - ALPHA_MIN / 2.0) * Math.cos(theta / THETA_MIN * Math.PI);
+        double w = omega * HEAD_RADIUS / (2.0 * SPEED_OF_SOUND);
+        double denominator = 1.0 + w * w;
+        double re = (1.0 + alpha * w * w) / denominator;
+        double im = (alpha - 1.0) * w / denominator;
+        // rolloff behind, (1 + i b omega / omega1) / (1 + i omega / omega1) with b falling from
+        // 1.0 at the side to BACK_GAIN behind
+        double behind = Math.max(0.0, -Math.cos(azimuth) * Math.cos(elevation));
+        double b = 1.0 - (1.0 - BACK_GAIN) * behind;
+        double v = omega / (2.0 * Math.PI * BACK_CORNER);
+        double backRe = (1.0 + b * v * v) / (1.0 + v * v);
+        double backIm = (b - 1.0) * v / (1.0 + v * v);
+        double t = re * backRe - im * backIm;
+        im = re * backIm + im * backRe;
+        re = t;
+        // pinna: the direct sound and its echoes
+        double pinnaRe = 1.0;
+        double pinnaIm = 0.0;
+        for (int n = 0; n < PINNA_RHO.length; n++) {
+            double delay = (PINNA_A[n] * Math.cos(azimuth / 2.0)
+                            * Math.sin(PINNA_D[n] * (Math.PI / 2.0 - elevation))
+                            + PINNA_B[n]) / PINNA_RATE;
+            pinnaRe += PINNA_RHO[n] * Math.cos(omega * delay);
+            pinnaIm -= PINNA_RHO[n] * Math.sin(omega * delay);
+        }
+        t = re * pinnaRe - im * pinnaIm;
+        im = re * pinnaIm + im * pinnaRe;
+        re = t;
+        // delay to the ear (Woodworth), from a head radius before the center of the head
+        double delay = theta < Math.PI / 2.0 ? 1.0 - Math.cos(theta)
+                                             : 1.0 + theta - Math.PI / 2.0;
+        delay = delay * HEAD_RADIUS / SPEED_OF_SOUND + PRE_DELAY;
+        double c = Math.cos(omega * delay);
+        double s = -Math.sin(omega * delay);
+        response[0] = re * c - im * s;
+        response[1] = re * s + im * c;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    /* the number of taps of the responses */
+    int getLength() {
+        return length;
+    }
+
+    int getNumDirections() {
+        return AZIMUTH_STEPS * ELEVATION_STEPS;
+    }
+
+    /* the azimuth of direction d of the grid */
+    static float getAzimuth(int d) {
+        return (float) (2.0 * Math.PI * (d % AZIMUTH_STEPS) / AZIMUTH_STEPS - Math.PI);
+    }
+
+    /* the elevation of direction d of the grid */
+    static float getElevation(int d) {
+        return MIN_ELEVATION + (MAX_ELEVATION - MIN_ELEVATION) * (d / AZIMUTH_STEPS)
+                               / (ELEVATION_STEPS - 1);
+    }
+
+    /* the direction of the grid nearest (azimuth, elevation), elevations beyond the grid being
+     * taken at its edge */
+    static int indexOf(float azimuth, float elevation) {
+        float turns = (azimuth + (float) Math.PI) / (2.0f * (float) Math.PI);
+        int a = Math.round((turns - (float) Math.floor(turns)) * AZIMUTH_STEPS);
+        if (a == AZIMUTH_STEPS)
+            a = 0;
+        int e = Math.round((elevation - MIN_ELEVATION) / (MAX_ELEVATION - MIN_ELEVATION)
+                           * (ELEVATION_STEPS - 1));
+        e = Math.max(0, Math.min(ELEVATION_STEPS - 1, e));
+        return e * AZIMUTH_STEPS + a;
+    }
+
+    /* the response of ear (LEFT or RIGHT) for direction d of the grid; not to be modified */
+    float[] getImpulseResponse(int d, int ear) {
+        return responses[2 * d + ear];
+    }
+}
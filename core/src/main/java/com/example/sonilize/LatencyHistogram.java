@@ -0,0 +1,142 @@
+package com.example.sonilize;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* a histogram of durations in nanoseconds over fixed log-linear buckets, in the manner of
+ * HdrHistogram: durations below 2 * SUB_BUCKETS nanoseconds have a bucket each, and every
+ * further power of two is split into SUB_BUCKETS buckets, so that any duration is known to
+ * within 1 / SUB_BUCKETS of itself; durations from MAX_NANOS on share the last bucket
+ *
+ * recording is lock-free and allocation-free, so any number of threads may record into the
+ * same histogram on their hot path; readers take a Snapshot, whose counts are consistent per
+ * bucket (a recording in progress may show up in some totals and not yet in others)
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // about 18 minutes
+    static final int MAX_BITS = 40;
+    static final long MAX_NANOS = 1L << MAX_BITS;
+    static final int NUM_BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /* constructor */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(NUM_BUCKETS);
+        total = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /* add a duration, in nanoseconds; negative durations count as 0 */
+    public void record(long nanos) {
+        if (nanos < 0L)
+            nanos = 0L;
+        counts.incrementAndGet(bucketOf(nanos));
+        total.incrementAndGet();
+        sum.addAndGet(nanos);
+        long seen = max.get();
+        while (nanos > seen && !max.compareAndSet(seen, nanos))
+            seen = max.get();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos >= MAX_NANOS)
+            return NUM_BUCKETS - 1;
+        int msb = 63 - Long.numberOfLeadingZeros(nanos | 1L);
+        if (msb <= SUB_BUCKET_BITS)
+            return (int) nanos;
+        // the leading one and the SUB_BUCKET_BITS bits after it
+        int shift = msb - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+    }
+
+    /* the smallest duration of a bucket */
+    static long lowestOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    /* the largest duration of a bucket */
+    static long highestOf(int bucket) {
+        return bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : lowestOf(bucket + 1) - 1;
+    }
+
+    /* a copy of the current counts */
+    public Snapshot snapshot() {
+        long[] copy = new long[NUM_BUCKETS];
+        for (int b = 0; b < NUM_BUCKETS; b++)
+            copy[b] = counts.get(b);
+        return new Snapshot(copy, total.get(), sum.get(), max.get());
+    }
+
+    /* the counts of a histogram at some point, or between two points */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long total, long sum, long max) {
+            this.counts = counts;
+            this.total = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /* the durations recorded since earlier, a snapshot of the same histogram; the largest
+         * duration is that of the latest bucket holding any of them */
+        public Snapshot minus(Snapshot earlier) {
+            long[] difference = new long[NUM_BUCKETS];
+            int last = -1;
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                difference[b] = counts[b] - earlier.counts[b];
+                if (difference[b] > 0)
+                    last = b;
+            }
+            long intervalMax = last < 0 ? 0L : Math.min(max, highestOf(last));
+            return new Snapshot(difference, total - earlier.total, sum - earlier.sum,
+                                intervalMax);
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /* the mean duration, in nanoseconds, 0 if there is none */
+        public double getMean() {
+            return total == 0 ? 0.0 : (double) sum / total;
+        }
+
+        /* the largest duration, in nanoseconds */
+        public long getMax() {
+            return max;
+        }
+
+        /* the duration, in nanoseconds, at or below which a fraction q of all fall (to within
+         * the precision of the buckets), 0 if there is none */
+        public long getPercentile(double q) {
+            long count = 0;
+            for (int b = 0; b < NUM_BUCKETS; b++)
+                count += counts[b];
+            if (count == 0)
+                return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= rank)
+                    return Math.min(max, highestOf(b));
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.sonilize;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* a software mixer of looped mono voices into interleaved stereo floats; each voice has a
+ * target left and right gain and a playing flag, set from any thread, towards which its actual
+ * gains move by at most 1/rampFrames per frame so that changes never click; a paused voice
+ * fades out and then stops advancing, resuming where it left off; render() is meant to run on
+ * a single audio thread and allocates nothing; a voice whose loop is not set yet stays silent,
+ * and fades in once it is
+ *
+ * given a BinauralRenderer, voices are rendered binaurally instead: each is mixed in mono, at
+ * the sum of its gains (its volume, however it is panned), and convolved with the head-related
+ * responses of its direction, set like its gains from any thread; the output is then one block
+ * of the renderer late */
+class MixerEngine {
+
+    private final AtomicReferenceArray<float[]> loops;
+    private final int numVoices;
+    private final float rampStep;
+
+    // written by the control side: gains as float bits, playing as 0 or 1
+    private final AtomicIntegerArray targetLefts;
+    private final AtomicIntegerArray targetRights;
+    private final AtomicIntegerArray playing;
+    // azimuths and elevations as float bits
+    private final AtomicIntegerArray azimuths;
+    private final AtomicIntegerArray elevations;
+
+    // owned by the rendering thread
+    private final float[] lefts;
+    private final float[] rights;
+    private final int[] positions;
+    private int audibleVoices;
+    private BinauralRenderer binaural;
+    private final boolean[] heard;
+
+    /* constructor; voice v loops over loops[v], whose samples are between -1.0 and 1.0; a gain
+     * change of 1.0 takes rampFrames frames */
+    MixerEngine(float[][] loops, int rampFrames) {
+        this(loops.length, rampFrames);
+        for (int v = 0; v < numVoices; v++)
+            setLoop(v, loops[v]);
+    }
+
+    /* constructor, for numVoices voices whose loops are set later */
+    MixerEngine(int numVoices, int rampFrames) {
+        if (rampFrames <= 0)
+            throw new IllegalArgumentException("Ramp length must be positive");
+        loops = new AtomicReferenceArray<>(numVoices);
+        this.numVoices = numVoices;
+        rampStep = 1.0f / rampFrames;
+        targetLefts = new AtomicIntegerArray(numVoices);
+        targetRights = new AtomicIntegerArray(numVoices);
+        playing = new AtomicIntegerArray(numVoices);
+        azimuths = new AtomicIntegerArray(numVoices);
+        elevations = new AtomicIntegerArray(numVoices);
+        lefts = new float[numVoices];
+        rights = new float[numVoices];
+        positions = new int[numVoices];
+        heard = new boolean[numVoices];
+    }
+
+    int getNumVoices() {
+        return numVoices;
+    }
+
+    /* set the samples voice v loops over, between -1.0 and 1.0; may be called from any thread,
+     * once per voice */
+    void setLoop(int voice, float[] loop) {
+        if (loop.length == 0)
+            throw new IllegalArgumentException("Loops must not be empty");
+        if (!loops.compareAndSet(voice, null, loop))
+            throw new IllegalStateException("Loop of voice " + voice + " already set");
+    }
+
+    /* the number of voices heard in the last block rendered; to be called from the rendering
+     * thread */
+    int getAudibleVoices() {
+        return audibleVoices;
+    }
+
+    /* set the target gains of a voice and whether it plays; may be called from any thread */
+    void setVoice(int voice, float leftGain, float rightGain, boolean play) {
+        targetLefts.set(voice, Float.floatToRawIntBits(leftGain));
+        targetRights.set(voice, Float.floatToRawIntBits(rightGain));
+        playing.set(voice, play ? 1 : 0);
+    }
+
+    /* set the direction of a voice, for binaural rendering: azimuth and elevation in radians,
+     * as for Hrtf; may be called from any thread */
+    void setDirection(int voice, float azimuth, float elevation) {
+        azimuths.set(voice, Float.floatToRawIntBits(azimuth));
+        elevations.set(voice, Float.floatToRawIntBits(elevation));
+    }
+
+    /* render voices binaurally through renderer, of at least as many voices, from now on (or
+     * panned, with null); to be called from the rendering thread */
+    void setBinaural(BinauralRenderer renderer) {
+        if (renderer != null && renderer.getNumVoices() < numVoices)
+            throw new IllegalArgumentException("Binaural renderer of too few voices");
+        binaural = renderer;
+    }
+
+    /* mix the next frames frames of all voices into out, from index offset on, as interleaved
+     * left and right samples (overwriting what was there) */
+    void render(float[] out, int offset, int frames) {
+        if (binaural != null) {
+            renderBinaural(out, offset, frames);
+            return;
+        }
+        int end = offset + 2 * frames;
+        for (int k = offset; k < end; k++)
+            out[k] = 0.0f;
+        audibleVoices = 0;
+        for (int v = 0; v < numVoices; v++)
+            if (mix(v, out, offset, frames, 2))
+                audibleVoices++;
+    }
+
+    private void renderBinaural(float[] out, int offset, int frames) {
+        for (int v = 0; v < numVoices; v++)
+            heard[v] = false;
+        while (frames > 0) {
+            int chunk = Math.min(frames, binaural.getFramesLeft());
+            for (int v = 0; v < numVoices; v++) {
+                binaural.setDirection(v, Float.intBitsToFloat(azimuths.get(v)),
+                                      Float.intBitsToFloat(elevations.get(v)));
+                if (mix(v, binaural.getInput(v), binaural.getPosition(), chunk, 1)) {
+                    binaural.markHeard(v);
+                    heard[v] = true;
+                }
+            }
+            binaural.advance(out, offset, chunk);
+            offset += 2 * chunk;
+            frames -= chunk;
+        }
+        audibleVoices = 0;
+        for (int v = 0; v < numVoices; v++)
+            if (heard[v])
+                audibleVoices++;
+    }
+
+    /* add the next frames frames of voice v to out from index offset on, as interleaved left
+     * and right samples with 2 channels, or at the sum of the gains with 1; returns false if
+     * the voice is silent */
+    private boolean mix(int v, float[] out, int offset, int frames, int channels) {
+        float[] loop = loops.get(v);
+        if (loop == null)
+            return false;
+        float targetLeft = 0.0f;
+        float targetRight = 0.0f;
+        if (playing.get(v) != 0) {
+            targetLeft = Float.intBitsToFloat(targetLefts.get(v));
+            targetRight = Float.intBitsToFloat(targetRights.get(v));
+        }
+        float left = lefts[v];
+        float right = rights[v];
+        if (left == 0.0f && right == 0.0f && targetLeft == 0.0f && targetRight == 0.0f)
+            return false;
+        int position = positions[v];
+        int end = offset + channels * frames;
+        int k = offset;
+        // ramp towards the targets, then mix at constant gains
+        while (k < end && (left != targetLeft || right != targetRight)) {
+            left = approach(left, targetLeft);
+            right = approach(right, targetRight);
+            float sample = loop[position];
+            if (channels == 2) {
+                out[k] += sample * left;
+                out[k + 1] += sample * right;
+            }
+            else {
+                out[k] += sample * (left + right);
+            }
+            k += channels;
+            if (++position == loop.length)
+                position = 0;
+        }
+        if (left != 0.0f || right != 0.0f) {
+            while (k < end) {
+                int run = Math.min((end - k) / channels, loop.length - position);
+                if (channels == 2) {
+                    for (int i = 0; i < run; i++) {
+                        float sample = loop[position + i];
+                        out[k] += sample * left;
+                        out[k + 1] += sample * right;
+                        k += 2;
+                    }
+                }
+                else {
+                    float gain = left + right;
+                    for (int i = 0; i < run; i++)
+                        out[k++] += loop[position + i] * gain;
+                }
+                position += run;
+                if (position == loop.length)
+                    position = 0;
+            }
+        }
+        lefts[v] = left;
+        rights[v] = right;
+        positions[v] = position;
+        return true;
+    }
+
+    private float approach(float gain, float target) {
+        if (gain < target)
+            return Math.min(target, gain + rampStep);
+        else
+            return Math.max(target, gain - rampStep);
+    }
+}
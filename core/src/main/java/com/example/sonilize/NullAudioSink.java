@@ -0,0 +1,52 @@
+package com.example.sonilize;
+
+/* an AudioSink that plays nothing, keeping the state of its sounds in a VoiceAllocator so that
+ * the tracker can be exercised, and its use of sounds checked, without an audio device */
+class NullAudioSink implements AudioSink {
+
+    private final VoiceAllocator voices;
+    private long volPanUpdates;
+
+    NullAudioSink(int numSounds) {
+        voices = new VoiceAllocator(numSounds);
+    }
+
+    @Override
+    public int activateLeastRecent() {
+        return voices.activateLeastRecent();
+    }
+
+    @Override
+    public void deactivate(int streamID) {
+        voices.deactivate(streamID);
+    }
+
+    @Override
+    public void play(int streamID) {
+        voices.play(streamID);
+    }
+
+    @Override
+    public void pause(int streamID) {
+        voices.pause(streamID);
+    }
+
+    @Override
+    public void setVolPan(int streamID, float vol, float pan) {
+        voices.setVolPan(streamID, vol, pan);
+        volPanUpdates++;
+    }
+
+    @Override
+    public void setDirection(int streamID, float azimuth, float elevation) {
+        voices.setDirection(streamID, azimuth, elevation);
+    }
+
+    long getVolPanUpdates() {
+        return volPanUpdates;
+    }
+
+    VoiceAllocator getVoices() {
+        return voices;
+    }
+}
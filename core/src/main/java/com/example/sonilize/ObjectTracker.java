@@ -0,0 +1,407 @@
+package com.example.sonilize;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/* tracks blobs from one frame to the next as Things, each with its own sound in an AudioSink;
+ * the volume of a sound follows the distance of its thing and the pan its longitude
+ *
+ * each frame, things are moved ahead by their Kalman filters, then matched to blobs: a spatial
+ * hash of the blobs with cells epsilon wide yields, for each thing, the blobs within epsilon of
+ * its predicted position; things and blobs linked this way fall into independent clusters,
+ * each solved for the assignment of least total squared distance; a thing without a blob
+ * coasts on its prediction for up to maxCoastFrames frames before its sound is released;
+ * things are tracked in world coordinates when the pose of the camera is known, so that
+ * turning the head does not move them, and seen back from the camera for their sounds;
+ * apart from new things, nothing is allocated per frame
+ */
+class ObjectTracker {
+
+    // variance of the blob centroids as measurements of object positions, in m^2
+    private static final float MEASUREMENT_VAR = 0.0025f;
+    // variance of the acceleration of objects (in the tracking frame), in (m/s^2)^2
+    private static final float ACCEL_VAR = 1.0f;
+    // variance of the velocity of an object first seen, in (m/s)^2
+    private static final float INITIAL_VELOCITY_VAR = 1.0f;
+    // time steps beyond this, in seconds, are deemed to be pauses
+    private static final double MAX_TIME_STEP = 1.0;
+
+    private final AudioSink sink;
+    private final int maxNumThings;
+    private final float epsilon;
+    private final float horizSpan;
+    private final float maxDistance;
+    private final int maxCoastFrames;
+    private Vector<Thing> things;
+    private Vector<Thing> newThings;
+    private double lastTimestamp = Double.NaN;
+
+    // blob centroids of the current frame in the tracking frame
+    private final float[] blobX;
+    private final float[] blobY;
+    private final float[] blobZ;
+    private final float[] scratch = new float[3];
+
+    // matching buffers, sized for maxNumThings things and as many blobs
+    private final int[] thingToBlob;
+    private final int[] blobToThing;
+    private final int[] edgeThings;
+    private final int[] edgeBlobs;
+    private final float[] edgeCosts;
+    private int numEdges;
+    // union-find over things (0 .. numThings - 1) then blobs
+    private final int[] parent;
+    private final int[] clusterOfNode;
+    private final int[] clusterStart;
+    private final int[] clusterNodes;
+    private final int[] localIndex;
+    private final int[] clusterEdgeStart;
+    private final int[] clusterEdges;
+    private final int[] localThings;
+    private final int[] localBlobs;
+    private final float[] costs;
+    private final int[] localAssignment;
+    private final AssignmentSolver solver;
+
+    // spatial hash of the blobs: open addressing on cell keys, chained through blobNext
+    private final long[] hashKeys;
+    private final int[] hashHeads;
+    private final int[] hashStamps;
+    private final int[] blobNext;
+    private int stamp;
+
+    /* constructor; blobs are deemed to be the same object if they are at most epsilon apart
+     * in two consecutive frames, once the motion of the object is accounted for */
+    ObjectTracker(AudioSink sink, int maxNumThings, float epsilon,
+                  float horizSpan, float maxDistance, int maxCoastFrames) {
+        this.sink = sink;
+        this.maxNumThings = maxNumThings;
+        this.epsilon = epsilon;
+        this.horizSpan = horizSpan;
+        this.maxDistance = maxDistance;
+        this.maxCoastFrames = maxCoastFrames;
+        things = new Vector<>(maxNumThings);
+        newThings = new Vector<>(maxNumThings);
+
+        int n = maxNumThings;
+        blobX = new float[n];
+        blobY = new float[n];
+        blobZ = new float[n];
+        thingToBlob = new int[n];
+        blobToThing = new int[n];
+        edgeThings = new int[n * n];
+        edgeBlobs = new int[n * n];
+        edgeCosts = new float[n * n];
+        parent = new int[2 * n];
+        clusterOfNode = new int[2 * n];
+        clusterStart = new int[2 * n + 1];
+        clusterNodes = new int[2 * n];
+        localIndex = new int[2 * n];
+        clusterEdgeStart = new int[2 * n + 1];
+        clusterEdges = new int[n * n];
+        localThings = new int[n];
+        localBlobs = new int[n];
+        costs = new float[n * n];
+        localAssignment = new int[n];
+        solver = new AssignmentSolver(n, n);
+
+        int tableSize = Integer.highestOneBit(Math.max(1, 4 * n - 1)) << 1;
+        hashKeys = new long[tableSize];
+        hashHeads = new int[tableSize];
+        hashStamps = new int[tableSize];
+        blobNext = new int[n];
+    }
+
+    /* the things currently tracked */
+    Vector<Thing> getThings() {
+        return things;
+    }
+
+    /* get the audio pan associated with the lateral position of thing */
+    float panOfThing(Thing thing) {
+        return panOf(thing.averageTheta, horizSpan);
+    }
+
+    /* get the audio volume associated with the distance of thing */
+    float volOfThing(Thing thing) {
+        return volumeOf(thing.averageR, maxDistance);
+    }
+
+    /* the pan of a sound at longitude theta, for a grid spanning horizSpan */
+    static float panOf(float theta, float horizSpan) {
+        float pan = - theta / (horizSpan / 2.0f);
+        return Math.max(-1.0f, Math.min(1.0f, pan));
+    }
+
+    /* the volume of a sound at distance r, for objects tracked up to maxDistance */
+    static float volumeOf(float r, float maxDistance) {
+        return (float) Math.pow(2.0, -4.0 * r / maxDistance);
+    }
+
+    /* update all the things by tracking the blobs of a frame taken at timestamp (in seconds),
+     * the camera being posed in the tracking frame by cameraToWorld (the identity to track in
+     * camera coordinates); blobs beyond the first maxNumThings are ignored */
+    void update(BlobTable blobs, double timestamp, RigidTransform cameraToWorld) {
+        float dt = 0.0f;
+        if (!Double.isNaN(lastTimestamp))
+            dt = (float) Math.max(0.0, Math.min(MAX_TIME_STEP, timestamp - lastTimestamp));
+        lastTimestamp = timestamp;
+        for (int t = 0; t < things.size(); t++)
+            things.elementAt(t).predict(dt, ACCEL_VAR);
+
+        int numBlobs = Math.min(blobs.getCount(), maxNumThings);
+        for (int b = 0; b < numBlobs; b++) {
+            cameraToWorld.apply(blobs.getX(b), blobs.getY(b), blobs.getZ(b), scratch);
+            blobX[b] = scratch[0];
+            blobY[b] = scratch[1];
+            blobZ[b] = scratch[2];
+        }
+        match(numBlobs);
+
+        // matched things follow their blob, the others coast or are discarded
+        for (int t = 0; t < things.size(); t++) {
+            Thing thing = things.elementAt(t);
+            int b = thingToBlob[t];
+            if (b >= 0) {
+                thing.correct(blobX[b], blobY[b], blobZ[b], MEASUREMENT_VAR);
+                thing.misses = 0;
+            }
+            else {
+                thing.misses++;
+            }
+            if (thing.misses > maxCoastFrames) {
+                discard(thing);
+            }
+            else {
+                see(thing, cameraToWorld);
+                sound(thing);
+                newThings.add(thing);
+            }
+        }
+
+        // unmatched blobs, nearest first, become new things, displacing the longest coasting
+        // things if need be
+        for (int b = 0; b < numBlobs; b++) {
+            if (blobToThing[b] >= 0)
+                continue;
+            if (newThings.size() == maxNumThings) {
+                int victim = -1;
+                for (int t = 0; t < newThings.size(); t++) {
+                    int misses = newThings.elementAt(t).misses;
+                    if (misses > 0 && (victim < 0 || misses > newThings.elementAt(victim).misses))
+                        victim = t;
+                }
+                if (victim < 0)
+                    break;
+                discard(newThings.remove(victim));
+            }
+            Thing thing = new Thing(blobX[b], blobY[b], blobZ[b], sink.activateLeastRecent(),
+                                    MEASUREMENT_VAR, INITIAL_VELOCITY_VAR);
+            see(thing, cameraToWorld);
+            sound(thing);
+            sink.play(thing.streamID);
+            newThings.add(thing);
+        }
+
+        // swap the lists, reusing the old one for the next frame
+        Vector<Thing> oldThings = things;
+        things = newThings;
+        newThings = oldThings;
+        newThings.clear();
+    }
+
+    /* set the distance and longitude of thing as seen from the camera */
+    private void see(Thing thing, RigidTransform cameraToWorld) {
+        cameraToWorld.applyInverse(thing.position[0], thing.position[1], thing.position[2],
+                                   scratch);
+        thing.setSeenAt(scratch[0], scratch[1], scratch[2]);
+    }
+
+    /* position the sound of thing where it is seen: volume and pan, and direction, its azimuth
+     * on the side of its pan */
+    private void sound(Thing thing) {
+        sink.setVolPan(thing.streamID, volOfThing(thing), panOfThing(thing));
+        sink.setDirection(thing.streamID, azimuthOf(thing.averageTheta), thing.averagePhi);
+    }
+
+    /* the azimuth of a sound at longitude theta, on the side of its pan */
+    static float azimuthOf(float theta) {
+        return -theta;
+    }
+
+    /* release the sound of a thing that has disappeared from the visual field */
+    private void discard(Thing thing) {
+        sink.pause(thing.streamID);
+        sink.deactivate(thing.streamID);
+    }
+
+    /* fill thingToBlob and blobToThing with the best assignment of things to the first
+     * numBlobs blobs */
+    private void match(int numBlobs) {
+        int numThings = things.size();
+        Arrays.fill(thingToBlob, 0, numThings, -1);
+        Arrays.fill(blobToThing, 0, numBlobs, -1);
+        if (numThings == 0 || numBlobs == 0)
+            return;
+        gate(numBlobs);
+        if (numEdges == 0)
+            return;
+
+        // clusters of things and blobs linked by gated pairs
+        int numNodes = numThings + numBlobs;
+        for (int k = 0; k < numNodes; k++)
+            parent[k] = k;
+        for (int e = 0; e < numEdges; e++)
+            union(edgeThings[e], numThings + edgeBlobs[e]);
+        int numClusters = 0;
+        for (int k = 0; k < numNodes; k++) {
+            int root = find(k);
+            if (root == k)
+                clusterOfNode[k] = numClusters++;
+        }
+        for (int k = 0; k < numNodes; k++)
+            clusterOfNode[k] = clusterOfNode[find(k)];
+
+        // bucket nodes and edges by cluster (counting sort, keeping their order)
+        Arrays.fill(clusterStart, 0, numClusters + 1, 0);
+        Arrays.fill(clusterEdgeStart, 0, numClusters + 1, 0);
+        for (int k = 0; k < numNodes; k++)
+            clusterStart[clusterOfNode[k] + 1]++;
+        for (int e = 0; e < numEdges; e++)
+            clusterEdgeStart[clusterOfNode[edgeThings[e]] + 1]++;
+        for (int c = 0; c < numClusters; c++) {
+            clusterStart[c + 1] += clusterStart[c];
+            clusterEdgeStart[c + 1] += clusterEdgeStart[c];
+        }
+        for (int k = 0; k < numNodes; k++)
+            clusterNodes[clusterStart[clusterOfNode[k]]++] = k;
+        for (int e = 0; e < numEdges; e++)
+            clusterEdges[clusterEdgeStart[clusterOfNode[edgeThings[e]]]++] = e;
+        // the fills above moved each start to the next cluster's, shift them back
+        for (int c = numClusters; c > 0; c--) {
+            clusterStart[c] = clusterStart[c - 1];
+            clusterEdgeStart[c] = clusterEdgeStart[c - 1];
+        }
+        clusterStart[0] = 0;
+        clusterEdgeStart[0] = 0;
+
+        for (int c = 0; c < numClusters; c++) {
+            if (clusterEdgeStart[c] == clusterEdgeStart[c + 1])
+                continue;
+            int rows = 0;
+            int cols = 0;
+            for (int i = clusterStart[c]; i < clusterStart[c + 1]; i++) {
+                int node = clusterNodes[i];
+                if (node < numThings) {
+                    localIndex[node] = rows;
+                    localThings[rows++] = node;
+                }
+                else {
+                    localIndex[node] = cols;
+                    localBlobs[cols++] = node - numThings;
+                }
+            }
+            float noMatch = noMatchCost(rows, cols, epsilon * epsilon);
+            Arrays.fill(costs, 0, rows * cols, noMatch);
+            for (int i = clusterEdgeStart[c]; i < clusterEdgeStart[c + 1]; i++) {
+                int e = clusterEdges[i];
+                costs[localIndex[edgeThings[e]] * cols + localIndex[numThings + edgeBlobs[e]]] =
+                        edgeCosts[e];
+            }
+            solver.solve(costs, rows, cols, localAssignment);
+            for (int r = 0; r < rows; r++) {
+                int col = localAssignment[r];
+                if (col < 0 || costs[r * cols + col] >= noMatch)
+                    continue;
+                thingToBlob[localThings[r]] = localBlobs[col];
+                blobToThing[localBlobs[col]] = localThings[r];
+            }
+        }
+    }
+
+    /* the cost of a thing and a blob too far apart to be matched, in a cluster of rows things
+     * and cols blobs whose gated pairs cost at most epsilonSq: above the cost of any matching
+     * of gated pairs alone, so that as many are matched as can be, yet small enough not to
+     * drown their costs in the precision of the solver */
+    static float noMatchCost(int rows, int cols, float epsilonSq) {
+        return Math.min(rows, cols) * epsilonSq + 1.0f;
+    }
+
+    /* list the pairs of things and blobs at most epsilon apart, using the spatial hash */
+    private void gate(int numBlobs) {
+        stamp++;
+        int mask = hashKeys.length - 1;
+        for (int b = 0; b < numBlobs; b++) {
+            long key = cellKey(cell(blobX[b]), cell(blobY[b]), cell(blobZ[b]));
+            int slot = slotOf(key, mask);
+            if (hashStamps[slot] != stamp) {
+                hashStamps[slot] = stamp;
+                hashKeys[slot] = key;
+                hashHeads[slot] = -1;
+            }
+            blobNext[b] = hashHeads[slot];
+            hashHeads[slot] = b;
+        }
+
+        numEdges = 0;
+        float epsilonSq = epsilon * epsilon;
+        for (int t = 0; t < things.size(); t++) {
+            Thing thing = things.elementAt(t);
+            int cx = cell(thing.position[0]);
+            int cy = cell(thing.position[1]);
+            int cz = cell(thing.position[2]);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        long key = cellKey(cx + dx, cy + dy, cz + dz);
+                        int slot = slotOf(key, mask);
+                        if (hashStamps[slot] != stamp)
+                            continue;
+                        for (int b = hashHeads[slot]; b >= 0; b = blobNext[b]) {
+                            float d = thing.distanceSqTo(blobX[b], blobY[b], blobZ[b]);
+                            if (d <= epsilonSq) {
+                                edgeThings[numEdges] = t;
+                                edgeBlobs[numEdges] = b;
+                                edgeCosts[numEdges] = d;
+                                numEdges++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / epsilon);
+    }
+
+    private static long cellKey(int cx, int cy, int cz) {
+        return ((long) (cx & 0x1fffff) << 42) | ((long) (cy & 0x1fffff) << 21) | (cz & 0x1fffff);
+    }
+
+    /* the slot of key in the hash table, probing linearly past slots of other keys */
+    private int slotOf(long key, int mask) {
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (hashStamps[slot] == stamp && hashKeys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int find(int k) {
+        while (parent[k] != k) {
+            parent[k] = parent[parent[k]];
+            k = parent[k];
+        }
+        return k;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA < rootB)
+            parent[rootB] = rootA;
+        else if (rootB < rootA)
+            parent[rootA] = rootB;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.sonilize;
+
+import java.util.Arrays;
+
+/* convolves a mono signal with a pair of filters, one per ear, block after block of blockSize
+ * frames, by uniformly partitioned overlap-save convolution over transforms of twice that
+ * size: each filter is cut into partitions of blockSize taps whose spectra are computed once
+ * (a Filter, shared by every convolver), the spectra of the last input blocks are kept in a
+ * frequency-domain delay line, and a block costs one forward transform, one multiply-add per
+ * partition, ear and bin of half the spectrum (those of real signals being conjugate-symmetric),
+ * and a single inverse transform for both ears, their real outputs carried as the real and the
+ * imaginary part of one signal; the output of a block is that of the input up to its end, with
+ * no latency of its own
+ *
+ * changing filters crossfades, over one block, from the output of the old ones to that of the
+ * new ones, both computed from the same delay line so that neither has a transient; nothing is
+ * allocated after construction
+ */
+class PartitionedConvolver {
+
+    /* the spectra of the partitions of a pair of filters */
+    static class Filter {
+        final int blockSize;
+        final int numPartitions;
+        // per ear, left then right, the bins 0 to blockSize of each partition, one after the
+        // other
+        final float[][] re;
+        final float[][] im;
+
+        /* constructor, for filters left and right cut into partitions of blockSize taps, fft
+         * being of twice that size */
+        Filter(float[] left, float[] right, int blockSize, Fft fft) {
+            if (fft.getSize() != 2 * blockSize)
+                throw new IllegalArgumentException("FFT size must be twice the block size");
+            this.blockSize = blockSize;
+            int bins = blockSize + 1;
+            numPartitions = Math.max(1, (Math.max(left.length, right.length) + blockSize - 1)
+                                        / blockSize);
+            re = new float[2][numPartitions * bins];
+            im = new float[2][numPartitions * bins];
+            float[] workRe = new float[2 * blockSize];
+            float[] workIm = new float[2 * blockSize];
+            float[][] filters = {left, right};
+            for (int ear = 0; ear < 2; ear++) {
+                for (int p = 0; p < numPartitions; p++) {
+                    // a partition padded with zeros, as overlap-save wants
+                    for (int n = 0; n < 2 * blockSize; n++) {
+                        int tap = p * blockSize + n;
+                        workRe[n] = n < blockSize && tap < filters[ear].length
+                                    ? filters[ear][tap] : 0.0f;
+                        workIm[n] = 0.0f;
+                    }
+                    fft.forward(workRe, workIm);
+                    System.arraycopy(workRe, 0, re[ear], p * bins, bins);
+                    System.arraycopy(workIm, 0, im[ear], p * bins, bins);
+                }
+            }
+        }
+    }
+
+    private final int blockSize;
+    private final int numPartitions;
+    private final int bins;
+    private final Fft fft;
+    // the previous and the current input block
+    private final float[] window;
+    // spectra of the last numPartitions input blocks, the latest at slot head
+    private final float[] delayRe;
+    private final float[] delayIm;
+    private int head;
+    private final float[] workRe;
+    private final float[] workIm;
+    // the spectra of both ears, accumulated over the partitions
+    private final float[] leftRe;
+    private final float[] leftIm;
+    private final float[] rightRe;
+    private final float[] rightIm;
+    // the output of the old filters while crossfading, interleaved
+    private final float[] faded;
+
+    /* constructor, for blocks of blockSize frames and filters of at most numPartitions
+     * partitions, fft being of twice blockSize */
+    PartitionedConvolver(int blockSize, int numPartitions, Fft fft) {
+        if (fft.getSize() != 2 * blockSize)
+            throw new IllegalArgumentException("FFT size must be twice the block size");
+        if (numPartitions <= 0)
+            throw new IllegalArgumentException("Number of partitions must be positive");
+        this.blockSize = blockSize;
+        this.numPartitions = numPartitions;
+        bins = blockSize + 1;
+        this.fft = fft;
+        window = new float[2 * blockSize];
+        delayRe = new float[numPartitions * bins];
+        delayIm = new float[numPartitions * bins];
+        workRe = new float[2 * blockSize];
+        workIm = new float[2 * blockSize];
+        leftRe = new float[bins];
+        leftIm = new float[bins];
+        rightRe = new float[bins];
+        rightIm = new float[bins];
+        faded = new float[2 * blockSize];
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /* forget all past input */
+    void reset() {
+        Arrays.fill(window, 0.0f);
+        Arrays.fill(delayRe, 0.0f);
+        Arrays.fill(delayIm, 0.0f);
+        head = 0;
+    }
+
+    /* convolve the next blockSize samples of in, from inOffset on, adding the left and right
+     * outputs, interleaved, to out from outOffset on; with previous not null, crossfade from
+     * its output to that of filter */
+    void process(float[] in, int inOffset, Filter filter, Filter previous, float[] out,
+                 int outOffset) {
+        if (filter.blockSize != blockSize || previous != null && previous.blockSize != blockSize)
+            throw new IllegalArgumentException("Filter of another block size");
+        if (filter.numPartitions > numPartitions
+                || previous != null && previous.numPartitions > numPartitions)
+            throw new IllegalArgumentException("Filter longer than the delay line");
+        System.arraycopy(window, blockSize, window, 0, blockSize);
+        System.arraycopy(in, inOffset, window, blockSize, blockSize);
+        System.arraycopy(window, 0, workRe, 0, 2 * blockSize);
+        Arrays.fill(workIm, 0.0f);
+        fft.forward(workRe, workIm);
+        head = head + 1 == numPartitions ? 0 : head + 1;
+        System.arraycopy(workRe, 0, delayRe, head * bins, bins);
+        System.arraycopy(workIm, 0, delayIm, head * bins, bins);
+
+        if (previous != null && previous != filter) {
+            Arrays.fill(faded, 0.0f);
+            convolve(previous, faded, 0);
+            float step = 1.0f / (blockSize + 1);
+            for (int n = 0; n < blockSize; n++) {
+                float gain = 1.0f - (n + 1) * step;
+                out[outOffset + 2 * n] += gain * faded[2 * n];
+                out[outOffset + 2 * n + 1] += gain * faded[2 * n + 1];
+                faded[2 * n] = 0.0f;
+                faded[2 * n + 1] = 0.0f;
+            }
+            convolve(filter, faded, 0);
+            for (int n = 0; n < blockSize; n++) {
+                float gain = (n + 1) * step;
+                out[outOffset + 2 * n] += gain * faded[2 * n];
+                out[outOffset + 2 * n + 1] += gain * faded[2 * n + 1];
+            }
+        }
+        else {
+            convolve(filter, out, outOffset);
+        }
+    }
+
+    /* add the output of filter over the delay line to out */
+    private void convolve(Filter filter, float[] out, int outOffset) {
+        Arrays.fill(leftRe, 0.0f);
+        Arrays.fill(leftIm, 0.0f);
+        Arrays.fill(rightRe, 0.0f);
+        Arrays.fill(rightIm, 0.0f);
+        float[] hlRe = filter.re[0];
+        float[] hlIm = filter.im[0];
+        float[] hrRe = filter.re[1];
+        float[] hrIm = filter.im[1];
+        int slot = head;
+        for (int p = 0; p < filter.numPartitions; p++) {
+            int x = slot * bins;
+            int h = p * bins;
+            for (int k = 0; k < bins; k++) {
+                float xr = delayRe[x + k];
+                float xi = delayIm[x + k];
+                leftRe[k] += xr * hlRe[h + k] - xi * hlIm[h + k];
+                leftIm[k] += xr * hlIm[h + k] + xi * hlRe[h + k];
+                rightRe[k] += xr * hrRe[h + k] - xi * hrIm[h + k];
+                rightIm[k] += xr * hrIm[h + k] + xi * hrRe[h + k];
+            }
+            slot = slot == 0 ? numPartitions - 1 : slot - 1;
+        }
+        // L + i R, over the whole spectrum
+        int size = 2 * blockSize;
+        for (int k = 0; k < bins; k++) {
+            workRe[k] = leftRe[k] - rightIm[k];
+            workIm[k] = leftIm[k] + rightRe[k];
+        }
+        for (int k = 1; k < blockSize; k++) {
+            workRe[size - k] = leftRe[k] + rightIm[k];
+            workIm[size - k] = rightRe[k] - leftIm[k];
+        }
+        fft.inverse(workRe, workIm);
+        // the last half is free of circular wrap-around
+        for (int n = 0; n < blockSize; n++) {
+            out[outOffset + 2 * n] += workRe[blockSize + n];
+            out[outOffset + 2 * n + 1] += workIm[blockSize + n];
+        }
+    }
+}
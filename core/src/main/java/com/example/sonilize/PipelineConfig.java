@@ -0,0 +1,281 @@
+package com.example.sonilize;
+
+/* the parameters of a DepthPipeline; built with a PipelineConfig.Builder, whose defaults are
+ * the values the app was tuned with (a 64x64 grid over a half-sphere, up to 4 objects within
+ * 1.5 m made up of at least 50 cells, matched across frames within 0.4 m and kept through up to
+ * 3 frames without a match) */
+public final class PipelineConfig {
+
+    private static final int DEFAULT_RES = 64;
+    private static final int DEFAULT_MIN_BLOB_SIZE = 50;
+    private static final int DEFAULT_MAX_VOXELS = 32768;
+    private static final int DEFAULT_RESOLUTION_LEVELS = 3;
+    private static final int DEFAULT_MAX_STRIDE = 8;
+    private static final int DEFAULT_MAX_STALE_FRAMES = 5;
+
+    private final float horizAngularSpan;
+    private final float vertAngularSpan;
+    private final int horizRes;
+    private final int vertRes;
+    private final int maxNumThings;
+    private final float maxDistance;
+    private final int minBlobSize;
+    private final float epsilon;
+    private final int maxCoastFrames;
+    private final int quantizationThreads;
+    private final float voxelSize;
+    private final int maxVoxels;
+    private final long frameDeadlineNanos;
+    private final int resolutionLevels;
+    private final int maxStride;
+    private final boolean groundRemoval;
+    private final float sceneChangeTolerance;
+    private final int maxStaleFrames;
+
+    private PipelineConfig(Builder builder) {
+        horizAngularSpan = builder.horizAngularSpan;
+        vertAngularSpan = builder.vertAngularSpan;
+        horizRes = builder.horizRes;
+        vertRes = builder.vertRes;
+        maxNumThings = builder.maxNumThings;
+        maxDistance = builder.maxDistance;
+        minBlobSize = builder.minBlobSize;
+        epsilon = builder.epsilon;
+        maxCoastFrames = builder.maxCoastFrames;
+        quantizationThreads = builder.quantizationThreads;
+        voxelSize = builder.voxelSize;
+        maxVoxels = builder.maxVoxels;
+        frameDeadlineNanos = builder.frameDeadlineNanos;
+        resolutionLevels = builder.resolutionLevels;
+        maxStride = builder.maxStride;
+        groundRemoval = builder.groundRemoval;
+        sceneChangeTolerance = builder.sceneChangeTolerance;
+        maxStaleFrames = builder.maxStaleFrames;
+    }
+
+    /* a builder with the default parameters, except for the grid resolution; the minimum blob
+     * size is scaled so that it still covers the same solid angle */
+    public static Builder builderForResolution(int horizRes, int vertRes) {
+        int minBlobSize = (int) ((long) DEFAULT_MIN_BLOB_SIZE * horizRes * vertRes
+                                 / (DEFAULT_RES * DEFAULT_RES));
+        return new Builder().setResolution(horizRes, vertRes)
+                            .setMinBlobSize(Math.max(1, minBlobSize));
+    }
+
+    public float getHorizAngularSpan() {
+        return horizAngularSpan;
+    }
+
+    public float getVertAngularSpan() {
+        return vertAngularSpan;
+    }
+
+    public int getHorizRes() {
+        return horizRes;
+    }
+
+    public int getVertRes() {
+        return vertRes;
+    }
+
+    public int getMaxNumThings() {
+        return maxNumThings;
+    }
+
+    public float getMaxDistance() {
+        return maxDistance;
+    }
+
+    public int getMinBlobSize() {
+        return minBlobSize;
+    }
+
+    public float getEpsilon() {
+        return epsilon;
+    }
+
+    public int getMaxCoastFrames() {
+        return maxCoastFrames;
+    }
+
+    public int getQuantizationThreads() {
+        return quantizationThreads;
+    }
+
+    public float getVoxelSize() {
+        return voxelSize;
+    }
+
+    public int getMaxVoxels() {
+        return maxVoxels;
+    }
+
+    public long getFrameDeadlineNanos() {
+        return frameDeadlineNanos;
+    }
+
+    public int getResolutionLevels() {
+        return resolutionLevels;
+    }
+
+    public int getMaxStride() {
+        return maxStride;
+    }
+
+    public boolean getGroundRemoval() {
+        return groundRemoval;
+    }
+
+    public float getSceneChangeTolerance() {
+        return sceneChangeTolerance;
+    }
+
+    public int getMaxStaleFrames() {
+        return maxStaleFrames;
+    }
+
+    /* a builder for PipelineConfig */
+    public static class Builder {
+        private float horizAngularSpan = (float) Math.PI;
+        private float vertAngularSpan = (float) Math.PI;
+        private int horizRes = DEFAULT_RES;
+        private int vertRes = DEFAULT_RES;
+        private int maxNumThings = 4;
+        private float maxDistance = 1.5f;
+        private int minBlobSize = DEFAULT_MIN_BLOB_SIZE;
+        private float epsilon = 0.40f;
+        private int maxCoastFrames = 3;
+        private int quantizationThreads = 0;
+        private float voxelSize = 0.0f;
+        private int maxVoxels = DEFAULT_MAX_VOXELS;
+        private long frameDeadlineNanos = 0L;
+        private int resolutionLevels = DEFAULT_RESOLUTION_LEVELS;
+        private int maxStride = DEFAULT_MAX_STRIDE;
+        private boolean groundRemoval = false;
+        private float sceneChangeTolerance = 0.0f;
+        private int maxStaleFrames = DEFAULT_MAX_STALE_FRAMES;
+
+        /* the horizontal and vertical angular spans of the grid, in radians, at most PI */
+        public Builder setAngularSpans(float horizAngularSpan, float vertAngularSpan) {
+            this.horizAngularSpan = horizAngularSpan;
+            this.vertAngularSpan = vertAngularSpan;
+            return this;
+        }
+
+        /* the number of columns and rows of the grid */
+        public Builder setResolution(int horizRes, int vertRes) {
+            this.horizRes = horizRes;
+            this.vertRes = vertRes;
+            return this;
+        }
+
+        /* the largest number of objects tracked (and sounds played) at once */
+        public Builder setMaxNumThings(int maxNumThings) {
+            this.maxNumThings = maxNumThings;
+            return this;
+        }
+
+        /* the largest distance, in meters, of cells and blobs taken into account */
+        public Builder setMaxDistance(float maxDistance) {
+            this.maxDistance = maxDistance;
+            return this;
+        }
+
+        /* the smallest number of grid cells making up a blob */
+        public Builder setMinBlobSize(int minBlobSize) {
+            this.minBlobSize = minBlobSize;
+            return this;
+        }
+
+        /* the largest distance, in meters, between two blobs of consecutive frames deemed to be
+         * the same object */
+        public Builder setEpsilon(float epsilon) {
+            this.epsilon = epsilon;
+            return this;
+        }
+
+        /* the largest number of frames in a row an object is kept without any matching blob,
+         * its position being predicted from its motion */
+        public Builder setMaxCoastFrames(int maxCoastFrames) {
+            this.maxCoastFrames = maxCoastFrames;
+            return this;
+        }
+
+        /* the number of threads quantizing large point clouds, 0 for serial quantization */
+        public Builder setQuantizationThreads(int quantizationThreads) {
+            this.quantizationThreads = quantizationThreads;
+            return this;
+        }
+
+        /* the width, in meters, of the voxels of a map fusing successive frames, 0 to find
+         * blobs in each frame on its own */
+        public Builder setVoxelSize(float voxelSize) {
+            this.voxelSize = voxelSize;
+            return this;
+        }
+
+        /* the largest number of voxels kept in the map */
+        public Builder setMaxVoxels(int maxVoxels) {
+            this.maxVoxels = maxVoxels;
+            return this;
+        }
+
+        /* the time allowed for processing a frame, in nanoseconds, load being shed to meet it;
+         * 0 to process every frame at full quality */
+        public Builder setFrameDeadlineNanos(long frameDeadlineNanos) {
+            this.frameDeadlineNanos = frameDeadlineNanos;
+            return this;
+        }
+
+        /* the number of resolution levels load may be shed to, each halving both resolutions,
+         * as long as they divide evenly; 1 to always find blobs at full resolution */
+        public Builder setResolutionLevels(int resolutionLevels) {
+            this.resolutionLevels = resolutionLevels;
+            return this;
+        }
+
+        /* the largest stride of points quantized when shedding load, 1 to keep every point */
+        public Builder setMaxStride(int maxStride) {
+            this.maxStride = maxStride;
+            return this;
+        }
+
+        /* whether the points of the ground are found and dropped before quantization */
+        public Builder setGroundRemoval(boolean groundRemoval) {
+            this.groundRemoval = groundRemoval;
+            return this;
+        }
+
+        /* how far, in meters, the depths of a tile of the grid may move on average before
+         * blobs are found again rather than those of the previous frame reused; 0 to find
+         * them in every frame */
+        public Builder setSceneChangeTolerance(float sceneChangeTolerance) {
+            this.sceneChangeTolerance = sceneChangeTolerance;
+            return this;
+        }
+
+        /* the largest number of frames in a row the blobs of a previous frame are reused */
+        public Builder setMaxStaleFrames(int maxStaleFrames) {
+            this.maxStaleFrames = maxStaleFrames;
+            return this;
+        }
+
+        public PipelineConfig build() {
+            if (horizRes <= 0 || vertRes <= 0)
+                throw new IllegalArgumentException("Grid resolution must be positive");
+            if (maxNumThings <= 0)
+                throw new IllegalArgumentException("Number of things must be positive");
+            if (!(maxDistance > 0.0f) || !(epsilon >= 0.0f))
+                throw new IllegalArgumentException("Distances must be positive");
+            if (minBlobSize < 0 || maxCoastFrames < 0 || quantizationThreads < 0)
+                throw new IllegalArgumentException("Sizes and thread counts must not be negative");
+            if (!(voxelSize >= 0.0f) || maxVoxels <= 0)
+                throw new IllegalArgumentException("Voxel size must not be negative");
+            if (frameDeadlineNanos < 0L || resolutionLevels <= 0 || maxStride <= 0)
+                throw new IllegalArgumentException("Invalid load shedding parameters");
+            if (!(sceneChangeTolerance >= 0.0f) || maxStaleFrames < 0)
+                throw new IllegalArgumentException("Invalid scene change parameters");
+            return new PipelineConfig(this);
+        }
+    }
+}
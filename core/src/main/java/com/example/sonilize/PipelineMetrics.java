@@ -0,0 +1,157 @@
+package com.example.sonilize;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* the latencies and counters of the whole app, recorded lock-free by the threads that see them
+ * (the thread delivering point clouds, the frame worker, the audio control thread) and read as
+ * snapshots from any thread; summary() describes what happened since its previous call, to be
+ * logged periodically in the field instead of anything per frame
+ */
+public class PipelineMetrics {
+
+    /* the latencies recorded */
+    public enum Stage {
+        /* from the delivery of a point cloud to the start of its processing */
+        QUEUE,
+        /* locating the camera and finding the ground */
+        GROUND,
+        QUANTIZE,
+        /* fusing into the voxel map or merging down to a lower resolution */
+        MAP,
+        /* labeling components and extracting blobs */
+        BLOBS,
+        /* tracking objects and updating their sounds */
+        TRACK,
+        /* one tick of the audio control thread, backend calls included */
+        AUDIO,
+        /* from the capture of a point cloud to the backend hearing of its objects */
+        END_TO_END
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] histograms;
+    private final AtomicLong framesProcessed;
+    private final AtomicLong framesDropped;
+    private final AtomicLong voiceActivations;
+    private final AtomicLong voicesExhausted;
+    private Snapshot lastSummarized;
+
+    /* constructor */
+    public PipelineMetrics() {
+        histograms = new LatencyHistogram[STAGES.length];
+        for (int s = 0; s < STAGES.length; s++)
+            histograms[s] = new LatencyHistogram();
+        framesProcessed = new AtomicLong();
+        framesDropped = new AtomicLong();
+        voiceActivations = new AtomicLong();
+        voicesExhausted = new AtomicLong();
+    }
+
+    /* add a latency of a stage, in nanoseconds */
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    void countFrameProcessed() {
+        framesProcessed.incrementAndGet();
+    }
+
+    void countFrameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /* a sound was (re)assigned to an object */
+    void countVoiceActivation() {
+        voiceActivations.incrementAndGet();
+    }
+
+    /* a sound was asked for while none was left */
+    void countVoiceExhausted() {
+        voicesExhausted.incrementAndGet();
+    }
+
+    /* a copy of all latencies and counters so far */
+    public Snapshot snapshot() {
+        LatencyHistogram.Snapshot[] stages = new LatencyHistogram.Snapshot[STAGES.length];
+        for (int s = 0; s < STAGES.length; s++)
+            stages[s] = histograms[s].snapshot();
+        return new Snapshot(stages, framesProcessed.get(), framesDropped.get(),
+                            voiceActivations.get(), voicesExhausted.get());
+    }
+
+    /* a table of the latencies (count, mean, percentiles and max, in milliseconds) of the
+     * stages seen, and of the counters, since the previous call (or since construction) */
+    public synchronized String summary() {
+        Snapshot now = snapshot();
+        Snapshot interval = lastSummarized == null ? now : now.minus(lastSummarized);
+        lastSummarized = now;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "frames %d, dropped %d, voices %d, exhausted %d%n",
+                                  interval.getFramesProcessed(), interval.getFramesDropped(),
+                                  interval.getVoiceActivations(), interval.getVoicesExhausted()));
+        text.append("stage (ms)     count     mean      p50      p90      p99      max");
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot s = interval.get(stage);
+            if (s.getCount() == 0)
+                continue;
+            text.append(String.format(Locale.US, "%n%-10s %9d %8.3f %8.3f %8.3f %8.3f %8.3f",
+                                      stage.name().toLowerCase(Locale.US), s.getCount(),
+                                      s.getMean() / 1e6, s.getPercentile(0.50) / 1e6,
+                                      s.getPercentile(0.90) / 1e6, s.getPercentile(0.99) / 1e6,
+                                      s.getMax() / 1e6));
+        }
+        return text.toString();
+    }
+
+    /* the latencies and counters at some point, or between two points */
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot[] stages;
+        private final long framesProcessed;
+        private final long framesDropped;
+        private final long voiceActivations;
+        private final long voicesExhausted;
+
+        private Snapshot(LatencyHistogram.Snapshot[] stages, long framesProcessed,
+                         long framesDropped, long voiceActivations, long voicesExhausted) {
+            this.stages = stages;
+            this.framesProcessed = framesProcessed;
+            this.framesDropped = framesDropped;
+            this.voiceActivations = voiceActivations;
+            this.voicesExhausted = voicesExhausted;
+        }
+
+        /* what happened since earlier, a snapshot of the same metrics */
+        public Snapshot minus(Snapshot earlier) {
+            LatencyHistogram.Snapshot[] difference = new LatencyHistogram.Snapshot[stages.length];
+            for (int s = 0; s < stages.length; s++)
+                difference[s] = stages[s].minus(earlier.stages[s]);
+            return new Snapshot(difference, framesProcessed - earlier.framesProcessed,
+                                framesDropped - earlier.framesDropped,
+                                voiceActivations - earlier.voiceActivations,
+                                voicesExhausted - earlier.voicesExhausted);
+        }
+
+        public LatencyHistogram.Snapshot get(Stage stage) {
+            return stages[stage.ordinal()];
+        }
+
+        public long getFramesProcessed() {
+            return framesProcessed;
+        }
+
+        /* the number of point clouds overwritten by a newer one before being processed */
+        public long getFramesDropped() {
+            return framesDropped;
+        }
+
+        public long getVoiceActivations() {
+            return voiceActivations;
+        }
+
+        public long getVoicesExhausted() {
+            return voicesExhausted;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.sonilize;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/* an allocation-free quantizer for Tango point clouds: each point (x, y, z, confidence) is
+ * binned into the grid of viewing angles of a SphericalProjection, and each cell of the grid
+ * holds the harmonic mean of the radial distances of all points falling into it
+ * (POSITIVE_INFINITY for empty cells), also folded into a DepthPyramid of minimum depths;
+ * points outside the angular spans are skipped; all buffers are allocated once, so quantizing
+ * a frame produces no garbage
+ */
+class PointCloudQuantizer {
+
+    static final int FLOATS_PER_POINT = 4;
+    static final int DEFAULT_PARALLEL_THRESHOLD = 20000;
+
+    // number of points copied at once out of a buffer that is not backed by an array
+    private static final int CHUNK_POINTS = 1024;
+
+    private final SphericalProjection projection;
+    private final int horizRes;
+    private final int vertRes;
+
+    // flat grids, cell (col, row) lives at index col * vertRes + row
+    private final float[] reciprocalSums;
+    private final int[] counts;
+    private final float[] depths;
+    private final DepthPyramid pyramid;
+
+    private final float[] chunk;
+    private int pointsOutsideSpan;
+    private int pointsQuantized;
+
+    // pixel lookup; null means binning by angles, changes apply at the next frame
+    private volatile DepthImageLookup requestedLookup;
+    private DepthImageLookup lookup;
+
+    // the excluded plane, n . p + d = 0 with n a unit vector, and how close points are excluded
+    private boolean excluding;
+    private float planeX;
+    private float planeY;
+    private float planeZ;
+    private float planeD;
+    private float planeThickness;
+
+    // parallel mode; 0 means serial, changes requested from other threads apply at the next frame
+    private volatile int requestedParallelism;
+    private volatile int parallelThreshold;
+    private int parallelism;
+    private ForkJoinPool pool;
+    private ChunkTask[] chunkTasks;
+    private MergeTask[] mergeTasks;
+    private final RootTask rootTask;
+
+    /* constructor */
+    PointCloudQuantizer(SphericalProjection projection) {
+        this.projection = projection;
+        horizRes = projection.getHorizRes();
+        vertRes = projection.getVertRes();
+        reciprocalSums = new float[horizRes * vertRes];
+        counts = new int[horizRes * vertRes];
+        depths = new float[horizRes * vertRes];
+        pyramid = new DepthPyramid(horizRes, vertRes);
+        chunk = new float[CHUNK_POINTS * FLOATS_PER_POINT];
+        requestedParallelism = 0;
+        parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+        parallelism = 0;
+        rootTask = new RootTask();
+    }
+
+    int getHorizRes() {
+        return horizRes;
+    }
+
+    int getVertRes() {
+        return vertRes;
+    }
+
+    /* the quantized grid of the last frame, cell (col, row) at index col * getVertRes() + row;
+     * the array is reused by the next call to quantize */
+    float[] getDepths() {
+        return depths;
+    }
+
+    /* the minimum depths of the grid of the last frame, so that blobs can be searched for from
+     * the top down; reused by the next call to quantize */
+    DepthPyramid getPyramid() {
+        return pyramid;
+    }
+
+    /* the number of points that fell into each cell of the last frame, laid out as getDepths() */
+    int[] getCounts() {
+        return counts;
+    }
+
+    /* the number of points of the last frame that were skipped for lying outside the spans or
+     * close to the excluded plane */
+    int getPointsOutsideSpan() {
+        return pointsOutsideSpan;
+    }
+
+    /* the number of points of the last frame that were binned or skipped, after decimation */
+    int getPointsQuantized() {
+        return pointsQuantized;
+    }
+
+    /* write the grid of the last frame at resolution divided by factor (which must divide
+     * both resolutions) into out, cell (col, row) at index col * (getVertRes() / factor) + row,
+     * merging blocks of cells exactly as if the cloud had been quantized at that resolution */
+    void downsample(int factor, float[] out) {
+        int coarseVertRes = vertRes / factor;
+        for (int i = 0; i < horizRes / factor; i++) {
+            for (int j = 0; j < coarseVertRes; j++) {
+                float sum = 0.0f;
+                int count = 0;
+                for (int a = 0; a < factor; a++) {
+                    int cell = (i * factor + a) * vertRes + j * factor;
+                    for (int b = 0; b < factor; b++) {
+                        sum += reciprocalSums[cell + b];
+                        count += counts[cell + b];
+                    }
+                }
+                out[i * coarseVertRes + j] = count == 0 ? Float.POSITIVE_INFINITY
+                                                        : 1.0f / (sum / (float) count);
+            }
+        }
+    }
+
+    /* switch between serial mode (threads = 0) and parallel mode with the given number of
+     * worker threads; may be called from any thread, takes effect at the next frame
+     *
+     * in parallel mode, clouds of at least getParallelThreshold() points are split into one
+     * chunk per worker, each binned into its own partial grid, and the partial grids are merged
+     * in chunk order (so the result does not depend on scheduling) by ranges of whole column
+     * pairs, so that each block of the pyramid's first level belongs to a single range */
+    void setParallelism(int threads) {
+        if (threads < 0)
+            throw new IllegalArgumentException("Number of threads must not be negative");
+        requestedParallelism = threads;
+    }
+
+    int getParallelism() {
+        return requestedParallelism;
+    }
+
+    /* the smallest cloud quantized in parallel; smaller clouds always take the serial path */
+    void setParallelThreshold(int numPoints) {
+        parallelThreshold = numPoints;
+    }
+
+    int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /* bin points by the pixel of lookup they project into, null to bin them by their angles;
+     * lookup must be built for this quantizer's projection, and allows depth images of its
+     * camera to be quantized directly; may be called from any thread, takes effect at the next
+     * frame */
+    void setDepthImageLookup(DepthImageLookup lookup) {
+        requestedLookup = lookup;
+    }
+
+    DepthImageLookup getDepthImageLookup() {
+        return requestedLookup;
+    }
+
+    /* skip the points within thickness (in meters) of the plane (nx, ny, nz) . p + d = 0, with
+     * (nx, ny, nz) a unit vector, as if they were outside the spans (the ground, see
+     * GroundPlaneFilter), from the next frame on */
+    void excludePlane(float nx, float ny, float nz, float d, float thickness) {
+        excluding = true;
+        planeX = nx;
+        planeY = ny;
+        planeZ = nz;
+        planeD = d;
+        planeThickness = thickness;
+    }
+
+    /* stop excluding a plane, from the next frame on */
+    void clearExcludedPlane() {
+        excluding = false;
+    }
+
+    /* shut down the worker threads of parallel mode, if any; the quantizer stays usable */
+    void release() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+            parallelism = 0;
+        }
+    }
+
+    /* quantize numPoints points stored as consecutive (x, y, z, c) quadruples in points */
+    void quantize(float[] points, int numPoints) {
+        quantize(points, numPoints, 1, 0);
+    }
+
+    /* quantize the points of index phase, phase + stride, phase + 2 * stride, ... among the
+     * numPoints points stored as consecutive (x, y, z, c) quadruples in points, bounding the
+     * cost of dense clouds */
+    void quantize(float[] points, int numPoints, int stride, int phase) {
+        if (points.length < numPoints * FLOATS_PER_POINT)
+            throw new IllegalArgumentException("Point array holds fewer than numPoints points");
+        quantize(points, 0, numPoints, stride, phase);
+    }
+
+    private static int keptPoints(int numPoints, int stride, int phase) {
+        if (stride <= 0 || phase < 0 || phase >= stride)
+            throw new IllegalArgumentException("Stride must be positive, phase below stride");
+        return phase < numPoints ? (numPoints - phase + stride - 1) / stride : 0;
+    }
+
+    private void quantize(float[] points, int offset, int numPoints, int stride, int phase) {
+        int kept = keptPoints(numPoints, stride, phase);
+        int start = offset + phase * FLOATS_PER_POINT;
+        int step = stride * FLOATS_PER_POINT;
+        lookup = requestedLookup;
+        applyParallelism();
+        if (parallelism > 0 && kept >= parallelThreshold) {
+            rootTask.setInput(points, start, kept, step);
+            rootTask.reinitialize();
+            pool.invoke(rootTask);
+        }
+        else {
+            reset();
+            pointsOutsideSpan = accumulate(points, start, kept, step, reciprocalSums, counts);
+            finish(0, horizRes);
+            pyramid.complete();
+        }
+        pointsQuantized = kept;
+    }
+
+    /* quantize the first numPoints points of pointCloudBuffer, read from absolute index 0 */
+    void quantize(FloatBuffer pointCloudBuffer, int numPoints) {
+        quantize(pointCloudBuffer, numPoints, 1, 0);
+    }
+
+    /* quantize the points of index phase, phase + stride, phase + 2 * stride, ... among the
+     * first numPoints points of pointCloudBuffer, read from absolute index 0; array-backed
+     * buffers are read in place, others are copied in bulk chunk by chunk (and always
+     * quantized serially) */
+    void quantize(FloatBuffer pointCloudBuffer, int numPoints, int stride, int phase) {
+        if (pointCloudBuffer.limit() < numPoints * FLOATS_PER_POINT)
+            throw new IllegalArgumentException("Point buffer holds fewer than numPoints points");
+        if (pointCloudBuffer.hasArray()) {
+            quantize(pointCloudBuffer.array(), pointCloudBuffer.arrayOffset(), numPoints,
+                     stride, phase);
+            return;
+        }
+        pointsQuantized = keptPoints(numPoints, stride, phase);
+        lookup = requestedLookup;
+        reset();
+        pointsOutsideSpan = 0;
+        int savedPosition = pointCloudBuffer.position();
+        pointCloudBuffer.position(0);
+        for (int done = 0; done < numPoints; done += CHUNK_POINTS) {
+            int n = Math.min(CHUNK_POINTS, numPoints - done);
+            pointCloudBuffer.get(chunk, 0, n * FLOATS_PER_POINT);
+            // the first point of the chunk to keep
+            int first = ((phase - done) % stride + stride) % stride;
+            if (first < n)
+                pointsOutsideSpan += accumulate(chunk, first * FLOATS_PER_POINT,
+                                                (n - first + stride - 1) / stride,
+                                                stride * FLOATS_PER_POINT,
+                                                reciprocalSums, counts);
+        }
+        pointCloudBuffer.position(savedPosition);
+        finish(0, horizRes);
+        pyramid.complete();
+    }
+
+    /* quantize the pixels of index phase, phase + stride, phase + 2 * stride, ... of image, a
+     * depth image of the camera of the lookup set (depth along z, in meters, of pixel (u, v) at
+     * index v * width + u; 0 or NaN for none), serially; pixels without a depth are counted
+     * as quantized but not as outside the spans */
+    void quantizeDepthImage(float[] image, int stride, int phase) {
+        DepthImageLookup pixels = requestedLookup;
+        if (pixels == null)
+            throw new IllegalStateException("No depth image lookup set");
+        int numPixels = pixels.getWidth() * pixels.getHeight();
+        if (image.length < numPixels)
+            throw new IllegalArgumentException("Image holds fewer pixels than the camera's");
+        pointsQuantized = keptPoints(numPixels, stride, phase);
+        lookup = pixels;
+        reset();
+        int outside = 0;
+        int width = pixels.getWidth();
+        for (int p = phase; p < numPixels; p += stride) {
+            float z = image[p];
+            if (!(z > 0.0f))
+                continue;
+            int cell = pixels.cellOf(p);
+            if (cell < 0 || excluding && onPlane(pixels.rayX(p % width) * z,
+                                                 pixels.rayY(p / width) * z, z)) {
+                outside++;
+                continue;
+            }
+            reciprocalSums[cell] += pixels.reciprocalRangeOf(p, z);
+            counts[cell]++;
+        }
+        pointsOutsideSpan = outside;
+        finish(0, horizRes);
+        pyramid.complete();
+    }
+
+    /* (re)build the pool and the per-chunk partial grids if the requested parallelism changed */
+    private void applyParallelism() {
+        int requested = requestedParallelism;
+        if (requested == parallelism)
+            return;
+        release();
+        if (requested == 0)
+            return;
+        pool = new ForkJoinPool(requested);
+        chunkTasks = new ChunkTask[requested];
+        mergeTasks = new MergeTask[requested];
+        int numCells = depths.length;
+        int columnPairs = (horizRes + 1) / 2;
+        for (int t = 0; t < requested; t++) {
+            chunkTasks[t] = new ChunkTask(numCells);
+            mergeTasks[t] = new MergeTask(
+                    Math.min(horizRes, 2 * (columnPairs * t / requested)),
+                    Math.min(horizRes, 2 * (columnPairs * (t + 1) / requested)));
+        }
+        parallelism = requested;
+    }
+
+    private void reset() {
+        for (int k = 0; k < counts.length; k++) {
+            counts[k] = 0;
+            reciprocalSums[k] = 0.0f;
+        }
+    }
+
+    /* bin numPoints points starting at index offset of points, step floats apart, adding the
+     * reciprocal of each radial distance to its cell of sums and counting it in counts;
+     * returns the number of points skipped for lying outside the spans */
+    private int accumulate(float[] points, int offset, int numPoints, int step,
+                           float[] sums, int[] counts) {
+        if (lookup != null)
+            return accumulateByPixel(points, offset, numPoints, step, sums, counts);
+        int outside = 0;
+        int end = offset + numPoints * step;
+        for (int i = offset; i < end; i += step) {
+            float x = points[i],
+                    y = points[i+1],
+                    z = points[i+2];
+
+            if (excluding && onPlane(x, y, z)) {
+                outside++;
+                continue;
+            }
+            float r = (float) Math.sqrt(x*x + y*y + z*z);
+            int col = projection.columnOf(x, z);
+            int row = projection.rowOf(y, r);
+            if (col < 0 || row < 0) {
+                outside++;
+                continue;
+            }
+            int cell = col * vertRes + row;
+            sums[cell] += 1.0f / r;
+            counts[cell]++;
+        }
+        return outside;
+    }
+
+    /* accumulate as above, binning each point by its pixel of the lookup */
+    private int accumulateByPixel(float[] points, int offset, int numPoints, int step,
+                                  float[] sums, int[] counts) {
+        DepthImageLookup pixels = lookup;
+        int outside = 0;
+        int end = offset + numPoints * step;
+        for (int i = offset; i < end; i += step) {
+            float x = points[i],
+                    y = points[i+1],
+                    z = points[i+2];
+
+            int pixel = pixels.pixelOf(x, y, z);
+            int cell = pixel < 0 ? -1 : pixels.cellOf(pixel);
+            if (cell < 0 || excluding && onPlane(x, y, z)) {
+                outside++;
+                continue;
+            }
+            sums[cell] += 1.0f / (float) Math.sqrt(x*x + y*y + z*z);
+            counts[cell]++;
+        }
+        return outside;
+    }
+
+    private boolean onPlane(float x, float y, float z) {
+        return Math.abs(planeX * x + planeY * y + planeZ * z + planeD) < planeThickness;
+    }
+
+    /* turn the accumulated reciprocal sums of the cells of columns fromCol (inclusive, even)
+     * to untilCol (exclusive) into harmonic means, folding them into the pyramid */
+    private void finish(int fromCol, int untilCol) {
+        for (int i = fromCol; i < untilCol; i++) {
+            for (int k = i * vertRes; k < (i + 1) * vertRes; k++) {
+                if (counts[k] == 0)
+                    depths[k] = Float.POSITIVE_INFINITY;
+                else
+                    depths[k] = 1.0f / (reciprocalSums[k] / (float) counts[k]);
+            }
+            pyramid.fold(depths, i, i + 1);
+        }
+    }
+
+    /* bins one chunk of the cloud into its own partial grid */
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] partialSums;
+        private final int[] partialCounts;
+        private int outside;
+        private float[] points;
+        private int offset;
+        private int numPoints;
+        private int step;
+
+        private ChunkTask(int numCells) {
+            partialSums = new float[numCells];
+            partialCounts = new int[numCells];
+        }
+
+        @Override
+        protected void compute() {
+            for (int k = 0; k < partialSums.length; k++) {
+                partialSums[k] = 0.0f;
+                partialCounts[k] = 0;
+            }
+            outside = accumulate(points, offset, numPoints, step, partialSums, partialCounts);
+        }
+    }
+
+    /* merges the partial grids of all chunks over a range of columns, then finishes them */
+    private class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromCol;
+        private final int untilCol;
+
+        private MergeTask(int fromCol, int untilCol) {
+            this.fromCol = fromCol;
+            this.untilCol = untilCol;
+        }
+
+        @Override
+        protected void compute() {
+            for (int k = fromCol * vertRes; k < untilCol * vertRes; k++) {
+                float sum = chunkTasks[0].partialSums[k];
+                int count = chunkTasks[0].partialCounts[k];
+                for (int t = 1; t < chunkTasks.length; t++) {
+                    sum += chunkTasks[t].partialSums[k];
+                    count += chunkTasks[t].partialCounts[k];
+                }
+                reciprocalSums[k] = sum;
+                counts[k] = count;
+            }
+            finish(fromCol, untilCol);
+        }
+    }
+
+    /* splits the cloud into chunks, bins them in parallel, then merges in parallel */
+    private class RootTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private float[] points;
+        private int offset;
+        private int numPoints;
+        private int step;
+
+        private void setInput(float[] points, int offset, int numPoints, int step) {
+            this.points = points;
+            this.offset = offset;
+            this.numPoints = numPoints;
+            this.step = step;
+        }
+
+        @Override
+        protected void compute() {
+            int numChunks = chunkTasks.length;
+            for (int t = 0; t < numChunks; t++) {
+                ChunkTask task = chunkTasks[t];
+                int first = (int) ((long) numPoints * t / numChunks);
+                int last = (int) ((long) numPoints * (t + 1) / numChunks);
+                task.points = points;
+                task.offset = offset + first * step;
+                task.numPoints = last - first;
+                task.step = step;
+                task.reinitialize();
+            }
+            ForkJoinTask.invokeAll(chunkTasks);
+            pointsOutsideSpan = 0;
+            for (ChunkTask task : chunkTasks)
+                pointsOutsideSpan += task.outside;
+            for (MergeTask task : mergeTasks)
+                task.reinitialize();
+            ForkJoinTask.invokeAll(mergeTasks);
+            pyramid.complete();
+            points = null;
+        }
+    }
+}
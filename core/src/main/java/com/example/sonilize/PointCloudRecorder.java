@@ -0,0 +1,124 @@
+package com.example.sonilize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/* writes point clouds to an append-only recording, to be replayed by PointCloudRecording;
+ * all values are little-endian:
+ *
+ *   header   MAGIC (8 bytes), VERSION (int), FLOATS_PER_POINT (int)
+ *   frame    timestamp (double), numPoints (int), numPoints * (x, y, z, c) (floats)
+ *   ...
+ *   index    offset of each frame (longs)
+ *   trailer  offset of the index (long), number of frames (int), INDEX_MAGIC (8 bytes)
+ *
+ * the index and trailer are written by close(); a recording cut short without them can still
+ * be read, frame by frame from the start
+ */
+public class PointCloudRecorder {
+
+    static final byte[] MAGIC = {'S', 'N', 'L', 'Z', 'P', 'C', 'R', '1'};
+    static final byte[] INDEX_MAGIC = {'S', 'N', 'L', 'Z', 'I', 'D', 'X', '1'};
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int FRAME_HEADER_BYTES = 12;
+    static final int TRAILER_BYTES = 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private ByteBuffer frameBuffer;
+    private long[] frameOffsets;
+    private int frameCount;
+    private long position;
+
+    /* constructor; creates (or truncates) the recording file and writes its header */
+    public PointCloudRecorder(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        frameBuffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        frameOffsets = new long[256];
+        frameCount = 0;
+
+        frameBuffer.clear();
+        frameBuffer.put(MAGIC);
+        frameBuffer.putInt(VERSION);
+        frameBuffer.putInt(PointCloudQuantizer.FLOATS_PER_POINT);
+        frameBuffer.flip();
+        writeFully(frameBuffer);
+        position = HEADER_BYTES;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /* append the first numPoints points of points (read from absolute index 0) as a frame */
+    public void write(FloatBuffer points, int numPoints, double timestamp) throws IOException {
+        int floats = numPoints * PointCloudQuantizer.FLOATS_PER_POINT;
+        prepareFrame(floats, numPoints, timestamp);
+        int savedPosition = points.position();
+        int savedLimit = points.limit();
+        points.position(0);
+        points.limit(floats);
+        frameBuffer.asFloatBuffer().put(points);
+        points.limit(savedLimit);
+        points.position(savedPosition);
+        commitFrame(floats);
+    }
+
+    /* append a frame */
+    public void write(DepthFrame frame) throws IOException {
+        int floats = frame.numPoints * PointCloudQuantizer.FLOATS_PER_POINT;
+        prepareFrame(floats, frame.numPoints, frame.timestamp);
+        frameBuffer.asFloatBuffer().put(frame.points, 0, floats);
+        commitFrame(floats);
+    }
+
+    private void prepareFrame(int floats, int numPoints, double timestamp) {
+        int bytes = FRAME_HEADER_BYTES + 4 * floats;
+        if (frameBuffer.capacity() < bytes)
+            frameBuffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        frameBuffer.clear();
+        frameBuffer.putDouble(timestamp);
+        frameBuffer.putInt(numPoints);
+    }
+
+    private void commitFrame(int floats) throws IOException {
+        frameBuffer.position(FRAME_HEADER_BYTES + 4 * floats);
+        frameBuffer.flip();
+        if (frameCount == frameOffsets.length)
+            frameOffsets = Arrays.copyOf(frameOffsets, 2 * frameOffsets.length);
+        frameOffsets[frameCount++] = position;
+        position += frameBuffer.remaining();
+        writeFully(frameBuffer);
+    }
+
+    /* write the frame index and close the recording */
+    public void close() throws IOException {
+        try {
+            ByteBuffer index = ByteBuffer.allocate(8 * frameCount + TRAILER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (int f = 0; f < frameCount; f++)
+                index.putLong(frameOffsets[f]);
+            index.putLong(position);
+            index.putInt(frameCount);
+            index.put(INDEX_MAGIC);
+            index.flip();
+            writeFully(index);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.sonilize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/* a memory-mapped, read-only view of a recording written by PointCloudRecorder; the points of
+ * each frame are handed out as float buffers over the mapping, so nothing is copied on the
+ * JVM heap; recordings larger than a single mapping are mapped in segments of whole frames
+ */
+class PointCloudRecording {
+
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private final long[] frameOffsets;
+    private final int frameCount;
+    private final MappedByteBuffer[] segments;
+    private final long[] segmentStarts;
+    // segment holding each frame
+    private final int[] frameSegment;
+
+    /* constructor; maps the whole recording */
+    PointCloudRecording(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer header = readAt(channel, 0, PointCloudRecorder.HEADER_BYTES);
+            byte[] magic = new byte[8];
+            header.get(magic);
+            if (!Arrays.equals(magic, PointCloudRecorder.MAGIC))
+                throw new IOException("Not a point cloud recording: " + path);
+            if (header.getInt() != PointCloudRecorder.VERSION
+                    || header.getInt() != PointCloudQuantizer.FLOATS_PER_POINT)
+                throw new IOException("Unsupported point cloud recording version: " + path);
+
+            long[] offsets = readIndex(channel, size);
+            if (offsets == null)
+                offsets = scanFrames(channel, size);
+            frameOffsets = offsets;
+            frameCount = offsets.length;
+
+            // group consecutive frames into segments no larger than a single mapping
+            long dataEnd = frameCount == 0 ? PointCloudRecorder.HEADER_BYTES
+                                           : frameEnd(channel, frameCount - 1);
+            frameSegment = new int[frameCount];
+            long[] starts = new long[frameCount + 1];
+            long[] ends = new long[frameCount + 1];
+            int numSegments = 0;
+            for (int f = 0; f < frameCount; f++) {
+                long end = f + 1 < frameCount ? frameOffsets[f + 1] : dataEnd;
+                if (numSegments == 0 || end - starts[numSegments - 1] > MAX_SEGMENT_BYTES) {
+                    starts[numSegments] = frameOffsets[f];
+                    numSegments++;
+                }
+                ends[numSegments - 1] = end;
+                frameSegment[f] = numSegments - 1;
+            }
+            segments = new MappedByteBuffer[numSegments];
+            segmentStarts = Arrays.copyOf(starts, numSegments);
+            for (int s = 0; s < numSegments; s++) {
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, starts[s],
+                                          ends[s] - starts[s]);
+                segments[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /* the frame offsets listed by the index, or null if the recording has no valid index */
+    private static long[] readIndex(FileChannel channel, long size) throws IOException {
+        if (size < PointCloudRecorder.HEADER_BYTES + PointCloudRecorder.TRAILER_BYTES)
+            return null;
+        ByteBuffer trailer = readAt(channel, size - PointCloudRecorder.TRAILER_BYTES,
+                                    PointCloudRecorder.TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        int count = trailer.getInt();
+        byte[] magic = new byte[8];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, PointCloudRecorder.INDEX_MAGIC)
+                || count < 0
+                || indexOffset + 8L * count + PointCloudRecorder.TRAILER_BYTES != size)
+            return null;
+        ByteBuffer index = readAt(channel, indexOffset, 8 * count);
+        long[] offsets = new long[count];
+        for (int f = 0; f < count; f++)
+            offsets[f] = index.getLong();
+        return offsets;
+    }
+
+    /* the offsets of all complete frames, found by walking the frames from the header on */
+    private static long[] scanFrames(FileChannel channel, long size) throws IOException {
+        long[] offsets = new long[256];
+        int count = 0;
+        long offset = PointCloudRecorder.HEADER_BYTES;
+        while (offset + PointCloudRecorder.FRAME_HEADER_BYTES <= size) {
+            ByteBuffer frameHeader = readAt(channel, offset, PointCloudRecorder.FRAME_HEADER_BYTES);
+            frameHeader.getDouble();
+            int numPoints = frameHeader.getInt();
+            long end = offset + PointCloudRecorder.FRAME_HEADER_BYTES
+                    + 4L * PointCloudQuantizer.FLOATS_PER_POINT * numPoints;
+            if (numPoints < 0 || end > size)
+                break;
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            offsets[count++] = offset;
+            offset = end;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private long frameEnd(FileChannel channel, int f) throws IOException {
+        ByteBuffer frameHeader = readAt(channel, frameOffsets[f],
+                                        PointCloudRecorder.FRAME_HEADER_BYTES);
+        frameHeader.getDouble();
+        return frameOffsets[f] + PointCloudRecorder.FRAME_HEADER_BYTES
+                + 4L * PointCloudQuantizer.FLOATS_PER_POINT * frameHeader.getInt();
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of point cloud recording");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    int getFrameCount() {
+        return frameCount;
+    }
+
+    /* the capture time of frame f, in seconds */
+    double getTimestamp(int f) {
+        return segmentOf(f).getDouble(positionOf(f));
+    }
+
+    int getNumPoints(int f) {
+        return segmentOf(f).getInt(positionOf(f) + 8);
+    }
+
+    /* the points of frame f as (x, y, z, c) quadruples, starting at absolute index 0 of a view
+     * over the mapped recording */
+    FloatBuffer getPoints(int f) {
+        MappedByteBuffer segment = segmentOf(f);
+        int start = positionOf(f) + PointCloudRecorder.FRAME_HEADER_BYTES;
+        int bytes = 4 * PointCloudQuantizer.FLOATS_PER_POINT * getNumPoints(f);
+        ByteBuffer view = segment.duplicate();
+        view.limit(start + bytes);
+        view.position(start);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    private MappedByteBuffer segmentOf(int f) {
+        return segments[frameSegment[f]];
+    }
+
+    private int positionOf(int f) {
+        return (int) (frameOffsets[f] - segmentStarts[frameSegment[f]]);
+    }
+}
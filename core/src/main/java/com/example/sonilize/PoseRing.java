@@ -0,0 +1,134 @@
+package com.example.sonilize;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* the latest timestamped poses of a moving frame, written by one thread and interpolated to
+ * other timestamps by another without locks: poses go round a ring of fixed capacity, each slot
+ * guarded by a version number (odd while being written) so that a reader detects, and gives up
+ * on, a slot overwritten under it; all fields are atomic so that these checks are sound, and
+ * nothing is allocated after construction */
+public class PoseRing {
+
+    // a pose newer than the last one by less than this, in seconds, is held rather than lost
+    private static final double MAX_HOLD = 0.1;
+    private static final int FLOATS_PER_POSE = 7;
+
+    private final int capacity;
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray values;
+    private final AtomicLongArray versions;
+    // the number of poses ever added
+    private final AtomicLong count;
+
+    // reader scratch
+    private final RigidTransform before;
+    private final RigidTransform after;
+
+    /* constructor */
+    public PoseRing(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        this.capacity = capacity;
+        timestamps = new AtomicLongArray(capacity);
+        values = new AtomicIntegerArray(capacity * FLOATS_PER_POSE);
+        versions = new AtomicLongArray(capacity);
+        count = new AtomicLong();
+        before = new RigidTransform();
+        after = new RigidTransform();
+    }
+
+    /* add the pose at timestamp (in seconds), which must be later than that of the previous
+     * pose, or the pose is ignored; must always be called from the same thread */
+    public void add(double timestamp, RigidTransform pose) {
+        long n = count.get();
+        if (n > 0 && !(timestamp > Double.longBitsToDouble(timestamps.get(slotOf(n - 1)))))
+            return;
+        int slot = slotOf(n);
+        versions.set(slot, 2 * n + 1);
+        timestamps.set(slot, Double.doubleToRawLongBits(timestamp));
+        int base = slot * FLOATS_PER_POSE;
+        values.set(base, Float.floatToRawIntBits(pose.qx));
+        values.set(base + 1, Float.floatToRawIntBits(pose.qy));
+        values.set(base + 2, Float.floatToRawIntBits(pose.qz));
+        values.set(base + 3, Float.floatToRawIntBits(pose.qw));
+        values.set(base + 4, Float.floatToRawIntBits(pose.tx));
+        values.set(base + 5, Float.floatToRawIntBits(pose.ty));
+        values.set(base + 6, Float.floatToRawIntBits(pose.tz));
+        versions.set(slot, 2 * n + 2);
+        count.set(n + 1);
+    }
+
+    /* set out to the pose at timestamp, interpolated between the poses around it, or to the
+     * latest pose if timestamp is slightly later; returns false, leaving out unchanged, if
+     * timestamp is not covered by the ring */
+    public boolean interpolate(double timestamp, RigidTransform out) {
+        long n = count.get();
+        if (n == 0)
+            return false;
+        // the oldest slot may be overwritten next
+        long oldest = Math.max(0, n - capacity + 1);
+        long newest = n - 1;
+        double newestTimestamp = timestampOf(newest);
+        if (Double.isNaN(newestTimestamp))
+            return false;
+        if (timestamp >= newestTimestamp) {
+            if (timestamp - newestTimestamp > MAX_HOLD || !read(newest, after))
+                return false;
+            out.set(after);
+            return true;
+        }
+        // the last pose at or before timestamp
+        long lo = oldest;
+        long hi = newest;
+        double loTimestamp = timestampOf(lo);
+        if (Double.isNaN(loTimestamp) || timestamp < loTimestamp)
+            return false;
+        while (hi - lo > 1) {
+            long mid = (lo + hi) >>> 1;
+            double midTimestamp = timestampOf(mid);
+            if (Double.isNaN(midTimestamp))
+                return false;
+            if (midTimestamp <= timestamp)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        double t0 = timestampOf(lo);
+        double t1 = timestampOf(hi);
+        if (Double.isNaN(t0) || Double.isNaN(t1) || !read(lo, before) || !read(hi, after))
+            return false;
+        out.interpolate(before, after, (float) ((timestamp - t0) / (t1 - t0)));
+        return true;
+    }
+
+    private int slotOf(long index) {
+        return (int) (index % capacity);
+    }
+
+    /* the timestamp of pose index, or NaN if it has been overwritten */
+    private double timestampOf(long index) {
+        int slot = slotOf(index);
+        long version = versions.get(slot);
+        double timestamp = Double.longBitsToDouble(timestamps.get(slot));
+        return version == 2 * index + 2 && versions.get(slot) == version ? timestamp : Double.NaN;
+    }
+
+    /* read pose index into pose; returns false if it has been overwritten */
+    private boolean read(long index, RigidTransform pose) {
+        int slot = slotOf(index);
+        long version = versions.get(slot);
+        if (version != 2 * index + 2)
+            return false;
+        int base = slot * FLOATS_PER_POSE;
+        pose.qx = Float.intBitsToFloat(values.get(base));
+        pose.qy = Float.intBitsToFloat(values.get(base + 1));
+        pose.qz = Float.intBitsToFloat(values.get(base + 2));
+        pose.qw = Float.intBitsToFloat(values.get(base + 3));
+        pose.tx = Float.intBitsToFloat(values.get(base + 4));
+        pose.ty = Float.intBitsToFloat(values.get(base + 5));
+        pose.tz = Float.intBitsToFloat(values.get(base + 6));
+        return versions.get(slot) == version;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.sonilize;
+
+/* a rotation (unit quaternion x, y, z, w) followed by a translation, mapping coordinates of one
+ * frame into another; mutable, so that poses can be composed and interpolated without
+ * allocating */
+public final class RigidTransform {
+
+    float qx;
+    float qy;
+    float qz;
+    float qw = 1.0f;
+    float tx;
+    float ty;
+    float tz;
+
+    /* the identity */
+    public RigidTransform() {
+    }
+
+    /* set this to the rotation (qx, qy, qz, qw), normalized, then the translation (tx, ty, tz) */
+    public RigidTransform set(float qx, float qy, float qz, float qw,
+                              float tx, float ty, float tz) {
+        float norm = (float) Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+        this.qx = qx / norm;
+        this.qy = qy / norm;
+        this.qz = qz / norm;
+        this.qw = qw / norm;
+        this.tx = tx;
+        this.ty = ty;
+        this.tz = tz;
+        return this;
+    }
+
+    public RigidTransform set(RigidTransform that) {
+        qx = that.qx;
+        qy = that.qy;
+        qz = that.qz;
+        qw = that.qw;
+        tx = that.tx;
+        ty = that.ty;
+        tz = that.tz;
+        return this;
+    }
+
+    /* set this to a after b: the frame b maps from, into the frame a maps to */
+    public RigidTransform compose(RigidTransform a, RigidTransform b) {
+        float x = a.qw * b.qx + a.qx * b.qw + a.qy * b.qz - a.qz * b.qy;
+        float y = a.qw * b.qy - a.qx * b.qz + a.qy * b.qw + a.qz * b.qx;
+        float z = a.qw * b.qz + a.qx * b.qy - a.qy * b.qx + a.qz * b.qw;
+        float w = a.qw * b.qw - a.qx * b.qx - a.qy * b.qy - a.qz * b.qz;
+        float px = a.rotateX(b.tx, b.ty, b.tz) + a.tx;
+        float py = a.rotateY(b.tx, b.ty, b.tz) + a.ty;
+        float pz = a.rotateZ(b.tx, b.ty, b.tz) + a.tz;
+        return set(x, y, z, w, px, py, pz);
+    }
+
+    /* set this to the transform alpha of the way from a to b (0.0 is a, 1.0 is b), moving
+     * linearly and rotating at constant speed along the shortest arc */
+    RigidTransform interpolate(RigidTransform a, RigidTransform b, float alpha) {
+        float dot = a.qx * b.qx + a.qy * b.qy + a.qz * b.qz + a.qw * b.qw;
+        float sign = dot < 0.0f ? -1.0f : 1.0f;
+        dot *= sign;
+        float wa;
+        float wb;
+        if (dot > 0.9995f) {
+            // nearly the same rotation: normalized linear interpolation
+            wa = 1.0f - alpha;
+            wb = alpha;
+        }
+        else {
+            double angle = Math.acos(dot);
+            double sin = Math.sin(angle);
+            wa = (float) (Math.sin((1.0 - alpha) * angle) / sin);
+            wb = (float) (Math.sin(alpha * angle) / sin);
+        }
+        wb *= sign;
+        return set(wa * a.qx + wb * b.qx, wa * a.qy + wb * b.qy,
+                   wa * a.qz + wb * b.qz, wa * a.qw + wb * b.qw,
+                   a.tx + (b.tx - a.tx) * alpha, a.ty + (b.ty - a.ty) * alpha,
+                   a.tz + (b.tz - a.tz) * alpha);
+    }
+
+    /* true if this and that are at most distance (in meters) apart, and at most angle (in
+     * radians) of rotation apart */
+    boolean isNear(RigidTransform that, float distance, float angle) {
+        float dx = tx - that.tx;
+        float dy = ty - that.ty;
+        float dz = tz - that.tz;
+        float dot = Math.abs(qx * that.qx + qy * that.qy + qz * that.qz + qw * that.qw);
+        return dx * dx + dy * dy + dz * dz <= distance * distance
+               && dot >= (float) Math.cos(angle / 2.0);
+    }
+
+    /* the coordinates of (x, y, z) mapped by this, written to out[0 .. 2] */
+    void apply(float x, float y, float z, float[] out) {
+        out[0] = rotateX(x, y, z) + tx;
+        out[1] = rotateY(x, y, z) + ty;
+        out[2] = rotateZ(x, y, z) + tz;
+    }
+
+    /* the coordinates of (x, y, z) mapped back by the inverse of this, written to out[0 .. 2] */
+    void applyInverse(float x, float y, float z, float[] out) {
+        x -= tx;
+        y -= ty;
+        z -= tz;
+        // the inverse rotation is the transposed matrix
+        out[0] = (1.0f - 2.0f * (qy * qy + qz * qz)) * x + 2.0f * (qx * qy + qz * qw) * y
+                 + 2.0f * (qx * qz - qy * qw) * z;
+        out[1] = 2.0f * (qx * qy - qz * qw) * x + (1.0f - 2.0f * (qx * qx + qz * qz)) * y
+                 + 2.0f * (qy * qz + qx * qw) * z;
+        out[2] = 2.0f * (qx * qz + qy * qw) * x + 2.0f * (qy * qz - qx * qw) * y
+                 + (1.0f - 2.0f * (qx * qx + qy * qy)) * z;
+    }
+
+    // the rotation of (x, y, z) by the quaternion, one coordinate at a time
+    private float rotateX(float x, float y, float z) {
+        return (1.0f - 2.0f * (qy * qy + qz * qz)) * x + 2.0f * (qx * qy - qz * qw) * y
+               + 2.0f * (qx * qz + qy * qw) * z;
+    }
+
+    private float rotateY(float x, float y, float z) {
+        return 2.0f * (qx * qy + qz * qw) * x + (1.0f - 2.0f * (qx * qx + qz * qz)) * y
+               + 2.0f * (qy * qz - qx * qw) * z;
+    }
+
+    private float rotateZ(float x, float y, float z) {
+        return 2.0f * (qx * qz - qy * qw) * x + 2.0f * (qy * qz + qx * qw) * y
+               + (1.0f - 2.0f * (qx * qx + qy * qy)) * z;
+    }
+}
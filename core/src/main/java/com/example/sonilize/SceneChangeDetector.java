@@ -0,0 +1,103 @@
+package com.example.sonilize;
+
+/* tells whether a grid of depths differs from the reference grid blobs were last found in, so
+ * that finding them again can be skipped in a static scene: the grid is split into square tiles
+ * and, depths being clamped to the largest distance of interest, it has changed as soon as the
+ * mean absolute difference over one tile exceeds a tolerance; comparing against the reference
+ * rather than the previous grid keeps slow drifts from going unnoticed, and stopping at the
+ * first changed tile bounds the cost of a changing scene to the tiles read until then
+ *
+ * a per-tile rather than global difference keeps a small object entering the view from being
+ * averaged away by the rest of the grid; grids finer than a given resolution are compared by
+ * the minima of the first level of their DepthPyramid that is no finer, fine grids having too
+ * few points per cell for a cell to be hit in every frame
+ */
+class SceneChangeDetector {
+
+    private final int tileSize;
+    private final float maxDistance;
+    private final float tolerance;
+    // the level of the pyramid compared, 0 for the grid itself, and its resolution
+    private final int level;
+    private final int cols;
+    private final int rows;
+    // the pyramid built when none is given
+    private final DepthPyramid ownPyramid;
+    // the values compared of the reference, clamped, value (i, j) at index i * rows + j
+    private final float[] reference;
+    private boolean hasReference;
+
+    /* constructor, for grids of horizRes columns of vertRes cells, compared at a resolution of
+     * at most maxRes columns and rows, over tiles of tileSize x tileSize values, depths beyond
+     * maxDistance being taken as maxDistance; a tile has changed when its depths moved by more
+     * than tolerance on average, in meters */
+    SceneChangeDetector(int horizRes, int vertRes, int maxRes, int tileSize, float maxDistance,
+                        float tolerance) {
+        if (maxRes <= 0 || tileSize <= 0)
+            throw new IllegalArgumentException("Resolution and tile size must be positive");
+        if (!(maxDistance > 0.0f) || !(tolerance >= 0.0f))
+            throw new IllegalArgumentException("Distances must be positive");
+        this.tileSize = tileSize;
+        this.maxDistance = maxDistance;
+        this.tolerance = tolerance;
+        if (horizRes > maxRes || vertRes > maxRes) {
+            ownPyramid = new DepthPyramid(horizRes, vertRes);
+            int k = 1;
+            while (k < ownPyramid.getNumLevels()
+                   && (ownPyramid.getCols(k) > maxRes || ownPyramid.getRows(k) > maxRes))
+                k++;
+            level = k;
+            cols = ownPyramid.getCols(k);
+            rows = ownPyramid.getRows(k);
+        }
+        else {
+            ownPyramid = null;
+            level = 0;
+            cols = horizRes;
+            rows = vertRes;
+        }
+        reference = new float[cols * rows];
+    }
+
+    /* remember grid as the reference; pyramid is that of grid, or null if it has none */
+    void setReference(float[] grid, DepthPyramid pyramid) {
+        float[] values = valuesOf(grid, pyramid);
+        for (int k = 0; k < reference.length; k++)
+            reference[k] = Math.min(values[k], maxDistance);
+        hasReference = true;
+    }
+
+    /* true if grid differs from the reference (or there is none yet); pyramid is that of grid,
+     * or null if it has none */
+    boolean hasChanged(float[] grid, DepthPyramid pyramid) {
+        if (!hasReference)
+            return true;
+        float[] values = valuesOf(grid, pyramid);
+        for (int i0 = 0; i0 < cols; i0 += tileSize) {
+            int i1 = Math.min(i0 + tileSize, cols);
+            for (int j0 = 0; j0 < rows; j0 += tileSize) {
+                int j1 = Math.min(j0 + tileSize, rows);
+                float allowed = tolerance * (i1 - i0) * (j1 - j0);
+                float difference = 0.0f;
+                for (int i = i0; i < i1; i++) {
+                    int column = i * rows;
+                    for (int k = column + j0; k < column + j1; k++)
+                        difference += Math.abs(Math.min(values[k], maxDistance) - reference[k]);
+                }
+                if (difference > allowed)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private float[] valuesOf(float[] grid, DepthPyramid pyramid) {
+        if (level == 0)
+            return grid;
+        if (pyramid == null) {
+            pyramid = ownPyramid;
+            pyramid.build(grid);
+        }
+        return pyramid.getMins(level);
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.sonilize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* a deterministic simulator of the depth camera in a scene of boxes, upright cylinders and
+ * walls standing on a floor, the boxes and cylinders moving at constant speeds and bouncing
+ * off the edges of a region in front of the camera; each frame is a Tango-like point cloud
+ * (x right, y down, z forward, then a confidence, four floats per point), every point the
+ * first hit of a random ray of the field of view, with a range noise growing with the square
+ * of the depth as with structured light, rays lost at random or beyond the range of the
+ * camera; every point is labeled with the object it hit, so that the visible part of each
+ * object, and where an ideal tracker would hear it, is known for every frame
+ *
+ * the camera stands level at a given height above the floor; the same seed gives the same
+ * sequence of frames, whatever the order they are asked for in
+ */
+class SceneSimulator {
+
+    /* the label of the points of the floor */
+    static final int FLOOR = -1;
+
+    private static final float HORIZ_FOV = (float) Math.toRadians(60.0);
+    private static final float VERT_FOV = (float) Math.toRadians(45.0);
+    // the farthest the camera sees, in meters
+    private static final float MAX_RANGE = 4.0f;
+    // the region objects move in, in camera coordinates, in meters
+    private static final float REGION_HALF_WIDTH = 1.5f;
+    private static final float REGION_NEAR = 0.4f;
+    private static final float REGION_FAR = 3.0f;
+
+    /* an object of the scene, identified by its index: an axis-aligned box or an upright
+     * cylinder, standing on the floor; walls are thin boxes that do not move */
+    static class SceneObject {
+        final int id;
+        final boolean cylinder;
+        // center at time 0 of the footprint, its velocity, in meters and meters per second
+        final float x;
+        final float z;
+        final float vx;
+        final float vz;
+        // half extents along x and z (the radius twice for a cylinder), and height
+        final float halfWidth;
+        final float halfDepth;
+        final float height;
+
+        SceneObject(int id, boolean cylinder, float x, float z, float vx, float vz,
+                    float halfWidth, float halfDepth, float height) {
+            this.id = id;
+            this.cylinder = cylinder;
+            this.x = x;
+            this.z = z;
+            this.vx = vx;
+            this.vz = vz;
+            this.halfWidth = halfWidth;
+            this.halfDepth = halfDepth;
+            this.height = height;
+        }
+
+        /* the x coordinate of the center at time t */
+        float xAt(float t) {
+            if (vx == 0.0f)
+                return x;
+            return bounce(x + vx * t, -REGION_HALF_WIDTH + halfWidth,
+                          REGION_HALF_WIDTH - halfWidth);
+        }
+
+        /* the z coordinate of the center at time t */
+        float zAt(float t) {
+            if (vz == 0.0f)
+                return z;
+            return bounce(z + vz * t, REGION_NEAR + halfDepth, REGION_FAR - halfDepth);
+        }
+
+        /* p folded back and forth into [lo, hi] */
+        private static float bounce(float p, float lo, float hi) {
+            float span = hi - lo;
+            if (!(span > 0.0f))
+                return lo;
+            float q = (p - lo) % (2.0f * span);
+            if (q < 0.0f)
+                q += 2.0f * span;
+            return q <= span ? lo + q : hi - (q - span);
+        }
+    }
+
+    private final List<SceneObject> objects;
+    private final int numPoints;
+    private final float rangeNoise;
+    private final float dropout;
+    private final float cameraHeight;
+    private final float framePeriod;
+    private final long seed;
+
+    private SceneSimulator(Builder builder) {
+        objects = new ArrayList<>(builder.objects);
+        numPoints = builder.numPoints;
+        rangeNoise = builder.rangeNoise;
+        dropout = builder.dropout;
+        cameraHeight = builder.cameraHeight;
+        framePeriod = builder.framePeriod;
+        seed = builder.seed;
+    }
+
+    /* a scene of numObjects boxes and cylinders, alternately, of random sizes, placements and
+     * speeds of up to maxSpeed, in front of a wall at the back of the region */
+    static Builder randomScene(long seed, int numObjects, float maxSpeed) {
+        Random random = new Random(seed);
+        Builder builder = new Builder().setSeed(seed)
+                .addWall(0.0f, REGION_FAR + 0.05f, REGION_HALF_WIDTH, 0.05f);
+        for (int n = 0; n < numObjects; n++) {
+            float size = 0.15f + 0.15f * random.nextFloat();
+            float height = 0.5f + 1.0f * random.nextFloat();
+            float x = (2.0f * random.nextFloat() - 1.0f) * (REGION_HALF_WIDTH - size);
+            float z = REGION_NEAR + size + random.nextFloat() * (REGION_FAR - REGION_NEAR
+                                                                 - 2.0f * size);
+            float vx = (2.0f * random.nextFloat() - 1.0f) * maxSpeed;
+            float vz = (2.0f * random.nextFloat() - 1.0f) * maxSpeed;
+            if (n % 2 == 0)
+                builder.addBox(x, z, vx, vz, size, size, height);
+            else
+                builder.addCylinder(x, z, vx, vz, size, height);
+        }
+        return builder;
+    }
+
+    int getNumObjects() {
+        return objects.size();
+    }
+
+    SceneObject getObject(int index) {
+        return objects.get(index);
+    }
+
+    /* the time of a frame, in seconds */
+    double timeOf(int frame) {
+        return frame * (double) framePeriod;
+    }
+
+    /* render a frame into points (four floats per point) and labels (one per point: the index
+     * of the object hit, or FLOOR), and the noiseless points into truth (three floats per
+     * point), all of at least getMaxPoints() points; returns the number of points */
+    int render(int frame, float[] points, int[] labels, float[] truth) {
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + frame);
+        float t = frame * framePeriod;
+        int numObjects = objects.size();
+        float[] xs = new float[numObjects];
+        float[] zs = new float[numObjects];
+        for (int o = 0; o < numObjects; o++) {
+            xs[o] = objects.get(o).xAt(t);
+            zs[o] = objects.get(o).zAt(t);
+        }
+        int n = 0;
+        for (int r = 0; r < numPoints; r++) {
+            float theta = (random.nextFloat() - 0.5f) * HORIZ_FOV;
+            float phi = (random.nextFloat() - 0.5f) * VERT_FOV;
+            float noise = (float) random.nextGaussian();
+            boolean lost = random.nextFloat() < dropout;
+            float dx = (float) (Math.cos(phi) * Math.sin(theta));
+            float dy = (float) -Math.sin(phi);
+            float dz = (float) (Math.cos(phi) * Math.cos(theta));
+            float hit = dy > 0.0f ? cameraHeight / dy : Float.POSITIVE_INFINITY;
+            int label = FLOOR;
+            for (int o = 0; o < numObjects; o++) {
+                float d = intersect(objects.get(o), xs[o], zs[o], dx, dy, dz);
+                if (d < hit) {
+                    hit = d;
+                    label = o;
+                }
+            }
+            if (lost || !(hit * dz <= MAX_RANGE))
+                continue;
+            float depth = hit * dz;
+            float noisy = hit + noise * rangeNoise * depth * depth;
+            points[4*n] = noisy * dx;
+            points[4*n+1] = noisy * dy;
+            points[4*n+2] = noisy * dz;
+            points[4*n+3] = 1.0f;
+            labels[n] = label;
+            truth[3*n] = hit * dx;
+            truth[3*n+1] = hit * dy;
+            truth[3*n+2] = hit * dz;
+            n++;
+        }
+        return n;
+    }
+
+    /* the most points a frame has */
+    int getMaxPoints() {
+        return numPoints;
+    }
+
+    /* the distance along the unit ray (dx, dy, dz) to object, its footprint centered on
+     * (x, z), or infinity */
+    private float intersect(SceneObject object, float x, float z, float dx, float dy,
+                            float dz) {
+        float near;
+        float far;
+        if (object.cylinder) {
+            // |(t dx - x, t dz - z)| = r in the horizontal plane
+            float a = dx * dx + dz * dz;
+            float b = dx * x + dz * z;
+            float c = x * x + z * z - object.halfWidth * object.halfWidth;
+            float discriminant = b * b - a * c;
+            if (discriminant < 0.0f || a == 0.0f)
+                return Float.POSITIVE_INFINITY;
+            float root = (float) Math.sqrt(discriminant);
+            near = (b - root) / a;
+            far = (b + root) / a;
+        }
+        else {
+            near = Float.NEGATIVE_INFINITY;
+            far = Float.POSITIVE_INFINITY;
+            float[] slab = {x - object.halfWidth, x + object.halfWidth, dx,
+                            z - object.halfDepth, z + object.halfDepth, dz};
+            for (int s = 0; s < slab.length; s += 3) {
+                float d = slab[s + 2];
+                if (d == 0.0f) {
+                    if (slab[s] > 0.0f || slab[s + 1] < 0.0f)
+                        return Float.POSITIVE_INFINITY;
+                    continue;
+                }
+                float t0 = slab[s] / d;
+                float t1 = slab[s + 1] / d;
+                near = Math.max(near, Math.min(t0, t1));
+                far = Math.min(far, Math.max(t0, t1));
+            }
+        }
+        // the top and bottom caps, the object spanning y in [cameraHeight - height,
+        // cameraHeight]
+        float top = cameraHeight - object.height;
+        if (dy != 0.0f) {
+            float t0 = top / dy;
+            float t1 = cameraHeight / dy;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        }
+        else if (top > 0.0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+        if (near > far || far <= 0.0f)
+            return Float.POSITIVE_INFINITY;
+        return near > 0.0f ? near : Float.POSITIVE_INFINITY;
+    }
+
+    /* a builder for SceneSimulator, by default of an empty scene of 60000 rays per frame with
+     * the noise of Tango's depth camera (about 1 cm at 1 m), 10% of rays lost, the camera 1.2 m
+     * above the floor and 5 frames per second */
+    static class Builder {
+        private final List<SceneObject> objects = new ArrayList<>();
+        private int numPoints = 60000;
+        private float rangeNoise = 0.01f;
+        private float dropout = 0.1f;
+        private float cameraHeight = 1.2f;
+        private float framePeriod = 0.2f;
+        private long seed;
+
+        /* a box of half extents halfWidth (along x) and halfDepth (along z) and of height
+         * height, its footprint centered on (x, z) at time 0 and moving at (vx, vz) */
+        Builder addBox(float x, float z, float vx, float vz, float halfWidth, float halfDepth,
+                       float height) {
+            objects.add(new SceneObject(objects.size(), false, x, z, vx, vz, halfWidth,
+                                        halfDepth, height));
+            return this;
+        }
+
+        /* an upright cylinder of radius radius and height height, its axis through (x, z) at
+         * time 0 and moving at (vx, vz) */
+        Builder addCylinder(float x, float z, float vx, float vz, float radius, float height) {
+            objects.add(new SceneObject(objects.size(), true, x, z, vx, vz, radius, radius,
+                                        height));
+            return this;
+        }
+
+        /* a wall from the floor to above the camera, centered on (x, z), of half extents
+         * halfWidth and halfDepth */
+        Builder addWall(float x, float z, float halfWidth, float halfDepth) {
+            return addBox(x, z, 0.0f, 0.0f, halfWidth, halfDepth, 2.0f * cameraHeight + 1.0f);
+        }
+
+        /* the number of rays cast per frame, before dropout */
+        Builder setNumPoints(int numPoints) {
+            this.numPoints = numPoints;
+            return this;
+        }
+
+        /* the standard deviation of the range noise at a depth of 1 m, in meters */
+        Builder setRangeNoise(float rangeNoise) {
+            this.rangeNoise = rangeNoise;
+            return this;
+        }
+
+        /* the fraction of rays returning no point */
+        Builder setDropout(float dropout) {
+            this.dropout = dropout;
+            return this;
+        }
+
+        Builder setCameraHeight(float cameraHeight) {
+            this.cameraHeight = cameraHeight;
+            return this;
+        }
+
+        /* the time between frames, in seconds */
+        Builder setFramePeriod(float framePeriod) {
+            this.framePeriod = framePeriod;
+            return this;
+        }
+
+        Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        SceneSimulator build() {
+            if (numPoints <= 0 || !(framePeriod > 0.0f) || !(cameraHeight > 0.0f))
+                throw new IllegalArgumentException("Invalid camera parameters");
+            if (!(rangeNoise >= 0.0f) || !(dropout >= 0.0f && dropout < 1.0f))
+                throw new IllegalArgumentException("Invalid noise parameters");
+            return new SceneSimulator(this);
+        }
+    }
+}
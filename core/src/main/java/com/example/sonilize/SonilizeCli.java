@@ -0,0 +1,288 @@
+package com.example.sonilize;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/* runs the depth pipeline on a plain JVM over synthetic scenes or recorded point clouds and
+ * prints frames per second and per-stage timings; recordings are fed from their memory
+ * mapping without copying, either as fast as possible or at the speed they were recorded;
+ * synthetic scenes may also be fed as depth images of a pinhole camera, and held still so that
+ * frames only differ by their noise; simulated scenes of moving objects are fed to a
+ * TrackingEvaluator, which prints how well they were tracked as well as how fast
+ *
+ * usage: SonilizeCli [--synthetic EMPTY|WALL|CLUTTER|FLOOR] [--points n] [--frames n]
+ *                    [--depth-image] [--recording file] [--realtime] [--loops n]
+ *                    [--resolution n] [--threads n] [--voxels size] [--deadline ms]
+ *                    [--ground] [--static] [--scene-change tolerance]
+ *                    [--simulate seed] [--objects n] [--noise m] [--dropout fraction]
+ */
+public class SonilizeCli {
+
+    private static final int SYNTHETIC_DISTINCT_FRAMES = 16;
+    private static final double SYNTHETIC_FRAME_PERIOD = 0.2;
+    // the top speed of simulated objects, in meters per second: a brisk walk
+    private static final float SIMULATED_MAX_SPEED = 1.5f;
+
+    private SyntheticScenes.Scene scene = SyntheticScenes.Scene.CLUTTER;
+    private int numPoints = 60000;
+    private int numFrames = 100;
+    private File recordingPath;
+    private boolean realtime;
+    private boolean depthImage;
+    private boolean ground;
+    private boolean still;
+    private int loops = 1;
+    private int resolution = 64;
+    private int threads = 0;
+    private float voxelSize = 0.0f;
+    private double deadlineMillis = 0.0;
+    private float sceneChangeTolerance = 0.0f;
+    private Long simulationSeed;
+    private int numObjects = 4;
+    private float rangeNoise = 0.01f;
+    private float dropout = 0.1f;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SonilizeCli cli = new SonilizeCli();
+        try {
+            cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: SonilizeCli [--synthetic EMPTY|WALL|CLUTTER|FLOOR]"
+                               + " [--points n] [--frames n] [--depth-image]"
+                               + " [--recording file] [--realtime] [--loops n]"
+                               + " [--resolution n] [--threads n] [--voxels size]"
+                               + " [--deadline ms] [--ground] [--static]"
+                               + " [--scene-change tolerance] [--simulate seed]"
+                               + " [--objects n] [--noise m] [--dropout fraction]");
+            System.exit(2);
+        }
+        cli.run();
+    }
+
+    private void parse(String[] args) {
+        for (int a = 0; a < args.length; a++) {
+            String option = args[a];
+            if (option.equals("--realtime")) {
+                realtime = true;
+                continue;
+            }
+            if (option.equals("--depth-image")) {
+                depthImage = true;
+                continue;
+            }
+            if (option.equals("--ground")) {
+                ground = true;
+                continue;
+            }
+            if (option.equals("--static")) {
+                still = true;
+                continue;
+            }
+            if (a + 1 == args.length)
+                throw new IllegalArgumentException("Missing value for " + option);
+            String value = args[++a];
+            if (option.equals("--synthetic"))
+                scene = SyntheticScenes.Scene.valueOf(value);
+            else if (option.equals("--points"))
+                numPoints = Integer.parseInt(value);
+            else if (option.equals("--frames"))
+                numFrames = Integer.parseInt(value);
+            else if (option.equals("--recording"))
+                recordingPath = new File(value);
+            else if (option.equals("--loops"))
+                loops = Integer.parseInt(value);
+            else if (option.equals("--resolution"))
+                resolution = Integer.parseInt(value);
+            else if (option.equals("--threads"))
+                threads = Integer.parseInt(value);
+            else if (option.equals("--voxels"))
+                voxelSize = Float.parseFloat(value);
+            else if (option.equals("--deadline"))
+                deadlineMillis = Double.parseDouble(value);
+            else if (option.equals("--scene-change"))
+                sceneChangeTolerance = Float.parseFloat(value);
+            else if (option.equals("--simulate"))
+                simulationSeed = Long.parseLong(value);
+            else if (option.equals("--objects"))
+                numObjects = Integer.parseInt(value);
+            else if (option.equals("--noise"))
+                rangeNoise = Float.parseFloat(value);
+            else if (option.equals("--dropout"))
+                dropout = Float.parseFloat(value);
+            else
+                throw new IllegalArgumentException("Unknown option: " + option);
+        }
+        if (depthImage && recordingPath != null)
+            throw new IllegalArgumentException("--depth-image needs synthetic input");
+        if (simulationSeed != null && (depthImage || recordingPath != null || realtime))
+            throw new IllegalArgumentException("--simulate takes no other input");
+    }
+
+    private void run() throws IOException, InterruptedException {
+        PipelineConfig config = PipelineConfig.builderForResolution(resolution, resolution)
+                .setQuantizationThreads(threads)
+                .setVoxelSize(voxelSize)
+                .setFrameDeadlineNanos((long) (deadlineMillis * 1e6))
+                .setGroundRemoval(ground)
+                .setSceneChangeTolerance(sceneChangeTolerance)
+                .build();
+        if (simulationSeed != null) {
+            simulate(config);
+            return;
+        }
+        DepthPipeline pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        if (depthImage) {
+            pipeline.setDepthCameraIntrinsics(
+                    SyntheticScenes.IMAGE_WIDTH, SyntheticScenes.IMAGE_HEIGHT,
+                    SyntheticScenes.FOCAL_LENGTH, SyntheticScenes.FOCAL_LENGTH,
+                    SyntheticScenes.IMAGE_WIDTH / 2, SyntheticScenes.IMAGE_HEIGHT / 2);
+            numPoints = SyntheticScenes.IMAGE_WIDTH * SyntheticScenes.IMAGE_HEIGHT;
+        }
+
+        PointCloudRecording recording = null;
+        float[][] synthetic = null;
+        int frameCount;
+        if (recordingPath != null) {
+            recording = new PointCloudRecording(recordingPath);
+            frameCount = recording.getFrameCount();
+            System.out.println("input:       " + recordingPath + " (" + frameCount + " frames)");
+        }
+        else {
+            synthetic = new float[Math.min(numFrames, SYNTHETIC_DISTINCT_FRAMES)][];
+            for (int f = 0; f < synthetic.length; f++) {
+                // a still scene keeps the layout and time of the first frame
+                long layout = still ? 0 : f;
+                float t = still ? 0.0f : (float) (f * SYNTHETIC_FRAME_PERIOD);
+                synthetic[f] = depthImage ? SyntheticScenes.depthImage(scene, layout, f, t)
+                                          : SyntheticScenes.cloud(scene, numPoints, layout, f, t);
+            }
+            frameCount = numFrames;
+            System.out.println("input:       synthetic " + (still ? "static " : "") + scene
+                               + ", " + numPoints
+                               + (depthImage ? " pixels, " : " points, ") + frameCount
+                               + " frames");
+        }
+        if (frameCount == 0)
+            return;
+
+        int total = frameCount * loops;
+        long[] groundFit = new long[total];
+        long[] quantize = new long[total];
+        long[] map = new long[total];
+        long[] blobs = new long[total];
+        long[] track = new long[total];
+        long[] frame = new long[total];
+        long totalPoints = 0;
+        int lateFrames = 0;
+        // timestamps keep increasing from one loop to the next
+        double loopDuration = (recording != null
+                ? recording.getTimestamp(frameCount - 1) - recording.getTimestamp(0)
+                : (frameCount - 1) * SYNTHETIC_FRAME_PERIOD) + SYNTHETIC_FRAME_PERIOD;
+        long start = System.nanoTime();
+        for (int loop = 0; loop < loops; loop++) {
+            long loopStart = System.nanoTime();
+            for (int f = 0; f < frameCount; f++) {
+                double time = recording != null
+                        ? recording.getTimestamp(f) - recording.getTimestamp(0)
+                        : f * SYNTHETIC_FRAME_PERIOD;
+                if (realtime) {
+                    long wait = loopStart + (long) (time * 1e9) - System.nanoTime();
+                    if (wait > 0)
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    else if (f > 0)
+                        lateFrames++;
+                }
+                long frameStart = System.nanoTime();
+                double timestamp = loop * loopDuration + time;
+                int n;
+                if (recording != null) {
+                    n = recording.getNumPoints(f);
+                    pipeline.process(recording.getPoints(f), n, timestamp);
+                }
+                else if (depthImage) {
+                    n = numPoints;
+                    pipeline.processDepthImage(synthetic[f % synthetic.length], timestamp);
+                }
+                else {
+                    n = numPoints;
+                    pipeline.process(synthetic[f % synthetic.length], n, timestamp);
+                }
+                int k = loop * frameCount + f;
+                frame[k] = System.nanoTime() - frameStart;
+                groundFit[k] = pipeline.getGroundNanos();
+                quantize[k] = pipeline.getQuantizeNanos();
+                map[k] = pipeline.getMapNanos();
+                blobs[k] = pipeline.getBlobNanos();
+                track[k] = pipeline.getTrackNanos();
+                totalPoints += n;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pipeline.release();
+
+        System.out.printf("throughput:  %d frames in %.3f s, %.1f frames/s, %.2f Mpoints/s%n",
+                          total, seconds, total / seconds, totalPoints / seconds / 1e6);
+        System.out.println("stage (ms)       mean      p50      p90      p99      max");
+        if (ground)
+            printStage("ground", groundFit);
+        printStage("quantize", quantize);
+        if (voxelSize > 0.0f)
+            printStage("map", map);
+        printStage("blobs", blobs);
+        printStage("track", track);
+        printStage("frame", frame);
+        if (voxelSize > 0.0f || sceneChangeTolerance > 0.0f)
+            System.out.println("skipped extractions: " + pipeline.getExtractionsSkipped());
+        if (deadlineMillis > 0.0) {
+            FrameScheduler scheduler = pipeline.getScheduler();
+            System.out.println("over deadline: " + scheduler.getFramesOverDeadline()
+                               + ", decimated: " + scheduler.getFramesDecimated()
+                               + ", lower resolution: " + scheduler.getFramesAtLowerResolution()
+                               + ", tracking skipped: " + scheduler.getTrackingSkipped());
+        }
+        if (realtime)
+            System.out.println("late frames: " + lateFrames);
+    }
+
+    private void simulate(PipelineConfig config) {
+        SceneSimulator simulator = SceneSimulator
+                .randomScene(simulationSeed, numObjects, SIMULATED_MAX_SPEED)
+                .setNumPoints(numPoints)
+                .setRangeNoise(rangeNoise)
+                .setDropout(dropout)
+                .setFramePeriod((float) SYNTHETIC_FRAME_PERIOD)
+                .build();
+        System.out.println("input:       simulated scene " + simulationSeed + ", " + numObjects
+                           + " objects, " + numPoints + " rays, noise " + rangeNoise
+                           + " m, dropout " + dropout + ", " + numFrames + " frames");
+        TrackingEvaluator.Result result = new TrackingEvaluator(simulator, config)
+                .evaluate(numFrames * loops);
+        System.out.printf("tracking:    recall %.3f, identity switches %d, false tracks %d%n",
+                          result.getRecall(), result.getIdentitySwitches(),
+                          result.getFalseTracks());
+        System.out.printf("sound error: pan %.4f, volume %.4f%n", result.getMeanPanError(),
+                          result.getMeanVolumeError());
+        System.out.printf("throughput:  %d frames, %.1f frames/s%n", result.getFrames(),
+                          result.getFramesPerSecond());
+    }
+
+    private static void printStage(String name, long[] nanos) {
+        long sum = 0;
+        for (long t : nanos)
+            sum += t;
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-12s %8.3f %8.3f %8.3f %8.3f %8.3f%n", name,
+                          sum / 1e6 / sorted.length, percentile(sorted, 0.50),
+                          percentile(sorted, 0.90), percentile(sorted, 0.99),
+                          sorted[sorted.length - 1] / 1e6);
+    }
+
+    /* the q-quantile of sorted nanosecond values, in milliseconds */
+    private static double percentile(long[] sorted, double q) {
+        int index = (int) Math.min(sorted.length - 1, Math.floor(q * sorted.length));
+        return sorted[index] / 1e6;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.sonilize;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/* sounds decoded once to PCM, in parallel on a pool of threads started by the constructor, and
+ * shared by every sound collection playing them, so that they outlive any one collection (and
+ * any pause and resume of the app) until release(); whoever plays them learns of each sound as
+ * it becomes ready through a Listener, so nothing waits for all of them, and nothing plays a
+ * sound before it is there
+ */
+class SoundBank {
+
+    /* decodes one sound, on a thread of the bank */
+    interface Decoder {
+        /* the samples of a sound, between -1.0 and 1.0, not empty */
+        float[] decode(int sound) throws IOException;
+    }
+
+    /* told of sounds as they are decoded, on the thread that decoded them, or on the thread
+     * adding the listener for sounds decoded before; exactly once per sound either way */
+    interface Listener {
+        void onSoundReady(int sound, float[] samples);
+
+        void onSoundFailed(int sound, IOException e);
+    }
+
+    private final int numSounds;
+    private final long startNanos;
+    private final ForkJoinPool pool;
+    // guarded by this
+    private final float[][] samples;
+    private final IOException[] failures;
+    private final List<Listener> listeners;
+    private int numDone;
+    private long doneNanos;
+    private boolean released;
+
+    /* constructor; starts decoding numSounds sounds with decoder, on at most threads threads */
+    SoundBank(int numSounds, final Decoder decoder, int threads) {
+        if (numSounds <= 0 || threads <= 0)
+            throw new IllegalArgumentException("Sound and thread counts must be positive");
+        this.numSounds = numSounds;
+        startNanos = System.nanoTime();
+        samples = new float[numSounds][];
+        failures = new IOException[numSounds];
+        listeners = new ArrayList<>();
+        pool = new ForkJoinPool(Math.min(threads, numSounds));
+        for (int s = 0; s < numSounds; s++) {
+            final int sound = s;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        float[] decoded = decoder.decode(sound);
+                        if (decoded.length == 0)
+                            throw new IOException("Empty sound " + sound);
+                        done(sound, decoded, null);
+                    } catch (IOException e) {
+                        done(sound, null, e);
+                    } catch (RuntimeException e) {
+                        done(sound, null, new IOException("Could not decode sound " + sound, e));
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+    }
+
+    private void done(int sound, float[] decoded, IOException failure) {
+        Listener[] notified;
+        synchronized (this) {
+            if (released)
+                return;
+            samples[sound] = decoded;
+            failures[sound] = failure;
+            if (++numDone == numSounds)
+                doneNanos = System.nanoTime();
+            notified = listeners.toArray(new Listener[listeners.size()]);
+            notifyAll();
+        }
+        for (Listener listener : notified)
+            notify(listener, sound, decoded, failure);
+    }
+
+    private static void notify(Listener listener, int sound, float[] decoded,
+                               IOException failure) {
+        if (decoded != null)
+            listener.onSoundReady(sound, decoded);
+        else
+            listener.onSoundFailed(sound, failure);
+    }
+
+    int getNumSounds() {
+        return numSounds;
+    }
+
+    /* start telling listener of sounds as they are decoded, first of those already decoded */
+    void addListener(Listener listener) {
+        float[][] decoded = new float[numSounds][];
+        IOException[] failed = new IOException[numSounds];
+        synchronized (this) {
+            if (released)
+                return;
+            listeners.add(listener);
+            System.arraycopy(samples, 0, decoded, 0, numSounds);
+            System.arraycopy(failures, 0, failed, 0, numSounds);
+        }
+        for (int s = 0; s < numSounds; s++)
+            if (decoded[s] != null || failed[s] != null)
+                notify(listener, s, decoded[s], failed[s]);
+    }
+
+    synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /* the samples of a sound, null until it is decoded (or if it failed to be) */
+    synchronized float[] getSamples(int sound) {
+        return samples[sound];
+    }
+
+    /* the number of sounds decoded so far, successfully */
+    synchronized int getNumReady() {
+        int ready = 0;
+        for (float[] decoded : samples)
+            if (decoded != null)
+                ready++;
+        return ready;
+    }
+
+    /* the number of sounds that could not be decoded */
+    synchronized int getNumFailed() {
+        int failed = 0;
+        for (IOException failure : failures)
+            if (failure != null)
+                failed++;
+        return failed;
+    }
+
+    /* wait for every sound to be decoded or to fail, for at most timeout; returns true if
+     * they all were */
+    synchronized boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (numDone < numSounds && !released) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return numDone == numSounds;
+    }
+
+    /* the time taken to decode every sound, from construction, in nanoseconds; -1 while some
+     * are still decoding */
+    synchronized long getDecodeNanos() {
+        return numDone == numSounds ? doneNanos - startNanos : -1L;
+    }
+
+    /* stop decoding, drop the samples and forget the listeners; collections still holding
+     * samples keep them */
+    void release() {
+        synchronized (this) {
+            released = true;
+            listeners.clear();
+            for (int s = 0; s < numSounds; s++)
+                samples[s] = null;
+            notifyAll();
+        }
+        pool.shutdownNow();
+    }
+}
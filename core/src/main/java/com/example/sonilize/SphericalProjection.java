@@ -0,0 +1,189 @@
+package com.example.sonilize;
+
+/* the mapping between 3-space and the grid of viewing angles: a column of the grid is a range
+ * of longitudes theta (the signed angle measured clockwise from the z axis in the xz-plane) and
+ * a row is a range of latitudes phi (the signed angle measured upwards from the xz plane)
+ *
+ * points are binned without evaluating any angle exactly: since tan(theta) = x / z and
+ * sin(phi) = -y / r are increasing in theta and phi, a point belongs to the column whose
+ * tangent boundaries enclose x / z and to the row whose sine boundaries enclose -y / r; a
+ * polynomial approximation of the angle guesses the cell, and comparisons against the
+ * precomputed boundaries settle it exactly
+ */
+class SphericalProjection {
+
+    /* largest absolute error of fastAtan, in radians, over all floats */
+    static final float FAST_ATAN_MAX_ERROR = 1.2e-5f;
+    /* largest absolute error of fastAsin, in radians, over [-1, 1] */
+    static final float FAST_ASIN_MAX_ERROR = 7.0e-5f;
+
+    private static final float HALF_PI = (float) (Math.PI / 2.0);
+
+    private final int horizRes;
+    private final int vertRes;
+    private final float horizSpan;
+    private final float vertSpan;
+
+    // angles of the lower edge of each column and row
+    private final float[] columnTheta;
+    private final float[] rowPhi;
+
+    // boundary k is the lower edge of column / row k, boundary res is the upper edge of the grid
+    private final float[] columnTan;
+    private final float[] rowSin;
+
+    /* constructor; each span must be at most PI, centered on the z axis */
+    SphericalProjection(int horizRes, int vertRes, float horizSpan, float vertSpan) {
+        if (horizRes <= 0 || vertRes <= 0)
+            throw new IllegalArgumentException("Grid resolution must be positive");
+        if (horizSpan <= 0.0f || horizSpan > (float) Math.PI
+                || vertSpan <= 0.0f || vertSpan > (float) Math.PI)
+            throw new IllegalArgumentException("Angular spans must be in (0, PI]");
+        this.horizRes = horizRes;
+        this.vertRes = vertRes;
+        this.horizSpan = horizSpan;
+        this.vertSpan = vertSpan;
+
+        columnTheta = new float[horizRes];
+        for (int i = 0; i < horizRes; i++)
+            columnTheta[i] = (float) i * horizSpan / horizRes - horizSpan / 2.0f;
+        rowPhi = new float[vertRes];
+        for (int j = 0; j < vertRes; j++)
+            rowPhi[j] = (float) j * vertSpan / vertRes - vertSpan / 2.0f;
+
+        columnTan = new float[horizRes + 1];
+        for (int k = 0; k <= horizRes; k++) {
+            double theta = (double) k * horizSpan / horizRes - horizSpan / 2.0;
+            columnTan[k] = edgeValue(Math.tan(theta), theta);
+        }
+        rowSin = new float[vertRes + 1];
+        for (int k = 0; k <= vertRes; k++) {
+            double phi = (double) k * vertSpan / vertRes - vertSpan / 2.0;
+            rowSin[k] = (float) Math.sin(phi);
+        }
+        // a full span takes in everything, including the poles
+        if (vertSpan == (float) Math.PI) {
+            rowSin[0] = Float.NEGATIVE_INFINITY;
+            rowSin[vertRes] = Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /* a tangent boundary, pushed to infinity at (or, in float, just short of) the poles */
+    private static float edgeValue(double tangent, double theta) {
+        if (Math.abs(Math.abs(theta) - Math.PI / 2.0) < 1e-6)
+            return theta < 0.0 ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        return (float) tangent;
+    }
+
+    int getHorizRes() {
+        return horizRes;
+    }
+
+    int getVertRes() {
+        return vertRes;
+    }
+
+    float getHorizSpan() {
+        return horizSpan;
+    }
+
+    float getVertSpan() {
+        return vertSpan;
+    }
+
+    /* longitude of the lower edge of column i */
+    float thetaOfColumn(int i) {
+        return columnTheta[i];
+    }
+
+    /* latitude of the lower edge of row j */
+    float phiOfRow(int j) {
+        return rowPhi[j];
+    }
+
+    /* the column of a point with coordinates x and z, or -1 if it lies outside the span */
+    int columnOf(float x, float z) {
+        float ratio = x / z;
+        if (!(ratio >= columnTan[0] && ratio < columnTan[horizRes]))
+            return -1;
+        int col = (int) ((fastAtan(ratio) + horizSpan / 2.0f) * horizRes / horizSpan);
+        if (col < 0)
+            col = 0;
+        else if (col >= horizRes)
+            col = horizRes - 1;
+        while (ratio < columnTan[col])
+            col--;
+        while (ratio >= columnTan[col + 1])
+            col++;
+        return col;
+    }
+
+    /* the row of a point with coordinate y and radial distance r, or -1 if it lies outside the
+     * span */
+    int rowOf(float y, float r) {
+        float ratio = -y / r;
+        if (!(ratio >= rowSin[0] && ratio < rowSin[vertRes]))
+            return -1;
+        int row = (int) ((fastAsin(ratio) + vertSpan / 2.0f) * vertRes / vertSpan);
+        if (row < 0)
+            row = 0;
+        else if (row >= vertRes)
+            row = vertRes - 1;
+        while (ratio < rowSin[row])
+            row--;
+        while (ratio >= rowSin[row + 1])
+            row++;
+        return row;
+    }
+
+    /* arctangent by the odd polynomial of Abramowitz & Stegun 4.4.49 on [-1, 1], extended by
+     * atan(x) = sign(x) * PI / 2 - atan(1 / x); at most FAST_ATAN_MAX_ERROR away from atan */
+    static float fastAtan(float x) {
+        if (x > 1.0f)
+            return HALF_PI - atanPolynomial(1.0f / x);
+        if (x < -1.0f)
+            return -HALF_PI - atanPolynomial(1.0f / x);
+        return atanPolynomial(x);
+    }
+
+    /* the angle of (z, x) in polar coordinates, like Math.atan2(x, z), within
+     * FAST_ATAN_MAX_ERROR */
+    static float fastAtan2(float x, float z) {
+        if (z > 0.0f)
+            return fastAtan(x / z);
+        if (z < 0.0f)
+            return x >= 0.0f ? fastAtan(x / z) + (float) Math.PI
+                             : fastAtan(x / z) - (float) Math.PI;
+        return x > 0.0f ? HALF_PI : x < 0.0f ? -HALF_PI : 0.0f;
+    }
+
+    private static float atanPolynomial(float x) {
+        float x2 = x * x;
+        return x * (0.9998660f + x2 * (-0.3302995f + x2 * (0.1801410f
+                + x2 * (-0.0851330f + x2 * 0.0208351f))));
+    }
+
+    /* arcsine by the approximation of Abramowitz & Stegun 4.4.45, extended to negative
+     * arguments by symmetry; at most FAST_ASIN_MAX_ERROR away from asin on [-1, 1] */
+    static float fastAsin(float x) {
+        float a = Math.abs(x);
+        float p = 1.5707288f + a * (-0.2121144f + a * (0.0742610f + a * -0.0187293f));
+        float asin = HALF_PI - (float) Math.sqrt(1.0f - a) * p;
+        return x < 0.0f ? -asin : asin;
+    }
+
+    /* x coordinate of the point at (r, theta, phi) */
+    static float xOfSpherical(float r, float theta, float phi) {
+        return r * (float) (Math.cos(phi) * Math.sin(theta));
+    }
+
+    /* y coordinate of the point at (r, theta, phi) */
+    static float yOfSpherical(float r, float theta, float phi) {
+        return - r * (float) Math.sin(phi);
+    }
+
+    /* z coordinate of the point at (r, theta, phi) */
+    static float zOfSpherical(float r, float theta, float phi) {
+        return r * (float) (Math.cos(phi) * Math.cos(theta));
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.sonilize;
+
+import java.util.Random;
+
+/* seeded synthetic point clouds in the layout delivered by Tango (x right, y down, z forward,
+ * four floats per point); each point is the first hit of a random ray of the depth camera's
+ * field of view with the scene, plus a little range noise; the same scenes are also rendered
+ * as depth images of a pinhole camera of about that field of view, one ray per pixel center */
+class SyntheticScenes {
+
+    enum Scene {
+        /* nothing closer than the background, a few meters away */
+        EMPTY,
+        /* a wall filling the field of view one meter ahead */
+        WALL,
+        /* many small obstacles within reach, in front of the background */
+        CLUTTER,
+        /* the floor, the camera looking down at it, and a ball lying on it within reach */
+        FLOOR
+    }
+
+    private static final float HORIZ_FOV = (float) Math.toRadians(60.0);
+    private static final float VERT_FOV = (float) Math.toRadians(45.0);
+    private static final float BACKGROUND_DISTANCE = 4.0f;
+    private static final float WALL_DISTANCE = 1.0f;
+    private static final int CLUTTER_OBSTACLES = 30;
+    private static final float RANGE_NOISE = 0.005f;
+    // the camera of the FLOOR scene, above the floor and pitched down, and its ball
+    static final float CAMERA_HEIGHT = 1.2f;
+    static final float CAMERA_PITCH = (float) Math.toRadians(45.0);
+    private static final float BALL_DISTANCE = 0.9f;
+    private static final float BALL_RADIUS = 0.25f;
+
+    // the pinhole depth camera of the depth images, principal point at the image center
+    static final int IMAGE_WIDTH = 320;
+    static final int IMAGE_HEIGHT = 240;
+    static final double FOCAL_LENGTH = IMAGE_WIDTH / 2 / Math.tan(HORIZ_FOV / 2.0);
+
+    private SyntheticScenes() {
+    }
+
+    /* a cloud of numPoints points of scene at time t (in seconds; obstacles drift with time) */
+    static float[] cloud(Scene scene, int numPoints, long seed, float t) {
+        return cloud(scene, numPoints, seed, seed, t);
+    }
+
+    /* as above, the obstacles being laid out from layoutSeed and the rays and noise drawn from
+     * sampleSeed, so that clouds of a static scene differ only by their sampling */
+    static float[] cloud(Scene scene, int numPoints, long layoutSeed, long sampleSeed, float t) {
+        Random random = new Random(sampleSeed);
+        float[] spheres = obstacles(scene, layoutSeed, t);
+        float[] points = new float[numPoints * PointCloudQuantizer.FLOATS_PER_POINT];
+        for (int n = 0; n < numPoints; n++) {
+            float theta = (random.nextFloat() - 0.5f) * HORIZ_FOV;
+            float phi = (random.nextFloat() - 0.5f) * VERT_FOV;
+            float dx = (float) (Math.cos(phi) * Math.sin(theta));
+            float dy = (float) -Math.sin(phi);
+            float dz = (float) (Math.cos(phi) * Math.cos(theta));
+            float hit = scene == Scene.WALL ? WALL_DISTANCE / dz : BACKGROUND_DISTANCE;
+            for (int s = 0; s < spheres.length; s += 4)
+                hit = Math.min(hit, raySphere(dx, dy, dz, spheres, s));
+            if (scene == Scene.FLOOR)
+                hit = Math.min(hit, rayFloor(dy, dz));
+            hit += (float) random.nextGaussian() * RANGE_NOISE;
+            points[4*n] = hit * dx;
+            points[4*n+1] = hit * dy;
+            points[4*n+2] = hit * dz;
+            points[4*n+3] = 1.0f;
+        }
+        return points;
+    }
+
+    /* a depth image of scene at time t, IMAGE_WIDTH x IMAGE_HEIGHT pixels, the depth along z
+     * of pixel (u, v) at index v * IMAGE_WIDTH + u */
+    static float[] depthImage(Scene scene, long seed, float t) {
+        return depthImage(scene, seed, seed, t);
+    }
+
+    /* as above, with the obstacles and the noise drawn from separate seeds */
+    static float[] depthImage(Scene scene, long layoutSeed, long sampleSeed, float t) {
+        Random random = new Random(sampleSeed);
+        float[] spheres = obstacles(scene, layoutSeed, t);
+        float[] image = new float[IMAGE_WIDTH * IMAGE_HEIGHT];
+        for (int v = 0; v < IMAGE_HEIGHT; v++) {
+            for (int u = 0; u < IMAGE_WIDTH; u++) {
+                float x = rayX(u), y = rayY(v);
+                float norm = (float) Math.sqrt(x * x + y * y + 1.0f);
+                float dx = x / norm, dy = y / norm, dz = 1.0f / norm;
+                float hit = scene == Scene.WALL ? WALL_DISTANCE / dz : BACKGROUND_DISTANCE;
+                for (int s = 0; s < spheres.length; s += 4)
+                    hit = Math.min(hit, raySphere(dx, dy, dz, spheres, s));
+                if (scene == Scene.FLOOR)
+                    hit = Math.min(hit, rayFloor(dy, dz));
+                hit += (float) random.nextGaussian() * RANGE_NOISE;
+                image[v * IMAGE_WIDTH + u] = hit * dz;
+            }
+        }
+        return image;
+    }
+
+    /* the point cloud of a depth image, one point per pixel with a depth */
+    static float[] cloudOfDepthImage(float[] image) {
+        float[] points = new float[image.length * PointCloudQuantizer.FLOATS_PER_POINT];
+        for (int v = 0; v < IMAGE_HEIGHT; v++) {
+            for (int u = 0; u < IMAGE_WIDTH; u++) {
+                int p = v * IMAGE_WIDTH + u;
+                float z = image[p];
+                points[4*p] = rayX(u) * z;
+                points[4*p+1] = rayY(v) * z;
+                points[4*p+2] = z;
+                points[4*p+3] = 1.0f;
+            }
+        }
+        return points;
+    }
+
+    /* a lookup of the camera of the depth images into the grid of projection */
+    static DepthImageLookup imageLookup(SphericalProjection projection) {
+        return new DepthImageLookup(projection, IMAGE_WIDTH, IMAGE_HEIGHT, FOCAL_LENGTH,
+                                    FOCAL_LENGTH, IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+    }
+
+    private static float rayX(int u) {
+        return (u + 0.5f - IMAGE_WIDTH / 2) / (float) FOCAL_LENGTH;
+    }
+
+    private static float rayY(int v) {
+        return (v + 0.5f - IMAGE_HEIGHT / 2) / (float) FOCAL_LENGTH;
+    }
+
+    /* centers and radii of the obstacles of scene at time t, four floats per sphere */
+    private static float[] obstacles(Scene scene, long seed, float t) {
+        if (scene == Scene.FLOOR) {
+            // straight ahead on the floor, in the coordinates of the pitched camera
+            float height = BALL_RADIUS - CAMERA_HEIGHT;
+            return new float[] {
+                0.0f,
+                (float) (-Math.sin(CAMERA_PITCH) * BALL_DISTANCE
+                         - Math.cos(CAMERA_PITCH) * height),
+                (float) (Math.cos(CAMERA_PITCH) * BALL_DISTANCE
+                         - Math.sin(CAMERA_PITCH) * height),
+                BALL_RADIUS
+            };
+        }
+        if (scene != Scene.CLUTTER)
+            return new float[0];
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        float[] spheres = new float[4 * CLUTTER_OBSTACLES];
+        for (int s = 0; s < spheres.length; s += 4) {
+            float z = 0.5f + 0.9f * random.nextFloat();
+            float vx = (random.nextFloat() - 0.5f) * 0.4f;
+            spheres[s] = (random.nextFloat() - 0.5f) * z + vx * t;
+            spheres[s+1] = (random.nextFloat() - 0.5f) * 0.8f * z;
+            spheres[s+2] = z;
+            spheres[s+3] = 0.05f + 0.1f * random.nextFloat();
+        }
+        return spheres;
+    }
+
+    /* the up direction of the FLOOR scene, in the coordinates of its camera */
+    static float[] floorUp() {
+        return new float[] {0.0f, (float) -Math.cos(CAMERA_PITCH), (float) -Math.sin(CAMERA_PITCH)};
+    }
+
+    /* distance along the unit ray (dx, dy, dz) to the floor of the FLOOR scene, or infinity */
+    private static float rayFloor(float dy, float dz) {
+        float down = (float) (Math.cos(CAMERA_PITCH) * dy + Math.sin(CAMERA_PITCH) * dz);
+        return down > 0.0f ? CAMERA_HEIGHT / down : Float.POSITIVE_INFINITY;
+    }
+
+    /* distance along the unit ray (dx, dy, dz) to the sphere at offset s, or infinity */
+    private static float raySphere(float dx, float dy, float dz, float[] spheres, int s) {
+        float cx = spheres[s], cy = spheres[s+1], cz = spheres[s+2], radius = spheres[s+3];
+        float along = dx * cx + dy * cy + dz * cz;
+        float perpSq = cx * cx + cy * cy + cz * cz - along * along;
+        float halfChordSq = radius * radius - perpSq;
+        if (halfChordSq < 0.0f || along <= 0.0f)
+            return Float.POSITIVE_INFINITY;
+        return along - (float) Math.sqrt(halfChordSq);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.sonilize;
+
+/* a tracked object and its associated sound; its position, in the frame objects are tracked
+ * in, is estimated by a constant-velocity Kalman filter run independently on each cartesian
+ * axis from the centroids of the blobs it is matched to */
+class Thing {
+    // distance, longitude and latitude (positive up) of the estimated position as seen from
+    // the camera, which drive the sound
+    float averageR;
+    float averageTheta;
+    float averagePhi;
+    int streamID;
+    // frames in a row without a matching blob
+    int misses;
+
+    // per axis (x, y, z): position, velocity, and covariance of both
+    final float[] position = new float[3];
+    final float[] velocity = new float[3];
+    private final float[] varPosition = new float[3];
+    private final float[] covPositionVelocity = new float[3];
+    private final float[] varVelocity = new float[3];
+
+    Thing(float x, float y, float z, int streamID, float measurementVar,
+          float initialVelocityVar) {
+        this.streamID = streamID;
+        position[0] = x;
+        position[1] = y;
+        position[2] = z;
+        for (int a = 0; a < 3; a++) {
+            velocity[a] = 0.0f;
+            varPosition[a] = measurementVar;
+            covPositionVelocity[a] = 0.0f;
+            varVelocity[a] = initialVelocityVar;
+        }
+    }
+
+    /* move the estimate dt seconds ahead, under white acceleration noise of variance accelVar */
+    void predict(float dt, float accelVar) {
+        float dt2 = dt * dt;
+        for (int a = 0; a < 3; a++) {
+            position[a] += velocity[a] * dt;
+            float pp = varPosition[a] + 2.0f * dt * covPositionVelocity[a] + dt2 * varVelocity[a]
+                       + accelVar * dt2 * dt2 / 4.0f;
+            float pv = covPositionVelocity[a] + dt * varVelocity[a] + accelVar * dt2 * dt / 2.0f;
+            varPosition[a] = pp;
+            covPositionVelocity[a] = pv;
+            varVelocity[a] += accelVar * dt2;
+        }
+    }
+
+    /* correct the estimate with a blob centroid (x, y, z) measured with variance
+     * measurementVar */
+    void correct(float x, float y, float z, float measurementVar) {
+        correctAxis(0, x, measurementVar);
+        correctAxis(1, y, measurementVar);
+        correctAxis(2, z, measurementVar);
+    }
+
+    private void correctAxis(int a, float measured, float measurementVar) {
+        float s = varPosition[a] + measurementVar;
+        float gainPosition = varPosition[a] / s;
+        float gainVelocity = covPositionVelocity[a] / s;
+        float innovation = measured - position[a];
+        position[a] += gainPosition * innovation;
+        velocity[a] += gainVelocity * innovation;
+        varVelocity[a] -= gainVelocity * covPositionVelocity[a];
+        covPositionVelocity[a] -= gainPosition * covPositionVelocity[a];
+        varPosition[a] -= gainPosition * varPosition[a];
+    }
+
+    /* set the distance, longitude and latitude of the thing from its position (x, y, z) in
+     * camera coordinates */
+    void setSeenAt(float x, float y, float z) {
+        averageR = (float) Math.sqrt(x * x + y * y + z * z);
+        averageTheta = (float) Math.atan2(x, z);
+        float sine = averageR > 0.0f ? -y / averageR : 0.0f;
+        averagePhi = (float) Math.asin(Math.max(-1.0f, Math.min(1.0f, sine)));
+    }
+
+    // the square of the euclidean distance between the estimated position and (x, y, z)
+    float distanceSqTo(float x, float y, float z) {
+        float xDiff = position[0] - x;
+        float yDiff = position[1] - y;
+        float zDiff = position[2] - z;
+        return xDiff * xDiff + yDiff * yDiff + zDiff * zDiff;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.sonilize;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/* runs a DepthPipeline over the frames of a SceneSimulator and scores its tracking against the
+ * ground truth, together with its throughput, so that a change to the pipeline can be judged
+ * on both at once
+ *
+ * each frame, the noiseless points are binned into the grid of the pipeline as it would be,
+ * each cell going to the nearest object within the largest distance of interest; an object
+ * covering at least the smallest blob size of cells should be tracked, and is heard where its
+ * visible points are on average; tracks are matched to objects greedily, nearest pair first,
+ * by their horizontal positions within epsilon of each other; an object tracked by another
+ * sound than in the frame it was last tracked in counts an identity switch, and a track
+ * matched to no object in view counts a false track; only processing the frames is timed,
+ * rendering them is not
+ */
+class TrackingEvaluator {
+
+    private final SceneSimulator simulator;
+    private final PipelineConfig config;
+    private final SphericalProjection projection;
+
+    /* constructor, for the pipelines configured by config */
+    TrackingEvaluator(SceneSimulator simulator, PipelineConfig config) {
+        this.simulator = simulator;
+        this.config = config;
+        projection = new SphericalProjection(config.getHorizRes(), config.getVertRes(),
+                                             config.getHorizAngularSpan(),
+                                             config.getVertAngularSpan());
+    }
+
+    /* run a new pipeline over the first numFrames frames of the simulator */
+    Result evaluate(int numFrames) {
+        int numObjects = simulator.getNumObjects();
+        int maxPoints = simulator.getMaxPoints();
+        float[] points = new float[4 * maxPoints];
+        int[] labels = new int[maxPoints];
+        float[] truth = new float[3 * maxPoints];
+        int vertRes = config.getVertRes();
+        float[] nearest = new float[config.getHorizRes() * vertRes];
+        int[] nearestLabels = new int[nearest.length];
+        int[] cells = new int[numObjects];
+        float[] sums = new float[3 * numObjects];
+        int[] counts = new int[numObjects];
+        // where each object is heard from, NaN when out of view
+        float[] objectXs = new float[numObjects];
+        float[] objectZs = new float[numObjects];
+        int[] lastStreamIDs = new int[numObjects];
+        Arrays.fill(lastStreamIDs, -1);
+        boolean[] trackMatched = new boolean[config.getMaxNumThings()];
+        boolean[] objectMatched = new boolean[numObjects];
+        float maxDistance = config.getMaxDistance();
+        float epsilon = config.getEpsilon();
+        float horizSpan = config.getHorizAngularSpan();
+
+        Result result = new Result();
+        DepthPipeline pipeline = new DepthPipeline(
+                config, new NullAudioSink(2 * config.getMaxNumThings()));
+        try {
+            for (int f = 0; f < numFrames; f++) {
+                int n = simulator.render(f, points, labels, truth);
+                long start = System.nanoTime();
+                pipeline.process(points, n, simulator.timeOf(f));
+                result.processNanos += System.nanoTime() - start;
+                result.frames++;
+
+                // what the pipeline should see
+                Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+                Arrays.fill(cells, 0);
+                Arrays.fill(sums, 0.0f);
+                Arrays.fill(counts, 0);
+                for (int p = 0; p < n; p++) {
+                    float x = truth[3*p];
+                    float y = truth[3*p+1];
+                    float z = truth[3*p+2];
+                    float r = (float) Math.sqrt(x * x + y * y + z * z);
+                    int o = labels[p];
+                    if (!(r <= maxDistance))
+                        continue;
+                    if (o >= 0) {
+                        sums[3*o] += x;
+                        sums[3*o+1] += y;
+                        sums[3*o+2] += z;
+                        counts[o]++;
+                    }
+                    int col = projection.columnOf(x, z);
+                    int row = projection.rowOf(y, r);
+                    if (col < 0 || row < 0)
+                        continue;
+                    int cell = col * vertRes + row;
+                    if (r < nearest[cell]) {
+                        nearest[cell] = r;
+                        nearestLabels[cell] = o;
+                    }
+                }
+                for (int c = 0; c < nearest.length; c++)
+                    if (nearest[c] != Float.POSITIVE_INFINITY && nearestLabels[c] >= 0)
+                        cells[nearestLabels[c]]++;
+                for (int o = 0; o < numObjects; o++) {
+                    if (cells[o] == 0) {
+                        objectXs[o] = Float.NaN;
+                        continue;
+                    }
+                    objectXs[o] = sums[3*o] / counts[o];
+                    objectZs[o] = sums[3*o+2] / counts[o];
+                    if (cells[o] >= config.getMinBlobSize())
+                        result.visible++;
+                }
+
+                // match tracks to objects in view, nearest pair first
+                int numTracked = pipeline.getNumTracked();
+                Arrays.fill(trackMatched, false);
+                Arrays.fill(objectMatched, false);
+                while (true) {
+                    float best = epsilon * epsilon;
+                    int bestTrack = -1;
+                    int bestObject = -1;
+                    for (int k = 0; k < numTracked; k++) {
+                        if (trackMatched[k])
+                            continue;
+                        float distance = pipeline.getDistance(k);
+                        float theta = pipeline.getLongitude(k);
+                        float x = distance * (float) Math.sin(theta);
+                        float z = distance * (float) Math.cos(theta);
+                        for (int o = 0; o < numObjects; o++) {
+                            if (objectMatched[o] || Float.isNaN(objectXs[o]))
+                                continue;
+                            float dx = x - objectXs[o];
+                            float dz = z - objectZs[o];
+                            float d = dx * dx + dz * dz;
+                            if (d <= best) {
+                                best = d;
+                                bestTrack = k;
+                                bestObject = o;
+                            }
+                        }
+                    }
+                    if (bestTrack < 0)
+                        break;
+                    trackMatched[bestTrack] = true;
+                    objectMatched[bestObject] = true;
+                    // objects too small to be a blob may be tracked, but need not be
+                    if (cells[bestObject] < config.getMinBlobSize())
+                        continue;
+                    result.detected++;
+                    int streamID = pipeline.getStreamID(bestTrack);
+                    if (lastStreamIDs[bestObject] >= 0 && lastStreamIDs[bestObject] != streamID)
+                        result.identitySwitches++;
+                    lastStreamIDs[bestObject] = streamID;
+                    float x = sums[3*bestObject] / counts[bestObject];
+                    float y = sums[3*bestObject+1] / counts[bestObject];
+                    float z = sums[3*bestObject+2] / counts[bestObject];
+                    float r = (float) Math.sqrt(x * x + y * y + z * z);
+                    float theta = (float) Math.atan2(x, z);
+                    result.panError += Math.abs(pipeline.getPan(bestTrack)
+                                                - ObjectTracker.panOf(theta, horizSpan));
+                    result.volumeError += Math.abs(pipeline.getVolume(bestTrack)
+                                                   - ObjectTracker.volumeOf(r, maxDistance));
+                }
+                for (int k = 0; k < numTracked; k++)
+                    if (!trackMatched[k])
+                        result.falseTracks++;
+            }
+        } finally {
+            pipeline.release();
+        }
+        return result;
+    }
+
+    /* the scores of a run */
+    static class Result {
+        private int frames;
+        // object-frames in which objects should have been tracked, and were
+        private long visible;
+        private long detected;
+        private long identitySwitches;
+        private long falseTracks;
+        // summed over the detected object-frames
+        private double panError;
+        private double volumeError;
+        private long processNanos;
+
+        int getFrames() {
+            return frames;
+        }
+
+        /* the fraction of the objects in view, over all frames, that were tracked; 1.0 if none
+         * ever was in view */
+        double getRecall() {
+            return visible == 0 ? 1.0 : detected / (double) visible;
+        }
+
+        long getIdentitySwitches() {
+            return identitySwitches;
+        }
+
+        /* the number of tracks, over all frames, matched to no object in view */
+        long getFalseTracks() {
+            return falseTracks;
+        }
+
+        /* the mean absolute pan error of the objects tracked */
+        double getMeanPanError() {
+            return detected == 0 ? 0.0 : panError / detected;
+        }
+
+        /* the mean absolute volume error of the objects tracked */
+        double getMeanVolumeError() {
+            return detected == 0 ? 0.0 : volumeError / detected;
+        }
+
+        /* frames processed per second, rendering excluded */
+        double getFramesPerSecond() {
+            return processNanos == 0 ? 0.0 : frames / (processNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                                 "recall %.3f (%d of %d), identity switches %d, false tracks %d,"
+                                 + " pan error %.4f, volume error %.4f, %.1f frames/s",
+                                 getRecall(), detected, visible, identitySwitches, falseTracks,
+                                 getMeanPanError(), getMeanVolumeError(), getFramesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.sonilize;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* a lock-free single-producer single-consumer handoff where the latest value wins: the producer
+ * fills the buffer returned by getWriteBuffer() and publishes it, the consumer polls the most
+ * recently published buffer; values published but never polled are overwritten (and reported as
+ * dropped) rather than queued; three preallocated buffers rotate so that the producer and the
+ * consumer never touch the same one, and neither ever waits on the other
+ */
+class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    // index of the buffer in the middle slot, with FRESH set if it was published but not polled
+    private final AtomicInteger middle;
+    // owned by the producer
+    private int writeIndex;
+    // owned by the consumer
+    private int readIndex;
+
+    /* constructor; the three buffers must be distinct */
+    TripleBuffer(T first, T second, T third) {
+        if (first == second || second == third || first == third)
+            throw new IllegalArgumentException("Triple buffer needs three distinct buffers");
+        buffers = new Object[] {first, second, third};
+        writeIndex = 0;
+        middle = new AtomicInteger(1);
+        readIndex = 2;
+    }
+
+    /* the buffer the producer may fill before the next call to publish */
+    @SuppressWarnings("unchecked")
+    T getWriteBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    /* make the write buffer available to the consumer; returns true if this overwrote a value
+     * the consumer had not polled yet */
+    boolean publish() {
+        int previous = middle.getAndSet(writeIndex | FRESH);
+        writeIndex = previous & INDEX_MASK;
+        return (previous & FRESH) != 0;
+    }
+
+    /* the most recently published buffer if it has not been polled yet, null otherwise; the
+     * returned buffer stays owned by the consumer until the next call to poll */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        if ((middle.get() & FRESH) == 0)
+            return null;
+        int previous = middle.getAndSet(readIndex);
+        readIndex = previous & INDEX_MASK;
+        return (T) buffers[readIndex];
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.sonilize;
+
+import java.util.NoSuchElementException;
+
+/* the bookkeeping of a fixed set of looped voices, numbered from 0, for an AudioSink: which are
+ * active and playing, their volumes, left and right gains and directions, and the order in which
+ * inactive voices were released so that the least recently used is handed out first; every
+ * transition is checked and takes constant time, and nothing is allocated after construction */
+class VoiceAllocator {
+
+    private final int numVoices;
+    // inactive voices, least recently released first, in a ring of numVoices slots
+    private final int[] inactive;
+    private int head;
+    private int numInactive;
+    private final long[] active;
+    private final long[] playing;
+    private final float[] leftGains;
+    private final float[] rightGains;
+    private final float[] vols;
+    private final float[] azimuths;
+    private final float[] elevations;
+
+    /* constructor; all voices start inactive and silent, released in increasing order */
+    VoiceAllocator(int numVoices) {
+        if (numVoices <= 0)
+            throw new IllegalArgumentException("Number of voices must be positive");
+        this.numVoices = numVoices;
+        inactive = new int[numVoices];
+        for (int v = 0; v < numVoices; v++)
+            inactive[v] = v;
+        numInactive = numVoices;
+        active = new long[(numVoices + 63) >>> 6];
+        playing = new long[(numVoices + 63) >>> 6];
+        leftGains = new float[numVoices];
+        rightGains = new float[numVoices];
+        vols = new float[numVoices];
+        azimuths = new float[numVoices];
+        elevations = new float[numVoices];
+    }
+
+    int getNumVoices() {
+        return numVoices;
+    }
+
+    int getNumActive() {
+        return numVoices - numInactive;
+    }
+
+    boolean isActive(int voice) {
+        checkRange(voice);
+        return test(active, voice);
+    }
+
+    boolean isPlaying(int voice) {
+        checkRange(voice);
+        return test(playing, voice);
+    }
+
+    float getLeftGain(int voice) {
+        return leftGains[voice];
+    }
+
+    float getRightGain(int voice) {
+        return rightGains[voice];
+    }
+
+    float getVolume(int voice) {
+        return vols[voice];
+    }
+
+    float getAzimuth(int voice) {
+        return azimuths[voice];
+    }
+
+    float getElevation(int voice) {
+        return elevations[voice];
+    }
+
+    /* activate the least recently released voice and return it */
+    int activateLeastRecent() {
+        if (numInactive == 0)
+            throw new NoSuchElementException("No more sounds left to play!");
+        int voice = inactive[head];
+        head = head + 1 == numVoices ? 0 : head + 1;
+        numInactive--;
+        set(active, voice);
+        return voice;
+    }
+
+    /* release an active voice, which stops playing and falls silent */
+    void deactivate(int voice) {
+        checkActive(voice, "Attempted to deactivate an inactive sound!");
+        clear(active, voice);
+        clear(playing, voice);
+        leftGains[voice] = 0.0f;
+        rightGains[voice] = 0.0f;
+        vols[voice] = 0.0f;
+        azimuths[voice] = 0.0f;
+        elevations[voice] = 0.0f;
+        int tail = head + numInactive;
+        inactive[tail >= numVoices ? tail - numVoices : tail] = voice;
+        numInactive++;
+    }
+
+    /* mark an active voice as playing; returns false if it already was */
+    boolean play(int voice) {
+        checkActive(voice, "Attempted to play an inactive sound!");
+        if (test(playing, voice))
+            return false;
+        set(playing, voice);
+        return true;
+    }
+
+    /* mark a voice as paused; returns false if it was not playing */
+    boolean pause(int voice) {
+        checkRange(voice);
+        if (!test(playing, voice))
+            return false;
+        clear(playing, voice);
+        return true;
+    }
+
+    /* set the gains of an active voice from a volume (between 0.0 and 1.0) and a pan (between
+     * -1.0 and 1.0) */
+    void setVolPan(int voice, float vol, float pan) {
+        checkActive(voice, "Attempted to change volume/pan of an inactive sound!");
+        if (vol < 0.0f || vol > 1.0f)
+            throw new IllegalArgumentException("Volume must be between 0.0 and 1.0");
+        if (pan < -1.0f || pan > 1.0f)
+            throw new IllegalArgumentException("Pan must be bewteen -1.0 and 1.0");
+        float pan2 = pan / (1 + pan * pan) + 0.5f;
+        leftGains[voice] = (1.0f - pan2) * vol;
+        rightGains[voice] = pan2 * vol;
+        vols[voice] = vol;
+    }
+
+    /* set the direction of an active voice, as an azimuth (between -PI and PI) and an
+     * elevation (between -PI / 2 and PI / 2) in radians */
+    void setDirection(int voice, float azimuth, float elevation) {
+        checkActive(voice, "Attempted to change direction of an inactive sound!");
+        if (!(Math.abs(azimuth) <= (float) Math.PI))
+            throw new IllegalArgumentException("Azimuth must be between -PI and PI");
+        if (!(Math.abs(elevation) <= (float) (Math.PI / 2.0)))
+            throw new IllegalArgumentException("Elevation must be between -PI/2 and PI/2");
+        azimuths[voice] = azimuth;
+        elevations[voice] = elevation;
+    }
+
+    private void checkRange(int voice) {
+        if (voice < 0 || voice >= numVoices)
+            throw new IllegalArgumentException("No such sound: " + voice);
+    }
+
+    private void checkActive(int voice, String message) {
+        checkRange(voice);
+        if (!test(active, voice))
+            throw new IllegalStateException(message);
+    }
+
+    private static boolean test(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+}
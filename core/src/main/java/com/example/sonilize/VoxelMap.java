@@ -0,0 +1,298 @@
+package com.example.sonilize;
+
+/* a sparse occupancy map of cubic voxels in world coordinates, fusing the quantized grids of
+ * successive frames: each voxel holds the log-odds of being occupied, raised once per frame by
+ * any grid cell whose measured point falls into it and lowered when a frame sees past it, so
+ * that a single noisy frame neither creates nor removes an obstacle; the occupied voxels are
+ * rendered back into a grid of the same projection (or of one with the same spans and a
+ * lower resolution), seen from the current pose
+ *
+ * voxels live in an open-addressing hash table (linear probing, backward-shift deletion) keyed
+ * by their integer coordinates packed into a long; voxels that are far from the camera, not
+ * seen for a while, or known to be free are evicted during the sweep that follows each frame;
+ * the map remembers whether any voxel changed state, so that blobs only need to be extracted
+ * again when the scene or the pose changed; nothing is allocated per frame
+ */
+class VoxelMap {
+
+    // log-odds added by a hit and removed by a miss, and their bounds
+    static final float HIT = 0.85f;
+    static final float MISS = 0.7f;
+    static final float OCCUPIED = 1.2f;
+    static final float MAX_LOG_ODDS = 2.5f;
+    // voxels not hit for that long are forgotten, in seconds
+    static final double MAX_AGE = 10.0;
+
+    private static final long EMPTY = -1L;
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+
+    private final SphericalProjection projection;
+    private final int horizRes;
+    private final int vertRes;
+    private final float voxelSize;
+    private final float maxRange;
+    private final float evictionRange;
+
+    // unit vector through the center of each cell, laid out as the grid
+    private final float[] cellX;
+    private final float[] cellY;
+    private final float[] cellZ;
+
+    // the hash table
+    private final long[] keys;
+    private final float[] logOdds;
+    private final int[] hitFrames;
+    private final double[] hitTimes;
+    private final boolean[] occupied;
+    private final int slotMask;
+    private final int maxSize;
+    private int size;
+
+    private final long[] evicted;
+    private final float[] depths;
+    private final float[] point = new float[3];
+    // the grid rendered into by the sweep in progress
+    private float[] target;
+    private int targetHorizRes;
+    private int targetVertRes;
+    private float targetColsPerRadian;
+    private float targetRowsPerRadian;
+    private int frame;
+    private boolean changed;
+    private int numOccupied;
+    private long droppedHits;
+
+    /* constructor; voxels are voxelSize meters wide, only cells and voxels within maxRange of
+     * the camera are taken into account, and at most maxVoxels voxels are kept */
+    VoxelMap(SphericalProjection projection, float voxelSize, float maxRange, int maxVoxels) {
+        if (!(voxelSize > 0.0f) || !(maxRange > 0.0f) || maxVoxels <= 0)
+            throw new IllegalArgumentException("Voxel size, range and count must be positive");
+        this.projection = projection;
+        this.voxelSize = voxelSize;
+        this.maxRange = maxRange;
+        evictionRange = 2.0f * maxRange;
+        horizRes = projection.getHorizRes();
+        vertRes = projection.getVertRes();
+
+        int numCells = horizRes * vertRes;
+        cellX = new float[numCells];
+        cellY = new float[numCells];
+        cellZ = new float[numCells];
+        float halfColumn = projection.getHorizSpan() / horizRes / 2.0f;
+        float halfRow = projection.getVertSpan() / vertRes / 2.0f;
+        for (int i = 0; i < horizRes; i++) {
+            float theta = projection.thetaOfColumn(i) + halfColumn;
+            for (int j = 0; j < vertRes; j++) {
+                float phi = projection.phiOfRow(j) + halfRow;
+                cellX[i * vertRes + j] = SphericalProjection.xOfSpherical(1.0f, theta, phi);
+                cellY[i * vertRes + j] = SphericalProjection.yOfSpherical(1.0f, theta, phi);
+                cellZ[i * vertRes + j] = SphericalProjection.zOfSpherical(1.0f, theta, phi);
+            }
+        }
+
+        // at most half full, so that probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(1, maxVoxels)) * 4;
+        keys = new long[capacity];
+        for (int s = 0; s < capacity; s++)
+            keys[s] = EMPTY;
+        logOdds = new float[capacity];
+        hitFrames = new int[capacity];
+        hitTimes = new double[capacity];
+        occupied = new boolean[capacity];
+        slotMask = capacity - 1;
+        maxSize = maxVoxels;
+        evicted = new long[maxVoxels];
+        depths = new float[numCells];
+    }
+
+    /* fuse the quantized grid of a frame taken at timestamp (in seconds) from the pose
+     * cameraToWorld, then render the occupied voxels into getDepths() */
+    void integrate(float[] grid, RigidTransform cameraToWorld, double timestamp) {
+        integrate(grid, cameraToWorld, timestamp, projection, depths);
+    }
+
+    /* fuse a frame as above, but render the occupied voxels into out, a grid of
+     * targetProjection, which has the spans of this map's projection */
+    void integrate(float[] grid, RigidTransform cameraToWorld, double timestamp,
+                   SphericalProjection targetProjection, float[] out) {
+        target = out;
+        targetHorizRes = targetProjection.getHorizRes();
+        targetVertRes = targetProjection.getVertRes();
+        targetColsPerRadian = targetHorizRes / targetProjection.getHorizSpan();
+        targetRowsPerRadian = targetVertRes / targetProjection.getVertSpan();
+        frame++;
+        for (int cell = 0; cell < grid.length; cell++) {
+            float r = grid[cell];
+            if (!(r <= maxRange))
+                continue;
+            cameraToWorld.apply(r * cellX[cell], r * cellY[cell], r * cellZ[cell], point);
+            hit(keyOf(point[0], point[1], point[2]), timestamp);
+        }
+        sweep(grid, cameraToWorld, timestamp);
+    }
+
+    private void hit(long key, double timestamp) {
+        int s = slotOf(key);
+        while (keys[s] != EMPTY && keys[s] != key)
+            s = (s + 1) & slotMask;
+        if (keys[s] == EMPTY) {
+            if (size == maxSize) {
+                droppedHits++;
+                return;
+            }
+            keys[s] = key;
+            logOdds[s] = 0.0f;
+            hitFrames[s] = frame - 1;
+            occupied[s] = false;
+            size++;
+        }
+        if (hitFrames[s] != frame) {
+            logOdds[s] = Math.min(MAX_LOG_ODDS, logOdds[s] + HIT);
+            hitFrames[s] = frame;
+            hitTimes[s] = timestamp;
+        }
+    }
+
+    /* apply misses, evict, detect changes of state and render, in one pass over the table */
+    private void sweep(float[] grid, RigidTransform cameraToWorld, double timestamp) {
+        for (int k = 0; k < targetHorizRes * targetVertRes; k++)
+            target[k] = Float.POSITIVE_INFINITY;
+        changed = false;
+        numOccupied = 0;
+        int numEvicted = 0;
+        float halfSpanH = projection.getHorizSpan() / 2.0f;
+        float halfSpanV = projection.getVertSpan() / 2.0f;
+        float colsPerRadian = horizRes / projection.getHorizSpan();
+        float rowsPerRadian = vertRes / projection.getVertSpan();
+        for (int s = 0; s <= slotMask; s++) {
+            long key = keys[s];
+            if (key == EMPTY)
+                continue;
+            cameraToWorld.applyInverse(centerOf(key, 2 * BITS), centerOf(key, BITS),
+                                       centerOf(key, 0), point);
+            float x = point[0], y = point[1], z = point[2];
+            float r = (float) Math.sqrt(x * x + y * y + z * z);
+            float theta = SphericalProjection.fastAtan2(x, z);
+            float phi = r > 0.0f ? SphericalProjection.fastAsin(-y / r) : 0.0f;
+            boolean inView = theta >= -halfSpanH && theta < halfSpanH
+                             && phi >= -halfSpanV && phi < halfSpanV;
+            int col = Math.min(horizRes - 1, (int) ((theta + halfSpanH) * colsPerRadian));
+            int row = Math.min(vertRes - 1, (int) ((phi + halfSpanV) * rowsPerRadian));
+
+            // seeing past a voxel (or nothing at all where it lies) is evidence that it is free
+            if (inView && hitFrames[s] != frame
+                    && grid[col * vertRes + row] > r + voxelSize)
+                logOdds[s] -= MISS;
+            boolean isOccupied = logOdds[s] > OCCUPIED;
+            if (logOdds[s] <= 0.0f || r > evictionRange
+                    || timestamp - hitTimes[s] > MAX_AGE) {
+                if (occupied[s])
+                    changed = true;
+                evicted[numEvicted++] = key;
+                continue;
+            }
+            if (isOccupied != occupied[s]) {
+                occupied[s] = isOccupied;
+                changed = true;
+            }
+            if (!isOccupied)
+                continue;
+            numOccupied++;
+            if (inView && r <= maxRange)
+                render(theta + halfSpanH, phi + halfSpanV, r);
+        }
+        for (int e = 0; e < numEvicted; e++)
+            remove(evicted[e]);
+    }
+
+    /* set the cells of the target covered by a voxel at distance r, at angles theta and phi
+     * past the lower edges of the spans, to r, unless they hold a nearer one */
+    private void render(float theta, float phi, float r) {
+        float halfAngle = 0.5f * voxelSize / r;
+        int firstCol = Math.max(0, (int) ((theta - halfAngle) * targetColsPerRadian));
+        int lastCol = Math.min(targetHorizRes - 1,
+                               (int) ((theta + halfAngle) * targetColsPerRadian));
+        int firstRow = Math.max(0, (int) ((phi - halfAngle) * targetRowsPerRadian));
+        int lastRow = Math.min(targetVertRes - 1,
+                               (int) ((phi + halfAngle) * targetRowsPerRadian));
+        for (int i = firstCol; i <= lastCol; i++)
+            for (int j = firstRow; j <= lastRow; j++) {
+                int cell = i * targetVertRes + j;
+                if (r < target[cell])
+                    target[cell] = r;
+            }
+    }
+
+    private void remove(long key) {
+        int s = slotOf(key);
+        while (keys[s] != key)
+            s = (s + 1) & slotMask;
+        // shift back the entries of the probe sequence that would no longer be found
+        int hole = s;
+        for (int t = (s + 1) & slotMask; keys[t] != EMPTY; t = (t + 1) & slotMask) {
+            int home = slotOf(keys[t]);
+            boolean stays = hole <= t ? hole < home && home <= t : hole < home || home <= t;
+            if (stays)
+                continue;
+            keys[hole] = keys[t];
+            logOdds[hole] = logOdds[t];
+            hitFrames[hole] = hitFrames[t];
+            hitTimes[hole] = hitTimes[t];
+            occupied[hole] = occupied[t];
+            hole = t;
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+
+    private long keyOf(float x, float y, float z) {
+        long i = (long) Math.floor(x / voxelSize) & MASK;
+        long j = (long) Math.floor(y / voxelSize) & MASK;
+        long k = (long) Math.floor(z / voxelSize) & MASK;
+        return i << (2 * BITS) | j << BITS | k;
+    }
+
+    /* the world coordinate of the center of a voxel along the axis packed at shift of key */
+    private float centerOf(long key, int shift) {
+        // sign-extend the 21-bit field
+        long index = (key >>> shift & MASK) << (64 - BITS) >> (64 - BITS);
+        return (index + 0.5f) * voxelSize;
+    }
+
+    private int slotOf(long key) {
+        // the finalizer of MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & slotMask;
+    }
+
+    /* the occupied voxels rendered at the last frame, cell (col, row) at index
+     * col * getVertRes() + row, POSITIVE_INFINITY where there is none; reused by the next
+     * frame */
+    float[] getDepths() {
+        return depths;
+    }
+
+    /* true if a voxel became occupied or stopped being occupied at the last frame */
+    boolean hasChanged() {
+        return changed;
+    }
+
+    /* the number of voxels kept, occupied or not */
+    int size() {
+        return size;
+    }
+
+    int getNumOccupied() {
+        return numOccupied;
+    }
+
+    /* the number of hits lost for the map being full */
+    long getDroppedHits() {
+        return droppedHits;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks AssignmentSolver against an exhaustive search on small matrices.
+ */
+public class AssignmentSolverTest {
+
+    /* the least total cost of assigning rows from row on to distinct unused columns, leaving
+     * out rows only when there are more rows than columns */
+    private static float bruteForce(float[] cost, int rows, int cols, int row, boolean[] used,
+                                    int free) {
+        if (row == rows)
+            return 0.0f;
+        float best = Float.POSITIVE_INFINITY;
+        if (rows - row > free)
+            best = bruteForce(cost, rows, cols, row + 1, used, free);
+        for (int j = 0; j < cols; j++) {
+            if (used[j])
+                continue;
+            used[j] = true;
+            best = Math.min(best, cost[row * cols + j]
+                                  + bruteForce(cost, rows, cols, row + 1, used, free - 1));
+            used[j] = false;
+        }
+        return best;
+    }
+
+    @Test
+    public void randomMatrices_matchExhaustiveSearch() throws Exception {
+        Random random = new Random(5L);
+        AssignmentSolver solver = new AssignmentSolver(6, 6);
+        int[] assignment = new int[6];
+        for (int trial = 0; trial < 500; trial++) {
+            int rows = 1 + random.nextInt(6);
+            int cols = 1 + random.nextInt(6);
+            float[] cost = new float[rows * cols];
+            for (int k = 0; k < cost.length; k++)
+                cost[k] = random.nextInt(4) == 0 ? 1e6f : random.nextInt(100);
+            solver.solve(cost, rows, cols, assignment);
+
+            float total = 0.0f;
+            boolean[] taken = new boolean[cols];
+            int assigned = 0;
+            for (int i = 0; i < rows; i++) {
+                if (assignment[i] < 0)
+                    continue;
+                assertFalse(taken[assignment[i]]);
+                taken[assignment[i]] = true;
+                total += cost[i * cols + assignment[i]];
+                assigned++;
+            }
+            assertEquals(Math.min(rows, cols), assigned);
+            assertEquals(bruteForce(cost, rows, cols, 0, new boolean[cols], cols), total, 0.0f);
+        }
+    }
+
+    /* the most gated pairs (cost not NaN) of distinct rows and columns, from row on, and their
+     * least total cost among matchings of that many, as {count, cost} */
+    private static double[] bestGated(float[] cost, int rows, int cols, int row,
+                                      boolean[] used) {
+        if (row == rows)
+            return new double[] {0.0, 0.0};
+        double[] best = bestGated(cost, rows, cols, row + 1, used);
+        for (int j = 0; j < cols; j++) {
+            if (used[j] || Float.isNaN(cost[row * cols + j]))
+                continue;
+            used[j] = true;
+            double[] rest = bestGated(cost, rows, cols, row + 1, used);
+            used[j] = false;
+            double count = rest[0] + 1.0;
+            double total = rest[1] + cost[row * cols + j];
+            if (count > best[0] || count == best[0] && total < best[1])
+                best = new double[] {count, total};
+        }
+        return best;
+    }
+
+    @Test
+    public void trackerClusters_pairGatedThingsAndBlobsOptimally() throws Exception {
+        // squared distances of gated pairs, within epsilon = 0.4 m, the rest costing what the
+        // tracker gives them; often some thing or blob cannot be matched
+        float epsilonSq = 0.16f;
+        Random random = new Random(7L);
+        AssignmentSolver solver = new AssignmentSolver(6, 6);
+        int[] assignment = new int[6];
+        int forced = 0;
+        for (int trial = 0; trial < 2000; trial++) {
+            int rows = 1 + random.nextInt(6);
+            int cols = 1 + random.nextInt(6);
+            float[] gated = new float[rows * cols];
+            float[] cost = new float[rows * cols];
+            float noMatch = ObjectTracker.noMatchCost(rows, cols, epsilonSq);
+            for (int k = 0; k < cost.length; k++) {
+                boolean near = random.nextInt(5) < 2;
+                gated[k] = near ? epsilonSq * random.nextFloat() : Float.NaN;
+                cost[k] = near ? gated[k] : noMatch;
+            }
+            solver.solve(cost, rows, cols, assignment);
+
+            int count = 0;
+            double total = 0.0;
+            for (int i = 0; i < rows; i++) {
+                if (assignment[i] < 0 || cost[i * cols + assignment[i]] >= noMatch)
+                    continue;
+                count++;
+                total += cost[i * cols + assignment[i]];
+            }
+            double[] best = bestGated(gated, rows, cols, 0, new boolean[cols]);
+            if (best[0] < Math.min(rows, cols))
+                forced++;
+            assertEquals(best[0], count, 0.0);
+            assertEquals(best[1], total, 1e-5);
+        }
+        assertTrue(forced > 500);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives AudioControlBridge like the tracker and the control thread would, with explicit times.
+ */
+public class AudioControlBridgeTest {
+
+    private static final long FRAME = 200000000L;
+    private static final long TICK = 10000000L;
+
+    /* a backend recording the last volume and direction set for each sound */
+    private static class RecordingSink extends NullAudioSink {
+        final float[] vols = new float[8];
+        final float[] pans = new float[8];
+        final float[] azimuths = new float[8];
+        final float[] elevations = new float[8];
+
+        RecordingSink() {
+            super(8);
+        }
+
+        @Override
+        public void setVolPan(int streamID, float vol, float pan) {
+            super.setVolPan(streamID, vol, pan);
+            vols[streamID] = vol;
+            pans[streamID] = pan;
+        }
+
+        @Override
+        public void setDirection(int streamID, float azimuth, float elevation) {
+            super.setDirection(streamID, azimuth, elevation);
+            azimuths[streamID] = azimuth;
+            elevations[streamID] = elevation;
+        }
+    }
+
+    @Test
+    public void newSound_startsOnBackendAtOnce() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 8, 0.01f);
+        int voice = bridge.activateLeastRecent();
+        bridge.setVolPan(voice, 0.5f, -0.25f);
+        bridge.play(voice);
+        bridge.publish(0L, 0L);
+        bridge.tick(0L);
+        assertEquals(1, backend.getVoices().getNumActive());
+        assertTrue(backend.getVoices().isPlaying(0));
+        assertEquals(0.5f, backend.vols[0], 0.0f);
+        assertEquals(-0.25f, backend.pans[0], 0.0f);
+    }
+
+    @Test
+    public void volume_glidesBetweenFrames() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 8, 0.001f);
+        int voice = bridge.activateLeastRecent();
+        bridge.setVolPan(voice, 0.2f, 0.0f);
+        bridge.play(voice);
+        bridge.publish(0L, 0L);
+        for (long t = 0; t < FRAME; t += TICK)
+            bridge.tick(t);
+        assertEquals(0.2f, backend.vols[0], 1e-6f);
+
+        bridge.setVolPan(voice, 0.6f, 0.0f);
+        bridge.publish(FRAME, FRAME);
+        float previous = 0.2f;
+        for (long t = FRAME; t <= 2 * FRAME; t += TICK) {
+            bridge.tick(t);
+            assertTrue(backend.vols[0] >= previous);
+            // at most one tick's share of the glide, plus the extrapolated motion
+            assertTrue(backend.vols[0] - previous <= 0.4f * (TICK * 2.0f / FRAME) + 1e-4f);
+            previous = backend.vols[0];
+        }
+        // past the new value by the motion over half a frame, then held
+        assertEquals(0.8f, backend.vols[0], 1e-4f);
+        bridge.tick(3 * FRAME);
+        assertEquals(0.8f, backend.vols[0], 1e-4f);
+    }
+
+    @Test
+    public void direction_glidesTheShortWayRound() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 8, 0.001f);
+        int voice = bridge.activateLeastRecent();
+        bridge.setVolPan(voice, 0.5f, 0.0f);
+        bridge.setDirection(voice, 3.0f, 0.2f);
+        bridge.play(voice);
+        bridge.publish(0L, 0L);
+        bridge.tick(0L);
+        assertEquals(3.0f, backend.azimuths[0], 0.0f);
+        assertEquals(0.2f, backend.elevations[0], 0.0f);
+        for (long t = TICK; t < FRAME; t += TICK)
+            bridge.tick(t);
+
+        // from just left of behind to just right of it, through PI rather than through 0
+        bridge.setDirection(voice, -3.0f, 0.2f);
+        bridge.publish(FRAME, FRAME);
+        for (long t = FRAME; t <= 2 * FRAME; t += TICK) {
+            bridge.tick(t);
+            assertTrue(Math.abs(backend.azimuths[0]) > 2.5f);
+            assertTrue(Math.abs(backend.azimuths[0]) <= (float) Math.PI);
+        }
+        assertEquals(0.2f, backend.elevations[0], 1e-6f);
+    }
+
+    @Test
+    public void unchangedValues_areNotResent() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 8, 0.01f);
+        int voice = bridge.activateLeastRecent();
+        bridge.setVolPan(voice, 0.5f, 0.5f);
+        bridge.play(voice);
+        for (int frame = 0; frame < 10; frame++) {
+            bridge.setVolPan(voice, 0.5f, 0.5f + 0.001f * frame);
+            bridge.publish(frame * FRAME, frame * FRAME);
+            for (long t = frame * FRAME; t < (frame + 1) * FRAME; t += TICK)
+                bridge.tick(t);
+        }
+        assertEquals(1, bridge.getBackendUpdates());
+        assertEquals(1, backend.getVolPanUpdates());
+        assertEquals(200, bridge.getSkippedUpdates());
+    }
+
+    @Test
+    public void soundReusedWithinFrame_isRestartedOnBackend() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 1, 0.01f);
+        int voice = bridge.activateLeastRecent();
+        bridge.setVolPan(voice, 0.5f, 0.0f);
+        bridge.play(voice);
+        bridge.publish(0L, 0L);
+        bridge.tick(0L);
+        assertTrue(backend.getVoices().isActive(0));
+
+        // the tracker loses the object and finds a new one in the same frame
+        bridge.pause(voice);
+        bridge.deactivate(voice);
+        assertEquals(voice, bridge.activateLeastRecent());
+        bridge.setVolPan(voice, 0.9f, 0.5f);
+        bridge.play(voice);
+        bridge.publish(FRAME, FRAME);
+        bridge.tick(FRAME);
+        // the backend sound was released and the next one started, with no glide from the old
+        // object
+        assertEquals(1, backend.getVoices().getNumActive());
+        assertFalse(backend.getVoices().isActive(0));
+        assertTrue(backend.getVoices().isPlaying(1));
+        assertEquals(0.9f, backend.vols[1], 0.0f);
+        assertEquals(0.5f, backend.pans[1], 0.0f);
+    }
+
+    @Test
+    public void deactivatedSound_isReleasedOnBackend() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 8, 0.01f);
+        int voice = bridge.activateLeastRecent();
+        bridge.setVolPan(voice, 0.5f, 0.0f);
+        bridge.play(voice);
+        bridge.publish(0L, 0L);
+        bridge.tick(0L);
+        bridge.pause(voice);
+        bridge.deactivate(voice);
+        bridge.publish(FRAME, FRAME);
+        bridge.tick(FRAME);
+        assertEquals(0, backend.getVoices().getNumActive());
+    }
+
+    @Test
+    public void exhaustedBackend_leavesSoundSilentUntilOneIsFree() throws Exception {
+        RecordingSink backend = new RecordingSink();
+        // the bridge has more sounds than the backend has left
+        for (int v = 0; v < 7; v++)
+            backend.activateLeastRecent();
+        AudioControlBridge bridge = new AudioControlBridge(backend, 2, 0.01f);
+        PipelineMetrics metrics = new PipelineMetrics();
+        bridge.setMetrics(metrics);
+        for (int v = 0; v < 2; v++) {
+            int voice = bridge.activateLeastRecent();
+            bridge.setVolPan(voice, 0.5f, 0.0f);
+            bridge.play(voice);
+        }
+        bridge.publish(0L, 0L);
+        bridge.tick(0L);
+        assertEquals(8, backend.getVoices().getNumActive());
+        assertEquals(1, metrics.snapshot().getVoiceActivations());
+        assertEquals(1, metrics.snapshot().getVoicesExhausted());
+
+        backend.deactivate(0);
+        bridge.publish(FRAME, FRAME);
+        bridge.tick(FRAME);
+        assertEquals(8, backend.getVoices().getNumActive());
+        assertEquals(2, metrics.snapshot().getVoiceActivations());
+        assertEquals(0.5f, backend.vols[0], 0.0f);
+    }
+
+    @Test
+    public void latencies_areRecordedPerTickAndPerFrame() throws Exception {
+        AudioControlBridge bridge = new AudioControlBridge(new RecordingSink(), 8, 0.01f);
+        PipelineMetrics metrics = new PipelineMetrics();
+        bridge.setMetrics(metrics);
+        bridge.activateLeastRecent();
+        bridge.publish(FRAME, FRAME - 3 * TICK);
+        for (long t = FRAME; t < 2 * FRAME; t += TICK)
+            bridge.tick(t);
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(20, snapshot.get(PipelineMetrics.Stage.AUDIO).getCount());
+        LatencyHistogram.Snapshot endToEnd = snapshot.get(PipelineMetrics.Stage.END_TO_END);
+        assertEquals(1, endToEnd.getCount());
+        assertEquals(3 * TICK, endToEnd.getMax());
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Computes BinauralFilters in the background and shares them between renderers, as the sound
+ * collections of successive resumes would.
+ */
+public class BinauralFiltersTest {
+
+    private static final int BLOCK = 128;
+
+    /* a listener counting its calls */
+    private static class CountingListener implements BinauralFilters.Listener {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch ready = new CountDownLatch(1);
+        volatile PartitionedConvolver.Filter[] filters;
+
+        @Override
+        public void onFiltersReady(PartitionedConvolver.Filter[] filters) {
+            this.filters = filters;
+            calls.incrementAndGet();
+            ready.countDown();
+        }
+    }
+
+    @Test
+    public void listeners_hearOfFiltersOnce() throws Exception {
+        BinauralFilters filters = new BinauralFilters(48000, 256, BLOCK);
+        CountingListener early = new CountingListener();
+        filters.addListener(early);
+        assertTrue(filters.awaitReady(10, TimeUnit.SECONDS));
+        assertTrue(early.ready.await(5, TimeUnit.SECONDS));
+        assertTrue(filters.getComputeNanos() > 0);
+        CountingListener late = new CountingListener();
+        filters.addListener(late);
+        assertEquals(1, early.calls.get());
+        assertEquals(1, late.calls.get());
+        assertSame(filters.getFilters(), early.filters);
+        assertSame(filters.getFilters(), late.filters);
+        assertEquals(Hrtf.AZIMUTH_STEPS * Hrtf.ELEVATION_STEPS, late.filters.length);
+        filters.release();
+        assertNull(filters.getFilters());
+    }
+
+    @Test
+    public void renderersSharingFilters_renderAlike() throws Exception {
+        BinauralFilters filters = new BinauralFilters(48000, 256, BLOCK);
+        assertTrue(filters.awaitReady(10, TimeUnit.SECONDS));
+        float[] loop = new float[300];
+        for (int n = 0; n < loop.length; n++)
+            loop[n] = (float) Math.sin(0.1 * n);
+        float[][] outs = new float[3][2 * 1000];
+        for (int r = 0; r < outs.length; r++) {
+            MixerEngine engine = new MixerEngine(new float[][] {loop}, 1);
+            engine.setBinaural(r < 2 ? new BinauralRenderer(filters.getFilters(), 1, BLOCK)
+                                     : new BinauralRenderer(new Hrtf(48000, 256), 1, BLOCK));
+            engine.setDirection(0, -1.0f, 0.5f);
+            engine.setVoice(0, 0.5f, 0.5f, true);
+            engine.render(outs[r], 0, 1000);
+        }
+        assertArrayEquals(outs[0], outs[1], 0.0f);
+        assertArrayEquals(outs[0], outs[2], 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rendererOfAnotherBlockSize_isRejected() throws Exception {
+        BinauralFilters filters = new BinauralFilters(48000, 256, BLOCK);
+        assertTrue(filters.awaitReady(10, TimeUnit.SECONDS));
+        new BinauralRenderer(filters.getFilters(), 1, 2 * BLOCK);
+    }
+}
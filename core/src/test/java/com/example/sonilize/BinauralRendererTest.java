@@ -0,0 +1,109 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Renders MixerEngine binaurally through BinauralRenderer, offline into float arrays.
+ */
+public class BinauralRendererTest {
+
+    private static final int BLOCK = 128;
+    private static final Hrtf HRTF = new Hrtf(48000, 256);
+
+    private static float[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        float[] signal = new float[length];
+        for (int n = 0; n < length; n++)
+            signal[n] = 0.5f * (float) random.nextGaussian();
+        return signal;
+    }
+
+    @Test
+    public void voice_isConvolvedWithResponsesOfItsDirection() throws Exception {
+        float[] loop = noise(1000, 1L);
+        MixerEngine engine = new MixerEngine(new float[][] {loop}, 1);
+        engine.setBinaural(new BinauralRenderer(HRTF, 1, BLOCK));
+        float azimuth = (float) Math.toRadians(50.0);
+        float elevation = (float) Math.toRadians(20.0);
+        engine.setDirection(0, azimuth, elevation);
+        // heard at its volume, however it is panned
+        engine.setVoice(0, 0.2f, 0.6f, true);
+        int frames = 3000;
+        float[] out = new float[2 * frames];
+        // odd-sized buffers, so that blocks of the renderer straddle them
+        for (int offset = 0, size = 77; offset < frames; offset += size)
+            engine.render(out, 2 * offset, Math.min(size, frames - offset));
+
+        int d = Hrtf.indexOf(azimuth, elevation);
+        float[][] responses = {HRTF.getImpulseResponse(d, Hrtf.LEFT),
+                               HRTF.getImpulseResponse(d, Hrtf.RIGHT)};
+        for (int n = 0; n < frames; n++) {
+            for (int ear = 0; ear < 2; ear++) {
+                // one block late
+                float expected = 0.0f;
+                for (int k = 0; k < responses[ear].length && k <= n - BLOCK; k++)
+                    expected += 0.8f * loop[(n - BLOCK - k) % loop.length] * responses[ear][k];
+                assertEquals(expected, out[2 * n + ear], 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void pausedVoice_ringsOutThenStops() throws Exception {
+        MixerEngine engine = new MixerEngine(new float[][] {noise(500, 2L)}, 1);
+        BinauralRenderer renderer = new BinauralRenderer(HRTF, 1, BLOCK);
+        engine.setBinaural(renderer);
+        engine.setVoice(0, 1.0f, 1.0f, true);
+        float[] out = new float[2 * BLOCK];
+        for (int b = 0; b < 4; b++)
+            engine.render(out, 0, BLOCK);
+        assertEquals(1, renderer.getVoicesConvolved());
+
+        engine.setVoice(0, 1.0f, 1.0f, false);
+        // the tail of the responses, 256 taps, then silence
+        for (int b = 0; b < 2; b++) {
+            engine.render(out, 0, BLOCK);
+            assertEquals(1, renderer.getVoicesConvolved());
+        }
+        engine.render(out, 0, BLOCK);
+        assertEquals(0, renderer.getVoicesConvolved());
+        engine.render(out, 0, BLOCK);
+        engine.render(out, 0, BLOCK);
+        for (float sample : out)
+            assertEquals(0.0f, sample, 0.0f);
+        assertEquals(0, engine.getAudibleVoices());
+    }
+
+    @Test
+    public void movingVoices_allocateNothing() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+        float[][] loops = new float[8][];
+        for (int v = 0; v < loops.length; v++)
+            loops[v] = noise(700 + v, v);
+        MixerEngine engine = new MixerEngine(loops, 64);
+        engine.setBinaural(new BinauralRenderer(HRTF, loops.length, BLOCK));
+        float[] block = new float[2 * 192];
+        long id = Thread.currentThread().getId();
+        long before = 0L;
+        for (int b = 0; b < 3000; b++) {
+            if (b == 1000)
+                before = threads.getThreadAllocatedBytes(id);
+            int v = b % loops.length;
+            engine.setVoice(v, (b % 7) / 7.0f, (b % 7) / 7.0f, b % 3 != 0);
+            engine.setDirection(v, (float) Math.sin(b * 0.01), (float) Math.cos(b * 0.01) / 2);
+            engine.render(block, 0, 192);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
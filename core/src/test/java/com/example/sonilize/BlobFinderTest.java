@@ -0,0 +1,79 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bounded selection of BlobFinder against sorting every component.
+ */
+public class BlobFinderTest {
+
+    private static final float SPAN = (float) Math.PI;
+
+    /* a grid of random near cells, clustered into components of varied sizes and distances */
+    private static float[] randomGrid(long seed, int cols, int rows) {
+        Random random = new Random(seed);
+        float[] grid = new float[cols * rows];
+        for (int k = 0; k < grid.length; k++)
+            grid[k] = random.nextFloat() < 0.45f ? 0.2f + random.nextInt(8) * 0.25f
+                                                 : Float.POSITIVE_INFINITY;
+        return grid;
+    }
+
+    /* {r, component} of the maxNum nearest components passing the filters, nearest first */
+    private static float[][] reference(ComponentLabeler labeler, float[] grid, float maxCellDist,
+                                       int minSize, float maxBlobDist, int maxNum) {
+        int numComponents = labeler.label(grid, maxCellDist);
+        PriorityQueue<float[]> pq = new PriorityQueue<>(11, new Comparator<float[]>() {
+            @Override
+            public int compare(float[] a, float[] b) {
+                return a[0] != b[0] ? Float.compare(a[0], b[0]) : Float.compare(a[1], b[1]);
+            }
+        });
+        for (int c = 0; c < numComponents; c++) {
+            float r = labeler.getHarmonicR(c);
+            if (labeler.getSize(c) >= minSize && r <= maxBlobDist)
+                pq.add(new float[] {r, c});
+        }
+        float[][] result = new float[Math.min(maxNum, pq.size())][];
+        for (int i = 0; i < result.length; i++)
+            result[i] = pq.poll();
+        return result;
+    }
+
+    @Test
+    public void nearestBlobs_matchFullSort() throws Exception {
+        SphericalProjection projection = new SphericalProjection(48, 40, SPAN, SPAN);
+        BlobFinder finder = new BlobFinder(projection);
+        ComponentLabeler labeler = new ComponentLabeler(projection);
+        for (long seed = 0; seed < 30; seed++) {
+            float[] grid = randomGrid(seed, 48, 40);
+            for (int maxNum : new int[] {0, 1, 4, 1000}) {
+                float[][] expected = reference(labeler, grid, 1.5f, 2, 1.2f, maxNum);
+                BlobTable blobs = finder.findBlobs(grid, 1.5f, 2, 1.2f, maxNum);
+                assertEquals(expected.length, blobs.getCount());
+                for (int i = 0; i < expected.length; i++) {
+                    int c = (int) expected[i][1];
+                    assertEquals(expected[i][0], blobs.getAverageR(i), 0.0f);
+                    assertEquals(labeler.getSize(c), blobs.getSize(i));
+                    assertEquals(labeler.getAverageTheta(c), blobs.getAverageTheta(i), 0.0f);
+                    assertEquals(labeler.getAveragePhi(c), blobs.getAveragePhi(i), 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void blobTable_isReused() throws Exception {
+        BlobFinder finder = new BlobFinder(new SphericalProjection(32, 32, SPAN, SPAN));
+        BlobTable first = finder.findBlobs(randomGrid(1L, 32, 32), 1.5f, 1, 1.5f, 4);
+        BlobTable second = finder.findBlobs(randomGrid(2L, 32, 32), 1.5f, 1, 1.5f, 4);
+        assertSame(first, second);
+        assertEquals(4, second.getCount());
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks ComponentLabeler against the original recursive flood fill.
+ */
+public class ComponentLabelerTest {
+
+    private static final float SPAN = (float) Math.PI;
+
+    /* size, harmonic r, theta and phi of each component, in order of first cell */
+    private static List<float[]> referenceComponents(float[] grid, int cols, int rows,
+                                                     float maxCellDist) {
+        boolean[] marked = new boolean[grid.length];
+        List<float[]> result = new ArrayList<>();
+        for (int i = 0; i < cols; i++) {
+            for (int j = 0; j < rows; j++) {
+                if (!marked[i * rows + j] && grid[i * rows + j] <= maxCellDist) {
+                    float[] sums = new float[4];
+                    dfs(grid, cols, rows, marked, sums, maxCellDist, i, j);
+                    result.add(new float[] {sums[0], 1.0f / (sums[1] / sums[0]),
+                                            sums[2] / sums[0], sums[3] / sums[0]});
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void dfs(float[] grid, int cols, int rows, boolean[] marked, float[] sums,
+                            float maxCellDist, int i, int j) {
+        if (i < 0 || i >= cols || j < 0 || j >= rows)
+            return;
+        int cell = i * rows + j;
+        if (!marked[cell] && grid[cell] <= maxCellDist) {
+            marked[cell] = true;
+            sums[0] += 1.0f;
+            sums[1] += 1.0f / grid[cell];
+            sums[2] += (float) i * SPAN / cols - SPAN / 2.0f;
+            sums[3] += (float) j * SPAN / rows - SPAN / 2.0f;
+            dfs(grid, cols, rows, marked, sums, maxCellDist, i + 1, j);
+            dfs(grid, cols, rows, marked, sums, maxCellDist, i, j + 1);
+            dfs(grid, cols, rows, marked, sums, maxCellDist, i - 1, j);
+            dfs(grid, cols, rows, marked, sums, maxCellDist, i, j - 1);
+        }
+        else {
+            marked[cell] = true;
+        }
+    }
+
+    private static ComponentLabeler labelerOf(int cols, int rows) {
+        return new ComponentLabeler(new SphericalProjection(cols, rows, SPAN, SPAN));
+    }
+
+    private static float[] randomGrid(long seed, int cols, int rows, float nearFraction) {
+        Random random = new Random(seed);
+        float[] grid = new float[cols * rows];
+        for (int k = 0; k < grid.length; k++) {
+            if (random.nextFloat() < nearFraction)
+                grid[k] = 0.2f + random.nextFloat();
+            else
+                grid[k] = random.nextBoolean() ? Float.POSITIVE_INFINITY : 3.0f;
+        }
+        return grid;
+    }
+
+    @Test
+    public void randomGrids_matchFloodFill() throws Exception {
+        ComponentLabeler labeler = labelerOf(64, 48);
+        for (long seed = 0; seed < 20; seed++) {
+            float[] grid = randomGrid(seed, 64, 48, 0.3f + 0.02f * seed);
+            List<float[]> expected = referenceComponents(grid, 64, 48, 1.5f);
+            assertEquals(expected.size(), labeler.label(grid, 1.5f));
+            for (int c = 0; c < expected.size(); c++) {
+                float[] e = expected.get(c);
+                assertEquals((int) e[0], labeler.getSize(c));
+                assertEquals(e[1], labeler.getHarmonicR(c), 1e-4f);
+                assertEquals(e[2], labeler.getAverageTheta(c), 1e-4f);
+                assertEquals(e[3], labeler.getAveragePhi(c), 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void sparseGrids_matchFloodFillAfterDenseOne() throws Exception {
+        ComponentLabeler labeler = labelerOf(61, 37);
+        for (long seed = 0; seed < 20; seed++) {
+            // a dense grid first, leaving labels all over
+            labeler.label(randomGrid(seed, 61, 37, 0.7f), 1.5f);
+            Random random = new Random(seed);
+            float[] grid = new float[61 * 37];
+            for (int k = 0; k < grid.length; k++)
+                grid[k] = Float.POSITIVE_INFINITY;
+            for (int p = 0; p < 6; p++) {
+                int i0 = random.nextInt(61);
+                int j0 = random.nextInt(37);
+                for (int i = i0; i < Math.min(61, i0 + 1 + random.nextInt(9)); i++)
+                    for (int j = j0; j < Math.min(37, j0 + 1 + random.nextInt(5)); j++)
+                        grid[i * 37 + j] = 0.5f + random.nextFloat();
+            }
+            List<float[]> expected = referenceComponents(grid, 61, 37, 1.5f);
+            assertEquals(expected.size(), labeler.label(grid, 1.5f));
+            for (int c = 0; c < expected.size(); c++) {
+                float[] e = expected.get(c);
+                assertEquals((int) e[0], labeler.getSize(c));
+                assertEquals(e[1], labeler.getHarmonicR(c), 1e-4f);
+                assertEquals(e[2], labeler.getAverageTheta(c), 1e-4f);
+                assertEquals(e[3], labeler.getAveragePhi(c), 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void labels_areConsistentWithNeighbours() throws Exception {
+        ComponentLabeler labeler = labelerOf(32, 32);
+        float[] grid = randomGrid(99, 32, 32, 0.55f);
+        labeler.label(grid, 1.5f);
+        for (int i = 0; i < 32; i++) {
+            for (int j = 0; j < 32; j++) {
+                int label = labeler.getLabel(i, j);
+                assertEquals(grid[i * 32 + j] <= 1.5f, label >= 0);
+                if (label >= 0 && i > 0 && labeler.getLabel(i - 1, j) >= 0)
+                    assertEquals(label, labeler.getLabel(i - 1, j));
+                if (label >= 0 && j > 0 && labeler.getLabel(i, j - 1) >= 0)
+                    assertEquals(label, labeler.getLabel(i, j - 1));
+            }
+        }
+    }
+
+    @Test
+    public void fullGrid_isSingleComponentWithoutDeepRecursion() throws Exception {
+        ComponentLabeler labeler = labelerOf(512, 512);
+        float[] grid = new float[512 * 512];
+        for (int k = 0; k < grid.length; k++)
+            grid[k] = 1.0f;
+        assertEquals(1, labeler.label(grid, 1.5f));
+        assertEquals(512 * 512, labeler.getSize(0));
+        assertEquals(1.0f, labeler.getHarmonicR(0), 1e-6f);
+    }
+
+    @Test
+    public void uShapedComponent_isMerged() throws Exception {
+        // two arms that only meet at the bottom row, so the first pass sees two labels
+        ComponentLabeler labeler = labelerOf(5, 4);
+        float[] grid = new float[20];
+        for (int k = 0; k < grid.length; k++)
+            grid[k] = Float.POSITIVE_INFINITY;
+        for (int j = 0; j < 4; j++) {
+            grid[j] = 1.0f;
+            grid[4 * 4 + j] = 1.0f;
+        }
+        for (int i = 0; i < 5; i++)
+            grid[i * 4 + 3] = 1.0f;
+        assertEquals(1, labeler.label(grid, 1.5f));
+        assertEquals(11, labeler.getSize(0));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DepthImageLookupTest {
+
+    private static final float SPAN = (float) Math.PI;
+
+    @Test
+    public void pixelOf_invertsCenterRays() throws Exception {
+        DepthImageLookup lookup = new DepthImageLookup(new SphericalProjection(64, 64, SPAN, SPAN),
+                                                       40, 30, 50.0, 45.0, 19.0, 16.5);
+        for (int v = 0; v < 30; v++)
+            for (int u = 0; u < 40; u++) {
+                float z = 0.5f + 0.1f * u;
+                int pixel = lookup.pixelOf(lookup.rayX(u) * z, lookup.rayY(v) * z, z);
+                assertEquals(v * 40 + u, pixel);
+            }
+        assertEquals(-1, lookup.pixelOf(0.0f, 0.0f, -1.0f));
+        assertEquals(-1, lookup.pixelOf(0.0f, 0.0f, 0.0f));
+        assertEquals(-1, lookup.pixelOf(1.0f, 0.0f, 1.0f));
+        assertEquals(-1, lookup.pixelOf(0.0f, -1.0f, 1.0f));
+    }
+
+    @Test
+    public void cells_followTheAnglesOfCenterRays() throws Exception {
+        SphericalProjection projection = new SphericalProjection(16, 8, SPAN / 4, SPAN / 8);
+        DepthImageLookup lookup = new DepthImageLookup(projection, 64, 48, 40.0, 40.0,
+                                                       32.0, 24.0);
+        int outside = 0;
+        for (int v = 0; v < 48; v++)
+            for (int u = 0; u < 64; u++) {
+                float x = lookup.rayX(u), y = lookup.rayY(v);
+                float r = (float) Math.sqrt(x * x + y * y + 1.0f);
+                int col = projection.columnOf(x, 1.0f);
+                int row = projection.rowOf(y, r);
+                int pixel = v * 64 + u;
+                if (col < 0 || row < 0) {
+                    assertEquals(-1, lookup.cellOf(pixel));
+                    outside++;
+                    continue;
+                }
+                assertEquals(col * 8 + row, lookup.cellOf(pixel));
+                // a point of the pixel at depth 2 is 2 * r away
+                assertEquals(1.0f / (2.0f * r), lookup.reciprocalRangeOf(pixel, 2.0f), 1e-6f);
+            }
+        // the image sees wider than the spans of the grid
+        assertTrue(outside > 0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs synthetic scenes through DepthPipeline.
+ */
+public class DepthPipelineTest {
+
+    private static DepthPipeline newPipeline() {
+        return new DepthPipeline(new PipelineConfig.Builder().build(), new NullAudioSink(8));
+    }
+
+    @Test
+    public void emptyScene_tracksNothing() throws Exception {
+        DepthPipeline pipeline = newPipeline();
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.EMPTY, 20000, 1L, 0.0f);
+        pipeline.process(points, 20000, 0.0);
+        assertEquals(0, pipeline.getNumTracked());
+    }
+
+    @Test
+    public void wall_isTrackedInFront() throws Exception {
+        DepthPipeline pipeline = newPipeline();
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, 0.0f);
+        pipeline.process(points, 20000, 0.0);
+        assertEquals(1, pipeline.getNumTracked());
+        assertEquals(0.0f, pipeline.getPan(0), 0.1f);
+        assertTrue(pipeline.getVolume(0) > 0.0f && pipeline.getVolume(0) <= 1.0f);
+    }
+
+    @Test
+    public void directBuffer_tracksLikeArray() throws Exception {
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.CLUTTER, 20000, 3L, 0.0f);
+        FloatBuffer buffer = ByteBuffer.allocateDirect(points.length * 4)
+                                       .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(points);
+        DepthPipeline fromArray = newPipeline();
+        DepthPipeline fromBuffer = newPipeline();
+        fromArray.process(points, 20000, 0.0);
+        fromBuffer.process(buffer, 20000, 0.0);
+        assertEquals(fromArray.getNumTracked(), fromBuffer.getNumTracked());
+        for (int i = 0; i < fromArray.getNumTracked(); i++) {
+            assertEquals(fromArray.getStreamID(i), fromBuffer.getStreamID(i));
+            assertEquals(fromArray.getPan(i), fromBuffer.getPan(i), 0.0f);
+            assertEquals(fromArray.getVolume(i), fromBuffer.getVolume(i), 0.0f);
+        }
+    }
+
+    @Test
+    public void depthImage_tracksLikeItsCloud() throws Exception {
+        float[] image = SyntheticScenes.depthImage(SyntheticScenes.Scene.CLUTTER, 3L, 0.0f);
+        float[] points = SyntheticScenes.cloudOfDepthImage(image);
+        DepthPipeline fromCloud = newPipeline();
+        DepthPipeline fromImage = newPipeline();
+        fromImage.setDepthCameraIntrinsics(
+                SyntheticScenes.IMAGE_WIDTH, SyntheticScenes.IMAGE_HEIGHT,
+                SyntheticScenes.FOCAL_LENGTH, SyntheticScenes.FOCAL_LENGTH,
+                SyntheticScenes.IMAGE_WIDTH / 2, SyntheticScenes.IMAGE_HEIGHT / 2);
+        fromCloud.process(points, image.length, 0.0);
+        fromImage.processDepthImage(image, 0.0);
+        assertTrue(fromCloud.getNumTracked() > 0);
+        assertEquals(fromCloud.getNumTracked(), fromImage.getNumTracked());
+        for (int i = 0; i < fromCloud.getNumTracked(); i++) {
+            assertEquals(fromCloud.getPan(i), fromImage.getPan(i), 1e-4f);
+            assertEquals(fromCloud.getVolume(i), fromImage.getVolume(i), 1e-4f);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void depthImage_needsIntrinsics() throws Exception {
+        newPipeline().processDepthImage(new float[1], 0.0);
+    }
+
+    @Test
+    public void groundRemoval_separatesTheBallFromTheFloor() throws Exception {
+        DepthPipeline withFloor = newPipeline();
+        DepthPipeline withoutFloor = new DepthPipeline(
+                new PipelineConfig.Builder().setGroundRemoval(true).build(), new NullAudioSink(8));
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.FLOOR, 20000, 1L, 0.0f);
+        withFloor.process(points, 20000, 0.0);
+        withoutFloor.process(points, 20000, 0.0);
+        // the ball merges with the floor into one blob, farther away on average
+        assertEquals(1, withFloor.getNumTracked());
+        assertEquals(1, withoutFloor.getNumTracked());
+        assertEquals(0.0f, withoutFloor.getPan(0), 0.05f);
+        assertTrue(withoutFloor.getVolume(0) > withFloor.getVolume(0) * 1.2f);
+        assertTrue(withoutFloor.getGroundNanos() > 0);
+    }
+
+    @Test
+    public void groundRemoval_keepsWalls() throws Exception {
+        DepthPipeline pipeline = new DepthPipeline(
+                new PipelineConfig.Builder().setGroundRemoval(true).build(), new NullAudioSink(8));
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, 0.0f);
+        pipeline.process(points, 20000, 0.0);
+        assertEquals(1, pipeline.getNumTracked());
+    }
+
+    @Test
+    public void voxelMap_skipsExtractionInStaticScene() throws Exception {
+        DepthPipeline pipeline = new DepthPipeline(
+                new PipelineConfig.Builder().setVoxelSize(0.05f).build(), new NullAudioSink(8));
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, 0.0f);
+        pipeline.process(points, 20000, 0.0);
+        assertEquals(0, pipeline.getNumTracked());
+        for (int f = 1; f < 10; f++)
+            pipeline.process(points, 20000, f * 0.2);
+        assertEquals(1, pipeline.getNumTracked());
+        assertEquals(0.0f, pipeline.getPan(0), 0.1f);
+        assertEquals(8, pipeline.getExtractionsSkipped());
+    }
+
+    @Test
+    public void sceneChange_reusesBlobsOfStillSceneUpToMaxStaleFrames() throws Exception {
+        PipelineConfig config = new PipelineConfig.Builder()
+                .setSceneChangeTolerance(0.03f).setMaxStaleFrames(4).build();
+        DepthPipeline pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        for (int f = 0; f < 10; f++) {
+            // the same wall, sampled anew
+            float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, f,
+                                                   0.0f);
+            pipeline.process(points, 20000, f * 0.2);
+            assertEquals(1, pipeline.getNumTracked());
+        }
+        // extracted at frames 0 and 5
+        assertEquals(8, pipeline.getExtractionsSkipped());
+    }
+
+    @Test
+    public void sceneChange_findsBlobsOfChangedScene() throws Exception {
+        PipelineConfig config = new PipelineConfig.Builder()
+                .setSceneChangeTolerance(0.03f).setMaxStaleFrames(100).build();
+        DepthPipeline pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        float[] empty = SyntheticScenes.cloud(SyntheticScenes.Scene.EMPTY, 20000, 1L, 0.0f);
+        float[] wall = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, 0.0f);
+        pipeline.process(empty, 20000, 0.0);
+        pipeline.process(empty, 20000, 0.2);
+        assertEquals(0, pipeline.getNumTracked());
+        pipeline.process(wall, 20000, 0.4);
+        assertEquals(1, pipeline.getNumTracked());
+        assertEquals(1, pipeline.getExtractionsSkipped());
+    }
+
+    @Test
+    public void impossibleDeadline_shedsLoadButKeepsTracking() throws Exception {
+        PipelineConfig config = new PipelineConfig.Builder().setFrameDeadlineNanos(1L).build();
+        DepthPipeline pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, 0.0f);
+        for (int f = 0; f < 10; f++)
+            pipeline.process(points, 20000, f * 0.2);
+        FrameScheduler scheduler = pipeline.getScheduler();
+        assertEquals(2, scheduler.getLevel());
+        assertEquals(config.getMaxStride(), scheduler.getStride());
+        assertEquals(5, scheduler.getTrackingSkipped());
+        assertEquals(10, scheduler.getFramesOverDeadline());
+        assertEquals(1, pipeline.getNumTracked());
+        assertEquals(0.0f, pipeline.getPan(0), 0.1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidConfig_isRejected() throws Exception {
+        new PipelineConfig.Builder().setResolution(0, 64).build();
+    }
+}
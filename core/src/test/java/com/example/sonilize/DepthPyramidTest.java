@@ -0,0 +1,70 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks DepthPyramid against block minima taken cell by cell.
+ */
+public class DepthPyramidTest {
+
+    private static float[] randomGrid(long seed, int cols, int rows) {
+        Random random = new Random(seed);
+        float[] grid = new float[cols * rows];
+        for (int k = 0; k < grid.length; k++)
+            grid[k] = random.nextFloat() < 0.1f ? 0.2f + 3.0f * random.nextFloat()
+                                                : Float.POSITIVE_INFINITY;
+        return grid;
+    }
+
+    private static void assertMinima(float[] grid, int cols, int rows, DepthPyramid pyramid) {
+        for (int level = 1; level <= pyramid.getNumLevels(); level++) {
+            int size = 1 << level;
+            assertEquals((cols + size - 1) / size, pyramid.getCols(level));
+            assertEquals((rows + size - 1) / size, pyramid.getRows(level));
+            for (int a = 0; a < pyramid.getCols(level); a++) {
+                for (int b = 0; b < pyramid.getRows(level); b++) {
+                    float min = Float.POSITIVE_INFINITY;
+                    for (int i = a * size; i < Math.min(cols, (a + 1) * size); i++)
+                        for (int j = b * size; j < Math.min(rows, (b + 1) * size); j++)
+                            min = Math.min(min, grid[i * rows + j]);
+                    assertEquals(min, pyramid.getMins(level)[a * pyramid.getRows(level) + b],
+                                 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void build_takesBlockMinima() throws Exception {
+        int[][] sizes = {{64, 64}, {256, 256}, {61, 37}, {5, 4}, {1, 1}};
+        for (int[] size : sizes) {
+            float[] grid = randomGrid(size[0], size[0], size[1]);
+            DepthPyramid pyramid = new DepthPyramid(size[0], size[1]);
+            pyramid.build(grid);
+            assertMinima(grid, size[0], size[1], pyramid);
+            int top = pyramid.getNumLevels();
+            assertTrue(pyramid.getCols(top) <= DepthPyramid.COARSEST_RES);
+            assertTrue(pyramid.getRows(top) <= DepthPyramid.COARSEST_RES);
+        }
+        assertEquals(3, new DepthPyramid(64, 64).getNumLevels());
+    }
+
+    @Test
+    public void quantizer_buildsPyramidOfItsGrid() throws Exception {
+        float span = (float) Math.PI;
+        float[] points = PointCloudQuantizerTest.randomCloud(5, 40000);
+        for (int threads : new int[] {0, 3}) {
+            PointCloudQuantizer quantizer = new PointCloudQuantizer(
+                    new SphericalProjection(62, 48, span, span));
+            quantizer.setParallelism(threads);
+            quantizer.setParallelThreshold(0);
+            quantizer.quantize(points, 40000);
+            assertMinima(quantizer.getDepths(), 62, 48, quantizer.getPyramid());
+            quantizer.release();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares Fft with the discrete Fourier transform computed by its definition.
+ */
+public class FftTest {
+
+    @Test
+    public void forward_matchesDefinition() throws Exception {
+        Random random = new Random(1L);
+        for (int size = 2; size <= 256; size *= 2) {
+            float[] re = new float[size];
+            float[] im = new float[size];
+            for (int n = 0; n < size; n++) {
+                re[n] = (float) random.nextGaussian();
+                im[n] = (float) random.nextGaussian();
+            }
+            float[] outRe = re.clone();
+            float[] outIm = im.clone();
+            new Fft(size).forward(outRe, outIm);
+            for (int k = 0; k < size; k++) {
+                double sumRe = 0.0;
+                double sumIm = 0.0;
+                for (int n = 0; n < size; n++) {
+                    double angle = -2.0 * Math.PI * k * n / size;
+                    sumRe += re[n] * Math.cos(angle) - im[n] * Math.sin(angle);
+                    sumIm += re[n] * Math.sin(angle) + im[n] * Math.cos(angle);
+                }
+                assertEquals(sumRe, outRe[k], 1e-4 * size);
+                assertEquals(sumIm, outIm[k], 1e-4 * size);
+            }
+        }
+    }
+
+    @Test
+    public void inverse_undoesForward() throws Exception {
+        Random random = new Random(2L);
+        float[] re = new float[1024];
+        float[] im = new float[1024];
+        for (int n = 0; n < re.length; n++)
+            re[n] = (float) random.nextGaussian();
+        float[] outRe = re.clone();
+        float[] outIm = im.clone();
+        Fft fft = new Fft(re.length);
+        fft.forward(outRe, outIm);
+        fft.inverse(outRe, outIm);
+        assertArrayEquals(re, outRe, 1e-5f);
+        assertArrayEquals(im, outIm, 1e-5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void size_mustBeAPowerOfTwo() throws Exception {
+        new Fft(96);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives FrameScheduler with made-up stage costs.
+ */
+public class FrameSchedulerTest {
+
+    private static final long MS = 1000000L;
+
+    /* plan a frame of numPoints points, then report it as costing nanosPerPoint per point
+     * quantized and levelNanos at level 0 (a quarter of that per level below) */
+    private static void frame(FrameScheduler scheduler, int numPoints, long nanosPerPoint,
+                              long levelNanos) {
+        scheduler.plan(numPoints);
+        int quantized = (numPoints + scheduler.getStride() - 1) / scheduler.getStride();
+        long rest = scheduler.isSkippingTracking() ? 0 : levelNanos >> (2 * scheduler.getLevel());
+        scheduler.record(quantized, quantized * nanosPerPoint, rest);
+    }
+
+    @Test
+    public void noDeadline_keepsFullQuality() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler(0L, 3, 8);
+        for (int f = 0; f < 20; f++) {
+            frame(scheduler, 500000, 100, 50 * MS);
+            assertEquals(1, scheduler.getStride());
+            assertEquals(0, scheduler.getLevel());
+            assertFalse(scheduler.isSkippingTracking());
+        }
+        assertEquals(0, scheduler.getFramesOverDeadline());
+        assertEquals(20, scheduler.getFrames());
+    }
+
+    @Test
+    public void overBudget_decimatesThenLowersResolution() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler(10 * MS, 3, 8);
+        // 10 ms of points, and 4 ms for the rest: decimating is enough
+        frame(scheduler, 100000, 100, 4 * MS);
+        scheduler.plan(100000);
+        assertEquals(0, scheduler.getLevel());
+        assertEquals(2, scheduler.getStride());
+        assertTrue(scheduler.getPredictedNanos() <= 9 * MS);
+
+        // 20 ms for the rest at full resolution: only a lower level fits
+        scheduler = new FrameScheduler(10 * MS, 3, 8);
+        frame(scheduler, 100000, 100, 20 * MS);
+        scheduler.plan(100000);
+        assertEquals(1, scheduler.getLevel());
+        assertEquals(3, scheduler.getStride());
+        assertEquals(1, scheduler.getFramesOverDeadline());
+    }
+
+    @Test
+    public void hopelessFrames_skipEveryOtherTrackingRefresh() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler(MS, 2, 4);
+        frame(scheduler, 100000, 100, 100 * MS);
+        for (int f = 0; f < 10; f++) {
+            frame(scheduler, 100000, 100, 100 * MS);
+            assertEquals(1, scheduler.getLevel());
+            assertEquals(4, scheduler.getStride());
+            assertEquals(f % 2 == 0, scheduler.isSkippingTracking());
+        }
+        assertEquals(5, scheduler.getTrackingSkipped());
+        assertEquals(10, scheduler.getFramesAtLowerResolution());
+    }
+
+    @Test
+    public void headroom_restoresFullQuality() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler(10 * MS, 3, 8);
+        for (int f = 0; f < 10; f++)
+            frame(scheduler, 200000, 100, 30 * MS);
+        assertTrue(scheduler.getLevel() > 0);
+        // the scene gets sparse
+        for (int f = 0; f < 300; f++)
+            frame(scheduler, 10000, 100, 2 * MS);
+        assertEquals(0, scheduler.getLevel());
+        assertEquals(1, scheduler.getStride());
+    }
+
+    @Test
+    public void nearDeadline_doesNotFlicker() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler(10 * MS, 1, 8);
+        frame(scheduler, 100000, 100, 0);
+        frame(scheduler, 100000, 100, 0);
+        assertEquals(2, scheduler.getStride());
+        // full quality would now take 8 ms: between the upgrade and keep thresholds
+        for (int f = 0; f < 50; f++) {
+            frame(scheduler, 80000, 100, 0);
+            assertEquals(2, scheduler.getStride());
+        }
+        frame(scheduler, 60000, 100, 0);
+        assertEquals(1, scheduler.getStride());
+    }
+
+    @Test
+    public void deadline_canChangeAtRunTime() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler(0L, 3, 8);
+        frame(scheduler, 100000, 100, 20 * MS);
+        scheduler.setDeadlineNanos(10 * MS);
+        scheduler.plan(100000);
+        assertTrue(scheduler.getLevel() > 0);
+        scheduler.setDeadlineNanos(0L);
+        scheduler.plan(100000);
+        assertEquals(0, scheduler.getLevel());
+        assertEquals(1, scheduler.getStride());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class GroundPlaneFilterTest {
+
+    private static final float[] IMAGE_UP = {0.0f, -1.0f, 0.0f};
+    private static final float NARROW_TILT = (float) Math.toRadians(15.0);
+    private static final float WIDE_TILT = (float) Math.toRadians(60.0);
+
+    private static void assertFloor(GroundPlaneFilter filter) {
+        float[] up = SyntheticScenes.floorUp();
+        assertTrue(filter.hasPlane());
+        assertEquals(up[0], filter.getNormalX(), 0.02f);
+        assertEquals(up[1], filter.getNormalY(), 0.02f);
+        assertEquals(up[2], filter.getNormalZ(), 0.02f);
+        assertEquals(SyntheticScenes.CAMERA_HEIGHT, filter.getHeight(), 0.02f);
+    }
+
+    @Test
+    public void floor_isFoundUnderTheCamera() throws Exception {
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.FLOOR, 20000, 1L, 0.0f);
+        GroundPlaneFilter filter = new GroundPlaneFilter(3.0f);
+        assertTrue(filter.fit(points, 0, 20000, SyntheticScenes.floorUp(), NARROW_TILT));
+        assertFloor(filter);
+        assertTrue(filter.getNumInliers() > filter.getSampleSize() / 4);
+    }
+
+    @Test
+    public void floor_isFoundAroundTheImageUpWithoutPose() throws Exception {
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.FLOOR, 20000, 2L, 0.0f);
+        FloatBuffer buffer = ByteBuffer.allocateDirect(points.length * 4)
+                                       .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(points);
+        GroundPlaneFilter filter = new GroundPlaneFilter(3.0f);
+        assertTrue(filter.fit(buffer, 20000, IMAGE_UP, WIDE_TILT));
+        assertFloor(filter);
+        // but not if the up direction is too far off
+        assertFalse(filter.fit(buffer, 20000, IMAGE_UP, NARROW_TILT));
+        assertFalse(filter.hasPlane());
+    }
+
+    @Test
+    public void depthImage_findsTheFloor() throws Exception {
+        float[] image = SyntheticScenes.depthImage(SyntheticScenes.Scene.FLOOR, 3L, 0.0f);
+        DepthImageLookup lookup = SyntheticScenes.imageLookup(
+                new SphericalProjection(64, 64, (float) Math.PI, (float) Math.PI));
+        GroundPlaneFilter filter = new GroundPlaneFilter(3.0f);
+        assertTrue(filter.fit(image, lookup, SyntheticScenes.floorUp(), NARROW_TILT));
+        assertFloor(filter);
+    }
+
+    @Test
+    public void walls_areNotTheGround() throws Exception {
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.WALL, 20000, 1L, 0.0f);
+        GroundPlaneFilter filter = new GroundPlaneFilter(3.0f);
+        assertFalse(filter.fit(points, 0, 20000, IMAGE_UP, WIDE_TILT));
+        // nor is anything in an empty cloud
+        assertFalse(filter.fit(new float[0], 0, 0, IMAGE_UP, WIDE_TILT));
+    }
+
+    @Test
+    public void nextFrame_startsFromThePreviousPlane() throws Exception {
+        GroundPlaneFilter filter = new GroundPlaneFilter(3.0f);
+        float[] up = SyntheticScenes.floorUp();
+        float[] first = SyntheticScenes.cloud(SyntheticScenes.Scene.FLOOR, 20000, 4L, 0.0f);
+        assertTrue(filter.fit(first, 0, 20000, up, NARROW_TILT));
+        assertEquals(GroundPlaneFilter.COLD_ITERATIONS, filter.getIterations());
+        float[] second = SyntheticScenes.cloud(SyntheticScenes.Scene.FLOOR, 20000, 5L, 0.2f);
+        assertTrue(filter.fit(second, 0, 20000, up, NARROW_TILT));
+        assertEquals(GroundPlaneFilter.WARM_ITERATIONS, filter.getIterations());
+        assertFloor(filter);
+    }
+}
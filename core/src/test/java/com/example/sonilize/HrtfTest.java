@@ -0,0 +1,93 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the cues of the responses of Hrtf: interaural delay and level, elevation and front
+ * versus back.
+ */
+public class HrtfTest {
+
+    private static final int RATE = 48000;
+    private static final Hrtf HRTF = new Hrtf(RATE, 256);
+
+    private static float energy(float[] taps) {
+        float sum = 0.0f;
+        for (float tap : taps)
+            sum += tap * tap;
+        return sum;
+    }
+
+    /* the first tap reaching a fifth of the largest */
+    private static int onset(float[] taps) {
+        float peak = 0.0f;
+        for (float tap : taps)
+            peak = Math.max(peak, Math.abs(tap));
+        int n = 0;
+        while (Math.abs(taps[n]) < 0.2f * peak)
+            n++;
+        return n;
+    }
+
+    private static float difference(float[] a, float[] b) {
+        float sum = 0.0f;
+        for (int n = 0; n < a.length; n++)
+            sum += (a[n] - b[n]) * (a[n] - b[n]);
+        return sum / Math.max(energy(a), energy(b));
+    }
+
+    @Test
+    public void sourceOnTheRight_reachesRightEarFirstAndLouder() throws Exception {
+        int d = Hrtf.indexOf((float) Math.toRadians(90.0), 0.0f);
+        float[] left = HRTF.getImpulseResponse(d, Hrtf.LEFT);
+        float[] right = HRTF.getImpulseResponse(d, Hrtf.RIGHT);
+        assertTrue(energy(right) > 2.0f * energy(left));
+        // about (1 + PI / 2) a / c, 0.66 ms
+        int delay = onset(left) - onset(right);
+        assertTrue("delay " + delay, delay > 0.5e-3 * RATE && delay < 0.8e-3 * RATE);
+    }
+
+    @Test
+    public void sourceAhead_isSymmetricAtUnitGain() throws Exception {
+        int d = Hrtf.indexOf(0.0f, 0.0f);
+        float[] left = HRTF.getImpulseResponse(d, Hrtf.LEFT);
+        float[] right = HRTF.getImpulseResponse(d, Hrtf.RIGHT);
+        assertArrayEquals(left, right, 1e-5f);
+        float sum = 0.0f;
+        for (float tap : left)
+            sum += tap;
+        assertEquals(1.0f, sum, 0.02f);
+    }
+
+    @Test
+    public void frontAndBack_differ() throws Exception {
+        float[] front = HRTF.getImpulseResponse(Hrtf.indexOf(0.0f, 0.0f), Hrtf.LEFT);
+        float[] back = HRTF.getImpulseResponse(Hrtf.indexOf((float) Math.PI, 0.0f), Hrtf.LEFT);
+        assertTrue(difference(front, back) > 0.1f);
+    }
+
+    @Test
+    public void elevation_changesResponse() throws Exception {
+        float up = (float) Math.toRadians(40.0);
+        float[] above = HRTF.getImpulseResponse(Hrtf.indexOf(0.0f, up), Hrtf.LEFT);
+        float[] below = HRTF.getImpulseResponse(Hrtf.indexOf(0.0f, -up), Hrtf.LEFT);
+        assertTrue(difference(above, below) > 0.1f);
+    }
+
+    @Test
+    public void indexOf_picksNearestDirection() throws Exception {
+        float nudge = (float) Math.toRadians(4.0);
+        for (int d = 0; d < HRTF.getNumDirections(); d++) {
+            assertEquals(d, Hrtf.indexOf(Hrtf.getAzimuth(d) + nudge,
+                                         Hrtf.getElevation(d) - nudge));
+            assertEquals(d, Hrtf.indexOf(Hrtf.getAzimuth(d) - nudge,
+                                         Hrtf.getElevation(d) + nudge));
+        }
+        // right behind, either way round, and beyond the elevations of the grid
+        assertEquals(Hrtf.indexOf((float) -Math.PI, 0.0f), Hrtf.indexOf((float) Math.PI, 0.0f));
+        assertEquals(Hrtf.indexOf(0.0f, Hrtf.MAX_ELEVATION),
+                     Hrtf.indexOf(0.0f, (float) (Math.PI / 2.0)));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the buckets of LatencyHistogram and the statistics read from its snapshots.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_tileAllDurationsWithinTheirPrecision() throws Exception {
+        assertEquals(0L, LatencyHistogram.lowestOf(0));
+        for (int b = 0; b < LatencyHistogram.NUM_BUCKETS - 1; b++) {
+            long lowest = LatencyHistogram.lowestOf(b);
+            long highest = LatencyHistogram.highestOf(b);
+            assertEquals(highest + 1, LatencyHistogram.lowestOf(b + 1));
+            assertEquals(b, LatencyHistogram.bucketOf(lowest));
+            assertEquals(b, LatencyHistogram.bucketOf(highest));
+            assertTrue(highest - lowest <= lowest / LatencyHistogram.SUB_BUCKETS);
+        }
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1,
+                     LatencyHistogram.bucketOf(LatencyHistogram.MAX_NANOS));
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_followTheDistribution() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 to 1000 microseconds, evenly
+        for (long us = 1; us <= 1000; us++)
+            histogram.record(us * 1000L);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500.0, snapshot.getMean(), 1e-6);
+        assertEquals(1000000L, snapshot.getMax());
+        double precision = 1.0 / LatencyHistogram.SUB_BUCKETS;
+        assertEquals(500000.0, snapshot.getPercentile(0.5), 500000.0 * precision);
+        assertEquals(900000.0, snapshot.getPercentile(0.9), 900000.0 * precision);
+        assertEquals(990000.0, snapshot.getPercentile(0.99), 990000.0 * precision);
+        assertEquals(1000000L, snapshot.getPercentile(1.0));
+        assertTrue(snapshot.getPercentile(0.0) >= 1000L);
+    }
+
+    @Test
+    public void emptyAndNegative_areHandled() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0.0, empty.getMean(), 0.0);
+        assertEquals(0L, empty.getPercentile(0.99));
+        histogram.record(-5L);
+        assertEquals(0L, histogram.snapshot().getMax());
+        assertEquals(1, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void minus_keepsOnlyTheInterval() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(50000000L);
+        LatencyHistogram.Snapshot earlier = histogram.snapshot();
+        for (int i = 0; i < 10; i++)
+            histogram.record(1000000L);
+        LatencyHistogram.Snapshot interval = histogram.snapshot().minus(earlier);
+        assertEquals(10, interval.getCount());
+        assertEquals(1000000.0, interval.getMean(), 1e-6);
+        // the 50 ms of the earlier interval are forgotten
+        assertTrue(interval.getMax() >= 1000000L);
+        assertTrue(interval.getMax() <= 1000000L + 1000000L / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(0, histogram.snapshot().minus(histogram.snapshot()).getCount());
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int perThread = 100000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long nanos = 1000L * (t + 1);
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++)
+                        histogram.record(nanos);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads.length * perThread, snapshot.getCount());
+        assertEquals(2500.0, snapshot.getMean(), 1e-6);
+        assertEquals(4000L, snapshot.getMax());
+        assertEquals(2000L, snapshot.getPercentile(0.5), 2000L / 32);
+    }
+}
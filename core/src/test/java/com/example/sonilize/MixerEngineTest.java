@@ -0,0 +1,135 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Renders MixerEngine offline into float arrays.
+ */
+public class MixerEngineTest {
+
+    private static float[] constant(int length, float value) {
+        float[] loop = new float[length];
+        Arrays.fill(loop, value);
+        return loop;
+    }
+
+    private static float[] ramp(int length) {
+        float[] loop = new float[length];
+        for (int i = 0; i < length; i++)
+            loop[i] = (float) i / length;
+        return loop;
+    }
+
+    @Test
+    public void silentEngine_rendersZeros() throws Exception {
+        MixerEngine engine = new MixerEngine(new float[][] {constant(10, 1.0f)}, 4);
+        float[] out = constant(64, 7.0f);
+        engine.render(out, 0, 32);
+        for (float sample : out)
+            assertEquals(0.0f, sample, 0.0f);
+    }
+
+    @Test
+    public void gains_rampLinearlyWithoutSteps() throws Exception {
+        MixerEngine engine = new MixerEngine(new float[][] {constant(10, 1.0f)}, 100);
+        engine.setVoice(0, 1.0f, 0.5f, true);
+        float[] out = new float[2 * 200];
+        engine.render(out, 0, 200);
+        for (int f = 0; f < 200; f++) {
+            assertEquals(Math.min(1.0f, (f + 1) / 100.0f), out[2 * f], 1e-5f);
+            assertEquals(Math.min(0.5f, (f + 1) / 100.0f), out[2 * f + 1], 1e-5f);
+        }
+    }
+
+    @Test
+    public void voices_loopAndMix() throws Exception {
+        float[] a = ramp(7);
+        float[] b = ramp(13);
+        MixerEngine engine = new MixerEngine(new float[][] {a, b}, 1);
+        engine.setVoice(0, 1.0f, 0.0f, true);
+        engine.setVoice(1, 0.0f, 1.0f, true);
+        float[] out = new float[2 * 100];
+        // render in odd-sized blocks to cross loop ends within and across blocks
+        for (int offset = 0, frames = 3; offset < 100; offset += frames)
+            engine.render(out, 2 * offset, Math.min(frames, 100 - offset));
+        for (int f = 0; f < 100; f++) {
+            assertEquals(a[f % 7], out[2 * f], 0.0f);
+            assertEquals(b[f % 13], out[2 * f + 1], 0.0f);
+        }
+    }
+
+    @Test
+    public void pausedVoice_fadesOutAndResumesInPlace() throws Exception {
+        float[] loop = ramp(50);
+        MixerEngine engine = new MixerEngine(new float[][] {loop}, 1);
+        engine.setVoice(0, 1.0f, 1.0f, true);
+        float[] out = new float[2 * 10];
+        engine.render(out, 0, 10);
+        engine.setVoice(0, 1.0f, 1.0f, false);
+        engine.render(out, 0, 10);
+        for (float sample : out)
+            assertEquals(0.0f, sample, 0.0f);
+        engine.setVoice(0, 1.0f, 1.0f, true);
+        engine.render(out, 0, 10);
+        // one frame to fade out, then held
+        assertEquals(loop[11], out[0], 0.0f);
+    }
+
+    @Test
+    public void render_allocatesNothing() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        float[][] loops = new float[16][];
+        for (int v = 0; v < loops.length; v++)
+            loops[v] = ramp(4800 + 37 * v);
+        MixerEngine engine = new MixerEngine(loops, 960);
+        float[] block = new float[2 * 256];
+        long id = Thread.currentThread().getId();
+        long before = 0;
+        for (int b = 0; b < 20000; b++) {
+            if (b == 1000)
+                before = threads.getThreadAllocatedBytes(id);
+            int v = b % loops.length;
+            engine.setVoice(v, (b % 7) / 7.0f, (b % 5) / 5.0f, b % 3 != 0);
+            engine.render(block, 0, 256);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    public void voiceWithoutLoop_isSilentThenFadesIn() throws Exception {
+        MixerEngine engine = new MixerEngine(2, 4);
+        engine.setVoice(1, 1.0f, 1.0f, true);
+        float[] out = new float[16];
+        engine.render(out, 0, 8);
+        for (float sample : out)
+            assertEquals(0.0f, sample, 0.0f);
+        assertEquals(0, engine.getAudibleVoices());
+
+        engine.setLoop(1, constant(10, 1.0f));
+        engine.render(out, 0, 8);
+        assertEquals(1, engine.getAudibleVoices());
+        // ramped in from silence
+        assertEquals(0.25f, out[0], 1e-6f);
+        assertEquals(0.25f, out[1], 1e-6f);
+        assertEquals(1.0f, out[14], 1e-6f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loop_isSetOnce() throws Exception {
+        MixerEngine engine = new MixerEngine(1, 4);
+        engine.setLoop(0, constant(10, 1.0f));
+        engine.setLoop(0, constant(10, 1.0f));
+    }
+}
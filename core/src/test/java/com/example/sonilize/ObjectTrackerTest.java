@@ -0,0 +1,167 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tracks synthetic blobs through ObjectTracker.
+ */
+public class ObjectTrackerTest {
+
+    private static final float SPAN = (float) Math.PI;
+    private static final double FRAME = 0.2;
+    private static final RigidTransform CAMERA = new RigidTransform();
+
+    /* a table of blobs centered at the given (x, y, z) positions */
+    private static BlobTable blobsAt(float[]... positions) {
+        BlobTable blobs = new BlobTable(positions.length);
+        for (float[] p : positions) {
+            float r = (float) Math.sqrt(p[0] * p[0] + p[1] * p[1] + p[2] * p[2]);
+            blobs.add(100, r, (float) Math.atan2(p[0], p[2]), (float) Math.asin(-p[1] / r));
+        }
+        return blobs;
+    }
+
+    /* the stream of the thing nearest to (x, y, z) */
+    private static int streamNear(ObjectTracker tracker, float x, float y, float z) {
+        Thing nearest = null;
+        for (Thing thing : tracker.getThings())
+            if (nearest == null || thing.distanceSqTo(x, y, z) < nearest.distanceSqTo(x, y, z))
+                nearest = thing;
+        return nearest.streamID;
+    }
+
+    @Test
+    public void clusterWithFewerBlobs_pairsNearestAndLeavesOneOut() throws Exception {
+        ObjectTracker tracker = new ObjectTracker(new NullAudioSink(8), 4, 0.4f, SPAN, 1.5f, 3);
+        float[] xs = {-0.3f, 0.0f, 0.3f};
+        int[] streams = new int[xs.length];
+        for (int f = 0; f < 3; f++)
+            tracker.update(blobsAt(new float[] {xs[0], 0.0f, 1.0f},
+                                   new float[] {xs[1], 0.0f, 1.0f},
+                                   new float[] {xs[2], 0.0f, 1.0f}), f * FRAME, CAMERA);
+        for (int i = 0; i < xs.length; i++)
+            streams[i] = streamNear(tracker, xs[i], 0.0f, 1.0f);
+        // one cluster of three things and two blobs, each blob within epsilon of two things:
+        // the thing on the left is the one left out
+        tracker.update(blobsAt(new float[] {-0.05f, 0.0f, 1.0f},
+                               new float[] {0.32f, 0.0f, 1.0f}), 3 * FRAME, CAMERA);
+        assertEquals(streams[1], streamNear(tracker, -0.05f, 0.0f, 1.0f));
+        assertEquals(streams[2], streamNear(tracker, 0.32f, 0.0f, 1.0f));
+    }
+
+    @Test
+    public void crossingObjects_keepTheirSounds() throws Exception {
+        ObjectTracker tracker = new ObjectTracker(new NullAudioSink(8), 4, 0.4f, SPAN, 1.5f, 3);
+        int streamA = -1;
+        int streamB = -1;
+        // two objects 5 cm apart vertically cross each other at 1.5 m/s; nearest neighbour
+        // matching swaps them when they are 0.3 m apart on either side of the crossing
+        for (int f = 0; f < 8; f++) {
+            float xA = -1.05f + 0.3f * f;
+            tracker.update(blobsAt(new float[] {xA, 0.0f, 1.0f},
+                                   new float[] {-xA, 0.05f, 1.0f}), f * FRAME, CAMERA);
+            assertEquals(2, tracker.getThings().size());
+            if (f == 0) {
+                streamA = streamNear(tracker, xA, 0.0f, 1.0f);
+                streamB = streamNear(tracker, -xA, 0.05f, 1.0f);
+            }
+            assertEquals(streamA, streamNear(tracker, xA, 0.0f, 1.0f));
+            assertEquals(streamB, streamNear(tracker, -xA, 0.05f, 1.0f));
+        }
+    }
+
+    @Test
+    public void missedFrames_coastThenRelease() throws Exception {
+        NullAudioSink sink = new NullAudioSink(8);
+        ObjectTracker tracker = new ObjectTracker(sink, 4, 0.4f, SPAN, 1.5f, 3);
+        tracker.update(blobsAt(new float[] {0.2f, 0.0f, 1.0f}), 0.0, CAMERA);
+        int stream = tracker.getThings().get(0).streamID;
+        // missing for 3 frames, then seen again: same sound throughout
+        for (int f = 1; f <= 3; f++) {
+            tracker.update(blobsAt(), f * FRAME, CAMERA);
+            assertEquals(1, sink.getVoices().getNumActive());
+        }
+        tracker.update(blobsAt(new float[] {0.2f, 0.0f, 1.0f}), 4 * FRAME, CAMERA);
+        assertEquals(1, tracker.getThings().size());
+        assertEquals(stream, tracker.getThings().get(0).streamID);
+        // missing for 4 frames: released
+        for (int f = 5; f <= 8; f++)
+            tracker.update(blobsAt(), f * FRAME, CAMERA);
+        assertEquals(0, tracker.getThings().size());
+        assertEquals(0, sink.getVoices().getNumActive());
+    }
+
+    @Test
+    public void newObject_displacesCoastingThing() throws Exception {
+        NullAudioSink sink = new NullAudioSink(8);
+        ObjectTracker tracker = new ObjectTracker(sink, 1, 0.4f, SPAN, 1.5f, 3);
+        tracker.update(blobsAt(new float[] {0.5f, 0.0f, 1.0f}), 0.0, CAMERA);
+        tracker.update(blobsAt(new float[] {-0.5f, 0.0f, 1.0f}), FRAME, CAMERA);
+        assertEquals(1, tracker.getThings().size());
+        assertEquals(-0.5f, tracker.getThings().get(0).position[0], 1e-6f);
+        assertEquals(1, sink.getVoices().getNumActive());
+    }
+
+    @Test
+    public void manyObjects_keepTheirSounds() throws Exception {
+        int side = 6;
+        ObjectTracker tracker = new ObjectTracker(new NullAudioSink(48), side * side, 0.2f,
+                                                  SPAN, 3.0f, 3);
+        int[] streams = new int[side * side];
+        for (int f = 0; f < 20; f++) {
+            float[][] positions = new float[side * side][];
+            for (int k = 0; k < positions.length; k++) {
+                // a grid of objects 0.3 m apart, drifting together by 5 cm sideways and 5 cm
+                // closer per frame
+                positions[k] = new float[] {-0.75f + 0.3f * (k % side) + 0.1f * f * 0.5f,
+                                            -0.75f + 0.3f * (k / side), 2.0f - 0.05f * f};
+            }
+            tracker.update(blobsAt(positions), f * FRAME, CAMERA);
+            assertEquals(positions.length, tracker.getThings().size());
+            for (int k = 0; k < positions.length; k++) {
+                int stream = streamNear(tracker, positions[k][0], positions[k][1],
+                                        positions[k][2]);
+                if (f == 0)
+                    streams[k] = stream;
+                assertEquals(streams[k], stream);
+            }
+        }
+    }
+
+    @Test
+    public void headTurn_keepsSoundsOfStaticObjects() throws Exception {
+        NullAudioSink sink = new NullAudioSink(8);
+        ObjectTracker tracker = new ObjectTracker(sink, 4, 0.4f, SPAN, 1.5f, 3);
+        float[][] world = {{-0.3f, 0.0f, 1.2f}, {0.4f, 0.1f, 1.0f}};
+        RigidTransform camera = new RigidTransform();
+        float[] seen = new float[3];
+        int[] streams = new int[2];
+        // turning the head by 15 degrees per frame, while stepping sideways
+        for (int f = 0; f < 6; f++) {
+            double yaw = Math.toRadians(15.0 * f);
+            camera.set(0.0f, (float) Math.sin(yaw / 2), 0.0f, (float) Math.cos(yaw / 2),
+                       0.05f * f, 0.0f, 0.0f);
+            float[][] positions = new float[2][];
+            for (int k = 0; k < 2; k++) {
+                camera.applyInverse(world[k][0], world[k][1], world[k][2], seen);
+                positions[k] = seen.clone();
+            }
+            tracker.update(blobsAt(positions), f * FRAME, camera);
+            assertEquals(2, sink.getVoices().getNumActive());
+            for (int k = 0; k < 2; k++) {
+                int stream = streamNear(tracker, world[k][0], world[k][1], world[k][2]);
+                if (f == 0)
+                    streams[k] = stream;
+                assertEquals(streams[k], stream);
+            }
+            // pan still follows the object as seen from the camera
+            for (Thing thing : tracker.getThings()) {
+                camera.applyInverse(thing.position[0], thing.position[1], thing.position[2],
+                                    seen);
+                assertEquals(Math.atan2(seen[0], seen[2]), thing.averageTheta, 1e-5);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares PartitionedConvolver with direct convolution.
+ */
+public class PartitionedConvolverTest {
+
+    private static final int BLOCK = 64;
+    private static final int BLOCKS = 20;
+
+    private static float[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        float[] signal = new float[length];
+        for (int n = 0; n < length; n++)
+            signal[n] = (float) random.nextGaussian();
+        return signal;
+    }
+
+    private static float direct(float[] input, float[] filter, int n) {
+        float sum = 0.0f;
+        for (int k = 0; k < filter.length && k <= n; k++)
+            sum += filter[k] * input[n - k];
+        return sum;
+    }
+
+    /* the interleaved output of a convolver over all of input, with filter throughout */
+    private static float[] convolve(float[] input, PartitionedConvolver.Filter filter, Fft fft) {
+        PartitionedConvolver convolver = new PartitionedConvolver(BLOCK, filter.numPartitions, fft);
+        float[] out = new float[2 * input.length];
+        for (int b = 0; b < input.length / BLOCK; b++)
+            convolver.process(input, b * BLOCK, filter, null, out, 2 * b * BLOCK);
+        return out;
+    }
+
+    @Test
+    public void output_matchesDirectConvolution() throws Exception {
+        Fft fft = new Fft(2 * BLOCK);
+        // filters of 4.7 and 2 partitions
+        float[] left = noise(300, 1L);
+        float[] right = noise(128, 2L);
+        float[] input = noise(BLOCKS * BLOCK, 3L);
+        PartitionedConvolver.Filter filter = new PartitionedConvolver.Filter(left, right, BLOCK,
+                                                                             fft);
+        assertEquals(5, filter.numPartitions);
+        float[] out = convolve(input, filter, fft);
+        for (int n = 0; n < input.length; n++) {
+            assertEquals(direct(input, left, n), out[2 * n], 1e-3f);
+            assertEquals(direct(input, right, n), out[2 * n + 1], 1e-3f);
+        }
+    }
+
+    @Test
+    public void filterChange_crossfadesOverOneBlock() throws Exception {
+        Fft fft = new Fft(2 * BLOCK);
+        PartitionedConvolver.Filter a = new PartitionedConvolver.Filter(
+                noise(200, 4L), noise(200, 5L), BLOCK, fft);
+        PartitionedConvolver.Filter b = new PartitionedConvolver.Filter(
+                noise(200, 6L), noise(200, 7L), BLOCK, fft);
+        float[] input = noise(BLOCKS * BLOCK, 8L);
+        float[] outA = convolve(input, a, fft);
+        float[] outB = convolve(input, b, fft);
+        PartitionedConvolver convolver = new PartitionedConvolver(BLOCK, a.numPartitions, fft);
+        float[] out = new float[2 * input.length];
+        int change = 10;
+        for (int k = 0; k < BLOCKS; k++)
+            convolver.process(input, k * BLOCK, k < change ? a : b, k == change ? a : null,
+                              out, 2 * k * BLOCK);
+        for (int n = 0; n < input.length; n++) {
+            float weight = n < change * BLOCK ? 0.0f
+                         : Math.min(1.0f, (n - change * BLOCK + 1) / (BLOCK + 1.0f));
+            for (int ear = 0; ear < 2; ear++) {
+                int k = 2 * n + ear;
+                assertEquals((1.0f - weight) * outA[k] + weight * outB[k], out[k], 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void reset_forgetsPastInput() throws Exception {
+        Fft fft = new Fft(2 * BLOCK);
+        PartitionedConvolver.Filter filter = new PartitionedConvolver.Filter(
+                noise(256, 9L), noise(256, 10L), BLOCK, fft);
+        PartitionedConvolver convolver = new PartitionedConvolver(BLOCK, 4, fft);
+        float[] out = new float[2 * BLOCK];
+        convolver.process(noise(BLOCK, 11L), 0, filter, null, out, 0);
+        convolver.reset();
+        out = new float[2 * BLOCK];
+        convolver.process(new float[BLOCK], 0, filter, null, out, 0);
+        for (float sample : out)
+            assertEquals(0.0f, sample, 0.0f);
+    }
+}
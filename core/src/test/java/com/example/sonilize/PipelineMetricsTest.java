@@ -0,0 +1,89 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds PipelineMetrics from the components reporting to it and reads back its summaries.
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void summary_coversTheIntervalSinceTheLastOne() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.record(PipelineMetrics.Stage.QUANTIZE, 2000000L);
+        metrics.countFrameProcessed();
+        String first = metrics.summary();
+        assertTrue(first, first.startsWith("frames 1, dropped 0"));
+        assertTrue(first, first.contains("quantize"));
+        assertFalse(first, first.contains("track"));
+
+        metrics.record(PipelineMetrics.Stage.TRACK, 500000L);
+        metrics.countFrameDropped();
+        String second = metrics.summary();
+        assertTrue(second, second.startsWith("frames 0, dropped 1"));
+        assertFalse(second, second.contains("quantize"));
+        assertTrue(second, second.contains("track"));
+        assertEquals(1, metrics.snapshot().get(PipelineMetrics.Stage.QUANTIZE).getCount());
+    }
+
+    @Test
+    public void pipeline_recordsTheStagesItRan() throws Exception {
+        PipelineConfig config = new PipelineConfig.Builder()
+                .setAngularSpans((float) Math.PI, (float) Math.PI)
+                .setResolution(64, 64)
+                .setGroundRemoval(true)
+                .build();
+        DepthPipeline pipeline = new DepthPipeline(config, new NullAudioSink(8));
+        PipelineMetrics metrics = new PipelineMetrics();
+        pipeline.setMetrics(metrics);
+        float[] points = SyntheticScenes.cloud(SyntheticScenes.Scene.FLOOR, 20000, 1L, 0.0f);
+        for (int f = 0; f < 5; f++)
+            pipeline.process(points, points.length / 4, f / 5.0);
+        pipeline.release();
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(5, snapshot.get(PipelineMetrics.Stage.GROUND).getCount());
+        assertEquals(5, snapshot.get(PipelineMetrics.Stage.QUANTIZE).getCount());
+        assertEquals(5, snapshot.get(PipelineMetrics.Stage.BLOBS).getCount());
+        assertEquals(5, snapshot.get(PipelineMetrics.Stage.TRACK).getCount());
+        // no voxel map, and the grid is used at full resolution
+        assertEquals(0, snapshot.get(PipelineMetrics.Stage.MAP).getCount());
+    }
+
+    @Test
+    public void framePipeline_countsQueuedAndDroppedFrames() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        FramePipeline pipeline = new FramePipeline(new FramePipeline.FrameProcessor() {
+            @Override
+            public void process(DepthFrame frame) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        PipelineMetrics metrics = new PipelineMetrics();
+        pipeline.setMetrics(metrics);
+        pipeline.start();
+        FloatBuffer points = FloatBuffer.allocate(4);
+        pipeline.offer(points, 1, 0.0);
+        started.await();
+        // the worker is busy: the second frame is overwritten by the third
+        pipeline.offer(points, 1, 0.1);
+        pipeline.offer(points, 1, 0.2);
+        release.countDown();
+        pipeline.stop();
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getFramesDropped());
+        assertEquals(snapshot.getFramesProcessed(),
+                     snapshot.get(PipelineMetrics.Stage.QUEUE).getCount());
+        assertTrue(snapshot.getFramesProcessed() >= 1);
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks PointCloudQuantizer against the original per-point Triple/Bijection quantization.
+ * The original bins by rounding float angles while the quantizer compares against exact cell
+ * boundaries, so test clouds keep clear of the boundaries where both may legitimately differ.
+ */
+public class PointCloudQuantizerTest {
+
+    private static final int RES = 64;
+    private static final float SPAN = (float) Math.PI;
+
+    /* the quantization as originally written in MainActivity */
+    private static float[][] referenceQuantize(float[] points, int numPoints) {
+        float[][] depthMatrix = new float[RES][RES];
+        int[][] counts = new int[RES][RES];
+        for (int i = 0; i < 4 * numPoints; i += 4) {
+            float x = points[i], y = points[i+1], z = points[i+2];
+            float r = (float) Math.sqrt(x*x + y*y + z*z);
+            float theta = (float) Math.atan(x / z);
+            float phi = (float) Math.asin(-y / r);
+            int col = (int) ((theta + SPAN / 2.0f) * (float) RES / SPAN);
+            int row = (int) ((phi + SPAN / 2.0f) * (float) RES / SPAN);
+            depthMatrix[col][row] += 1.0f / r;
+            counts[col][row]++;
+        }
+        for (int i = 0; i < RES; i++) {
+            for (int j = 0; j < RES; j++) {
+                if (counts[i][j] == 0)
+                    depthMatrix[i][j] = Float.POSITIVE_INFINITY;
+                else
+                    depthMatrix[i][j] = 1.0f / (depthMatrix[i][j] / (float) counts[i][j]);
+            }
+        }
+        return depthMatrix;
+    }
+
+    private static PointCloudQuantizer newQuantizer() {
+        return new PointCloudQuantizer(new SphericalProjection(RES, RES, SPAN, SPAN));
+    }
+
+    static float[] randomCloud(long seed, int numPoints) {
+        Random random = new Random(seed);
+        float[] points = new float[4 * numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            do {
+                points[4*i] = (random.nextFloat() - 0.5f) * 4.0f;
+                points[4*i+1] = (random.nextFloat() - 0.5f) * 4.0f;
+                points[4*i+2] = 0.05f + random.nextFloat() * 3.0f;
+            } while (nearCellBoundary(points[4*i], points[4*i+1], points[4*i+2]));
+            points[4*i+3] = random.nextFloat();
+        }
+        return points;
+    }
+
+    private static boolean nearCellBoundary(double x, double y, double z) {
+        double theta = Math.atan(x / z);
+        double phi = Math.asin(-y / Math.sqrt(x*x + y*y + z*z));
+        double col = (theta + Math.PI / 2.0) * RES / Math.PI;
+        double row = (phi + Math.PI / 2.0) * RES / Math.PI;
+        return Math.abs(col - Math.rint(col)) < 1e-4 || Math.abs(row - Math.rint(row)) < 1e-4;
+    }
+
+    private static void assertSameCells(float[][] expected, PointCloudQuantizer quantizer) {
+        float[] depths = quantizer.getDepths();
+        for (int i = 0; i < RES; i++) {
+            for (int j = 0; j < RES; j++) {
+                assertEquals("cell (" + i + ", " + j + ")",
+                        Float.floatToIntBits(expected[i][j]),
+                        Float.floatToIntBits(depths[i * RES + j]));
+            }
+        }
+    }
+
+    @Test
+    public void arrayInput_matchesReference() throws Exception {
+        PointCloudQuantizer quantizer = newQuantizer();
+        float[] points = randomCloud(42, 20000);
+        quantizer.quantize(points, 20000);
+        assertSameCells(referenceQuantize(points, 20000), quantizer);
+    }
+
+    @Test
+    public void directBufferInput_matchesReference() throws Exception {
+        PointCloudQuantizer quantizer = newQuantizer();
+        float[] points = randomCloud(7, 5000);
+        FloatBuffer buffer = ByteBuffer.allocateDirect(4 * points.length)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(points);
+        buffer.position(3);
+        quantizer.quantize(buffer, 5000);
+        assertSameCells(referenceQuantize(points, 5000), quantizer);
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void reuse_doesNotLeakPreviousFrame() throws Exception {
+        PointCloudQuantizer quantizer = newQuantizer();
+        quantizer.quantize(randomCloud(1, 10000), 10000);
+        float[] points = randomCloud(2, 300);
+        quantizer.quantize(points, 300);
+        assertSameCells(referenceQuantize(points, 300), quantizer);
+    }
+
+    @Test
+    public void emptyFrame_isAllInfinity() throws Exception {
+        PointCloudQuantizer quantizer = newQuantizer();
+        quantizer.quantize(new float[0], 0);
+        for (float d : quantizer.getDepths())
+            assertEquals(Float.POSITIVE_INFINITY, d, 0.0f);
+    }
+
+    @Test
+    public void parallelWithOneThread_isBitForBitSerial() throws Exception {
+        PointCloudQuantizer quantizer = newQuantizer();
+        quantizer.setParallelism(1);
+        quantizer.setParallelThreshold(0);
+        float[] points = randomCloud(3, 50000);
+        quantizer.quantize(points, 50000);
+        assertSameCells(referenceQuantize(points, 50000), quantizer);
+        quantizer.release();
+    }
+
+    @Test
+    public void parallelWithManyThreads_matchesSerial() throws Exception {
+        PointCloudQuantizer serial = newQuantizer();
+        PointCloudQuantizer parallel = newQuantizer();
+        parallel.setParallelism(4);
+        parallel.setParallelThreshold(0);
+        for (long seed = 10; seed < 13; seed++) {
+            float[] points = randomCloud(seed, 60001);
+            serial.quantize(points, 60001);
+            parallel.quantize(points, 60001);
+            assertArrayEquals(serial.getCounts(), parallel.getCounts());
+            assertArrayEquals(serial.getDepths(), parallel.getDepths(), 1e-5f);
+        }
+        parallel.setParallelism(0);
+        float[] points = randomCloud(14, 1000);
+        parallel.quantize(points, 1000);
+        assertSameCells(referenceQuantize(points, 1000), parallel);
+    }
+
+    /* every stride-th point of points, from phase on */
+    private static float[] decimate(float[] points, int numPoints, int stride, int phase) {
+        int kept = (numPoints - phase + stride - 1) / stride;
+        float[] decimated = new float[4 * kept];
+        for (int k = 0; k < kept; k++)
+            System.arraycopy(points, 4 * (phase + k * stride), decimated, 4 * k, 4);
+        return decimated;
+    }
+
+    @Test
+    public void stride_quantizesEveryStrideThPoint() throws Exception {
+        float[] points = randomCloud(21, 30001);
+        float[] decimated = decimate(points, 30001, 3, 2);
+        PointCloudQuantizer quantizer = newQuantizer();
+        quantizer.quantize(points, 30001, 3, 2);
+        assertEquals(10000, quantizer.getPointsQuantized());
+        assertSameCells(referenceQuantize(decimated, 10000), quantizer);
+
+        FloatBuffer buffer = ByteBuffer.allocateDirect(4 * points.length)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(points);
+        quantizer.quantize(buffer, 30001, 3, 2);
+        assertEquals(10000, quantizer.getPointsQuantized());
+        assertSameCells(referenceQuantize(decimated, 10000), quantizer);
+
+        PointCloudQuantizer parallel = newQuantizer();
+        parallel.setParallelism(4);
+        parallel.setParallelThreshold(0);
+        parallel.quantize(points, 30001, 3, 2);
+        assertArrayEquals(quantizer.getCounts(), parallel.getCounts());
+        parallel.release();
+    }
+
+    @Test
+    public void downsample_matchesLowerResolution() throws Exception {
+        float[] points = randomCloud(22, 20000);
+        PointCloudQuantizer fine = newQuantizer();
+        fine.quantize(points, 20000);
+        for (int factor : new int[] {1, 2, 4}) {
+            PointCloudQuantizer coarse = new PointCloudQuantizer(
+                    new SphericalProjection(RES / factor, RES / factor, SPAN, SPAN));
+            coarse.quantize(points, 20000);
+            float[] merged = new float[(RES / factor) * (RES / factor)];
+            fine.downsample(factor, merged);
+            float[] expected = coarse.getDepths();
+            for (int k = 0; k < merged.length; k++)
+                assertEquals(expected[k], merged[k], expected[k] * 1e-5f);
+        }
+    }
+
+    @Test
+    public void depthImage_matchesCloudOfItsPixels() throws Exception {
+        float[] image = SyntheticScenes.depthImage(SyntheticScenes.Scene.CLUTTER, 5L, 0.0f);
+        float[] points = SyntheticScenes.cloudOfDepthImage(image);
+        int numPoints = image.length;
+        // a hole in the image is a point at the origin in its cloud
+        image[7] = 0.0f;
+        for (int c = 0; c < 3; c++)
+            points[4 * 7 + c] = 0.0f;
+        PointCloudQuantizer byAngles = newQuantizer();
+        byAngles.quantize(points, numPoints);
+
+        DepthImageLookup lookup = SyntheticScenes.imageLookup(
+                new SphericalProjection(RES, RES, SPAN, SPAN));
+        PointCloudQuantizer byImage = newQuantizer();
+        byImage.setDepthImageLookup(lookup);
+        byImage.quantizeDepthImage(image, 1, 0);
+        PointCloudQuantizer byPixels = newQuantizer();
+        byPixels.setDepthImageLookup(lookup);
+        byPixels.setParallelism(3);
+        byPixels.setParallelThreshold(0);
+        byPixels.quantize(points, numPoints);
+        byPixels.release();
+
+        assertEquals(numPoints, byImage.getPointsQuantized());
+        assertEquals(0, byImage.getPointsOutsideSpan());
+        assertEquals(1, byPixels.getPointsOutsideSpan());
+        assertArrayEquals(byAngles.getCounts(), byImage.getCounts());
+        assertArrayEquals(byAngles.getCounts(), byPixels.getCounts());
+        float[] expected = byAngles.getDepths();
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], byImage.getDepths()[k], expected[k] * 1e-5f);
+            assertEquals(expected[k], byPixels.getDepths()[k], expected[k] * 1e-5f);
+        }
+    }
+}
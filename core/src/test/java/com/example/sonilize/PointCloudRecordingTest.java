@@ -0,0 +1,75 @@
+package com.example.sonilize;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips point clouds through PointCloudRecorder and PointCloudRecording.
+ */
+public class PointCloudRecordingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File record(File path, int frames) throws Exception {
+        PointCloudRecorder recorder = new PointCloudRecorder(path);
+        for (int f = 0; f < frames; f++) {
+            float[] points = PointCloudQuantizerTest.randomCloud(f, 100 * f + 1);
+            recorder.write(FloatBuffer.wrap(points), 100 * f + 1, 10.0 + 0.2 * f);
+        }
+        recorder.close();
+        return path;
+    }
+
+    private static void assertFramesMatch(PointCloudRecording recording, int frames) {
+        assertEquals(frames, recording.getFrameCount());
+        for (int f = 0; f < frames; f++) {
+            float[] expected = PointCloudQuantizerTest.randomCloud(f, 100 * f + 1);
+            assertEquals(10.0 + 0.2 * f, recording.getTimestamp(f), 0.0);
+            assertEquals(100 * f + 1, recording.getNumPoints(f));
+            FloatBuffer points = recording.getPoints(f);
+            assertEquals(expected.length, points.limit());
+            for (int k = 0; k < expected.length; k++)
+                assertEquals(expected[k], points.get(k), 0.0f);
+        }
+    }
+
+    @Test
+    public void recordedFrames_replayUnchanged() throws Exception {
+        File path = record(folder.newFile("clouds.snpc"), 5);
+        assertFramesMatch(new PointCloudRecording(path), 5);
+    }
+
+    @Test
+    public void recordingWithoutIndex_isScanned() throws Exception {
+        File path = record(folder.newFile("clouds.snpc"), 4);
+        // cut off the index and trailer, plus half of an extra frame, as after a crash
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        long dataEnd = file.length() - 8 * 4 - PointCloudRecorder.TRAILER_BYTES;
+        file.setLength(dataEnd + PointCloudRecorder.FRAME_HEADER_BYTES + 20);
+        file.seek(dataEnd + 8);
+        file.writeInt(Integer.reverseBytes(1000));
+        file.close();
+        assertFramesMatch(new PointCloudRecording(path), 4);
+    }
+
+    @Test
+    public void replayedFrame_quantizesLikeOriginal() throws Exception {
+        File path = record(folder.newFile("clouds.snpc"), 3);
+        PointCloudRecording recording = new PointCloudRecording(path);
+        SphericalProjection projection =
+                new SphericalProjection(64, 64, (float) Math.PI, (float) Math.PI);
+        PointCloudQuantizer fromRecording = new PointCloudQuantizer(projection);
+        PointCloudQuantizer fromArray = new PointCloudQuantizer(projection);
+        fromRecording.quantize(recording.getPoints(2), recording.getNumPoints(2));
+        fromArray.quantize(PointCloudQuantizerTest.randomCloud(2, 201), 201);
+        assertArrayEquals(fromArray.getDepths(), fromRecording.getDepths(), 0.0f);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks RigidTransform arithmetic and pose interpolation in PoseRing.
+ */
+public class PoseRingTest {
+
+    /* a rotation by angle (radians) about the vertical axis, then a translation */
+    private static RigidTransform yaw(double angle, float tx, float ty, float tz) {
+        return new RigidTransform().set(0.0f, (float) Math.sin(angle / 2), 0.0f,
+                                        (float) Math.cos(angle / 2), tx, ty, tz);
+    }
+
+    @Test
+    public void transform_composesAndInverts() throws Exception {
+        RigidTransform a = yaw(Math.PI / 2, 1.0f, 0.0f, 0.0f);
+        RigidTransform b = new RigidTransform().set(0.3f, 0.1f, -0.2f, 0.9f, 0.5f, -1.0f, 2.0f);
+        RigidTransform ab = new RigidTransform().compose(a, b);
+        float[] viaB = new float[3];
+        float[] viaAB = new float[3];
+        float[] expected = new float[3];
+        b.apply(0.2f, -0.7f, 1.1f, viaB);
+        a.apply(viaB[0], viaB[1], viaB[2], expected);
+        ab.apply(0.2f, -0.7f, 1.1f, viaAB);
+        assertArrayEquals(expected, viaAB, 1e-5f);
+
+        float[] back = new float[3];
+        ab.applyInverse(viaAB[0], viaAB[1], viaAB[2], back);
+        assertArrayEquals(new float[] {0.2f, -0.7f, 1.1f}, back, 1e-5f);
+
+        // a quarter turn about y takes z forward to x
+        float[] turned = new float[3];
+        yaw(Math.PI / 2, 0.0f, 0.0f, 0.0f).apply(0.0f, 0.0f, 1.0f, turned);
+        assertArrayEquals(new float[] {1.0f, 0.0f, 0.0f}, turned, 1e-6f);
+    }
+
+    @Test
+    public void interpolate_betweenPoses() throws Exception {
+        PoseRing ring = new PoseRing(8);
+        ring.add(1.0, yaw(0.0, 0.0f, 0.0f, 0.0f));
+        ring.add(2.0, yaw(Math.PI / 2, 2.0f, 0.0f, 0.0f));
+        RigidTransform pose = new RigidTransform();
+        assertTrue(ring.interpolate(1.5, pose));
+        float[] p = new float[3];
+        pose.apply(0.0f, 0.0f, 1.0f, p);
+        // half the translation, and half the turn
+        assertArrayEquals(new float[] {1.0f + (float) Math.sqrt(0.5), 0.0f,
+                                       (float) Math.sqrt(0.5)}, p, 1e-5f);
+    }
+
+    @Test
+    public void interpolate_holdsLatestBriefly() throws Exception {
+        PoseRing ring = new PoseRing(8);
+        RigidTransform pose = new RigidTransform();
+        assertFalse(ring.interpolate(1.0, pose));
+        ring.add(1.0, yaw(0.0, 3.0f, 0.0f, 0.0f));
+        assertTrue(ring.interpolate(1.05, pose));
+        float[] p = new float[3];
+        pose.apply(0.0f, 0.0f, 0.0f, p);
+        assertEquals(3.0f, p[0], 0.0f);
+        assertFalse(ring.interpolate(1.5, pose));
+        assertFalse(ring.interpolate(0.5, pose));
+    }
+
+    @Test
+    public void interpolate_forgetsOverwrittenPoses() throws Exception {
+        PoseRing ring = new PoseRing(4);
+        for (int k = 0; k < 10; k++)
+            ring.add(k, yaw(0.0, k, 0.0f, 0.0f));
+        RigidTransform pose = new RigidTransform();
+        assertFalse(ring.interpolate(5.5, pose));
+        assertTrue(ring.interpolate(7.5, pose));
+        float[] p = new float[3];
+        pose.apply(0.0f, 0.0f, 0.0f, p);
+        assertEquals(7.5f, p[0], 1e-6f);
+    }
+
+    @Test
+    public void concurrentWriter_neverYieldsTornPoses() throws Exception {
+        final PoseRing ring = new PoseRing(16);
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RigidTransform pose = new RigidTransform();
+                // the translation always equals the timestamp, on all axes
+                for (int k = 0; k < 2000000; k++) {
+                    float t = k * 0.001f;
+                    ring.add(k * 0.001, pose.set(0.0f, 0.0f, 0.0f, 1.0f, t, t, t));
+                }
+                done.set(true);
+            }
+        });
+        writer.start();
+        RigidTransform pose = new RigidTransform();
+        float[] p = new float[3];
+        for (int k = 0; !done.get(); k = (k + 7) % 2000000) {
+            double timestamp = k * 0.001 + 0.0004;
+            if (ring.interpolate(timestamp, pose)) {
+                pose.apply(0.0f, 0.0f, 0.0f, p);
+                assertEquals(p[0], p[1], 0.0f);
+                assertEquals(p[0], p[2], 0.0f);
+            }
+        }
+        writer.join();
+        assertTrue(ring.interpolate(1999.9985, pose));
+    }
+}
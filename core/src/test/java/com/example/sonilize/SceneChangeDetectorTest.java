@@ -0,0 +1,107 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares hand-made grids with SceneChangeDetector.
+ */
+public class SceneChangeDetectorTest {
+
+    private static final int RES = 32;
+
+    private static float[] noisyGrid(float depth, long seed) {
+        Random random = new Random(seed);
+        float[] grid = new float[RES * RES];
+        for (int k = 0; k < grid.length; k++)
+            grid[k] = depth + 0.005f * (float) random.nextGaussian();
+        return grid;
+    }
+
+    @Test
+    public void noise_isNoChange() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(RES, RES, RES, 8, 1.5f, 0.03f);
+        detector.setReference(noisyGrid(1.0f, 1L), null);
+        for (long seed = 2; seed < 10; seed++)
+            assertFalse(detector.hasChanged(noisyGrid(1.0f, seed), null));
+    }
+
+    @Test
+    public void smallObject_isAChange() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(RES, RES, RES, 8, 1.5f, 0.03f);
+        float[] grid = new float[RES * RES];
+        Arrays.fill(grid, Float.POSITIVE_INFINITY);
+        detector.setReference(grid, null);
+        assertFalse(detector.hasChanged(grid, null));
+        // 2x2 cells of a 1024 cell grid, well within one tile
+        for (int i = 20; i < 22; i++)
+            for (int j = 10; j < 12; j++)
+                grid[i * RES + j] = 0.8f;
+        assertTrue(detector.hasChanged(grid, null));
+    }
+
+    @Test
+    public void changesBeyondMaxDistance_areIgnored() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(RES, RES, RES, 8, 1.5f, 0.03f);
+        float[] grid = new float[RES * RES];
+        Arrays.fill(grid, 3.0f);
+        detector.setReference(grid, null);
+        Arrays.fill(grid, Float.POSITIVE_INFINITY);
+        assertFalse(detector.hasChanged(grid, null));
+    }
+
+    @Test
+    public void slowDrift_isCaughtAgainstTheReference() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(RES, RES, RES, 8, 1.5f, 0.03f);
+        float[] grid = new float[RES * RES];
+        Arrays.fill(grid, 1.0f);
+        detector.setReference(grid, null);
+        int steps = 0;
+        do {
+            for (int k = 0; k < grid.length; k++)
+                grid[k] -= 0.01f;
+            steps++;
+        } while (!detector.hasChanged(grid, null));
+        assertEquals(4, steps);
+    }
+
+    @Test
+    public void fineGrid_isComparedByBlocks() throws Exception {
+        SceneChangeDetector byCells = new SceneChangeDetector(RES, RES, RES, 2, 1.5f, 0.03f);
+        SceneChangeDetector byBlocks = new SceneChangeDetector(RES, RES, RES / 4, 2, 1.5f,
+                                                               0.03f);
+        float[] grid = new float[RES * RES];
+        Arrays.fill(grid, 1.0f);
+        byCells.setReference(grid, null);
+        byBlocks.setReference(grid, null);
+        // one cell of each 4x4 block is missed, the others still being hit
+        Random random = new Random(1L);
+        for (int i = 0; i < RES; i += 4)
+            for (int j = 0; j < RES; j += 4)
+                grid[(i + random.nextInt(4)) * RES + j + random.nextInt(4)] =
+                        Float.POSITIVE_INFINITY;
+        assertTrue(byCells.hasChanged(grid, null));
+        assertFalse(byBlocks.hasChanged(grid, null));
+        // as with the pyramid of the grid given
+        DepthPyramid pyramid = new DepthPyramid(RES, RES);
+        pyramid.build(grid);
+        assertFalse(byBlocks.hasChanged(grid, pyramid));
+        // a nearer object in one block
+        grid[5 * RES + 9] = 0.5f;
+        assertTrue(byBlocks.hasChanged(grid, null));
+    }
+
+    @Test
+    public void noReference_isAChange() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(RES, RES, RES, 8, 1.5f, 0.03f);
+        float[] grid = new float[RES * RES];
+        Arrays.fill(grid, 1.0f);
+        assertTrue(detector.hasChanged(grid, null));
+        detector.setReference(grid, null);
+        assertFalse(detector.hasChanged(grid, null));
+    }
+}
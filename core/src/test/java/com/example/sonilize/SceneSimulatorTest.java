@@ -0,0 +1,143 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Renders simple scenes with SceneSimulator and checks the points against their geometry.
+ */
+public class SceneSimulatorTest {
+
+    private static final int NUM_POINTS = 20000;
+
+    private static SceneSimulator.Builder builder() {
+        return new SceneSimulator.Builder().setNumPoints(NUM_POINTS).setRangeNoise(0.0f)
+                .setDropout(0.0f);
+    }
+
+    @Test
+    public void sameSeed_sameFrames() throws Exception {
+        float[][] points = new float[2][4 * NUM_POINTS];
+        int[][] labels = new int[2][NUM_POINTS];
+        float[] truth = new float[3 * NUM_POINTS];
+        int[] counts = new int[2];
+        for (int k = 0; k < 2; k++) {
+            SceneSimulator simulator = SceneSimulator.randomScene(7L, 4, 1.0f)
+                    .setNumPoints(NUM_POINTS).build();
+            // frames are the same whatever was rendered before
+            if (k == 1)
+                simulator.render(2, points[k], labels[k], truth);
+            counts[k] = simulator.render(5, points[k], labels[k], truth);
+        }
+        assertEquals(counts[0], counts[1]);
+        assertArrayEquals(Arrays.copyOf(points[0], 4 * counts[0]),
+                          Arrays.copyOf(points[1], 4 * counts[1]), 0.0f);
+        assertArrayEquals(Arrays.copyOf(labels[0], counts[0]),
+                          Arrays.copyOf(labels[1], counts[1]));
+    }
+
+    @Test
+    public void box_isHitOnItsFrontFace() throws Exception {
+        SceneSimulator simulator = builder().addBox(0.0f, 1.2f, 0.0f, 0.0f, 0.3f, 0.2f, 2.0f)
+                .build();
+        float[] points = new float[4 * NUM_POINTS];
+        int[] labels = new int[NUM_POINTS];
+        float[] truth = new float[3 * NUM_POINTS];
+        int n = simulator.render(0, points, labels, truth);
+        int hits = 0;
+        for (int p = 0; p < n; p++) {
+            float x = points[4*p];
+            float z = points[4*p+2];
+            if (labels[p] == 0) {
+                hits++;
+                assertEquals(1.0f, z, 1e-4f);
+                assertTrue(Math.abs(x) <= 0.3f + 1e-4f);
+            }
+            else {
+                assertEquals(SceneSimulator.FLOOR, labels[p]);
+                assertTrue(Math.abs(x / z) > 0.3f - 1e-4f || points[4*p+1] > 0.0f);
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void cylinder_isHitOnItsSurface() throws Exception {
+        SceneSimulator simulator = builder().addCylinder(0.4f, 1.5f, 0.0f, 0.0f, 0.25f, 2.0f)
+                .build();
+        float[] points = new float[4 * NUM_POINTS];
+        int[] labels = new int[NUM_POINTS];
+        float[] truth = new float[3 * NUM_POINTS];
+        int n = simulator.render(0, points, labels, truth);
+        int hits = 0;
+        for (int p = 0; p < n; p++) {
+            if (labels[p] != 0)
+                continue;
+            hits++;
+            float x = points[4*p];
+            float z = points[4*p+2];
+            float dx = x - 0.4f;
+            float dz = z - 1.5f;
+            assertEquals(0.25f, (float) Math.sqrt(dx * dx + dz * dz), 1e-3f);
+            // on the side facing the camera
+            assertTrue(dx * x + dz * z < 0.0f);
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void movingObject_bouncesWithinTheRegion() throws Exception {
+        SceneSimulator simulator = builder().addBox(0.0f, 1.0f, 2.0f, 0.0f, 0.2f, 0.2f, 1.0f)
+                .build();
+        SceneSimulator.SceneObject box = simulator.getObject(0);
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int k = 0; k < 1000; k++) {
+            float t = k * 0.01f;
+            float x = box.xAt(t);
+            min = Math.min(min, x);
+            max = Math.max(max, x);
+            assertEquals(1.0f, box.zAt(t), 0.0f);
+        }
+        assertEquals(-1.3f, min, 0.03f);
+        assertEquals(1.3f, max, 0.03f);
+    }
+
+    @Test
+    public void dropout_losesThatFractionOfRays() throws Exception {
+        // a wall right in front catches every ray
+        SceneSimulator simulator = builder().addWall(0.0f, 1.0f, 5.0f, 0.1f).setDropout(0.25f)
+                .build();
+        float[] points = new float[4 * NUM_POINTS];
+        int[] labels = new int[NUM_POINTS];
+        float[] truth = new float[3 * NUM_POINTS];
+        int n = simulator.render(0, points, labels, truth);
+        assertEquals(0.75f, n / (float) NUM_POINTS, 0.02f);
+    }
+
+    @Test
+    public void noise_growsWithDepth() throws Exception {
+        float[] deviations = new float[2];
+        float[] depths = {1.0f, 2.0f};
+        for (int k = 0; k < 2; k++) {
+            SceneSimulator simulator = builder().addWall(0.0f, depths[k] + 0.1f, 5.0f, 0.1f)
+                    .setRangeNoise(0.01f).build();
+            float[] points = new float[4 * NUM_POINTS];
+            int[] labels = new int[NUM_POINTS];
+            float[] truth = new float[3 * NUM_POINTS];
+            int n = simulator.render(0, points, labels, truth);
+            double sumSq = 0.0;
+            for (int p = 0; p < n; p++) {
+                float d = points[4*p+2] - truth[3*p+2];
+                sumSq += d * d;
+            }
+            deviations[k] = (float) Math.sqrt(sumSq / n);
+        }
+        // four times the noise at twice the depth
+        assertEquals(4.0f, deviations[1] / deviations[0], 0.4f);
+        assertTrue(deviations[0] > 0.005f && deviations[0] < 0.012f);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes fake sounds with SoundBank, as a collection playing them would see them.
+ */
+public class SoundBankTest {
+
+    private static final int NUM_SOUNDS = 8;
+
+    /* a decoder taking decodeMillis per sound, failing on sound failing (-1 for none) and
+     * waiting for gate before decoding sound gated (-1 for none) */
+    private static SoundBank.Decoder decoder(final long decodeMillis, final int failing,
+                                             final int gated, final CountDownLatch gate) {
+        return new SoundBank.Decoder() {
+            @Override
+            public float[] decode(int sound) throws IOException {
+                try {
+                    if (sound == gated)
+                        gate.await();
+                    Thread.sleep(decodeMillis);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                if (sound == failing)
+                    throw new IOException("Corrupt sound");
+                return new float[] {sound};
+            }
+        };
+    }
+
+    /* a listener counting the calls for each sound */
+    private static class CountingListener implements SoundBank.Listener {
+        final AtomicIntegerArray ready = new AtomicIntegerArray(NUM_SOUNDS);
+        final AtomicIntegerArray failed = new AtomicIntegerArray(NUM_SOUNDS);
+        final ConcurrentLinkedQueue<float[]> samples = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void onSoundReady(int sound, float[] decoded) {
+            ready.incrementAndGet(sound);
+            samples.add(decoded);
+        }
+
+        @Override
+        public void onSoundFailed(int sound, IOException e) {
+            failed.incrementAndGet(sound);
+        }
+    }
+
+    @Test
+    public void sounds_areDecodedInParallel() throws Exception {
+        long start = System.nanoTime();
+        SoundBank bank = new SoundBank(NUM_SOUNDS, decoder(100, -1, -1, null), NUM_SOUNDS);
+        assertTrue(bank.awaitDone(5, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(NUM_SOUNDS, bank.getNumReady());
+        assertEquals(0, bank.getNumFailed());
+        // well under the 800 ms of decoding them one after the other
+        assertTrue(elapsed / 1000000 + " ms", elapsed < 400000000L);
+        assertTrue(bank.getDecodeNanos() >= 100000000L && bank.getDecodeNanos() <= elapsed);
+        for (int s = 0; s < NUM_SOUNDS; s++)
+            assertEquals(s, bank.getSamples(s)[0], 0.0f);
+        bank.release();
+    }
+
+    @Test
+    public void listeners_hearOfEverySoundOnce() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        SoundBank bank = new SoundBank(NUM_SOUNDS, decoder(1, 2, 5, gate), 2);
+        CountingListener early = new CountingListener();
+        bank.addListener(early);
+        // all but sound 5 are done
+        while (bank.getNumReady() + bank.getNumFailed() < NUM_SOUNDS - 1)
+            Thread.sleep(1);
+        assertFalse(bank.awaitDone(10, TimeUnit.MILLISECONDS));
+        assertEquals(-1L, bank.getDecodeNanos());
+        assertNull(bank.getSamples(5));
+        CountingListener late = new CountingListener();
+        bank.addListener(late);
+        gate.countDown();
+        assertTrue(bank.awaitDone(5, TimeUnit.SECONDS));
+        // listeners are told after the bank is done with a sound, so may lag a little
+        long deadline = System.nanoTime() + 5000000000L;
+        while ((early.ready.get(5) == 0 || late.ready.get(5) == 0)
+               && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        for (CountingListener listener : new CountingListener[] {early, late}) {
+            for (int s = 0; s < NUM_SOUNDS; s++) {
+                assertEquals(s == 2 ? 0 : 1, listener.ready.get(s));
+                assertEquals(s == 2 ? 1 : 0, listener.failed.get(s));
+            }
+        }
+        assertEquals(NUM_SOUNDS - 1, bank.getNumReady());
+        assertEquals(1, bank.getNumFailed());
+        bank.release();
+    }
+
+    @Test
+    public void emptySound_fails() throws Exception {
+        SoundBank bank = new SoundBank(NUM_SOUNDS, new SoundBank.Decoder() {
+            @Override
+            public float[] decode(int sound) {
+                return new float[sound == 3 ? 0 : 1];
+            }
+        }, 2);
+        CountingListener listener = new CountingListener();
+        bank.addListener(listener);
+        assertTrue(bank.awaitDone(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.failed.get(3));
+        assertEquals(0, listener.ready.get(3));
+        assertNull(bank.getSamples(3));
+        assertEquals(NUM_SOUNDS - 1, bank.getNumReady());
+        bank.release();
+    }
+
+    @Test
+    public void removedListener_hearsNoMore() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        SoundBank bank = new SoundBank(NUM_SOUNDS, decoder(1, -1, 0, gate), 1);
+        CountingListener listener = new CountingListener();
+        bank.addListener(listener);
+        bank.removeListener(listener);
+        gate.countDown();
+        assertTrue(bank.awaitDone(5, TimeUnit.SECONDS));
+        assertTrue(listener.samples.isEmpty());
+        bank.release();
+    }
+
+    @Test
+    public void release_stopsDecoding() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        SoundBank bank = new SoundBank(NUM_SOUNDS, decoder(1, -1, 0, gate), 1);
+        CountingListener listener = new CountingListener();
+        bank.addListener(listener);
+        bank.release();
+        gate.countDown();
+        assertFalse(bank.awaitDone(50, TimeUnit.MILLISECONDS));
+        assertTrue(listener.samples.isEmpty());
+        assertEquals(0, bank.getNumReady());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the error bounds of the fast trigonometry and the trig-free binning of points.
+ */
+public class SphericalProjectionTest {
+
+    @Test
+    public void fastAtan_staysWithinDocumentedBound() throws Exception {
+        for (int k = -2000000; k <= 2000000; k++) {
+            float x = (float) Math.tan(k * (Math.PI / 2.0) / 2000001.0);
+            assertEquals(Math.atan(x), SphericalProjection.fastAtan(x),
+                         SphericalProjection.FAST_ATAN_MAX_ERROR);
+        }
+        assertEquals(Math.PI / 2.0, SphericalProjection.fastAtan(Float.POSITIVE_INFINITY),
+                     SphericalProjection.FAST_ATAN_MAX_ERROR);
+        assertEquals(-Math.PI / 2.0, SphericalProjection.fastAtan(-Float.MAX_VALUE),
+                     SphericalProjection.FAST_ATAN_MAX_ERROR);
+    }
+
+    @Test
+    public void fastAtan2_coversAllQuadrants() throws Exception {
+        for (int k = -10000; k <= 10000; k++) {
+            double angle = k * Math.PI / 10000.0;
+            float x = (float) Math.sin(angle);
+            float z = (float) Math.cos(angle);
+            assertEquals(Math.atan2(x, z), SphericalProjection.fastAtan2(x, z),
+                         SphericalProjection.FAST_ATAN_MAX_ERROR * 2);
+        }
+        assertEquals(0.0f, SphericalProjection.fastAtan2(0.0f, 0.0f), 0.0f);
+    }
+
+    @Test
+    public void fastAsin_staysWithinDocumentedBound() throws Exception {
+        for (int k = -2000000; k <= 2000000; k++) {
+            float x = k / 2000000.0f;
+            assertEquals(Math.asin(x), SphericalProjection.fastAsin(x),
+                         SphericalProjection.FAST_ASIN_MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void binning_matchesExactAngles() throws Exception {
+        float span = (float) Math.PI;
+        for (int res : new int[] {32, 64, 256}) {
+            SphericalProjection projection = new SphericalProjection(res, res, span, span);
+            Random random = new Random(res);
+            for (int n = 0; n < 100000; n++) {
+                float x = (random.nextFloat() - 0.5f) * 6.0f;
+                float y = (random.nextFloat() - 0.5f) * 6.0f;
+                float z = (random.nextFloat() - 0.5f) * 6.0f;
+                float r = (float) Math.sqrt(x*x + y*y + z*z);
+                double col = (Math.atan((double) x / z) + Math.PI / 2.0) * res / Math.PI;
+                double row = (Math.asin(-(double) y / r) + Math.PI / 2.0) * res / Math.PI;
+                if (Math.abs(col - Math.rint(col)) < 1e-4 || Math.abs(row - Math.rint(row)) < 1e-4)
+                    continue;
+                assertEquals((int) col, projection.columnOf(x, z));
+                assertEquals((int) row, projection.rowOf(y, r));
+            }
+        }
+    }
+
+    @Test
+    public void pointsOutsideNarrowSpan_areRejected() throws Exception {
+        SphericalProjection projection =
+                new SphericalProjection(16, 16, (float) Math.PI / 2.0f, (float) Math.PI / 2.0f);
+        assertEquals(-1, projection.columnOf(2.0f, 1.0f));
+        assertEquals(-1, projection.columnOf(-2.0f, 1.0f));
+        assertEquals(8, projection.columnOf(0.0f, 1.0f));
+        assertEquals(-1, projection.rowOf(-0.9f, 1.0f));
+        assertEquals(-1, projection.columnOf(0.0f, 0.0f));
+    }
+
+    @Test
+    public void cartesianOfSpherical_roundTrips() throws Exception {
+        float r = 1.3f, theta = 0.4f, phi = -0.2f;
+        float x = SphericalProjection.xOfSpherical(r, theta, phi);
+        float y = SphericalProjection.yOfSpherical(r, theta, phi);
+        float z = SphericalProjection.zOfSpherical(r, theta, phi);
+        assertEquals(r, Math.sqrt(x*x + y*y + z*z), 1e-6);
+        assertEquals(theta, Math.atan(x / z), 1e-6);
+        assertEquals(phi, Math.asin(-y / r), 1e-6);
+        assertEquals(1.0f, SphericalProjection.zOfSpherical(1.0f, 0.0f, 0.0f), 0.0f);
+    }
+}
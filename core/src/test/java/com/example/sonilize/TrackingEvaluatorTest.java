@@ -0,0 +1,48 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scores the pipeline with TrackingEvaluator on scenes it should track perfectly, or not at all.
+ */
+public class TrackingEvaluatorTest {
+
+    private static final PipelineConfig CONFIG = new PipelineConfig.Builder().build();
+
+    @Test
+    public void stillBox_isTrackedThroughout() throws Exception {
+        SceneSimulator simulator = new SceneSimulator.Builder()
+                .addBox(0.3f, 1.0f, 0.0f, 0.0f, 0.2f, 0.2f, 1.5f).build();
+        TrackingEvaluator.Result result = new TrackingEvaluator(simulator, CONFIG).evaluate(20);
+        assertEquals(20, result.getFrames());
+        assertEquals(1.0, result.getRecall(), 0.0);
+        assertEquals(0, result.getIdentitySwitches());
+        assertEquals(0, result.getFalseTracks());
+        assertTrue(result.getMeanPanError() < 0.05);
+        assertTrue(result.getMeanVolumeError() < 0.05);
+        assertTrue(result.getFramesPerSecond() > 0.0);
+    }
+
+    @Test
+    public void twoBoxes_keepTheirSounds() throws Exception {
+        SceneSimulator simulator = new SceneSimulator.Builder()
+                .addBox(-0.5f, 0.8f, 0.0f, 0.1f, 0.2f, 0.2f, 1.5f)
+                .addBox(0.5f, 0.8f, 0.0f, 0.1f, 0.2f, 0.2f, 1.5f).build();
+        TrackingEvaluator.Result result = new TrackingEvaluator(simulator, CONFIG).evaluate(20);
+        assertEquals(1.0, result.getRecall(), 0.0);
+        assertEquals(0, result.getIdentitySwitches());
+    }
+
+    @Test
+    public void distantObjects_needNotBeTracked() throws Exception {
+        SceneSimulator simulator = new SceneSimulator.Builder()
+                .addBox(0.0f, 2.5f, 0.0f, 0.0f, 0.3f, 0.3f, 1.5f)
+                .addWall(0.0f, 3.5f, 2.0f, 0.1f).build();
+        TrackingEvaluator.Result result = new TrackingEvaluator(simulator, CONFIG).evaluate(10);
+        assertEquals(1.0, result.getRecall(), 0.0);
+        assertEquals(0, result.getFalseTracks());
+        assertEquals(0.0, result.getMeanPanError(), 0.0);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the latest-value-wins semantics of TripleBuffer, alone and across two threads.
+ */
+public class TripleBufferTest {
+
+    @Test
+    public void poll_returnsLatestAndDropsOlder() throws Exception {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[1], new long[1], new long[1]);
+        assertNull(buffer.poll());
+        buffer.getWriteBuffer()[0] = 1;
+        assertFalse(buffer.publish());
+        buffer.getWriteBuffer()[0] = 2;
+        assertTrue(buffer.publish());
+        assertEquals(2, buffer.poll()[0]);
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void concurrentHandoff_neverTearsOrGoesBackwards() throws Exception {
+        final int values = 200000;
+        final TripleBuffer<long[]> buffer =
+                new TripleBuffer<>(new long[8], new long[8], new long[8]);
+        Thread producer = new Thread() {
+            public void run() {
+                for (long v = 1; v <= values; v++) {
+                    long[] b = buffer.getWriteBuffer();
+                    for (int k = 0; k < b.length; k++)
+                        b[k] = v;
+                    buffer.publish();
+                }
+            }
+        };
+        producer.start();
+        long last = 0;
+        while (last < values) {
+            long[] b = buffer.poll();
+            if (b == null)
+                continue;
+            for (int k = 1; k < b.length; k++)
+                assertEquals(b[0], b[k]);
+            assertTrue(b[0] > last);
+            last = b[0];
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the state transitions of VoiceAllocator and that a long session does not allocate.
+ */
+public class VoiceAllocatorTest {
+
+    @Test
+    public void activate_handsOutLeastRecentlyReleased() throws Exception {
+        VoiceAllocator voices = new VoiceAllocator(4);
+        assertEquals(0, voices.activateLeastRecent());
+        assertEquals(1, voices.activateLeastRecent());
+        voices.deactivate(0);
+        assertEquals(2, voices.activateLeastRecent());
+        assertEquals(3, voices.activateLeastRecent());
+        assertEquals(0, voices.activateLeastRecent());
+        assertEquals(4, voices.getNumActive());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void activate_failsWhenAllActive() throws Exception {
+        VoiceAllocator voices = new VoiceAllocator(2);
+        voices.activateLeastRecent();
+        voices.activateLeastRecent();
+        voices.activateLeastRecent();
+    }
+
+    @Test
+    public void inactiveVoices_rejectChanges() throws Exception {
+        VoiceAllocator voices = new VoiceAllocator(70);
+        int voice = voices.activateLeastRecent();
+        voices.deactivate(voice);
+        try {
+            voices.deactivate(voice);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            voices.play(69);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            voices.setVolPan(voice, 0.5f, 0.0f);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void playAndPause_reportTransitions() throws Exception {
+        VoiceAllocator voices = new VoiceAllocator(3);
+        int voice = voices.activateLeastRecent();
+        assertTrue(voices.play(voice));
+        assertFalse(voices.play(voice));
+        assertTrue(voices.isPlaying(voice));
+        assertTrue(voices.pause(voice));
+        assertFalse(voices.pause(voice));
+        voices.play(voice);
+        voices.deactivate(voice);
+        assertFalse(voices.isPlaying(voice));
+        assertFalse(voices.isActive(voice));
+    }
+
+    @Test
+    public void setVolPan_splitsVolumeBetweenChannels() throws Exception {
+        VoiceAllocator voices = new VoiceAllocator(1);
+        int voice = voices.activateLeastRecent();
+        voices.setVolPan(voice, 0.8f, 0.0f);
+        assertEquals(0.4f, voices.getLeftGain(voice), 1e-6f);
+        assertEquals(0.4f, voices.getRightGain(voice), 1e-6f);
+        voices.setVolPan(voice, 1.0f, 1.0f);
+        assertEquals(0.0f, voices.getLeftGain(voice), 1e-6f);
+        assertEquals(1.0f, voices.getRightGain(voice), 1e-6f);
+        voices.deactivate(voice);
+        assertEquals(0.0f, voices.getRightGain(voice), 0.0f);
+    }
+
+    @Test
+    public void setDirection_keepsValidDirections() throws Exception {
+        VoiceAllocator voices = new VoiceAllocator(1);
+        int voice = voices.activateLeastRecent();
+        voices.setDirection(voice, -3.0f, 1.5f);
+        assertEquals(-3.0f, voices.getAzimuth(voice), 0.0f);
+        assertEquals(1.5f, voices.getElevation(voice), 0.0f);
+        try {
+            voices.setDirection(voice, 3.2f, 0.0f);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            voices.setDirection(voice, 0.0f, Float.NaN);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        voices.deactivate(voice);
+        assertEquals(0.0f, voices.getAzimuth(voice), 0.0f);
+        try {
+            voices.setDirection(voice, 0.0f, 0.0f);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /* a tracker-like churn of activations, volume updates and releases */
+    private static void churn(VoiceAllocator voices, Random random, int[] held, int steps) {
+        for (int s = 0; s < steps; s++) {
+            int slot = random.nextInt(held.length);
+            if (held[slot] < 0) {
+                held[slot] = voices.activateLeastRecent();
+                voices.play(held[slot]);
+            }
+            else if (random.nextInt(8) == 0) {
+                voices.pause(held[slot]);
+                voices.deactivate(held[slot]);
+                held[slot] = -1;
+            }
+            else {
+                voices.setVolPan(held[slot], random.nextFloat(), 2.0f * random.nextFloat() - 1.0f);
+            }
+        }
+    }
+
+    @Test
+    public void longSession_allocatesNothing() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        VoiceAllocator voices = new VoiceAllocator(8);
+        int[] held = {-1, -1, -1, -1};
+        Random random = new Random(1L);
+        churn(voices, random, held, 100000);
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        // about a day of updates of four sounds at 5 frames per second
+        churn(voices, random, held, 2000000);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        // Random itself allocates nothing; leave room for the measurement's own overhead
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
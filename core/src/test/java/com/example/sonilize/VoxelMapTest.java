@@ -0,0 +1,145 @@
+package com.example.sonilize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how VoxelMap fuses grids across frames.
+ */
+public class VoxelMapTest {
+
+    private static final int RES = 64;
+    private static final float VOXEL = 0.05f;
+    private static final RigidTransform IDENTITY = new RigidTransform();
+
+    private static SphericalProjection newProjection() {
+        return new SphericalProjection(RES, RES, (float) Math.PI, (float) Math.PI);
+    }
+
+    /* a grid seeing nothing but a square patch of cells at depth r around (col, row) */
+    private static float[] patch(int col, int row, int halfWidth, float r) {
+        float[] grid = new float[RES * RES];
+        Arrays.fill(grid, Float.POSITIVE_INFINITY);
+        for (int i = col - halfWidth; i <= col + halfWidth; i++)
+            for (int j = row - halfWidth; j <= row + halfWidth; j++)
+                grid[i * RES + j] = r;
+        return grid;
+    }
+
+    private static float[] empty() {
+        return patch(0, 0, -1, 0.0f);
+    }
+
+    @Test
+    public void singleFrame_createsNoObstacle() throws Exception {
+        VoxelMap map = new VoxelMap(newProjection(), VOXEL, 1.5f, 4096);
+        map.integrate(patch(32, 32, 3, 1.0f), IDENTITY, 0.0);
+        assertEquals(0, map.getNumOccupied());
+        assertEquals(Float.POSITIVE_INFINITY, map.getDepths()[32 * RES + 32], 0.0f);
+        assertFalse(map.hasChanged());
+
+        map.integrate(patch(32, 32, 3, 1.0f), IDENTITY, 0.2);
+        assertTrue(map.getNumOccupied() > 0);
+        assertTrue(map.hasChanged());
+        assertEquals(1.0f, map.getDepths()[32 * RES + 32], VOXEL);
+    }
+
+    @Test
+    public void vanishedObstacle_outlivesOneFrame() throws Exception {
+        VoxelMap map = new VoxelMap(newProjection(), VOXEL, 1.5f, 4096);
+        for (int f = 0; f < 4; f++)
+            map.integrate(patch(32, 32, 3, 1.0f), IDENTITY, f * 0.2);
+        int occupied = map.getNumOccupied();
+        map.integrate(empty(), IDENTITY, 0.8);
+        assertEquals(occupied, map.getNumOccupied());
+        map.integrate(empty(), IDENTITY, 1.0);
+        assertEquals(0, map.getNumOccupied());
+        assertTrue(map.hasChanged());
+        for (int f = 0; f < 2; f++)
+            map.integrate(empty(), IDENTITY, 1.2 + f * 0.2);
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void staticScene_settles() throws Exception {
+        VoxelMap map = new VoxelMap(newProjection(), VOXEL, 1.5f, 4096);
+        float[] grid = patch(20, 40, 4, 0.8f);
+        map.integrate(grid, IDENTITY, 0.0);
+        map.integrate(grid, IDENTITY, 0.2);
+        float[] rendered = map.getDepths().clone();
+        for (int f = 2; f < 20; f++) {
+            map.integrate(grid, IDENTITY, f * 0.2);
+            assertFalse(map.hasChanged());
+            assertArrayEquals(rendered, map.getDepths(), 0.0f);
+        }
+    }
+
+    @Test
+    public void headTurn_rendersObstacleWhereItIsSeen() throws Exception {
+        SphericalProjection projection = newProjection();
+        VoxelMap map = new VoxelMap(projection, VOXEL, 1.5f, 4096);
+        for (int f = 0; f < 3; f++)
+            map.integrate(patch(32, 32, 3, 1.0f), IDENTITY, f * 0.2);
+
+        // turn by 8 columns about the vertical axis
+        double yaw = 8 * Math.PI / RES;
+        RigidTransform turned = new RigidTransform().set(
+                0.0f, (float) Math.sin(yaw / 2), 0.0f, (float) Math.cos(yaw / 2),
+                0.0f, 0.0f, 0.0f);
+        float[] seen = new float[3];
+        // the center of column 32, whose cells measured the obstacle
+        double theta = Math.PI / RES / 2;
+        turned.applyInverse((float) Math.sin(theta), 0.0f, (float) Math.cos(theta), seen);
+        int col = projection.columnOf(seen[0], seen[2]);
+        assertEquals(24, col);
+
+        map.integrate(patch(col, 32, 3, 1.0f), turned, 0.6);
+        assertEquals(1.0f, map.getDepths()[col * RES + 32], VOXEL);
+        assertEquals(Float.POSITIVE_INFINITY, map.getDepths()[32 * RES + 32], 0.0f);
+        assertFalse(map.hasChanged());
+    }
+
+    @Test
+    public void distantVoxels_areEvicted() throws Exception {
+        VoxelMap map = new VoxelMap(newProjection(), VOXEL, 1.5f, 4096);
+        for (int f = 0; f < 3; f++)
+            map.integrate(patch(32, 32, 3, 1.0f), IDENTITY, f * 0.2);
+        assertTrue(map.size() > 0);
+        RigidTransform away = new RigidTransform().set(0.0f, 0.0f, 0.0f, 1.0f,
+                                                       0.0f, 0.0f, -5.0f);
+        map.integrate(empty(), away, 0.6);
+        assertEquals(0, map.size());
+        assertTrue(map.hasChanged());
+    }
+
+    @Test
+    public void fullMap_dropsHits() throws Exception {
+        VoxelMap map = new VoxelMap(newProjection(), VOXEL, 1.5f, 16);
+        map.integrate(patch(32, 32, 10, 1.0f), IDENTITY, 0.0);
+        assertEquals(16, map.size());
+        assertTrue(map.getDroppedHits() > 0);
+    }
+
+    @Test
+    public void churn_keepsTableConsistent() throws Exception {
+        VoxelMap map = new VoxelMap(newProjection(), VOXEL, 1.5f, 512);
+        Random random = new Random(7L);
+        RigidTransform pose = new RigidTransform();
+        for (int f = 0; f < 500; f++) {
+            pose.set(0.0f, random.nextFloat() * 0.2f, 0.0f, 1.0f,
+                     random.nextFloat() * 0.3f, 0.0f, random.nextFloat() * 0.3f);
+            map.integrate(patch(8 + random.nextInt(48), 8 + random.nextInt(48),
+                                random.nextInt(6), 0.3f + random.nextFloat()),
+                          pose, f * 0.2);
+            assertTrue(map.size() <= 512);
+        }
+        // every voxel is still found, and goes once it is seen through
+        for (int f = 0; f < 5; f++)
+            map.integrate(empty(), IDENTITY, 100.0 + f * 0.2);
+        assertEquals(0, map.size());
+    }
+}
@@ -4,28 +4,20 @@ import android.content.Context;
 import android.media.AudioAttributes;
 import android.media.SoundPool;
 
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
-import java.util.Vector;
-
-/* an API for managing concurrent looped sounds, including playing the least recently used sound */
-class LoopedSoundCollection {
+/* an API for managing concurrent looped sounds, including playing the least recently used sound;
+ * the sounds are numbered from 0 in the order of their resource IDs, their state is kept by a
+ * VoiceAllocator; SoundPool loads sounds asynchronously, so a sound played before it is loaded
+ * starts once it is, rather than not at all */
+class LoopedSoundCollection implements SoundCollection {
 
     private SoundPool soundPool;
-    private LinkedList<Integer> inactiveIDs;
-    private Vector<LRVol> lrVolsById;
-    private Vector<Boolean> isPlaying;
-    private Vector<Integer> secondaryID;
-
-    /* a container for left and right volumes */
-    private class LRVol {
-        private float leftVol;
-        private float rightVol;
-
-        private LRVol(float l, float r) {
-            leftVol = l; rightVol = r;
-        }
-    }
+    private final VoiceAllocator voices;
+    // SoundPool sound ID of each sound
+    private final int[] soundIDs;
+    // SoundPool stream ID of each sound since it was last played, 0 when stopped
+    private final int[] streamIDs;
+    // whether each sound is loaded, guarded by this like the state of the sounds
+    private final boolean[] loaded;
 
     /* constructor */
     LoopedSoundCollection(Context context, int[] resids, int maxStreams) {
@@ -36,84 +28,94 @@ class LoopedSoundCollection {
         soundPool = (new SoundPool.Builder()
                         .setMaxStreams(maxStreams)
                         .setAudioAttributes(audioAttributes)).build();
-        inactiveIDs = new LinkedList<>();
-        lrVolsById = new Vector<>();
-        lrVolsById.add(0, null);
-        isPlaying = new Vector<>();
-        isPlaying.add(0, null);
-        secondaryID = new Vector<>();
-        secondaryID.add(0, null);
-        for (int id : resids) {
-            int streamID = soundPool.load(context, id, 1);
-            soundPool.setLoop(streamID, -1);
-            soundPool.setVolume(streamID, 0.0f, 0.0f);
-            lrVolsById.add(streamID, new LRVol(0.0f, 0.0f));
-            isPlaying.add(streamID, false);
-            secondaryID.add(streamID);
-            inactiveIDs.add(streamID);
+        voices = new VoiceAllocator(resids.length);
+        soundIDs = new int[resids.length];
+        streamIDs = new int[resids.length];
+        loaded = new boolean[resids.length];
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+                if (status == 0)
+                    onLoaded(sampleId);
+            }
+        });
+        synchronized (this) {
+            for (int v = 0; v < resids.length; v++)
+                soundIDs[v] = soundPool.load(context, resids[v], 1);
         }
     }
 
-    /* "activate" the least recently active sound, making it available for playback */
-    int activateLeastRecent() {
-        try {
-            return inactiveIDs.remove();
-        } catch (NoSuchElementException e) {
-            throw new NoSuchElementException("No more sounds left to play!");
+    /* mark the sound of a SoundPool sound ID loaded, starting it if it was played meanwhile */
+    private synchronized void onLoaded(int soundID) {
+        for (int v = 0; v < soundIDs.length; v++) {
+            if (soundIDs[v] != soundID)
+                continue;
+            loaded[v] = true;
+            if (voices.isPlaying(v) && streamIDs[v] == 0)
+                start(v);
         }
     }
 
+    private void start(int voice) {
+        streamIDs[voice] = soundPool.play(soundIDs[voice], voices.getLeftGain(voice),
+                                          voices.getRightGain(voice), 1, -1, 1.0f);
+    }
+
+    /* "activate" the least recently active sound, making it available for playback */
+    @Override
+    public synchronized int activateLeastRecent() {
+        return voices.activateLeastRecent();
+    }
+
     /* "deactivate" the least recently used sound, making it no longer available for playback;
      * stops playback if need be
      */
-    void deactivate(int streamID) {
-        if (inactiveIDs.contains(streamID)) {
-            throw new IllegalStateException("Attempted to deactivate an inactive sound!");
+    @Override
+    public synchronized void deactivate(int streamID) {
+        voices.deactivate(streamID);
+        if (streamIDs[streamID] != 0) {
+            soundPool.stop(streamIDs[streamID]);
+            streamIDs[streamID] = 0;
         }
-        inactiveIDs.add(streamID);
-        soundPool.setVolume(streamID, 0.0f, 0.0f);
-        isPlaying.add(streamID, false);
-        soundPool.pause(streamID);
-        soundPool.stop(streamID);
     }
 
     /* play the sound, if it is active */
-    void play(int streamID) {
-        if (inactiveIDs.contains(streamID)) {
-            throw new IllegalStateException("Attempted to play an inactive sound!");
-        }
-        if (!isPlaying.get(streamID)) {
-            int newID = soundPool.play(streamID, lrVolsById.get(streamID).leftVol,
-                    lrVolsById.get(streamID).rightVol, 1, -1, 1.0f);
-            secondaryID.add(streamID, newID);
-        }
+    @Override
+    public synchronized void play(int streamID) {
+        if (!voices.play(streamID))
+            return;
+        if (streamIDs[streamID] != 0)
+            soundPool.resume(streamIDs[streamID]);
+        else if (loaded[streamID])
+            start(streamID);
     }
 
     /* pause the sound */
-    void pause(int streamID) {
-        soundPool.pause(secondaryID.get(streamID));
-        isPlaying.add(streamID, false);
+    @Override
+    public synchronized void pause(int streamID) {
+        if (voices.pause(streamID) && streamIDs[streamID] != 0)
+            soundPool.pause(streamIDs[streamID]);
     }
 
     /* set volume and pan of a sound */
-    void setVolPan(int streamID, float vol, float pan) {
-        if (inactiveIDs.contains(streamID)) {
-            throw new IllegalStateException("Attempted to change volume/pan of an inactive sound!");
-        }
-        if (vol < 0.0f || vol > 1.0f)
-            throw new IllegalArgumentException("Volume must be between 0.0 and 1.0");
-        if (pan < -1.0f || pan > 1.0f)
-            throw new IllegalArgumentException("Pan must be bewteen -1.0 and 1.0");
-        float pan2 = pan / (1 + pan * pan) + 0.5f;
-        float l = (1.0f - pan2) * vol;
-        float r = pan2 * vol;
-        soundPool.setVolume(secondaryID.get(streamID), l, r);
-        lrVolsById.add(streamID, new LRVol(l, r));
+    @Override
+    public synchronized void setVolPan(int streamID, float vol, float pan) {
+        voices.setVolPan(streamID, vol, pan);
+        if (streamIDs[streamID] != 0)
+            soundPool.setVolume(streamIDs[streamID], voices.getLeftGain(streamID),
+                                voices.getRightGain(streamID));
+    }
+
+    /* set the direction of a sound, which SoundPool can only render through its pan */
+    @Override
+    public synchronized void setDirection(int streamID, float azimuth, float elevation) {
+        voices.setDirection(streamID, azimuth, elevation);
     }
 
     /* destroy this sound collection and release the resources used */
-    void release() {
+    @Override
+    public synchronized void release() {
         soundPool.autoPause();
         soundPool.release();
     }
-}
\ No newline at end of file
+}
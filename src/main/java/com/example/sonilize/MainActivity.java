@@ -1,11 +1,11 @@
 package com.example.sonilize;
 
-import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
 
 import com.google.atap.tangoservice.Tango;
+import com.google.atap.tangoservice.TangoCameraIntrinsics;
 import com.google.atap.tangoservice.TangoConfig;
 import com.google.atap.tangoservice.TangoCoordinateFramePair;
 import com.google.atap.tangoservice.TangoErrorException;
@@ -16,10 +16,11 @@ import com.google.atap.tangoservice.TangoPointCloudData;
 import com.google.atap.tangoservice.TangoPoseData;
 import com.google.atap.tangoservice.TangoXyzIjData;
 
-import java.nio.FloatBuffer;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
-import java.util.Vector;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -31,177 +32,172 @@ public class MainActivity extends AppCompatActivity {
     private static final float MAX_DISTANCE = 1.5f;
     private static final int MIN_BLOB_SIZE = 50;
     private static final float EPSILON = 0.40f;
+    private static final boolean PARALLEL_QUANTIZATION = true;
+    private static final int QUANTIZATION_THREADS = Runtime.getRuntime().availableProcessors();
+    // width of the voxels fusing successive frames, 0 to find obstacles in each frame alone
+    private static final float VOXEL_SIZE = 0.05f;
+    // bin points by their pixel of the depth camera, through a lookup table built from its
+    // intrinsics, rather than by their angles
+    private static final boolean PIXEL_LOOKUP = true;
+    // drop the points of the ground before looking for obstacles
+    private static final boolean GROUND_REMOVAL = true;
+    // blobs are found again once the depths of a tile of the grid moved by that much on average,
+    // in meters, or after that many frames
+    private static final float SCENE_CHANGE_TOLERANCE = 0.03f;
+    private static final int MAX_STALE_FRAMES = 5;
+    // time allowed for processing a frame, load being shed beyond it
+    private static final long FRAME_DEADLINE_MS = 60;
+    // capture every processed point cloud to the app's external files directory for replay
+    private static final boolean RECORD_POINT_CLOUDS = false;
+    // mix the sounds in software (MixerSoundCollection), decoded once into a SoundBank kept
+    // across pauses, rather than with a SoundPool loading them again on every resume
+    private static final boolean SOFTWARE_MIXER = true;
+    // with the software mixer, render sounds from their direction through head-related
+    // transfer functions, which conveys elevation and front versus back, rather than panning
+    private static final boolean BINAURAL_RENDERING = true;
+    private static final int[] SOUND_RESIDS = {R.raw.sound_1, R.raw.sound_2, R.raw.sound_3,
+                                               R.raw.sound_4, R.raw.sound_5, R.raw.sound_6,
+                                               R.raw.sound_7, R.raw.sound_8};
+    // sound volume and pan are updated at this rate, gliding between depth frames
+    private static final int AUDIO_CONTROL_RATE = 100;
+    private static final float AUDIO_CONTROL_THRESHOLD = 0.01f;
+    // poses kept for interpolation, about 2.5 s at the rate of Tango's pose callbacks
+    private static final int POSE_RING_CAPACITY = 256;
+    // latencies and counters are logged at this period, in place of anything per frame
+    private static final long SUMMARY_PERIOD_MS = 10000;
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
-    /* get the audio pan associated with the lateral position of thing */
-    private static float panOfThing(Thing thing) {
-        return - thing.blob.getAverageTheta() / (HORIZ_ANGULAR_SPAN / 2.0f);
-    }
-
-    /* get the audio volume associated with the distance of thing */
-    private static float volOfThing(Thing thing) {
-        return (float) Math.pow(2.0, -4.0 * thing.blob.getAverageR() / MAX_DISTANCE);
-    }
+    private DepthPipeline depthPipeline;
+    private Tango mTango;
+    private TangoConfig mConfig;
+    private SoundBank soundBank;
+    private BinauralFilters binauralFilters;
+    private SoundCollection soundCollection;
+    private AudioControlBridge audioControl;
+    private FramePipeline framePipeline;
+    private PointCloudRecorder recorder;
+    private PoseRing poseRing;
+    private PipelineMetrics metrics;
+    private long lastSummaryNanos;
+    // System.nanoTime() minus Tango's clock, in nanoseconds: the smallest difference seen at the
+    // arrival of a pose, which is the closest to the time of its capture
+    private volatile long tangoClockOffset = Long.MAX_VALUE;
+    // the pose of the depth camera relative to the device, known once connected to Tango
+    private volatile RigidTransform cameraToDevice;
+    // scratch transforms of the Tango callback thread
+    private final RigidTransform deviceToWorld = new RigidTransform();
+    private final RigidTransform cameraToWorld = new RigidTransform();
 
-    /* compute a generalized f-mean where transform represents the function f */
-    static float generalizedAverage(Iterable<Float> nums, Bijection transform) {
-        float sum = 0;
-        int size = 0;
-        for (float r : nums) {
-            sum += transform.fwd(r);
-            size++;
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+        mTango = new Tango(MainActivity.this);
+        if (SOFTWARE_MIXER) {
+            startDecodingSounds();
+            if (BINAURAL_RENDERING)
+                startComputingFilters();
         }
-        return transform.inv(sum / (float) size);
     }
 
-    /* an invertible function used for generalized f-means */
-    private abstract class Bijection {
-        abstract float fwd(float x);
-        abstract float inv(float y);
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (soundBank != null)
+            soundBank.release();
+        if (binauralFilters != null)
+            binauralFilters.release();
     }
 
-    /* a Blob is an aggregate of quantized points in 3-space representing a physical object */
-    private class Blob implements Comparable<Blob> {
-        private int size;
-        private float averageR;
-        private float averageTheta;
-        private float averagePhi;
-
-        private Blob (Iterable<Triple> points, Bijection transform) {
-            size = 0;
-            averageTheta = 0.0f;
-            averagePhi = 0.0f;
-            Vector<Float> rs = new Vector<>();
-            for (Triple t : points) {
-                size++;
-                averageTheta += t.second;
-                averagePhi += t.third;
-                rs.add(t.first);
+    /* decode the sounds in the background, once for the life of the activity */
+    private void startDecodingSounds() {
+        soundBank = new SoundBank(SOUND_RESIDS.length,
+                                  MixerSoundCollection.decoderOf(getApplicationContext(),
+                                                                 SOUND_RESIDS),
+                                  Runtime.getRuntime().availableProcessors());
+        final AtomicInteger done = new AtomicInteger();
+        soundBank.addListener(new SoundBank.Listener() {
+            @Override
+            public void onSoundReady(int sound, float[] samples) {
+                countDecoded();
             }
-            averageR = generalizedAverage(rs, transform);
-            averageTheta /= (float) size;
-            averagePhi /= (float) size;
-        }
-
-        private int getSize() {
-            return size;
-        }
-
-        private float getAverageR() {
-            return averageR;
-        }
-
-        private float getAverageTheta() {
-            return averageTheta;
-        }
-
-        public float getAveragePhi() {
-            return averagePhi;
-        }
 
-        // compare by radial distance (return positive integer iff this is farther than that)
-        public int compareTo(@NonNull Blob that) {
-            if (this.averageR < that.averageR) return -1;
-            else if (this.averageR == that.averageR) return 0;
-            else return 1;
-        }
-
-        // the square of the euclidean distance between this and that
-        private float distanceSqTo(Blob that) {
-            Triple thisCartesian = cartesianOfSpherical(averageR, averageTheta, averagePhi);
-            Triple thatCartesian =
-                    cartesianOfSpherical(that.averageR, that.averageTheta, that.averagePhi);
-            float xDiff = thisCartesian.first - thatCartesian.first;
-            float yDiff = thisCartesian.second - thatCartesian.second;
-            float zDiff = thisCartesian.third - thatCartesian.third;
-            return xDiff * xDiff + yDiff * yDiff + zDiff * zDiff;
-        }
-    }
-
-    /* three floats */
-    private class Triple {
-        private float first;
-        private float second;
-        private float third;
-
-        private Triple(float a, float b, float c) {
-            first = a;
-            second = b;
-            third = c;
-        }
-    }
-
-    /* a blob and its associated sound */
-    private class Thing {
-        private Blob blob;
-        private int streamID;
-
-        private Thing(Blob blob, int streamID) {
-            this.blob = blob;
-            this.streamID = streamID;
-        }
-    }
-
-    /* get spherical coordinates of (x, y, z) as (r, theta, phi) where r is the
-     * radial distance, theta is longitude (the signed angle measured clockwise
-     * from the z axis in the xz-plane), and phi is the latitude (the signed
-     * angle measured upwards from the xz plane)
-     */
-    private Triple sphericalOfCartesian(float x, float y, float z){
-        float r = (float) Math.sqrt(x*x + y*y + z*z);
-        float theta = (float) Math.atan(x / z);
-        float phi = (float) Math.asin(-y / r);
-        return new Triple(r, theta, phi);
-    }
+            @Override
+            public void onSoundFailed(int sound, IOException e) {
+                countDecoded();
+            }
 
-    /* get cartesian coordinates of (r, theta, phi) as (x, y, z) where r is the
-     * radial distance, theta is longitude (the signed angle measured clockwise
-     * from the z axis in the xz-plane), and phi is the latitude (the signed
-     * angle measured upwards from the xz plane)
-     */
-    private Triple cartesianOfSpherical(float r, float theta, float phi) {
-        float y = - r * (float) Math.sin(phi);
-        float x = r * (float) (Math.cos(phi) * Math.sin(theta));
-        float z = x / (float) Math.tan(theta);
-        return new Triple(x, y, z);
+            private void countDecoded() {
+                if (done.incrementAndGet() == SOUND_RESIDS.length)
+                    Log.i(TAG, String.format(Locale.US, "Sounds decoded in %.1f ms",
+                                             soundBank.getDecodeNanos() / 1e6));
+            }
+        });
     }
 
-    private Vector<Thing> things;
-    private float[][] depthMatrix;
-    private int[][] counts;
-    private Tango mTango;
-    private TangoConfig mConfig;
-    private Bijection reciprocal;
-    private LoopedSoundCollection soundCollection;
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-        mTango = new Tango(MainActivity.this);
-        reciprocal = new Bijection() {
+    /* compute the filters of binaural rendering in the background, once for the life of the
+     * activity */
+    private void startComputingFilters() {
+        binauralFilters = MixerSoundCollection.binauralFilters();
+        binauralFilters.addListener(new BinauralFilters.Listener() {
             @Override
-            float fwd(float x) {
-                return 1.0f / x;
+            public void onFiltersReady(PartitionedConvolver.Filter[] filters) {
+                Log.i(TAG, String.format(Locale.US, "HRTF filters ready in %.1f ms",
+                                         binauralFilters.getComputeNanos() / 1e6));
             }
-            @Override
-            float inv(float y) {
-                return 1.0f / y;
-            }
-        };
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
 
-        things = new Vector<>();
-        counts = new int[HORIZ_RES][VERT_RES];
-        depthMatrix = new float[HORIZ_RES][VERT_RES];
-        int[] resids = {R.raw.sound_1, R.raw.sound_2, R.raw.sound_3, R.raw.sound_4,
-                        R.raw.sound_5, R.raw.sound_6, R.raw.sound_7, R.raw.sound_8};
-        soundCollection = new LoopedSoundCollection(MainActivity.this, resids, MAX_NUM_THINGS);
+        PipelineConfig config = new PipelineConfig.Builder()
+                .setAngularSpans(HORIZ_ANGULAR_SPAN, VERT_ANGULAR_SPAN)
+                .setResolution(HORIZ_RES, VERT_RES)
+                .setMaxNumThings(MAX_NUM_THINGS)
+                .setMaxDistance(MAX_DISTANCE)
+                .setMinBlobSize(MIN_BLOB_SIZE)
+                .setEpsilon(EPSILON)
+                .setQuantizationThreads(PARALLEL_QUANTIZATION ? QUANTIZATION_THREADS : 0)
+                .setVoxelSize(VOXEL_SIZE)
+                .setFrameDeadlineNanos(FRAME_DEADLINE_MS * 1000000L)
+                .setGroundRemoval(GROUND_REMOVAL)
+                .setSceneChangeTolerance(SCENE_CHANGE_TOLERANCE)
+                .setMaxStaleFrames(MAX_STALE_FRAMES)
+                .build();
+        soundCollection = null;
+        if (soundBank != null) {
+            if (soundBank.getNumFailed() == 0)
+                soundCollection = new MixerSoundCollection(MainActivity.this, soundBank,
+                                                           binauralFilters);
+            else
+                Log.e(TAG, "Could not decode sounds, falling back to SoundPool");
+        }
+        if (soundCollection == null)
+            soundCollection = new LoopedSoundCollection(MainActivity.this, SOUND_RESIDS,
+                                                        MAX_NUM_THINGS);
+        audioControl = new AudioControlBridge(soundCollection, SOUND_RESIDS.length,
+                                              AUDIO_CONTROL_THRESHOLD);
+        metrics = new PipelineMetrics();
+        lastSummaryNanos = System.nanoTime();
+        audioControl.setMetrics(metrics);
+        audioControl.start(1000000000L / AUDIO_CONTROL_RATE);
+        depthPipeline = new DepthPipeline(config, audioControl);
+        depthPipeline.setMetrics(metrics);
+        poseRing = new PoseRing(POSE_RING_CAPACITY);
+        depthPipeline.setPoses(poseRing);
+        framePipeline = new FramePipeline(new FramePipeline.FrameProcessor() {
+            @Override
+            public void process(DepthFrame frame) {
+                processFrame(frame);
+            }
+        });
+        framePipeline.setMetrics(metrics);
+        if (RECORD_POINT_CLOUDS)
+            startRecording();
+        framePipeline.start();
 
         mTango = new Tango(MainActivity.this, new Runnable() {
             @Override
@@ -233,6 +229,36 @@ public class MainActivity extends AppCompatActivity {
                 Log.e(TAG, getString(R.string.exception_tango_error), e);
             }
         }
+        framePipeline.stop();
+        audioControl.stop();
+        depthPipeline.release();
+        soundCollection.release();
+        stopRecording();
+    }
+
+    /* open a new point cloud recording, named after the current time */
+    private void startRecording() {
+        File path = new File(getExternalFilesDir(null),
+                             "pointclouds-" + System.currentTimeMillis() + ".snpc");
+        try {
+            recorder = new PointCloudRecorder(path);
+            Log.i(TAG, "Recording point clouds to " + path);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not start recording point clouds", e);
+            recorder = null;
+        }
+    }
+
+    /* close the point cloud recording, if any */
+    private void stopRecording() {
+        if (recorder == null)
+            return;
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not finish recording point clouds", e);
+        }
+        recorder = null;
     }
 
     private TangoConfig setupTangoConfig(Tango tango) {
@@ -251,17 +277,28 @@ public class MainActivity extends AppCompatActivity {
         framePairs.add(new TangoCoordinateFramePair(
                 TangoPoseData.COORDINATE_FRAME_START_OF_SERVICE,
                 TangoPoseData.COORDINATE_FRAME_DEVICE));
+        cameraToDevice = null;
+        TangoPoseData extrinsics = mTango.getPoseAtTime(0.0, new TangoCoordinateFramePair(
+                TangoPoseData.COORDINATE_FRAME_DEVICE,
+                TangoPoseData.COORDINATE_FRAME_CAMERA_DEPTH));
+        if (extrinsics.statusCode == TangoPoseData.POSE_VALID)
+            cameraToDevice = toTransform(extrinsics, new RigidTransform());
+        else
+            Log.w(TAG, "No depth camera extrinsics, tracking in camera coordinates");
+        if (PIXEL_LOOKUP)
+            setupPixelLookup();
 
         // Listen for new Tango data
         mTango.connectListener(framePairs, new Tango.OnTangoUpdateListener() {
             @Override
             public void onPoseAvailable(final TangoPoseData pose) {
-                // not using TangoPoseData
+                handlePose(pose);
             }
 
             @Override
             public void onXyzIjAvailable(TangoXyzIjData xyzIj) {
-                // not using onXyzIjAvailable
+                // not using onXyzIjAvailable: its ij buffer is left empty, the pixel of each
+                // point is recovered from the intrinsics instead
             }
 
             @Override
@@ -281,144 +318,69 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    /* the action we take for each new available point cloud */
-    private void handlePointCloud(TangoPointCloudData pointCloudData) {
-        Log.i(TAG, "IDs");
-        for (Thing t : things) {
-            Log.i(TAG, Integer.toString(t.streamID));
+    /* hands the intrinsics of the depth camera over to the pipeline, which then bins points
+     * by pixel; points keep being binned by angles if the intrinsics are unusable */
+    private void setupPixelLookup() {
+        TangoCameraIntrinsics intrinsics =
+                mTango.getCameraIntrinsics(TangoCameraIntrinsics.TANGO_CAMERA_DEPTH);
+        try {
+            depthPipeline.setDepthCameraIntrinsics(intrinsics.width, intrinsics.height,
+                                                   intrinsics.fx, intrinsics.fy,
+                                                   intrinsics.cx, intrinsics.cy);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unusable depth camera intrinsics, binning points by angles", e);
         }
-        quantize(pointCloudData.points, pointCloudData.numPoints, reciprocal);
-        Vector<Blob> blobs = findBlobs(depthMatrix, reciprocal, MAX_DISTANCE,
-                                        MIN_BLOB_SIZE, MAX_DISTANCE, MAX_NUM_THINGS);
-        updateThings(blobs, EPSILON);
     }
 
-    /* update all the private things by tracking blobs */
-    private void updateThings(Iterable<Blob> newBlobs, float epsilon) {
-        // update the blobs
-        Vector<Thing> newThings = new Vector<>(MAX_NUM_THINGS);
-
-        // attempt to match newly detected blob with a perviously detected one
-        for (Blob b : newBlobs) {
-            float distSq = Float.POSITIVE_INFINITY;
-            int index = -1;
-            // for a given new blob, find its nearest neighbor from the previous point cloud
-            for (int i = 0; i < things.size(); i++) {
-                float d = things.elementAt(i).blob.distanceSqTo(b);
-                if (d < distSq) {
-                    distSq = d;
-                    index = i;
-                }
-            }
-            if (distSq <= epsilon * epsilon) {
-                // if nearest neighbor is close enough, both blobs are deemed to be the same
-                // object at two points in time, old thing is updated with new blob's
-                // characteristics, and old sound is inherited
-                Thing t = things.remove(index);
-                t.blob = b;
-                soundCollection.setVolPan(t.streamID, volOfThing(t), panOfThing(t));
-                newThings.add(t);
-            }
-            else {
-                // if deemed new, create a new thing (with new sound)
-                Thing t = new Thing(b, soundCollection.activateLeastRecent());
-                soundCollection.setVolPan(t.streamID, volOfThing(t), panOfThing(t));
-                soundCollection.play(t.streamID);
-                newThings.add(t);
-            }
-        }
-
-        // discard things that have disappeared from the visual field
-        for (Thing t : things) {
-            soundCollection.pause(t.streamID);
-            soundCollection.deactivate(t.streamID);
-        }
-
-        things = newThings;
+    /* adds the pose of the depth camera at the time of a new device pose to the pose ring */
+    private void handlePose(TangoPoseData pose) {
+        long offset = System.nanoTime() - (long) (pose.timestamp * 1e9);
+        if (offset < tangoClockOffset)
+            tangoClockOffset = offset;
+        RigidTransform extrinsics = cameraToDevice;
+        if (extrinsics == null || pose.statusCode != TangoPoseData.POSE_VALID)
+            return;
+        toTransform(pose, deviceToWorld);
+        poseRing.add(pose.timestamp, cameraToWorld.compose(deviceToWorld, extrinsics));
     }
 
-    /* find all Blobs made up of at least minSize grid cells, each cell closer than maxCellDist,
-     * such that the averaged distance (f-mean relative to transform) of the blob is at most
-     * maxBlobDist; output at most maxNum blobs, prioritized by smallest distance */
-    private Vector<Blob> findBlobs(float[][] grid, Bijection transform, float maxCellDist,
-                                   int minSize, float maxBlobDist, int maxNum) {
-        boolean[][] marked = new boolean[grid.length][grid[0].length];
-        PriorityQueue<Blob> pq = new PriorityQueue<>();
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                if (!marked[i][j] && grid[i][j] <= maxCellDist) {
-                    Vector<Triple> preBlob = new Vector<>();
-                    dfs(grid, marked, preBlob, maxCellDist, i, j);
-                    Blob blob = new Blob(preBlob, transform);
-                    if (blob.getSize() >= minSize && blob.getAverageR() <= maxBlobDist)
-                        pq.add(blob);
-                }
-            }
-        }
-        Vector<Blob> result = new Vector<>();
-        for (int i = 0; i < maxNum; i++) {
-            if (!pq.isEmpty())
-                result.add(pq.poll());
-            else break;
-        }
-        return result;
+    private static RigidTransform toTransform(TangoPoseData pose, RigidTransform out) {
+        return out.set((float) pose.rotation[TangoPoseData.INDEX_ROTATION_X],
+                       (float) pose.rotation[TangoPoseData.INDEX_ROTATION_Y],
+                       (float) pose.rotation[TangoPoseData.INDEX_ROTATION_Z],
+                       (float) pose.rotation[TangoPoseData.INDEX_ROTATION_W],
+                       (float) pose.translation[TangoPoseData.INDEX_TRANSLATION_X],
+                       (float) pose.translation[TangoPoseData.INDEX_TRANSLATION_Y],
+                       (float) pose.translation[TangoPoseData.INDEX_TRANSLATION_Z]);
     }
 
-    /* find the component containing cell (i, j) of grid consisting of all cells closer than
-       maxCellDist; result stored in points */
-    private void dfs(float[][] grid, boolean[][] marked, Vector<Triple> points,
-                     float maxCellDist, int i, int j) {
-        if (i < 0 || i >= grid.length || j < 0 || j >= grid[0].length)
-            return;
-        if (!marked[i][j] && grid[i][j] <= maxCellDist) {
-            marked[i][j] = true;
-            float theta = (float) i * HORIZ_ANGULAR_SPAN / HORIZ_RES - HORIZ_ANGULAR_SPAN / 2.0f;
-            float phi = (float) j * VERT_ANGULAR_SPAN / VERT_RES - VERT_ANGULAR_SPAN / 2.0f;
-            points.add(new Triple(grid[i][j], theta, phi));
-            dfs(grid, marked, points, maxCellDist, i + 1, j);
-            dfs(grid, marked, points, maxCellDist, i, j + 1);
-            dfs(grid, marked, points, maxCellDist, i - 1, j);
-            dfs(grid, marked, points, maxCellDist, i, j - 1);
-        }
-        else {
-            marked[i][j] = true;
-        }
+    /* the action we take for each new available point cloud: copy it and hand it over to the
+     * frame pipeline, so that the Tango callback thread returns immediately */
+    private void handlePointCloud(TangoPointCloudData pointCloudData) {
+        long offset = tangoClockOffset;
+        long captureNanos = offset != Long.MAX_VALUE
+                ? (long) (pointCloudData.timestamp * 1e9) + offset
+                : System.nanoTime();
+        framePipeline.offer(pointCloudData.points, pointCloudData.numPoints,
+                            pointCloudData.timestamp, captureNanos);
     }
 
-    /* compute a quantized version of pointCloudBuffer consisting of a grid where each cell
-       represents a 2D range of viewing angles, and the value in each cell corresponds to the
-       averaged radial distance of all 3D points lying in that range */
-    private void quantize(FloatBuffer pointCloudBuffer, int numPoints, Bijection transform) {
-        for (int i = 0; i < HORIZ_RES; i++) {
-            for (int j = 0; j < VERT_RES; j++) {
-                counts[i][j] = 0;
-                depthMatrix[i][j] = 0.0f;
+    /* the processing of a point cloud, run on the frame pipeline's worker thread */
+    private void processFrame(DepthFrame frame) {
+        if (recorder != null) {
+            try {
+                recorder.write(frame);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not record point cloud, recording stopped", e);
+                stopRecording();
             }
         }
-        for (int i = 0; i < 4 * numPoints; i += 4) {
-            float x = pointCloudBuffer.get(i),
-                    y = pointCloudBuffer.get(i+1),
-                    z = pointCloudBuffer.get(i+2);
-
-            Triple sphCoord = sphericalOfCartesian(x, y, z);
-            int col = (int) ((sphCoord.second + HORIZ_ANGULAR_SPAN / 2.0f)
-                    * (float) HORIZ_RES / HORIZ_ANGULAR_SPAN);
-            if (col < 0 || col >= HORIZ_RES)
-                throw new RuntimeException("Debug: col = " + col);
-            int row = (int) ((sphCoord.third + VERT_ANGULAR_SPAN / 2.0f)
-                    * (float) VERT_RES / VERT_ANGULAR_SPAN);
-            if (row < 0 || row >= HORIZ_RES)
-                throw new RuntimeException("Debug: row = " + row);
-            depthMatrix[col][row] += transform.fwd(sphCoord.first);
-            counts[col][row]++;
-        }
-        for (int i = 0; i < HORIZ_RES; i++) {
-            for (int j = 0; j < VERT_RES; j++) {
-                if (counts[i][j] == 0)
-                    depthMatrix[i][j] = Float.POSITIVE_INFINITY;
-                else
-                    depthMatrix[i][j] = transform.inv(depthMatrix[i][j] / (float) counts[i][j]);
-            }
+        depthPipeline.process(frame);
+        audioControl.publish(frame.captureNanos);
+        long now = System.nanoTime();
+        if (now - lastSummaryNanos >= SUMMARY_PERIOD_MS * 1000000L) {
+            lastSummaryNanos = now;
+            Log.i(TAG, metrics.summary());
         }
     }
-}
\ No newline at end of file
+}
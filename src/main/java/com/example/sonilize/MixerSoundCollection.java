@@ -0,0 +1,243 @@
+package com.example.sonilize;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/* an alternative to LoopedSoundCollection that mixes the sounds itself: every sound is decoded to
+ * PCM once, by a SoundBank shared with the collections of later resumes, and a MixerEngine
+ * renders all of them, with ramped gains, into a small float AudioTrack buffer from a dedicated
+ * urgent-audio thread; any number of sounds can play at once, and volume and pan changes are
+ * smooth; a sound played before the bank has decoded it fades in as soon as it has
+ *
+ * rendered binaurally, sounds are heard from their direction through a BinauralRenderer, at
+ * their volume rather than panned, built from BinauralFilters shared with the collections of
+ * later resumes; sounds are panned until the filters are ready, then switch over */
+class MixerSoundCollection implements SoundCollection {
+
+    private static final String TAG = MixerSoundCollection.class.getSimpleName();
+    // time taken by a full-scale gain change
+    private static final int RAMP_MILLIS = 20;
+    private static final int DEFAULT_FRAMES_PER_BUFFER = 256;
+    // buffers queued in the AudioTrack, beyond the one being rendered
+    private static final int QUEUED_BUFFERS = 2;
+    // taps of the head-related impulse responses, and frames per block of their convolution,
+    // the latency it adds
+    private static final int HRIR_LENGTH = 256;
+    private static final int BINAURAL_BLOCK_FRAMES = 128;
+
+    private final VoiceAllocator voices;
+    private final MixerEngine engine;
+    private final AudioTrack track;
+    private final int framesPerBuffer;
+    private final Thread renderThread;
+    private volatile boolean running;
+    private final SoundBank bank;
+    private final SoundBank.Listener bankListener;
+    private final BinauralFilters binauralFilters;
+    private final BinauralFilters.Listener filtersListener;
+    // built once the filters are ready, for the render thread to take up
+    private volatile BinauralRenderer binauralRenderer;
+    // when the collection was created and when a sound was first played, for the time to the
+    // first sound heard
+    private final long startNanos;
+    private volatile long firstPlayNanos;
+
+    /* the native output sample rate, which the sounds of the bank must be decoded at */
+    static int getSampleRate() {
+        return AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+    }
+
+    /* a decoder of resources resids, in that order, for a SoundBank */
+    static SoundBank.Decoder decoderOf(final Context context, final int[] resids) {
+        final int sampleRate = getSampleRate();
+        return new SoundBank.Decoder() {
+            @Override
+            public float[] decode(int sound) throws IOException {
+                return PcmDecoder.decode(context, resids[sound], sampleRate);
+            }
+        };
+    }
+
+    /* filters for rendering binaurally at the native output sample rate, starting to be
+     * computed in the background */
+    static BinauralFilters binauralFilters() {
+        return new BinauralFilters(getSampleRate(), HRIR_LENGTH, BINAURAL_BLOCK_FRAMES);
+    }
+
+    /* constructor, playing the sounds of bank as they become ready, binaurally through
+     * binauralFilters once they are (panned with null); returns without waiting for any */
+    MixerSoundCollection(Context context, SoundBank bank, BinauralFilters binauralFilters) {
+        startNanos = System.nanoTime();
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        int sampleRate = getSampleRate();
+        framesPerBuffer = propertyOrDefault(audioManager,
+                AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER, DEFAULT_FRAMES_PER_BUFFER);
+
+        voices = new VoiceAllocator(bank.getNumSounds());
+        engine = new MixerEngine(bank.getNumSounds(),
+                                 Math.max(1, sampleRate * RAMP_MILLIS / 1000));
+        this.bank = bank;
+        bankListener = new SoundBank.Listener() {
+            @Override
+            public void onSoundReady(int sound, float[] samples) {
+                engine.setLoop(sound, samples);
+            }
+
+            @Override
+            public void onSoundFailed(int sound, IOException e) {
+                Log.e(TAG, "Sound " + sound + " could not be decoded, it stays silent", e);
+            }
+        };
+        bank.addListener(bankListener);
+        this.binauralFilters = binauralFilters;
+        if (binauralFilters != null) {
+            final int blockSize = binauralFilters.getBlockSize();
+            filtersListener = new BinauralFilters.Listener() {
+                @Override
+                public void onFiltersReady(PartitionedConvolver.Filter[] filters) {
+                    binauralRenderer = new BinauralRenderer(filters, engine.getNumVoices(),
+                                                            blockSize);
+                }
+            };
+            binauralFilters.addListener(filtersListener);
+        }
+        else {
+            filtersListener = null;
+        }
+
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ASSISTANCE_ACCESSIBILITY)
+                .setContentType(AudioAttributes.CONTENT_TYPE_UNKNOWN)
+                .build();
+        AudioFormat audioFormat = new AudioFormat.Builder()
+                .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                .setSampleRate(sampleRate)
+                .build();
+        int minBufferBytes = AudioTrack.getMinBufferSize(sampleRate,
+                AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_FLOAT);
+        int bufferBytes = Math.max(minBufferBytes, QUEUED_BUFFERS * framesPerBuffer * 2 * 4);
+        track = new AudioTrack(audioAttributes, audioFormat, bufferBytes, AudioTrack.MODE_STREAM,
+                               AudioManager.AUDIO_SESSION_ID_GENERATE);
+
+        running = true;
+        renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                render();
+            }
+        }, "MixerSoundCollection");
+        renderThread.start();
+    }
+
+    private static int propertyOrDefault(AudioManager audioManager, String key, int fallback) {
+        String value = audioManager.getProperty(key);
+        try {
+            return value != null ? Integer.parseInt(value) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /* the render loop; blocks in AudioTrack.write, paced by the hardware */
+    private void render() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        float[] block = new float[2 * framesPerBuffer];
+        track.play();
+        boolean heard = false;
+        while (running) {
+            BinauralRenderer renderer = binauralRenderer;
+            if (renderer != null) {
+                binauralRenderer = null;
+                engine.setBinaural(renderer);
+            }
+            engine.render(block, 0, framesPerBuffer);
+            if (!heard && engine.getAudibleVoices() > 0) {
+                heard = true;
+                long now = System.nanoTime();
+                Log.i(TAG, String.format(Locale.US,
+                                         "First sound %.1f ms after start, %.1f ms after play",
+                                         (now - startNanos) / 1e6,
+                                         (now - firstPlayNanos) / 1e6));
+            }
+            int written = track.write(block, 0, block.length, AudioTrack.WRITE_BLOCKING);
+            if (written < 0) {
+                Log.e(TAG, "AudioTrack write failed: " + written);
+                break;
+            }
+        }
+        track.pause();
+        track.flush();
+    }
+
+    /* push the state of a voice to the mixer, whose binaural rendering takes the sum of its
+     * gains, its volume */
+    private void update(int voice) {
+        if (binauralFilters != null)
+            engine.setDirection(voice, voices.getAzimuth(voice), voices.getElevation(voice));
+        engine.setVoice(voice, voices.getLeftGain(voice), voices.getRightGain(voice),
+                        voices.isPlaying(voice));
+    }
+
+    @Override
+    public int activateLeastRecent() {
+        return voices.activateLeastRecent();
+    }
+
+    @Override
+    public void deactivate(int streamID) {
+        voices.deactivate(streamID);
+        update(streamID);
+    }
+
+    @Override
+    public void play(int streamID) {
+        if (firstPlayNanos == 0L)
+            firstPlayNanos = System.nanoTime();
+        if (voices.play(streamID))
+            update(streamID);
+    }
+
+    @Override
+    public void pause(int streamID) {
+        if (voices.pause(streamID))
+            update(streamID);
+    }
+
+    @Override
+    public void setVolPan(int streamID, float vol, float pan) {
+        voices.setVolPan(streamID, vol, pan);
+        update(streamID);
+    }
+
+    @Override
+    public void setDirection(int streamID, float azimuth, float elevation) {
+        voices.setDirection(streamID, azimuth, elevation);
+        if (binauralFilters != null)
+            update(streamID);
+    }
+
+    /* stop the render thread and release the AudioTrack; the bank and the filters are left as
+     * they are */
+    @Override
+    public void release() {
+        bank.removeListener(bankListener);
+        if (binauralFilters != null)
+            binauralFilters.removeListener(filtersListener);
+        running = false;
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        track.release();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.sonilize;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/* decodes a compressed sound resource to mono float PCM at a given sample rate, averaging its
+ * channels and resampling linearly; meant to be run once per sound, ahead of playback */
+class PcmDecoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    private PcmDecoder() {
+    }
+
+    /* the samples of resource resid, between -1.0 and 1.0, at sampleRate */
+    static float[] decode(Context context, int resid, int sampleRate) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        AssetFileDescriptor fd = context.getResources().openRawResourceFd(resid);
+        try {
+            extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+        } finally {
+            fd.close();
+        }
+        MediaFormat format = null;
+        for (int t = 0; t < extractor.getTrackCount(); t++) {
+            String mime = extractor.getTrackFormat(t).getString(MediaFormat.KEY_MIME);
+            if (mime.startsWith("audio/")) {
+                format = extractor.getTrackFormat(t);
+                extractor.selectTrack(t);
+                break;
+            }
+        }
+        if (format == null) {
+            extractor.release();
+            throw new IOException("No audio track in resource " + resid);
+        }
+
+        MediaCodec codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        float[] samples = new float[1 << 16];
+        int numSamples = 0;
+        int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        int inputRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        try {
+            codec.configure(format, null, null, 0);
+            codec.start();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int in = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (in >= 0) {
+                        int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(in, 0, 0, 0,
+                                                   MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        }
+                        else {
+                            codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    inputRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                }
+                else if (out >= 0) {
+                    ByteBuffer buffer = codec.getOutputBuffer(out);
+                    buffer.position(info.offset).limit(info.offset + info.size);
+                    ShortBuffer pcm = buffer.order(ByteOrder.nativeOrder()).asShortBuffer();
+                    int frames = pcm.remaining() / channels;
+                    if (numSamples + frames > samples.length) {
+                        float[] grown = new float[Math.max(2 * samples.length,
+                                                           numSamples + frames)];
+                        System.arraycopy(samples, 0, grown, 0, numSamples);
+                        samples = grown;
+                    }
+                    for (int f = 0; f < frames; f++) {
+                        float sum = 0.0f;
+                        for (int c = 0; c < channels; c++)
+                            sum += pcm.get();
+                        samples[numSamples++] = sum / (channels * 32768.0f);
+                    }
+                    codec.releaseOutputBuffer(out, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            codec.stop();
+        } finally {
+            codec.release();
+            extractor.release();
+        }
+        return resample(samples, numSamples, inputRate, sampleRate);
+    }
+
+    /* the first n samples of in, at inputRate, linearly resampled to outputRate; empty if
+     * nothing is left of them, which SoundBank reports as a failed decode */
+    private static float[] resample(float[] in, int n, int inputRate, int outputRate) {
+        int length = (int) ((long) n * outputRate / inputRate);
+        float[] out = new float[length];
+        if (length == 0)
+            return out;
+        double step = (double) inputRate / outputRate;
+        for (int k = 0; k < length; k++) {
+            double t = k * step;
+            int i = (int) t;
+            float frac = (float) (t - i);
+            float next = in[i + 1 < n ? i + 1 : 0];
+            out[k] = in[i] + (next - in[i]) * frac;
+        }
+        return out;
+    }
+}
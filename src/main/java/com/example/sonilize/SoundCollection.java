@@ -0,0 +1,8 @@
+package com.example.sonilize;
+
+/* an AudioSink backed by the audio hardware, holding resources until released */
+interface SoundCollection extends AudioSink {
+
+    /* destroy this sound collection and release the resources used */
+    void release();
+}